@@ -0,0 +1,96 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.simbrain.network.core.Network;
+import org.simbrain.network.subnetworks.BackpropNetwork;
+import org.simbrain.network.trainers.BackpropTrainer;
+import org.simbrain.network.trainers.IterableTrainer;
+import org.simbrain.network.trainers.MatrixBackpropTrainer;
+
+/**
+ * One training epoch of a three layer backprop network on random binary
+ * data, with either the neuron by neuron trainer or the matrix trainer.
+ */
+public class BackpropBenchmark extends Benchmark {
+
+    /** The trainer. */
+    private IterableTrainer trainer;
+
+    /**
+     * Declare parameters.
+     */
+    public BackpropBenchmark() {
+        addParameter("trainer", "graph", "matrix");
+        addParameter("hidden", "50");
+        addParameter("rows", "200");
+        addParameter("batch", "1", "20");
+    }
+
+    @Override
+    public String getName() {
+        return "trainer.backprop";
+    }
+
+    @Override
+    public void setUp(final Map<String, String> params) {
+        int hidden = Integer.parseInt(params.get("hidden"));
+        int rows = Integer.parseInt(params.get("rows"));
+        Network network = new Network();
+        BackpropNetwork backprop = new BackpropNetwork(network, new int[] {
+                20, hidden, 10 });
+        network.addGroup(backprop);
+        Random rand = new Random(1);
+        double[][] inputs = new double[rows][20];
+        double[][] targets = new double[rows][10];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < 20; j++) {
+                inputs[i][j] = rand.nextInt(2);
+            }
+            for (int j = 0; j < 10; j++) {
+                targets[i][j] = rand.nextInt(2);
+            }
+        }
+        backprop.getTrainingSet().setInputData(inputs);
+        backprop.getTrainingSet().setTargetData(targets);
+        if ("matrix".equals(params.get("trainer"))) {
+            MatrixBackpropTrainer matrix = new MatrixBackpropTrainer(backprop);
+            matrix.setBatchSize(Integer.parseInt(params.get("batch")));
+            trainer = matrix;
+        } else {
+            trainer = new BackpropTrainer(backprop);
+        }
+        trainer.randomize();
+    }
+
+    @Override
+    public double operation() throws Exception {
+        trainer.apply();
+        return trainer.getError();
+    }
+
+    @Override
+    public void tearDown() {
+        trainer = null;
+    }
+
+}
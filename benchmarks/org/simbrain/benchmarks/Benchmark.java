@@ -0,0 +1,85 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A parameterized microbenchmark run by {@link BenchmarkRunner}. The runner
+ * calls {@link #setUp(Map)} once for every combination of parameter values,
+ * then times repeated calls to {@link #operation()}, then calls
+ * {@link #tearDown()}.
+ * <p>
+ * Operations should return a value derived from the work they do (for
+ * example a summed activation) so that the runner can consume it and keep the
+ * JIT from eliminating the work as dead code.
+ */
+public abstract class Benchmark {
+
+    /** Parameter names mapped to the values to run them with, in order. */
+    private final Map<String, String[]> parameters =
+            new LinkedHashMap<String, String[]>();
+
+    /**
+     * @return the name results are reported under, e.g. "network.update"
+     */
+    public abstract String getName();
+
+    /**
+     * Declare a parameter and the values it is run with. Called from
+     * subclass constructors.
+     *
+     * @param name the parameter name
+     * @param values the default values, overridable from the command line
+     */
+    protected void addParameter(final String name, final String... values) {
+        parameters.put(name, values);
+    }
+
+    /**
+     * @return parameter names mapped to their values
+     */
+    public Map<String, String[]> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Prepare the state measured by {@link #operation()}.
+     *
+     * @param params the value of each parameter for this run
+     * @throws Exception if the state cannot be built
+     */
+    public abstract void setUp(Map<String, String> params) throws Exception;
+
+    /**
+     * The measured operation.
+     *
+     * @return a value derived from the work done
+     * @throws Exception if the operation fails
+     */
+    public abstract double operation() throws Exception;
+
+    /**
+     * Release the state built by {@link #setUp(Map)}.
+     */
+    public void tearDown() {
+    }
+
+}
@@ -0,0 +1,432 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.commons.math3.distribution.TDistribution;
+
+/**
+ * Runs the Simbrain microbenchmarks and reports the average time per
+ * operation of each benchmark and parameter combination, as a table on
+ * standard out and optionally as a JSON file in the format written by JMH
+ * (<code>-rf json</code>), so existing regression tracking tools can read it.
+ * <p>
+ * Each combination is set up once, run for a number of warmup iterations whose
+ * results are discarded, and then for a number of measurement iterations. An
+ * iteration calls the operation repeatedly until a fixed amount of time has
+ * passed. The reported error is the half-width of the 99.9% confidence
+ * interval of the mean over measurement iterations. All benchmarks run in the
+ * same JVM, so for stable numbers run one benchmark per invocation.
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * BenchmarkRunner [options] [regex]
+ *   -wi n           warmup iterations (default 5)
+ *   -i n            measurement iterations (default 5)
+ *   -r ms           time per iteration in milliseconds (default 1000)
+ *   -p name=v1,v2   override the values of a parameter
+ *   -o file         write JSON results to file
+ *   -l              list benchmarks and their parameters
+ * </pre>
+ *
+ * Only benchmarks whose name contains a match for the regular expression are
+ * run.
+ */
+public class BenchmarkRunner {
+
+    /** Confidence level of the reported error. */
+    private static final double CONFIDENCE = 0.999;
+
+    /** Number of warmup iterations. */
+    private int warmupIterations = 5;
+
+    /** Number of measurement iterations. */
+    private int measurementIterations = 5;
+
+    /** Length of an iteration in milliseconds. */
+    private long iterationTime = 1000;
+
+    /** Parameter values given on the command line. */
+    private final Map<String, String[]> parameterOverrides =
+            new LinkedHashMap<String, String[]>();
+
+    /** Results of every run so far. */
+    private final List<Result> results = new ArrayList<Result>();
+
+    /**
+     * Accumulates the values returned by operations so they are not
+     * optimized away.
+     */
+    private double sink;
+
+    /**
+     * Read by nothing; written once per iteration so that {@link #sink} is
+     * observable.
+     */
+    private volatile double published;
+
+    /**
+     * @return one instance of each benchmark
+     */
+    static List<Benchmark> getBenchmarks() {
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        benchmarks.add(new NetworkBuildBenchmark());
+        benchmarks.add(new NetworkUpdateBenchmark());
+        benchmarks.add(new ConnectionBenchmark());
+        benchmarks.add(new CouplingBenchmark());
+        benchmarks.add(new OdorWorldBenchmark());
+        benchmarks.add(new VisionWorldBenchmark());
+        benchmarks.add(new SerializationBenchmark());
+        benchmarks.add(new SammonBenchmark());
+        benchmarks.add(new NearestNeighborBenchmark());
+        benchmarks.add(new PCABenchmark());
+        benchmarks.add(new BackpropBenchmark());
+        benchmarks.add(new RecordingBenchmark());
+        return benchmarks;
+    }
+
+    /**
+     * Run the benchmarks selected by the command line arguments.
+     *
+     * @param args see the class comment
+     * @throws IOException if the results cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        BenchmarkRunner runner = new BenchmarkRunner();
+        Pattern filter = Pattern.compile("");
+        String output = null;
+        boolean list = false;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-wi")) {
+                runner.warmupIterations = Integer.parseInt(args[++i]);
+            } else if (arg.equals("-i")) {
+                runner.measurementIterations = Integer.parseInt(args[++i]);
+            } else if (arg.equals("-r")) {
+                runner.iterationTime = Long.parseLong(args[++i]);
+            } else if (arg.equals("-p")) {
+                String[] param = args[++i].split("=", 2);
+                runner.parameterOverrides.put(param[0], param[1].split(","));
+            } else if (arg.equals("-o")) {
+                output = args[++i];
+            } else if (arg.equals("-l")) {
+                list = true;
+            } else {
+                filter = Pattern.compile(arg);
+            }
+        }
+        for (Benchmark benchmark : getBenchmarks()) {
+            if (!filter.matcher(benchmark.getName()).find()) {
+                continue;
+            }
+            if (list) {
+                System.out.println(benchmark.getName() + " "
+                        + describe(benchmark.getParameters()));
+            } else {
+                runner.run(benchmark);
+            }
+        }
+        if (list) {
+            return;
+        }
+        runner.printSummary();
+        if (output != null) {
+            try (PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                    new FileOutputStream(output), "UTF-8"))) {
+                runner.writeJson(out);
+            }
+            System.out.println("Results written to " + output);
+        }
+        // Concurrent update actions leave pool threads behind.
+        System.exit(0);
+    }
+
+    /**
+     * Run a benchmark with every combination of its parameter values.
+     *
+     * @param benchmark the benchmark to run
+     */
+    void run(final Benchmark benchmark) {
+        Map<String, String[]> space = new LinkedHashMap<String, String[]>(
+                benchmark.getParameters());
+        for (Map.Entry<String, String[]> override : parameterOverrides
+                .entrySet()) {
+            if (space.containsKey(override.getKey())) {
+                space.put(override.getKey(), override.getValue());
+            }
+        }
+        for (Map<String, String> params : combinations(space)) {
+            System.out.println("# " + benchmark.getName() + " " + params);
+            try {
+                benchmark.setUp(params);
+                try {
+                    for (int i = 0; i < warmupIterations; i++) {
+                        System.out.println(String.format(Locale.US,
+                                "Warmup %d: %.3f us/op", i + 1,
+                                iterate(benchmark) / 1000));
+                    }
+                    double[] raw = new double[measurementIterations];
+                    for (int i = 0; i < measurementIterations; i++) {
+                        raw[i] = iterate(benchmark) / 1000;
+                        System.out.println(String.format(Locale.US,
+                                "Iteration %d: %.3f us/op", i + 1, raw[i]));
+                    }
+                    results.add(new Result(benchmark.getName(), params, raw));
+                } finally {
+                    benchmark.tearDown();
+                }
+            } catch (Exception e) {
+                System.out.println("Failed: " + e);
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Call the operation until the iteration time has passed.
+     *
+     * @param benchmark the benchmark
+     * @return the average time per operation in nanoseconds
+     * @throws Exception if the operation fails
+     */
+    private double iterate(final Benchmark benchmark) throws Exception {
+        long budget = iterationTime * 1000000L;
+        long ops = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            sink += benchmark.operation();
+            ops++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < budget);
+        published = sink;
+        return (double) elapsed / ops;
+    }
+
+    /**
+     * @param space parameter names mapped to their values
+     * @return every assignment of one value to each parameter
+     */
+    private static List<Map<String, String>> combinations(
+            final Map<String, String[]> space) {
+        List<Map<String, String>> combos = new ArrayList<Map<String, String>>();
+        combos.add(new LinkedHashMap<String, String>());
+        for (Map.Entry<String, String[]> param : space.entrySet()) {
+            List<Map<String, String>> next =
+                    new ArrayList<Map<String, String>>();
+            for (Map<String, String> combo : combos) {
+                for (String value : param.getValue()) {
+                    Map<String, String> extended =
+                            new LinkedHashMap<String, String>(combo);
+                    extended.put(param.getKey(), value);
+                    next.add(extended);
+                }
+            }
+            combos = next;
+        }
+        return combos;
+    }
+
+    /**
+     * @param space parameter names mapped to their values
+     * @return a readable description of the parameter space
+     */
+    private static String describe(final Map<String, String[]> space) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String[]> param : space.entrySet()) {
+            sb.append(param.getKey()).append('=')
+                    .append(String.join(",", param.getValue())).append(' ');
+        }
+        return sb.toString().trim();
+    }
+
+    /**
+     * Print a table of all results to standard out.
+     */
+    private void printSummary() {
+        System.out.println();
+        System.out.println(String.format(Locale.US, "%-72s %14s %12s  %s",
+                "Benchmark", "Score", "Error", "Units"));
+        for (Result r : results) {
+            StringBuilder name = new StringBuilder(r.benchmark);
+            for (Map.Entry<String, String> p : r.params.entrySet()) {
+                name.append(' ').append(p.getKey()).append('=')
+                        .append(p.getValue());
+            }
+            System.out.println(String.format(Locale.US,
+                    "%-72s %14.3f %12.3f  us/op", name, r.getScore(),
+                    r.getError()));
+        }
+    }
+
+    /**
+     * Write all results as a JMH style JSON array.
+     *
+     * @param out the writer to write to
+     */
+    private void writeJson(final PrintWriter out) {
+        out.println("[");
+        for (int i = 0; i < results.size(); i++) {
+            Result r = results.get(i);
+            out.println("    {");
+            out.println("        \"benchmark\" : " + quote(r.benchmark) + ",");
+            out.println("        \"mode\" : \"avgt\",");
+            out.println("        \"threads\" : 1,");
+            out.println("        \"forks\" : 0,");
+            out.println("        \"jvm\" : "
+                    + quote(System.getProperty("java.home")) + ",");
+            out.println("        \"jdkVersion\" : "
+                    + quote(System.getProperty("java.version")) + ",");
+            out.println("        \"warmupIterations\" : " + warmupIterations
+                    + ",");
+            out.println("        \"warmupTime\" : "
+                    + quote(iterationTime + " ms") + ",");
+            out.println("        \"measurementIterations\" : "
+                    + measurementIterations + ",");
+            out.println("        \"measurementTime\" : "
+                    + quote(iterationTime + " ms") + ",");
+            out.println("        \"params\" : {");
+            int k = 0;
+            for (Map.Entry<String, String> p : r.params.entrySet()) {
+                out.println("            " + quote(p.getKey()) + " : "
+                        + quote(p.getValue())
+                        + (++k < r.params.size() ? "," : ""));
+            }
+            out.println("        },");
+            out.println("        \"primaryMetric\" : {");
+            out.println("            \"score\" : " + number(r.getScore())
+                    + ",");
+            out.println("            \"scoreError\" : " + number(r.getError())
+                    + ",");
+            out.println("            \"scoreConfidence\" : [ "
+                    + number(r.getScore() - r.getError()) + ", "
+                    + number(r.getScore() + r.getError()) + " ],");
+            out.println("            \"scoreUnit\" : \"us/op\",");
+            StringBuilder raw = new StringBuilder();
+            for (int j = 0; j < r.raw.length; j++) {
+                raw.append(j == 0 ? "" : ", ").append(number(r.raw[j]));
+            }
+            out.println("            \"rawData\" : [ [ " + raw + " ] ]");
+            out.println("        },");
+            out.println("        \"secondaryMetrics\" : {");
+            out.println("        }");
+            out.println("    }" + (i + 1 < results.size() ? "," : ""));
+        }
+        out.println("]");
+    }
+
+    /**
+     * @param s a string
+     * @return the string as a JSON string literal
+     */
+    private static String quote(final String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * @param d a number
+     * @return the number as a JSON number, or "NaN" quoted as JMH does
+     */
+    private static String number(final double d) {
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+            return quote(Double.toString(d));
+        }
+        return Double.toString(d);
+    }
+
+    /**
+     * The measurements of one benchmark with one set of parameter values.
+     */
+    private static class Result {
+
+        /** Benchmark name. */
+        private final String benchmark;
+
+        /** Parameter values. */
+        private final Map<String, String> params;
+
+        /** Microseconds per operation in each measurement iteration. */
+        private final double[] raw;
+
+        /**
+         * @param benchmark benchmark name
+         * @param params parameter values
+         * @param raw microseconds per operation in each iteration
+         */
+        Result(final String benchmark, final Map<String, String> params,
+                final double[] raw) {
+            this.benchmark = benchmark;
+            this.params = params;
+            this.raw = raw;
+        }
+
+        /**
+         * @return mean microseconds per operation
+         */
+        double getScore() {
+            double sum = 0;
+            for (double d : raw) {
+                sum += d;
+            }
+            return sum / raw.length;
+        }
+
+        /**
+         * @return half-width of the confidence interval of the score, or NaN
+         *         if there are fewer than two iterations
+         */
+        double getError() {
+            int n = raw.length;
+            if (n < 2) {
+                return Double.NaN;
+            }
+            double mean = getScore();
+            double ss = 0;
+            for (double d : raw) {
+                ss += (d - mean) * (d - mean);
+            }
+            double sd = Math.sqrt(ss / (n - 1));
+            double t = new TDistribution(n - 1)
+                    .inverseCumulativeProbability(1 - (1 - CONFIDENCE) / 2);
+            return t * sd / Math.sqrt(n);
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.util.Map;
+
+import org.simbrain.network.connections.ConnectNeurons;
+import org.simbrain.network.connections.Radial;
+import org.simbrain.network.connections.Sparse;
+import org.simbrain.network.core.Network;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.network.groups.SynapseGroup;
+import org.simbrain.network.layouts.GridLayout;
+
+/**
+ * Generation of the synapses of a recurrent synapse group by a
+ * {@link Sparse} or {@link Radial} connector. Neurons are laid out on a grid
+ * so that radial connection probabilities are meaningful. The synapses are
+ * removed again after each operation so that every operation starts from
+ * unconnected neurons; that removal is included in the measured time.
+ */
+public class ConnectionBenchmark extends Benchmark {
+
+    /** Average connection distance used by the radial connector. */
+    private static final double RADIAL_LAMBDA = 100;
+
+    /** The neurons to connect. */
+    private NeuronGroup group;
+
+    /** Name of the connector. */
+    private String connector;
+
+    /** Density used by the sparse connector. */
+    private double density;
+
+    /**
+     * Declare parameters.
+     */
+    public ConnectionBenchmark() {
+        addParameter("connector", "Sparse", "Radial");
+        addParameter("size", "100", "1000");
+        addParameter("density", "0.1");
+    }
+
+    @Override
+    public String getName() {
+        return "network.connect";
+    }
+
+    @Override
+    public void setUp(final Map<String, String> params) {
+        connector = params.get("connector");
+        density = Double.parseDouble(params.get("density"));
+        group = new NeuronGroup(new Network(),
+                Integer.parseInt(params.get("size")));
+        group.setLayout(new GridLayout());
+        group.applyLayout();
+    }
+
+    @Override
+    public double operation() {
+        ConnectNeurons connect;
+        if (connector.equals("Radial")) {
+            connect = new Radial(RADIAL_LAMBDA);
+        } else {
+            connect = new Sparse(density, false, false);
+        }
+        SynapseGroup sg = new SynapseGroup(group, group, connect);
+        sg.makeConnections();
+        double size = sg.size();
+        sg.clear();
+        return size;
+    }
+
+}
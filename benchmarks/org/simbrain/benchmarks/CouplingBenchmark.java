@@ -0,0 +1,113 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.util.List;
+import java.util.Map;
+
+import org.simbrain.network.NetworkComponent;
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.workspace.Coupling;
+import org.simbrain.workspace.Workspace;
+
+/**
+ * One pass of {@link org.simbrain.workspace.CouplingManager#updateAllCouplings()}
+ * copying activations from one network to another, either with one scalar
+ * coupling per neuron or with a single array coupling between neuron groups.
+ */
+public class CouplingBenchmark extends Benchmark {
+
+    /** The workspace holding the coupled networks. */
+    private Workspace workspace;
+
+    /**
+     * Declare parameters.
+     */
+    public CouplingBenchmark() {
+        addParameter("type", "Neuron", "NeuronGroup");
+        addParameter("size", "100", "1000");
+    }
+
+    @Override
+    public String getName() {
+        return "workspace.couplings";
+    }
+
+    @Override
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public void setUp(final Map<String, String> params) {
+        int size = Integer.parseInt(params.get("size"));
+        workspace = new Workspace();
+        NetworkComponent source = createComponent("Source", size);
+        NetworkComponent target = createComponent("Target", size);
+        workspace.addWorkspaceComponent(source);
+        workspace.addWorkspaceComponent(target);
+        NeuronGroup srcGroup = source.getNetwork().getFlatNeuronGroupList()
+                .get(0);
+        NeuronGroup tarGroup = target.getNetwork().getFlatNeuronGroupList()
+                .get(0);
+        if (params.get("type").equals("NeuronGroup")) {
+            workspace.addCoupling(new Coupling(NetworkComponent
+                    .getNeuronGroupProducer(source, srcGroup,
+                            "getActivations"),
+                    NetworkComponent.getNeuronGroupConsumer(target, tarGroup,
+                            "forceSetActivations")));
+        } else {
+            List<Neuron> srcNeurons = srcGroup.getNeuronList();
+            List<Neuron> tarNeurons = tarGroup.getNeuronList();
+            for (int i = 0; i < size; i++) {
+                workspace.addCoupling(new Coupling(NetworkComponent
+                        .getNeuronProducer(source, srcNeurons.get(i),
+                                "getActivation"),
+                        NetworkComponent.getNeuronConsumer(target,
+                                tarNeurons.get(i), "forceSetActivation")));
+            }
+        }
+    }
+
+    /**
+     * @param name component name
+     * @param size number of neurons
+     * @return a network component with one randomized neuron group
+     */
+    private static NetworkComponent createComponent(final String name,
+            final int size) {
+        Network network = new Network();
+        NeuronGroup ng = new NeuronGroup(network, size);
+        network.addGroup(ng);
+        for (Neuron n : ng.getNeuronList()) {
+            n.randomize();
+        }
+        return new NetworkComponent(name, network);
+    }
+
+    @Override
+    public double operation() {
+        workspace.getCouplingManager().updateAllCouplings();
+        return workspace.getCouplingManager().getCouplings().size();
+    }
+
+    @Override
+    public void tearDown() {
+        workspace = null;
+    }
+
+}
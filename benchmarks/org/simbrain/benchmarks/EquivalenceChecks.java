@@ -0,0 +1,361 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.Synapse;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.network.neuron_update_rules.IntegrateAndFireRule;
+import org.simbrain.network.groups.Subnetwork;
+import org.simbrain.network.neuron_update_rules.interfaces.BiasedUpdateRule;
+import org.simbrain.network.subnetworks.BPTTNetwork;
+import org.simbrain.network.subnetworks.BackpropNetwork;
+import org.simbrain.network.subnetworks.SimpleRecurrentNetwork;
+import org.simbrain.network.trainers.BPTTTrainer;
+import org.simbrain.network.trainers.BackpropTrainer;
+import org.simbrain.network.trainers.IterableTrainer;
+import org.simbrain.network.trainers.MatrixBackpropTrainer;
+import org.simbrain.network.trainers.SRNTrainer;
+import org.simbrain.network.trainers.Trainable;
+
+/**
+ * Checks that the fast paths added alongside existing code compute the same
+ * results as the code they stand in for, by running both from the same
+ * seeded starting state and comparing the results. Prints the largest
+ * difference found by each check and exits with status 1 if any exceeds its
+ * tolerance.
+ * <p>
+ * Usage: <code>EquivalenceChecks [regex]</code>. Only checks whose name
+ * contains a match for the regular expression are run.
+ */
+public class EquivalenceChecks {
+
+    /** Update actions compared against the default buffered update. */
+    private static final String[] UPDATE_ACTIONS = {"ConcurrentBuffered",
+        "Compiled", "EventDriven" };
+
+    /** Neuron update rules the update actions are checked with. */
+    private static final String[] UPDATE_RULES = {"Linear", "Sigmoidal",
+        "IntegrateAndFire", "Izhikevich" };
+
+    /** Number of checks whose difference exceeded their tolerance. */
+    private int failures;
+
+    /** Only checks whose name matches this are run. */
+    private final Pattern filter;
+
+    /**
+     * @param filter only checks whose name matches this are run
+     */
+    private EquivalenceChecks(final Pattern filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Run the checks.
+     *
+     * @param args an optional regular expression selecting checks
+     * @throws Exception if a check can not be run
+     */
+    public static void main(final String[] args) throws Exception {
+        EquivalenceChecks checks = new EquivalenceChecks(
+                Pattern.compile(args.length > 0 ? args[0] : ""));
+        for (String action : UPDATE_ACTIONS) {
+            for (String rule : UPDATE_RULES) {
+                checks.checkUpdateAction(action, rule);
+            }
+        }
+        checks.checkMatrixBackprop();
+        checks.checkMatrixSRN();
+        checks.checkMatrixBPTT();
+        if (checks.failures > 0) {
+            System.out.println(checks.failures + " check(s) failed.");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param name name of a check
+     * @return whether the check should be run
+     */
+    private boolean selected(final String name) {
+        return filter.matcher(name).find();
+    }
+
+    /**
+     * Report the result of a check.
+     *
+     * @param name name of the check
+     * @param difference largest difference found
+     * @param tolerance largest difference allowed
+     */
+    private void report(final String name, final double difference,
+            final double tolerance) {
+        boolean passed = difference <= tolerance;
+        if (!passed) {
+            failures++;
+        }
+        System.out.printf("%-40s %s  max difference %.3g (tolerance %.1g)%n",
+                name, passed ? "ok  " : "FAIL", difference, tolerance);
+    }
+
+    /**
+     * Update two copies of the same recurrent network for a number of steps,
+     * one with the default update actions and one with the named update
+     * action, and compare the activations of every neuron after each step.
+     * Integrate and fire neurons are given no refractory period, since the
+     * event driven update, as documented, lets responses decay while their
+     * target is refractory and the default update does not.
+     *
+     * @param action short name of the update action, see
+     *            {@link NetworkFixtures#setUpdateAction(Network, String)}
+     * @param rule short name of the neuron update rule
+     * @throws ReflectiveOperationException if there is no such rule
+     */
+    private void checkUpdateAction(final String action, final String rule)
+            throws ReflectiveOperationException {
+        String name = "update." + action + "." + rule;
+        if (!selected(name)) {
+            return;
+        }
+        final int steps = 200;
+        Network reference = NetworkFixtures.buildRecurrentNetwork(rule, 200,
+                .1);
+        for (Neuron neuron : reference.getFlatNeuronList()) {
+            if (neuron.getUpdateRule() instanceof IntegrateAndFireRule) {
+                ((IntegrateAndFireRule) neuron.getUpdateRule())
+                        .setRefractoryPeriod(0);
+            }
+        }
+        Network buffered = reference.copy();
+        Network other = reference.copy();
+        NetworkFixtures.setUpdateAction(other, action);
+        List<Neuron> bufferedNeurons = buffered.getFlatNeuronList();
+        List<Neuron> otherNeurons = other.getFlatNeuronList();
+        double difference = 0;
+        for (int i = 0; i < steps; i++) {
+            buffered.update();
+            other.update();
+            for (int j = 0; j < bufferedNeurons.size(); j++) {
+                difference = Math.max(difference, Math.abs(bufferedNeurons
+                        .get(j).getActivation()
+                        - otherNeurons.get(j).getActivation()));
+            }
+        }
+        report(name, difference, 1e-9);
+    }
+
+    /**
+     * Train two copies of a backprop network with the same seeded weights
+     * and data for a number of epochs, one with {@link BackpropTrainer} and
+     * one with {@link MatrixBackpropTrainer} (batch size 1, so both make the
+     * same online updates), and compare the weights, biases and error.
+     *
+     * @throws Exception if training fails
+     */
+    private void checkMatrixBackprop() throws Exception {
+        String name = "trainer.backprop.matrix";
+        if (!selected(name)) {
+            return;
+        }
+        BackpropNetwork graph = buildBackpropNetwork();
+        BackpropNetwork matrix = buildBackpropNetwork();
+        compareTrainers(name, graph, new BackpropTrainer(graph), matrix,
+                new MatrixBackpropTrainer(matrix), 100);
+    }
+
+    /**
+     * As {@link #checkMatrixBackprop()}, for a simple recurrent network
+     * trained with {@link SRNTrainer}. Training this network is unstable
+     * after a few dozen epochs, and rounding differences of the two trainers
+     * then grow quickly, so fewer epochs are compared.
+     *
+     * @throws Exception if training fails
+     */
+    private void checkMatrixSRN() throws Exception {
+        String name = "trainer.srn.matrix";
+        if (!selected(name)) {
+            return;
+        }
+        SimpleRecurrentNetwork graph = buildSRN();
+        SimpleRecurrentNetwork matrix = buildSRN();
+        compareTrainers(name, graph, new SRNTrainer(graph), matrix,
+                new MatrixBackpropTrainer(matrix), 30);
+    }
+
+    /**
+     * As {@link #checkMatrixBackprop()}, for a backprop through time network
+     * trained with {@link BPTTTrainer}.
+     *
+     * @throws Exception if training fails
+     */
+    private void checkMatrixBPTT() throws Exception {
+        String name = "trainer.bptt.matrix";
+        if (!selected(name)) {
+            return;
+        }
+        BPTTNetwork graph = buildBPTT();
+        BPTTNetwork matrix = buildBPTT();
+        compareTrainers(name, graph, new BPTTTrainer(graph), matrix,
+                new MatrixBackpropTrainer(matrix), 100);
+    }
+
+    /**
+     * Train two copies of a network for a number of epochs, one with each
+     * trainer, and report the largest difference in weights, biases and
+     * error.
+     *
+     * @param name name of the check
+     * @param graph the copy trained by the existing trainer
+     * @param graphTrainer the existing trainer
+     * @param matrix the copy trained by the matrix trainer
+     * @param matrixTrainer the matrix trainer
+     * @param epochs number of epochs to train
+     * @throws Exception if training fails
+     */
+    private void compareTrainers(final String name, final Subnetwork graph,
+            final IterableTrainer graphTrainer, final Subnetwork matrix,
+            final IterableTrainer matrixTrainer, final int epochs)
+            throws Exception {
+        for (int i = 0; i < epochs; i++) {
+            graphTrainer.apply();
+            matrixTrainer.apply();
+        }
+        double difference = Math.abs(graphTrainer.getError()
+                - matrixTrainer.getError());
+        List<Double> graphParams = getParameters(graph);
+        List<Double> matrixParams = getParameters(matrix);
+        for (int i = 0; i < graphParams.size(); i++) {
+            difference = Math.max(difference,
+                    Math.abs(graphParams.get(i) - matrixParams.get(i)));
+        }
+        report(name, difference, 1e-9);
+    }
+
+    /**
+     * Build a 6-10-4 backprop network with weights, biases and training data
+     * drawn from a fixed seed, so that every call builds the same network.
+     *
+     * @return the network
+     */
+    private static BackpropNetwork buildBackpropNetwork() {
+        Network network = new Network();
+        BackpropNetwork backprop = new BackpropNetwork(network, new int[] {
+                6, 10, 4 });
+        network.addGroup(backprop);
+        initialize(backprop, 6, 4);
+        return backprop;
+    }
+
+    /**
+     * Build a simple recurrent network with 6 inputs, 10 hidden units and 4
+     * outputs, seeded as in {@link #buildBackpropNetwork()}.
+     *
+     * @return the network
+     */
+    private static SimpleRecurrentNetwork buildSRN() {
+        Network network = new Network();
+        SimpleRecurrentNetwork srn = new SimpleRecurrentNetwork(network, 6,
+                10, 4);
+        network.addGroup(srn);
+        initialize(srn, 6, 4);
+        return srn;
+    }
+
+    /**
+     * Build a 4-10-4 backprop through time network with sequences of 5
+     * steps, seeded as in {@link #buildBackpropNetwork()}.
+     *
+     * @return the network
+     */
+    private static BPTTNetwork buildBPTT() {
+        Network network = new Network();
+        BPTTNetwork bptt = new BPTTNetwork(network, 4, 10, 4,
+                new Point2D.Double());
+        bptt.setStepsPerSequences(5);
+        network.addGroup(bptt);
+        initialize(bptt, 4, 4);
+        return bptt;
+    }
+
+    /**
+     * Set the weights, biases and training data of a network from a fixed
+     * seed.
+     *
+     * @param subnet the network, which must be {@link Trainable}
+     * @param numInputs number of inputs
+     * @param numOutputs number of outputs
+     */
+    private static void initialize(final Subnetwork subnet,
+            final int numInputs, final int numOutputs) {
+        Random rand = new Random(7);
+        for (NeuronGroup group : subnet.getNeuronGroupList()) {
+            for (Neuron neuron : group.getNeuronList()) {
+                for (Synapse synapse : neuron.getFanIn()) {
+                    synapse.setStrength(rand.nextDouble() - .5);
+                }
+                if (neuron.getUpdateRule() instanceof BiasedUpdateRule) {
+                    ((BiasedUpdateRule) neuron.getUpdateRule())
+                            .setBias(rand.nextDouble() - .5);
+                }
+            }
+        }
+        int rows = 30;
+        double[][] inputs = new double[rows][numInputs];
+        double[][] targets = new double[rows][numOutputs];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < numInputs; j++) {
+                inputs[i][j] = rand.nextInt(2);
+            }
+            for (int j = 0; j < numOutputs; j++) {
+                targets[i][j] = rand.nextInt(2);
+            }
+        }
+        ((Trainable) subnet).getTrainingSet().setInputData(inputs);
+        ((Trainable) subnet).getTrainingSet().setTargetData(targets);
+    }
+
+    /**
+     * @param subnet a network
+     * @return its weights and biases, in a fixed order
+     */
+    private static List<Double> getParameters(final Subnetwork subnet) {
+        List<Double> params = new ArrayList<Double>();
+        for (NeuronGroup group : subnet.getNeuronGroupList()) {
+            for (Neuron neuron : group.getNeuronList()) {
+                for (Synapse synapse : neuron.getFanIn()) {
+                    params.add(synapse.getStrength());
+                }
+                if (neuron.getUpdateRule() instanceof BiasedUpdateRule) {
+                    params.add(((BiasedUpdateRule) neuron.getUpdateRule())
+                            .getBias());
+                }
+            }
+        }
+        return params;
+    }
+
+}
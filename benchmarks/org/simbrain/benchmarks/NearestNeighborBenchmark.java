@@ -0,0 +1,127 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.simbrain.util.projection.DataPoint;
+import org.simbrain.util.projection.NTree;
+
+/**
+ * Nearest neighbor searches in an {@link NTree} of random gaussian points,
+ * or the incremental construction of such a tree. Each "knn" operation runs
+ * a fixed batch of k-nearest-neighbor queries at other random points; each
+ * "add" operation builds the tree one point at a time, as a projector does.
+ */
+public class NearestNeighborBenchmark extends Benchmark {
+
+    /** Number of queries in one "knn" operation. */
+    private static final int QUERIES = 100;
+
+    /** The points indexed. */
+    private DataPoint[] points;
+
+    /** The query points. */
+    private DataPoint[] queries;
+
+    /** The tree searched by "knn" operations. */
+    private NTree tree;
+
+    /** Number of neighbors to find. */
+    private int k;
+
+    /** Whether the operation builds the tree rather than searching it. */
+    private boolean add;
+
+    /** Dimension of the points. */
+    private int dims;
+
+    /**
+     * Declare parameters.
+     */
+    public NearestNeighborBenchmark() {
+        addParameter("operation", "knn", "add");
+        addParameter("points", "1000", "10000");
+        addParameter("dims", "3", "20");
+        addParameter("k", "5");
+    }
+
+    @Override
+    public String getName() {
+        return "projection.knn";
+    }
+
+    @Override
+    public void setUp(final Map<String, String> params) {
+        add = params.get("operation").equals("add");
+        dims = Integer.parseInt(params.get("dims"));
+        k = Integer.parseInt(params.get("k"));
+        Random rand = new Random(1);
+        points = randomPoints(rand, Integer.parseInt(params.get("points")));
+        queries = randomPoints(rand, QUERIES);
+        tree = new NTree(dims);
+        for (DataPoint point : points) {
+            tree.add(point);
+        }
+    }
+
+    /**
+     * @param rand the random source
+     * @param n number of points
+     * @return n gaussian points
+     */
+    private DataPoint[] randomPoints(final Random rand, final int n) {
+        DataPoint[] ret = new DataPoint[n];
+        for (int i = 0; i < n; i++) {
+            double[] point = new double[dims];
+            for (int j = 0; j < dims; j++) {
+                point[j] = rand.nextGaussian();
+            }
+            ret[i] = new DataPoint(point);
+        }
+        return ret;
+    }
+
+    @Override
+    public double operation() {
+        if (add) {
+            NTree built = new NTree(dims);
+            for (DataPoint point : points) {
+                built.add(point);
+            }
+            return built.size();
+        }
+        double sum = 0;
+        for (DataPoint query : queries) {
+            for (DataPoint neighbor : tree.getClosestPoints(k, query)) {
+                sum += neighbor.get(0);
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public void tearDown() {
+        points = null;
+        queries = null;
+        tree = null;
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.util.Map;
+
+import org.simbrain.network.core.Network;
+
+/**
+ * Builds a sparsely connected recurrent network from scratch: neuron group
+ * creation, rule assignment, connection generation and event dispatch.
+ */
+public class NetworkBuildBenchmark extends Benchmark {
+
+    /** Neuron update rule. */
+    private String rule;
+
+    /** Number of neurons. */
+    private int size;
+
+    /** Connection density. */
+    private double density;
+
+    /**
+     * Declare parameters.
+     */
+    public NetworkBuildBenchmark() {
+        addParameter("rule", "Linear", "Sigmoidal", "IntegrateAndFire",
+                "Izhikevich");
+        addParameter("size", "100", "1000");
+        addParameter("density", "0.1");
+    }
+
+    @Override
+    public String getName() {
+        return "network.build";
+    }
+
+    @Override
+    public void setUp(final Map<String, String> params) {
+        rule = params.get("rule");
+        size = Integer.parseInt(params.get("size"));
+        density = Double.parseDouble(params.get("density"));
+    }
+
+    @Override
+    public double operation() throws Exception {
+        Network network = NetworkFixtures.buildRecurrentNetwork(rule, size,
+                density);
+        return network.getFlatSynapseList().size();
+    }
+
+}
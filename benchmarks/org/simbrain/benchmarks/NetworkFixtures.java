@@ -0,0 +1,144 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import org.simbrain.network.connections.Sparse;
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.NetworkUpdateAction;
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.NeuronUpdateRule;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.network.groups.SynapseGroup;
+import org.simbrain.network.neuron_update_rules.IntegrateAndFireRule;
+import org.simbrain.network.neuron_update_rules.IzhikevichRule;
+import org.simbrain.network.update_actions.BufferedUpdate;
+import org.simbrain.network.update_actions.CompiledUpdate;
+import org.simbrain.network.update_actions.ConcurrentBufferedUpdate;
+import org.simbrain.network.update_actions.EventDrivenUpdate;
+
+/**
+ * Builds the networks shared by the network benchmarks.
+ */
+final class NetworkFixtures {
+
+    /** Package of the neuron update rules. */
+    private static final String RULE_PACKAGE =
+            "org.simbrain.network.neuron_update_rules.";
+
+    /**
+     * Not instantiable.
+     */
+    private NetworkFixtures() {
+    }
+
+    /**
+     * Create a neuron update rule from a short name, e.g. "Linear" for
+     * LinearRule. Spiking rules are given a background current so that they
+     * fire without external input.
+     *
+     * @param name the class name of the rule, with or without "Rule"
+     * @return a new instance of the rule
+     * @throws ReflectiveOperationException if there is no such rule
+     */
+    static NeuronUpdateRule createRule(final String name)
+            throws ReflectiveOperationException {
+        Class<?> clazz;
+        try {
+            clazz = Class.forName(RULE_PACKAGE + name + "Rule");
+        } catch (ClassNotFoundException e) {
+            clazz = Class.forName(RULE_PACKAGE + name);
+        }
+        NeuronUpdateRule rule = (NeuronUpdateRule) clazz.getConstructor()
+                .newInstance();
+        if (rule instanceof IzhikevichRule) {
+            ((IzhikevichRule) rule).setiBg(10);
+        } else if (rule instanceof IntegrateAndFireRule) {
+            ((IntegrateAndFireRule) rule).setBackgroundCurrent(20);
+        }
+        return rule;
+    }
+
+    /**
+     * Build a network containing one neuron group with sparse, randomly
+     * weighted recurrent connections, and randomized activations.
+     *
+     * @param rule the short name of the neuron update rule
+     * @param size the number of neurons
+     * @param density the probability that any two neurons are connected
+     * @return the network
+     * @throws ReflectiveOperationException if there is no such rule
+     */
+    static Network buildRecurrentNetwork(final String rule, final int size,
+            final double density) throws ReflectiveOperationException {
+        Network network = new Network();
+        NeuronGroup ng = new NeuronGroup(network, size);
+        ng.setNeuronType(createRule(rule));
+        ng.setLabel("Recurrent");
+        network.addGroup(ng);
+        SynapseGroup sg = SynapseGroup.createSynapseGroup(ng, ng,
+                new Sparse(density, false, false));
+        sg.setLabel("Recurrent weights");
+        network.addGroup(sg);
+        for (Neuron n : ng.getNeuronList()) {
+            n.randomize();
+        }
+        return network;
+    }
+
+    /**
+     * Replace a network's update actions with the named action. "Buffered"
+     * keeps the default actions (a {@link BufferedUpdate} of loose items plus
+     * an update of each group).
+     *
+     * @param network the network
+     * @param action one of Buffered, ConcurrentBuffered, Compiled or
+     *            EventDriven
+     */
+    static void setUpdateAction(final Network network, final String action) {
+        NetworkUpdateAction nua;
+        if (action.equals("Buffered")) {
+            return;
+        } else if (action.equals("ConcurrentBuffered")) {
+            nua = ConcurrentBufferedUpdate
+                    .createConcurrentBufferedUpdate(network);
+        } else if (action.equals("Compiled")) {
+            nua = CompiledUpdate.createCompiledUpdate(network);
+        } else if (action.equals("EventDriven")) {
+            nua = EventDrivenUpdate.createEventDrivenUpdate(network);
+        } else {
+            throw new IllegalArgumentException("Unknown update action "
+                    + action);
+        }
+        network.getUpdateManager().clear();
+        network.getUpdateManager().addAction(nua);
+    }
+
+    /**
+     * @param network a network
+     * @return the sum of all neuron activations
+     */
+    static double sumActivations(final Network network) {
+        double sum = 0;
+        for (Neuron n : network.getFlatNeuronList()) {
+            sum += n.getActivation();
+        }
+        return sum;
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.util.Map;
+
+import org.simbrain.network.core.Network;
+
+/**
+ * One update of a sparsely connected recurrent network, for each neuron
+ * update rule and network update action. This covers the weighted input
+ * computation in each neuron, the neuron rules themselves and the per-action
+ * scheduling overhead.
+ */
+public class NetworkUpdateBenchmark extends Benchmark {
+
+    /** The network being updated. */
+    private Network network;
+
+    /**
+     * Declare parameters.
+     */
+    public NetworkUpdateBenchmark() {
+        addParameter("rule", "Linear", "Sigmoidal", "IntegrateAndFire",
+                "Izhikevich");
+        addParameter("action", "Buffered", "ConcurrentBuffered", "Compiled",
+                "EventDriven");
+        addParameter("size", "100", "1000");
+        addParameter("density", "0.1");
+    }
+
+    @Override
+    public String getName() {
+        return "network.update";
+    }
+
+    @Override
+    public void setUp(final Map<String, String> params) throws Exception {
+        network = NetworkFixtures.buildRecurrentNetwork(params.get("rule"),
+                Integer.parseInt(params.get("size")),
+                Double.parseDouble(params.get("density")));
+        NetworkFixtures.setUpdateAction(network, params.get("action"));
+    }
+
+    @Override
+    public double operation() {
+        network.update();
+        return NetworkFixtures.sumActivations(network);
+    }
+
+    @Override
+    public void tearDown() {
+        network = null;
+    }
+
+}
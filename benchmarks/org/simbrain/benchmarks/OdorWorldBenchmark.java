@@ -0,0 +1,110 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.simbrain.util.environment.SmellSource;
+import org.simbrain.world.odorworld.OdorWorld;
+import org.simbrain.world.odorworld.OdorWorldComponent;
+import org.simbrain.world.odorworld.entities.BasicEntity;
+import org.simbrain.world.odorworld.entities.OdorWorldEntity;
+import org.simbrain.world.odorworld.entities.RotatingEntity;
+
+/**
+ * One {@link OdorWorld#update(int)} of a world with a number of smell
+ * sources and agents. Each agent has the default smell sensors, and every
+ * entity is checked for collisions, so the cost grows with the number of
+ * entities near each agent and each entity. The world is updated either
+ * sequentially or in parallel phases (see
+ * {@link OdorWorld#setParallelUpdate(boolean)}).
+ */
+public class OdorWorldBenchmark extends Benchmark {
+
+    /** World size in pixels. */
+    private static final int WORLD_SIZE = 1000;
+
+    /** Number of smell dimensions. */
+    private static final int SMELL_DIMENSIONS = 8;
+
+    /** The world being updated. */
+    private OdorWorld world;
+
+    /** World time. */
+    private int time;
+
+    /**
+     * Declare parameters.
+     */
+    public OdorWorldBenchmark() {
+        addParameter("agents", "1", "10", "50");
+        addParameter("sources", "10", "100", "2000");
+        addParameter("parallel", "false", "true");
+    }
+
+    @Override
+    public String getName() {
+        return "world.odorworld";
+    }
+
+    @Override
+    public void setUp(final Map<String, String> params) {
+        Random rand = new Random(1);
+        world = new OdorWorldComponent("World").getWorld();
+        world.setWidth(WORLD_SIZE);
+        world.setHeight(WORLD_SIZE);
+        world.setParallelUpdate(Boolean.parseBoolean(params.get("parallel")));
+        for (int i = 0, n = Integer.parseInt(params.get("sources")); i < n;
+                i++) {
+            BasicEntity entity = new BasicEntity("Swiss.gif", world);
+            entity.setLocation(rand.nextInt(WORLD_SIZE),
+                    rand.nextInt(WORLD_SIZE));
+            double[] smell = new double[SMELL_DIMENSIONS];
+            smell[i % SMELL_DIMENSIONS] = 1;
+            entity.setSmellSource(new SmellSource(smell,
+                    SmellSource.DecayFunction.GAUSSIAN, entity.getLocation()));
+            world.addEntity(entity);
+        }
+        for (int i = 0, n = Integer.parseInt(params.get("agents")); i < n;
+                i++) {
+            RotatingEntity agent = new RotatingEntity(world);
+            agent.setLocation(rand.nextInt(WORLD_SIZE),
+                    rand.nextInt(WORLD_SIZE));
+            world.addAgent(agent);
+        }
+        time = 0;
+    }
+
+    @Override
+    public double operation() {
+        world.update(time++);
+        double sum = 0;
+        for (OdorWorldEntity entity : world.getObjectList()) {
+            sum += entity.getX();
+        }
+        return sum;
+    }
+
+    @Override
+    public void tearDown() {
+        world = null;
+    }
+
+}
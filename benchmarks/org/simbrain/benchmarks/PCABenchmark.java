@@ -0,0 +1,112 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.simbrain.util.projection.DataPointColored;
+import org.simbrain.util.projection.ProjectPCA;
+import org.simbrain.util.projection.Projector;
+
+/**
+ * Streaming points into a projector that uses {@link ProjectPCA}. The
+ * projector starts with a cloud of correlated random points, and each
+ * operation adds a batch more, so the dataset grows slowly over a run.
+ */
+public class PCABenchmark extends Benchmark {
+
+    /** Number of points added in one operation. */
+    private static final int BATCH = 100;
+
+    /** The projector holding the data. */
+    private Projector projector;
+
+    /** Source of new points. */
+    private Random rand;
+
+    /** Mixing matrix that correlates the dimensions. */
+    private double[][] mixing;
+
+    /**
+     * Declare parameters.
+     */
+    public PCABenchmark() {
+        addParameter("points", "1000", "10000");
+        addParameter("dims", "10", "50");
+    }
+
+    @Override
+    public String getName() {
+        return "projection.pca";
+    }
+
+    @Override
+    public void setUp(final Map<String, String> params) {
+        int dims = Integer.parseInt(params.get("dims"));
+        rand = new Random(1);
+        mixing = new double[dims][dims];
+        for (int i = 0; i < dims; i++) {
+            for (int j = 0; j < dims; j++) {
+                mixing[i][j] = rand.nextGaussian() / (j + 1);
+            }
+        }
+        projector = new Projector(dims);
+        projector.setTolerance(-1);
+        projector.setProjectionMethod(new ProjectPCA(projector));
+        for (int i = 0, n = Integer.parseInt(params.get("points")); i < n;
+                i++) {
+            projector.addDatapoint(randomPoint());
+        }
+    }
+
+    /**
+     * @return a new random point
+     */
+    private DataPointColored randomPoint() {
+        int dims = mixing.length;
+        double[] source = new double[dims];
+        for (int j = 0; j < dims; j++) {
+            source[j] = rand.nextGaussian();
+        }
+        double[] point = new double[dims];
+        for (int i = 0; i < dims; i++) {
+            for (int j = 0; j < dims; j++) {
+                point[i] += mixing[i][j] * source[j];
+            }
+        }
+        return new DataPointColored(point);
+    }
+
+    @Override
+    public double operation() {
+        for (int i = 0; i < BATCH; i++) {
+            projector.addDatapoint(randomPoint());
+        }
+        return projector.getDownstairs().getPoint(0).get(0);
+    }
+
+    @Override
+    public void tearDown() {
+        projector = null;
+        rand = null;
+        mixing = null;
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Random;
+
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.network.neuron_update_rules.IntegrateAndFireRule;
+import org.simbrain.network.neuron_update_rules.LinearRule;
+import org.simbrain.network.util.ActivationRecorder;
+
+/**
+ * One update of a neuron group that is recording its activations, as text or
+ * in binary (see {@link ActivationRecorder}). The group's neurons are driven
+ * by random inputs so that spiking neurons spike.
+ */
+public class RecordingBenchmark extends Benchmark {
+
+    /** The network being updated. */
+    private Network network;
+
+    /** The recording group. */
+    private NeuronGroup group;
+
+    /** The file recorded to. */
+    private File file;
+
+    /** Source of the inputs. */
+    private Random random;
+
+    /**
+     * Declare parameters.
+     */
+    public RecordingBenchmark() {
+        addParameter("rule", "Linear", "IntegrateAndFire");
+        addParameter("format", "csv", ActivationRecorder.FILE_EXTENSION);
+        addParameter("size", "1000", "10000");
+    }
+
+    @Override
+    public String getName() {
+        return "network.recording";
+    }
+
+    @Override
+    public void setUp(final Map<String, String> params) throws Exception {
+        network = new Network();
+        group = new NeuronGroup(network, Integer.parseInt(params.get("size")));
+        if (params.get("rule").equals("IntegrateAndFire")) {
+            group.setNeuronType(new IntegrateAndFireRule());
+        } else {
+            group.setNeuronType(new LinearRule());
+        }
+        network.addGroup(group);
+        random = new Random(1);
+        file = File.createTempFile("recording", "." + params.get("format"));
+        group.startRecording(file);
+    }
+
+    @Override
+    public double operation() {
+        for (Neuron neuron : group.getNeuronList()) {
+            neuron.setInputValue(30 * random.nextDouble());
+        }
+        network.update();
+        return NetworkFixtures.sumActivations(network);
+    }
+
+    @Override
+    public void tearDown() {
+        group.stopRecording();
+        file.delete();
+        network = null;
+        group = null;
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.simbrain.util.projection.DataPointColored;
+import org.simbrain.util.projection.ProjectSammon;
+import org.simbrain.util.projection.Projector;
+
+/**
+ * One {@link ProjectSammon#iterate()} over a cloud of random high
+ * dimensional points.
+ */
+public class SammonBenchmark extends Benchmark {
+
+    /** The projector holding the data. */
+    private Projector projector;
+
+    /** The projection method being iterated. */
+    private ProjectSammon sammon;
+
+    /**
+     * Declare parameters.
+     */
+    public SammonBenchmark() {
+        addParameter("points", "100", "500", "5000");
+        addParameter("dims", "10");
+    }
+
+    @Override
+    public String getName() {
+        return "projection.sammon";
+    }
+
+    @Override
+    public void setUp(final Map<String, String> params) {
+        int dims = Integer.parseInt(params.get("dims"));
+        Random rand = new Random(1);
+        projector = new Projector(dims);
+        sammon = new ProjectSammon(projector);
+        projector.setProjectionMethod(sammon);
+        for (int i = 0, n = Integer.parseInt(params.get("points")); i < n;
+                i++) {
+            double[] point = new double[dims];
+            for (int j = 0; j < dims; j++) {
+                point[j] = rand.nextGaussian();
+            }
+            projector.addDatapoint(new DataPointColored(point));
+        }
+    }
+
+    @Override
+    public double operation() {
+        projector.iterate();
+        return sammon.getError();
+    }
+
+    @Override
+    public void tearDown() {
+        projector = null;
+        sammon = null;
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+
+import org.simbrain.network.NetworkComponent;
+import org.simbrain.network.core.Network;
+import org.simbrain.workspace.Workspace;
+import org.simbrain.workspace.WorkspaceSerializer;
+
+/**
+ * A {@link WorkspaceSerializer} round trip: a workspace containing one
+ * network is written to an in-memory zip archive and read back into a new
+ * workspace.
+ */
+public class SerializationBenchmark extends Benchmark {
+
+    /** The workspace to serialize. */
+    private Workspace workspace;
+
+    /** Reused archive buffer. */
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    /**
+     * Declare parameters.
+     */
+    public SerializationBenchmark() {
+        addParameter("size", "100", "500");
+        addParameter("density", "0.1");
+    }
+
+    @Override
+    public String getName() {
+        return "workspace.serialize";
+    }
+
+    @Override
+    public void setUp(final Map<String, String> params) throws Exception {
+        Network network = NetworkFixtures.buildRecurrentNetwork("Linear",
+                Integer.parseInt(params.get("size")),
+                Double.parseDouble(params.get("density")));
+        workspace = new Workspace();
+        workspace.addWorkspaceComponent(new NetworkComponent("Network",
+                network));
+    }
+
+    @Override
+    public double operation() throws Exception {
+        bytes.reset();
+        new WorkspaceSerializer(workspace).serialize(bytes);
+        Workspace copy = new Workspace();
+        new WorkspaceSerializer(copy).deserialize(new ByteArrayInputStream(
+                bytes.toByteArray()));
+        return bytes.size() + copy.getComponentList().size();
+    }
+
+    @Override
+    public void tearDown() {
+        workspace = null;
+    }
+
+}
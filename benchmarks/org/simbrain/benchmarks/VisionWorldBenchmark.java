@@ -0,0 +1,96 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.Random;
+
+import org.simbrain.world.visionworld.MutableVisionWorldModel;
+import org.simbrain.world.visionworld.VisionWorldComponent;
+import org.simbrain.world.visionworld.filter.PixelAccumulator;
+import org.simbrain.world.visionworld.filter.RgbFilter;
+import org.simbrain.world.visionworld.pixelmatrix.BufferedImagePixelMatrix;
+import org.simbrain.world.visionworld.sensormatrix.DenseSensorMatrix;
+
+/**
+ * One {@link VisionWorldComponent#update()} of a square sensor matrix tiling
+ * a random image. A third of the sensors accumulate black pixels, the rest
+ * share an RGB filter.
+ */
+public class VisionWorldBenchmark extends Benchmark {
+
+    /** Image size in pixels. */
+    private static final int IMAGE_SIZE = 512;
+
+    /** The vision world being sampled. */
+    private VisionWorldComponent component;
+
+    /**
+     * Declare parameters.
+     */
+    public VisionWorldBenchmark() {
+        addParameter("sensors", "16", "64");
+    }
+
+    @Override
+    public String getName() {
+        return "world.visionworld";
+    }
+
+    @Override
+    public void setUp(final Map<String, String> params) {
+        Random rand = new Random(1);
+        BufferedImage image = new BufferedImage(IMAGE_SIZE, IMAGE_SIZE,
+                BufferedImage.TYPE_INT_ARGB);
+        for (int x = 0; x < IMAGE_SIZE; x++) {
+            for (int y = 0; y < IMAGE_SIZE; y++) {
+                image.setRGB(x, y, rand.nextInt(4) == 0 ? 0xFF000000
+                        : 0xFF000000 | rand.nextInt(1 << 24));
+            }
+        }
+        int sensors = Integer.parseInt(params.get("sensors"));
+        int field = IMAGE_SIZE / sensors;
+        DenseSensorMatrix sensorMatrix = new DenseSensorMatrix(sensors,
+                sensors, field, field, new RgbFilter(100, -50, 0, 0, 1));
+        PixelAccumulator accumulator = new PixelAccumulator();
+        for (int row = 0; row < sensors; row++) {
+            for (int column = 0; column < sensors; column++) {
+                if ((row + column) % 3 == 0) {
+                    sensorMatrix.getSensor(row, column).setFilter(accumulator);
+                }
+            }
+        }
+        component = new VisionWorldComponent("Vision",
+                new MutableVisionWorldModel(
+                        new BufferedImagePixelMatrix(image), sensorMatrix));
+    }
+
+    @Override
+    public double operation() {
+        component.update();
+        return component.getSensorValues()[0];
+    }
+
+    @Override
+    public void tearDown() {
+        component = null;
+    }
+
+}
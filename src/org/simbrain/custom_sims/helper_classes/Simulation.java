@@ -24,8 +24,10 @@ import org.simbrain.workspace.gui.SimbrainDesktop;
 import org.simbrain.world.odorworld.OdorWorld;
 import org.simbrain.world.odorworld.OdorWorldComponent;
 import org.simbrain.world.odorworld.effectors.Effector;
+import org.simbrain.world.odorworld.entities.OdorWorldEntity;
 import org.simbrain.world.odorworld.sensors.Hearing;
 import org.simbrain.world.odorworld.sensors.SmellSensor;
+import org.simbrain.world.visionworld.VisionWorldComponent;
 
 /**
  * A simulation is used to create full Simbrain simulations. Primarily
@@ -309,6 +311,44 @@ public class Simulation {
 		addCoupling(new Coupling(sensoryProducer, sensoryConsumer));
 	}
 
+	/**
+	 * Create a single coupling from all the sensors of a vision world to a
+	 * neuron group, one sensor per neuron in row-major order.
+	 *
+	 * @param vision
+	 *            the vision world
+	 * @param ng
+	 *            the neuron group
+	 */
+	public void couple(VisionWorldComponent vision, NeuronGroup ng) {
+		NetworkComponent nc = netMap.get(ng.getParentNetwork());
+
+		PotentialProducer sensorProducer = vision.createPotentialProducer(vision, "getSensorValues", double[].class);
+		PotentialConsumer sensoryConsumer = NetworkComponent.getNeuronGroupConsumer(nc, ng, "forceSetActivations");
+
+		addCoupling(new Coupling(sensorProducer, sensoryConsumer));
+	}
+
+	/**
+	 * Create a single coupling from a neuron group to all the effectors of an
+	 * odor world entity, one neuron per effector in the order the effectors
+	 * were added.
+	 *
+	 * @param ng
+	 *            the neuron group
+	 * @param entity
+	 *            the entity
+	 */
+	public void couple(NeuronGroup ng, OdorWorldEntity entity) {
+		NetworkComponent nc = netMap.get(ng.getParentNetwork());
+		OdorWorldComponent ow = odorMap.get(entity.getParentWorld());
+
+		PotentialProducer motorProducer = NetworkComponent.getNeuronGroupProducer(nc, ng, "getActivations");
+		PotentialConsumer effectorConsumer = ow.createPotentialConsumer(entity, "setEffectorValues", double[].class);
+
+		addCoupling(new Coupling(motorProducer, effectorConsumer));
+	}
+
 	/**
 	 * Make a coupling from a smell sensor to a neuron. Couples the provided smell
 	 * sensor one the indicated dimension to the provided neuron.
@@ -17,12 +17,15 @@
  */
 package org.simbrain.network;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.simbrain.network.core.Network;
+import org.simbrain.network.core.NetworkSnapshot;
 import org.simbrain.network.core.Neuron;
 import org.simbrain.network.core.NeuronUpdateRule;
 import org.simbrain.network.core.Synapse;
@@ -44,6 +47,9 @@ import org.simbrain.workspace.WorkspaceComponent;
  */
 public final class NetworkComponent extends WorkspaceComponent {
 
+    /** Format name of binary network snapshots. */
+    public static final String SNAPSHOT_FORMAT = "snapshot";
+
     /** Reference to root network, the main model network. */
     private Network network = new Network();
 
@@ -428,15 +434,48 @@ public final class NetworkComponent extends WorkspaceComponent {
      */
     public static NetworkComponent open(final InputStream input,
             final String name, final String format) {
-        Network newNetwork = (Network) Network.getXStream().fromXML(input);
+        // Snapshots are recognized by their contents, whatever the format
+        InputStream buffered = new BufferedInputStream(input, 1 << 16);
+        Network newNetwork;
+        try {
+            if (NetworkSnapshot.isSnapshot(buffered)) {
+                newNetwork = NetworkSnapshot.read(buffered);
+            } else {
+                newNetwork = (Network) Network.getXStream().fromXML(buffered);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
         return new NetworkComponent(name, newNetwork);
     }
 
     @Override
     public void save(final OutputStream output, final String format) {
+        if (SNAPSHOT_FORMAT.equals(format)) {
+            try {
+                NetworkSnapshot.write(network, output);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            return;
+        }
         network.preSaveInit();
-        Network.getXStream().toXML(network, output);
-        network.postSaveReInit();
+        try {
+            Network.getXStream().toXML(network, output);
+        } finally {
+            network.postSaveReInit();
+        }
+    }
+
+    /**
+     * Networks are saved in workspace archives as binary snapshots, which are
+     * much smaller and faster to read than xml for large networks.
+     *
+     * @return the snapshot format
+     */
+    @Override
+    public String getArchiveFormat() {
+        return SNAPSHOT_FORMAT;
     }
     
     /**
@@ -461,9 +500,19 @@ public final class NetworkComponent extends WorkspaceComponent {
 
     @Override
     public void update() {
+        if (getWorkspace() != null) {
+            network.setFrameRate(getWorkspace().getFrameRate());
+        }
         network.update();
     }
 
+    @Override
+    public void publishFrame() {
+        if (network.isFireUpdates() && network.getFrameRate() > 0) {
+            network.publishFrame();
+        }
+    }
+
     @Override
     public void closing() {
         // TODO Auto-generated method stub
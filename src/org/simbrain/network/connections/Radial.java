@@ -31,6 +31,7 @@ import java.util.concurrent.TimeUnit;
 import org.simbrain.network.core.Neuron;
 import org.simbrain.network.core.Synapse;
 import org.simbrain.network.groups.SynapseGroup;
+import org.simbrain.network.util.NeuronGrid;
 import org.simbrain.util.SimbrainConstants.Polarity;
 import org.simbrain.util.math.ProbDistribution;
 
@@ -52,6 +53,9 @@ import org.simbrain.util.math.ProbDistribution;
  *
  * Lambda controls the number of pixels over which to expect connections to be
  * made.
+ * Target neurons far enough away that their probability of connection is
+ * negligible are never considered; candidates are found with a
+ * {@link NeuronGrid} over the target positions.
  *
  * Any of the 4 constants for the 4 cases can be set to a value between 0 and 1.
  * Set to 0, if you want no connections of that type to be made. Set to 1 to
@@ -112,6 +116,12 @@ public class Radial extends Sparse {
     
     private SynapseGroup synapseGroup;
 
+    /**
+     * Connection probabilities below this are treated as zero, which bounds
+     * the distance over which candidate targets are considered.
+     */
+    private static final double MIN_PROBABILITY = 1E-9;
+
     /**
      *
      * @param source the source neurons.
@@ -129,51 +139,11 @@ public class Radial extends Sparse {
         final List<Neuron> source, final List<Neuron> target,
         double eeDistConst, double eiDistConst, double ieDistConst,
         double iiDistConst, double distConst, double lambda, boolean loose) {
-        // Pre-allocating assuming that if one is using this as a connector
-        // then they are probably not going to have greater than 25%
-        // connectivity
-        List<Synapse> synapses = new ArrayList<Synapse>(source.size()
-            * target.size() / 4);
-        for (Neuron src : source) {
-            for (Neuron tar : target) {
-                double randVal = Math.random();
-                double probability;
-                if (src.getPolarity() == Polarity.EXCITATORY) {
-                    if (tar.getPolarity() == Polarity.EXCITATORY) {
-                        probability = calcConnectProb(src, tar, eeDistConst,
-                            lambda);
-                    } else if (tar.getPolarity() == Polarity.INHIBITORY) {
-                        probability = calcConnectProb(src, tar, eiDistConst,
-                            lambda);
-                    } else {
-                        probability = calcConnectProb(src, tar, distConst,
-                            lambda);
-                    }
-                } else if (src.getPolarity() == Polarity.INHIBITORY) {
-                    if (tar.getPolarity() == Polarity.EXCITATORY) {
-                        probability = calcConnectProb(src, tar, ieDistConst,
-                            lambda);
-                    } else if (tar.getPolarity() == Polarity.INHIBITORY) {
-                        probability = calcConnectProb(src, tar, iiDistConst,
-                            lambda);
-                    } else {
-                        probability = calcConnectProb(src, tar, distConst,
-                            lambda);
-                    }
-                } else {
-                    probability = calcConnectProb(src, tar, distConst,
-                        lambda);
-                }
-                if (randVal < probability) {
-                    Synapse s = new Synapse(src, tar);
-                    synapses.add(s);
-                    if (loose) {
-                        src.getNetwork().addSynapse(s);
-                    }
-                }
-            }
-        }
-        return synapses;
+        double cutoff = getCutoffRadius(lambda, eeDistConst, eiDistConst,
+            ieDistConst, iiDistConst, distConst);
+        return connect(source, new NeuronGrid(target, cutoff), cutoff,
+            eeDistConst, eiDistConst, ieDistConst, iiDistConst, distConst,
+            lambda, loose);
     }
 
     /**
@@ -188,16 +158,42 @@ public class Radial extends Sparse {
     public static List<Synapse> connectRadialNoPolarity(
         final List<Neuron> source, final List<Neuron> target, double distConst,
         double lambda, boolean loose) {
-        // Pre-allocating assuming that if one is using this as a connector
-        // then they are probably not going to have greater than 25%
-        // connectivity
-        List<Synapse> synapses = new ArrayList<Synapse>(source.size()
-            * target.size() / 4);
+        double cutoff = getCutoffRadius(lambda, distConst);
+        return connect(source, new NeuronGrid(target, cutoff), cutoff,
+            distConst, distConst, distConst, distConst, distConst, lambda,
+            loose);
+    }
+
+    /**
+     * Makes radial connections from each source neuron to the targets within
+     * a cutoff radius of it. Targets further away would be connected with
+     * negligible probability, and are never looked at.
+     *
+     * @param source the source neurons.
+     * @param targets the target neurons, indexed by position.
+     * @param cutoff the distance beyond which no connections are made.
+     * @param eeDistConst the connection constant for connections between 2 excitatory neurons.
+     * @param eiDistConst the connection constant for connection from an excitatory to an inhibitory neuron.
+     * @param ieDistConst the connection constant for connection from an inhibitory to an excitatory neuron.
+     * @param iiDistConst the connection constant for connections between 2 inhibitory neurons.
+     * @param distConst the connection constant for general connections. Used in cases where neurons have no explicit polarity.
+     * @param lambda average connection distance.
+     * @param loose whether to add the synapses to the network as loose synapses.
+     * @return synapses
+     */
+    private static List<Synapse> connect(final Collection<Neuron> source,
+        final NeuronGrid targets, double cutoff, double eeDistConst,
+        double eiDistConst, double ieDistConst, double iiDistConst,
+        double distConst, double lambda, boolean loose) {
+        List<Synapse> synapses = new ArrayList<Synapse>();
+        List<Neuron> candidates = new ArrayList<Neuron>();
         for (Neuron src : source) {
-            for (Neuron tar : target) {
-                double randVal = Math.random();
-                double probability = calcConnectProb(src, tar, distConst,
-                    lambda);
+            targets.getNeuronsInRadius(src, cutoff, candidates);
+            for (Neuron tar : candidates) {
+                double randVal = ProbDistribution.UNIFORM.nextRand(0, 1);
+                double probability = calcConnectProb(src, tar,
+                    getDistConst(src, tar, eeDistConst, eiDistConst,
+                        ieDistConst, iiDistConst, distConst), lambda);
                 if (randVal < probability) {
                     Synapse s = new Synapse(src, tar);
                     synapses.add(s);
@@ -210,6 +206,59 @@ public class Radial extends Sparse {
         return synapses;
     }
 
+    /**
+     * Returns the connection constant that applies to a pair of neurons given
+     * their polarities.
+     *
+     * @param src the source neuron.
+     * @param tar the target neuron.
+     * @param eeDistConst the excitatory to excitatory constant.
+     * @param eiDistConst the excitatory to inhibitory constant.
+     * @param ieDistConst the inhibitory to excitatory constant.
+     * @param iiDistConst the inhibitory to inhibitory constant.
+     * @param distConst the constant for pairs where either neuron has no
+     *            polarity.
+     * @return the connection constant
+     */
+    private static double getDistConst(Neuron src, Neuron tar,
+        double eeDistConst, double eiDistConst, double ieDistConst,
+        double iiDistConst, double distConst) {
+        if (src.getPolarity() == Polarity.EXCITATORY) {
+            if (tar.getPolarity() == Polarity.EXCITATORY) {
+                return eeDistConst;
+            } else if (tar.getPolarity() == Polarity.INHIBITORY) {
+                return eiDistConst;
+            }
+        } else if (src.getPolarity() == Polarity.INHIBITORY) {
+            if (tar.getPolarity() == Polarity.EXCITATORY) {
+                return ieDistConst;
+            } else if (tar.getPolarity() == Polarity.INHIBITORY) {
+                return iiDistConst;
+            }
+        }
+        return distConst;
+    }
+
+    /**
+     * Returns the distance beyond which the probability of a connection is
+     * below {@link #MIN_PROBABILITY} for all of the given constants.
+     *
+     * @param lambda average connection distance.
+     * @param distConsts the connection constants in use.
+     * @return the cutoff distance
+     */
+    private static double getCutoffRadius(double lambda,
+        double... distConsts) {
+        double max = 0;
+        for (double c : distConsts) {
+            max = Math.max(max, c);
+        }
+        if (max <= MIN_PROBABILITY) {
+            return 0;
+        }
+        return Math.abs(lambda) * Math.sqrt(Math.log(max / MIN_PROBABILITY));
+    }
+
     /**
      * Default constructor
      */
@@ -275,6 +324,10 @@ public class Radial extends Sparse {
         	List<Callable<Collection<Synapse>>> workers =
         			new ArrayList<Callable<Collection<Synapse>>>();
         	int threads = Runtime.getRuntime().availableProcessors();
+        	// One read-only index of the targets is shared by all workers
+        	double cutoff = getCutoffRadius(lambda, eeDistConst,
+        			eiDistConst, ieDistConst, iiDistConst, distConst);
+        	NeuronGrid targets = new NeuronGrid(target, cutoff);
         	int idealShare = (int) Math.floor(source.size() / threads);
         	int remaining = source.size();
         	Iterator<Neuron> srcIter = source.iterator();
@@ -301,7 +354,8 @@ public class Radial extends Sparse {
         			j++;
         		}
         		remaining -= j;
-        		workers.add(new ConnectorService(srcChunk, target, false));
+        		workers.add(new ConnectorService(srcChunk, targets, cutoff,
+        				false));
         	}
         	runningPercentEx /= source.size();
         	synGroup.setExcitatoryRatio(runningPercentEx);
@@ -442,64 +496,26 @@ public class Radial extends Sparse {
     	
     	private final Collection<Neuron> srcColl;
     	
-    	private final Collection<Neuron> targColl;
+    	private final NeuronGrid targets;
+    	
+    	private final double cutoff;
     	
     	private final boolean loose;
     	
     	public ConnectorService(final Collection<Neuron> srcColl,
-    			final Collection<Neuron> targColl, final boolean loose) {
+    			final NeuronGrid targets, final double cutoff,
+    			final boolean loose) {
     		this.srcColl = srcColl;
-    		this.targColl = targColl;
+    		this.targets = targets;
+    		this.cutoff = cutoff;
     		this.loose = loose;
     	}
 
 		@Override
 		public Collection<Synapse> call() throws Exception {
-			// Attempting to pre-allocate... assumes that connection density
-			// will be less than #src * #tar * 0.2 or 20% connectivity
-			List<Synapse> synapses = new ArrayList<Synapse>(
-					(int) Math.ceil(srcColl.size() * targColl.size() * 0.2
-							* 0.75));
-			for (Neuron src : srcColl) {
-	            for (Neuron tar : targColl) {
-	                double randVal = ProbDistribution.UNIFORM.nextRand(0, 1);
-	                double probability;
-	                if (src.getPolarity() == Polarity.EXCITATORY) {
-	                    if (tar.getPolarity() == Polarity.EXCITATORY) {
-	                        probability = calcConnectProb(src, tar, eeDistConst,
-	                            lambda);
-	                    } else if (tar.getPolarity() == Polarity.INHIBITORY) {
-	                        probability = calcConnectProb(src, tar, eiDistConst,
-	                            lambda);
-	                    } else {
-	                        probability = calcConnectProb(src, tar, distConst,
-	                            lambda);
-	                    }
-	                } else if (src.getPolarity() == Polarity.INHIBITORY) {
-	                    if (tar.getPolarity() == Polarity.EXCITATORY) {
-	                        probability = calcConnectProb(src, tar, ieDistConst,
-	                            lambda);
-	                    } else if (tar.getPolarity() == Polarity.INHIBITORY) {
-	                        probability = calcConnectProb(src, tar, iiDistConst,
-	                            lambda);
-	                    } else {
-	                        probability = calcConnectProb(src, tar, distConst,
-	                            lambda);
-	                    }
-	                } else {
-	                    probability = calcConnectProb(src, tar, distConst,
-	                        lambda);
-	                }
-	                if (randVal < probability) {
-	                    Synapse s = new Synapse(src, tar);
-	                    synapses.add(s);
-	                    if (loose) {
-	                        src.getNetwork().addSynapse(s);
-	                    }
-	                }
-	            }
-	        }
-	        return synapses;
+			return connect(srcColl, targets, cutoff, eeDistConst,
+					eiDistConst, ieDistConst, iiDistConst, distConst, lambda,
+					loose);
 		}
     	
     }
@@ -510,41 +526,19 @@ public class Radial extends Sparse {
 
         @Override
         public void run() {
+            double cutoff = getCutoffRadius(lambda, eeDistConst,
+                eiDistConst, ieDistConst, iiDistConst, distConst);
+            NeuronGrid targets = new NeuronGrid(synapseGroup
+                .getTargetNeurons(), cutoff);
+            List<Neuron> candidates = new ArrayList<Neuron>();
             int count = 0;
             for (Neuron src : synapseGroup.getSourceNeurons()) {
-                for (Neuron tar : synapseGroup.getTargetNeurons()) {
+                targets.getNeuronsInRadius(src, cutoff, candidates);
+                for (Neuron tar : candidates) {
                     double randVal = Math.random();
-                    double probability;
-                    if (src.getPolarity() == Polarity.EXCITATORY) {
-                        if (tar.getPolarity() == Polarity.EXCITATORY) {
-                            probability =
-                                calcConnectProb(src, tar, eeDistConst,
-                                    lambda);
-                        } else if (tar.getPolarity() == Polarity.INHIBITORY) {
-                            probability =
-                                calcConnectProb(src, tar, eiDistConst,
-                                    lambda);
-                        } else {
-                            probability = calcConnectProb(src, tar, distConst,
-                                lambda);
-                        }
-                    } else if (src.getPolarity() == Polarity.INHIBITORY) {
-                        if (tar.getPolarity() == Polarity.EXCITATORY) {
-                            probability =
-                                calcConnectProb(src, tar, ieDistConst,
-                                    lambda);
-                        } else if (tar.getPolarity() == Polarity.INHIBITORY) {
-                            probability =
-                                calcConnectProb(src, tar, iiDistConst,
-                                    lambda);
-                        } else {
-                            probability = calcConnectProb(src, tar, distConst,
-                                lambda);
-                        }
-                    } else {
-                        probability = calcConnectProb(src, tar, distConst,
-                            lambda);
-                    }
+                    double probability = calcConnectProb(src, tar,
+                        getDistConst(src, tar, eeDistConst, eiDistConst,
+                            ieDistConst, iiDistConst, distConst), lambda);
                     if (randVal < probability) {
                         count++;
                     }
@@ -24,6 +24,7 @@ import org.simbrain.network.core.Network;
 import org.simbrain.network.core.Neuron;
 import org.simbrain.network.core.Synapse;
 import org.simbrain.network.groups.SynapseGroup;
+import org.simbrain.network.util.NeuronGrid;
 
 /**
  * For each neuron, consider every neuron in an excitatory and inhibitory radius
@@ -77,6 +78,9 @@ public class RadialSimple implements ConnectNeurons {
      */
     private List<Neuron> sourceNeurons;
 
+    /** Index of the source neuron positions while connections are made. */
+    private NeuronGrid grid;
+
     /**
      * @param network the network
      * @param sourceNeurons the source neurons
@@ -96,10 +100,13 @@ public class RadialSimple implements ConnectNeurons {
      */
     public List<Synapse> connectNeurons(final boolean looseSynapses) {
         ArrayList<Synapse> syns = new ArrayList<Synapse>();
+        grid = new NeuronGrid(sourceNeurons, Math.max(excitatoryRadius,
+                inhibitoryRadius));
         for (Neuron source : sourceNeurons) {
             makeExcitatory(source, syns, looseSynapses);
             makeInhibitory(source, syns, looseSynapses);
         }
+        grid = null;
         return syns;
     }
 
@@ -113,9 +120,6 @@ public class RadialSimple implements ConnectNeurons {
             boolean looseSynapses) {
         for (Neuron target : getNeuronsInRadius(source,
                 inhibitoryRadius)) {
-            if (!sourceNeurons.contains(target)) {
-                continue;
-            }
             // Don't add a connection if there is already one present
             if (Network.getSynapse(source, target) != null) {
                 continue;
@@ -137,19 +141,18 @@ public class RadialSimple implements ConnectNeurons {
     }
 
     /**
-     * Return a list of neurons in a specific radius of a specified neuron.
+     * Return a list of the source neurons in a specific radius of a specified
+     * neuron.
      *
      * @param source the source neuron.
      * @param radius the radius to search within.
      * @return list of neurons in the given radius.
      */
     private List<Neuron> getNeuronsInRadius(Neuron source, double radius) {
-        ArrayList<Neuron> ret = new ArrayList<Neuron>();
-        for (Neuron neuron : network.getNeuronList()) {
-            if (network.getEuclideanDist(source, neuron) < radius) {
-                ret.add(neuron);
-            }
-        }
+        List<Neuron> ret = grid.getNeuronsInRadius(source, radius);
+        // The grid includes neurons exactly on the radius
+        ret.removeIf(neuron -> Network.getEuclideanDist(source,
+                neuron) >= radius);
         return ret;
     }
 
@@ -163,9 +166,6 @@ public class RadialSimple implements ConnectNeurons {
             boolean looseSynapses) {
         for (Neuron target : getNeuronsInRadius(source,
                 excitatoryRadius)) {
-            if (!sourceNeurons.contains(target)) {
-                continue;
-            }
             // Don't add a connection if there is already one present
             if (Network.getSynapse(source, target) != null) {
                 continue;
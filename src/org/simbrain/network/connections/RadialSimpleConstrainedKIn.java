@@ -3,9 +3,11 @@ package org.simbrain.network.connections;
 import java.util.Collections;
 import java.util.List;
 
+import org.simbrain.network.core.Network;
 import org.simbrain.network.core.Neuron;
 import org.simbrain.network.core.Synapse;
 import org.simbrain.network.groups.SynapseGroup;
+import org.simbrain.network.util.NeuronGrid;
 import org.simbrain.util.SimbrainConstants.Polarity;
 
 public class RadialSimpleConstrainedKIn extends Sparse {
@@ -60,6 +62,9 @@ public class RadialSimpleConstrainedKIn extends Sparse {
     
 	@Override
 	public void connectNeurons(SynapseGroup synGroup) {
+		NeuronGrid grid = new NeuronGrid(synGroup.getSourceNeurons(),
+				Math.max(defactoRadius, Math.max(excitatoryRadius,
+						inhibitoryRadius)));
 		for (Neuron tar : synGroup.getTargetNeurons()) {
 			int radius;
 			int kIN;
@@ -73,8 +78,11 @@ public class RadialSimpleConstrainedKIn extends Sparse {
 				radius = defactoRadius;
 				kIN = defactoKIN;
 			}
-			List<Neuron> srcNeuronsInRange = synGroup.getSourceNeuronGroup()
-					.getNeuronsInRadius(tar, radius);
+			List<Neuron> srcNeuronsInRange = grid.getNeuronsInRadius(tar,
+					radius);
+			// Neurons at the target's own position are excluded
+			srcNeuronsInRange.removeIf(src -> Network.getEuclideanDist(tar,
+					src) == 0);
 			Collections.shuffle(srcNeuronsInRange); // TODO: revisit and optimize
 			for (int i = 0; i < kIN; i++) {
 				if (i >= srcNeuronsInRange.size()) {
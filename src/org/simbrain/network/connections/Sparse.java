@@ -18,9 +18,13 @@
 package org.simbrain.network.connections;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
 
 import org.simbrain.network.core.Network;
 import org.simbrain.network.core.Neuron;
@@ -53,6 +57,9 @@ public class Sparse implements ConnectNeurons {
     /** The default sparsity (between 0 and 1). */
     public static double DEFAULT_CONNECTION_DENSITY = 0.1;
 
+    /** Number of consecutive source neurons sampled by one parallel task. */
+    private static final int SOURCE_BLOCK_SIZE = 64;
+
     /**
      * Whether or not each source neuron is given an equal number of efferent
      * synapses. If true, every source neuron will have exactly the same number
@@ -81,7 +88,7 @@ public class Sparse implements ConnectNeurons {
      * connection, or in what order connections are removed for each source
      * neuron if density is lowered.
      */
-    private int[][] sparseOrdering;
+    private TargetOrdering[] sparseOrdering;
 
     /**
      * If efferent synapses are not equalized among source neurons, this array
@@ -113,6 +120,13 @@ public class Sparse implements ConnectNeurons {
      */
     protected boolean selfConnectionAllowed = DEFAULT_SELF_CONNECT_PREF;
 
+    /**
+     * Seed of the random connectivity, or null to draw a new seed each time
+     * connections are made. The same seed, sizes and parameters always give
+     * the same connections, however many threads generate them.
+     */
+    private Long seed;
+
     /**
      * Default constructor.
      */
@@ -145,7 +159,14 @@ public class Sparse implements ConnectNeurons {
     public List<Synapse> connectSparse(List<Neuron> sourceNeurons,
         List<Neuron> targetNeurons) {
         return connectSparse(sourceNeurons, targetNeurons, connectionDensity,
-            selfConnectionAllowed, equalizeEfferents, true);
+            selfConnectionAllowed, equalizeEfferents, true, nextSeed());
+    }
+
+    /**
+     * @return the seed to use for the next set of connections
+     */
+    private long nextSeed() {
+        return seed != null ? seed : ThreadLocalRandom.current().nextLong();
     }
 
     /**
@@ -166,85 +187,204 @@ public class Sparse implements ConnectNeurons {
         List<Neuron> targetNeurons, double sparsity,
         boolean selfConnectionAllowed, boolean equalizeEfferents,
         boolean looseSynapses) {
+        return connectSparse(sourceNeurons, targetNeurons, sparsity,
+            selfConnectionAllowed, equalizeEfferents, looseSynapses,
+            ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Connects two lists of neurons with synapses assigning connections between
+     * source and target neurons randomly in such a way that results in
+     * "sparsity" percentage of possible connections being created. See
+     * {@link #sampleTargets(int, int, double, boolean, boolean, long)}.
+     *
+     * @param sourceNeurons source neurons
+     * @param targetNeurons target neurons
+     * @param sparsity sparsity of connection
+     * @param selfConnectionAllowed whether to allow self-connections
+     * @param equalizeEfferents whether or not the number of efferents of each
+     *            source neurons should be equalized.
+     * @param looseSynapses are these loose synapses
+     * @param seed the seed of the random connectivity
+     * @return the new synapses
+     */
+    public static List<Synapse> connectSparse(List<Neuron> sourceNeurons,
+        List<Neuron> targetNeurons, double sparsity,
+        boolean selfConnectionAllowed, boolean equalizeEfferents,
+        boolean looseSynapses, long seed) {
         boolean recurrent = ConnectionUtilities.testRecurrence(sourceNeurons,
             targetNeurons);
-        Neuron source;
-        Neuron target;
-        Synapse synapse;
-        ArrayList<Synapse> syns = new ArrayList<Synapse>();
-        Random rand = new Random(System.nanoTime());
-        if (equalizeEfferents) {
-            ArrayList<Integer> targetList = new ArrayList<Integer>();
-            ArrayList<Integer> tListCopy;
-            for (int i = 0; i < targetNeurons.size(); i++) {
-                targetList.add(i);
-            }
-            int numSyns;
-            if (!selfConnectionAllowed && sourceNeurons == targetNeurons) {
-                numSyns =
-                    (int) (sparsity * sourceNeurons.size() * (targetNeurons
-                        .size() - 1));
-            } else {
-                numSyns =
-                    (int) (sparsity * sourceNeurons.size() * targetNeurons
-                        .size());
-            }
-            int synsPerSource = numSyns / sourceNeurons.size();
-            int targStart = 0;
-            int targEnd = synsPerSource;
-            if (synsPerSource > numSyns / 2) {
-                synsPerSource = numSyns - synsPerSource;
-                targStart = synsPerSource;
-                targEnd = targetList.size();
+        int[][] targets = sampleTargets(sourceNeurons.size(),
+            targetNeurons.size(), sparsity, equalizeEfferents,
+            recurrent && !selfConnectionAllowed, seed);
+        int numSyns = 0;
+        for (int[] row : targets) {
+            numSyns += row.length;
+        }
+        ArrayList<Synapse> syns = new ArrayList<Synapse>(numSyns);
+        for (int i = 0; i < targets.length; i++) {
+            Neuron source = sourceNeurons.get(i);
+            for (int j : targets[i]) {
+                Synapse synapse = new Synapse(source, targetNeurons.get(j));
+                if (looseSynapses) {
+                    source.getNetwork().addSynapse(synapse);
+                }
+                syns.add(synapse);
             }
+        }
+        return syns;
+    }
 
-            for (int i = 0; i < sourceNeurons.size(); i++) {
-                source = sourceNeurons.get(i);
-                if (!selfConnectionAllowed && recurrent) {
-                    tListCopy = new ArrayList<Integer>();
-                    for (int k = 0; k < targetList.size(); k++) {
-                        if (k == i) { // Exclude oneself as a possible target
-                            continue;
+    /**
+     * Chooses the targets of each source neuron for sparse connectivity,
+     * without building any per-source index lists. If efferents are
+     * equalized every source gets <code>(int) (sparsity * possible)</code>
+     * distinct targets, chosen with Floyd's algorithm; otherwise each possible
+     * connection is made with probability <code>sparsity</code>, by skipping
+     * ahead geometrically between connections. Either way the work is
+     * proportional to the number of connections made.
+     * <p>
+     * Each source neuron draws from its own random stream, derived from the
+     * seed and its index, so blocks of sources are sampled in parallel and
+     * the result depends only on the arguments, not on the number of threads.
+     *
+     * @param numSources number of source neurons
+     * @param numTargets number of target neurons
+     * @param sparsity fraction of possible connections to make
+     * @param equalizeEfferents whether every source gets the same number of
+     *            targets
+     * @param excludeSelf whether source i may not connect to target i, as in
+     *            a recurrent group without self connections
+     * @param seed the seed of the random connectivity
+     * @return for each source, the indices of its targets in increasing order
+     */
+    public static int[][] sampleTargets(final int numSources,
+        final int numTargets, final double sparsity,
+        final boolean equalizeEfferents, final boolean excludeSelf,
+        final long seed) {
+        final int possible = excludeSelf ? numTargets - 1 : numTargets;
+        final int perSource = (int) (sparsity * possible);
+        final int[][] targets = new int[numSources][];
+        int numBlocks = (numSources + SOURCE_BLOCK_SIZE - 1)
+            / SOURCE_BLOCK_SIZE;
+        IntStream.range(0, numBlocks).parallel().forEach(b -> {
+            long[] chosen = new long[(Math.max(possible, 0) + 63) >>> 6];
+            for (int i = b * SOURCE_BLOCK_SIZE, end = Math.min(numSources,
+                i + SOURCE_BLOCK_SIZE); i < end; i++) {
+                SplittableRandom rand = new SplittableRandom(sourceSeed(seed,
+                    i));
+                int[] row = equalizeEfferents
+                    ? sampleFixed(possible, perSource, chosen, rand)
+                    : sampleBernoulli(possible, sparsity, rand);
+                if (excludeSelf) {
+                    // Skip over the source's own index
+                    for (int k = 0; k < row.length; k++) {
+                        if (row[k] >= i) {
+                            row[k]++;
                         }
-                        tListCopy.add(targetList.get(k));
                     }
-                    randShuffleK(tListCopy, synsPerSource, rand);
-                } else {
-                    randShuffleK(targetList, synsPerSource, rand);
-                    tListCopy = targetList;
                 }
+                targets[i] = row;
+            }
+        });
+        return targets;
+    }
 
-                for (int j = targStart; j < targEnd; j++) {
-                    target = targetNeurons.get(tListCopy.get(j));
-                    synapse = new Synapse(source, target);
-                    if (looseSynapses) {
-                        source.getNetwork().addSynapse(synapse);
-                    }
-                    syns.add(synapse);
+    /**
+     * Derives the seed of a source neuron's random stream.
+     *
+     * @param seed the seed of the connectivity
+     * @param source index of the source neuron
+     * @return the seed of its stream
+     */
+    private static long sourceSeed(long seed, int source) {
+        long z = seed + (source + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
+
+    /**
+     * Chooses k distinct integers in [0, n) with Floyd's algorithm, using a
+     * bit set that is left cleared on return.
+     *
+     * @param n number of candidates
+     * @param k number to choose
+     * @param chosen a cleared bit set with room for n bits
+     * @param rand the random stream
+     * @return the chosen integers in increasing order
+     */
+    private static int[] sampleFixed(int n, int k, long[] chosen,
+        SplittableRandom rand) {
+        k = Math.max(0, Math.min(k, n));
+        // Choosing the complement is cheaper for dense rows
+        boolean complement = k > n / 2;
+        int draws = complement ? n - k : k;
+        int[] picked = new int[draws];
+        for (int d = 0, j = n - draws; j < n; j++, d++) {
+            int t = rand.nextInt(j + 1);
+            if ((chosen[t >>> 6] & (1L << t)) != 0) {
+                t = j;
+            }
+            chosen[t >>> 6] |= 1L << t;
+            picked[d] = t;
+        }
+        int[] row;
+        if (complement) {
+            row = new int[k];
+            for (int t = 0, m = 0; t < n; t++) {
+                if ((chosen[t >>> 6] & (1L << t)) == 0) {
+                    row[m++] = t;
                 }
             }
         } else {
-            for (int i = 0; i < sourceNeurons.size(); i++) {
-                for (int j = 0; j < targetNeurons.size(); j++) {
-                    if (!selfConnectionAllowed && recurrent && i == j) {
-                        continue;
-                    } else {
-                        if (Math.random() < sparsity) {
-                            source = sourceNeurons.get(i);
-                            target = targetNeurons.get(j);
-                            synapse = new Synapse(source, target);
-                            if (looseSynapses) {
-                                source.getNetwork().addSynapse(synapse);
-                            }
-                            syns.add(synapse);
-                        }
-                    }
-                }
+            row = picked;
+            Arrays.sort(row);
+        }
+        for (int t : picked) {
+            chosen[t >>> 6] = 0;
+        }
+        return row;
+    }
 
+    /**
+     * Chooses each integer in [0, n) independently with probability p,
+     * skipping geometrically distributed gaps between choices.
+     *
+     * @param n number of candidates
+     * @param p probability of choosing each
+     * @param rand the random stream
+     * @return the chosen integers in increasing order
+     */
+    private static int[] sampleBernoulli(int n, double p,
+        SplittableRandom rand) {
+        if (n <= 0 || !(p > 0)) {
+            return new int[0];
+        }
+        if (p >= 1) {
+            int[] row = new int[n];
+            for (int t = 0; t < n; t++) {
+                row[t] = t;
             }
+            return row;
         }
-        return syns;
-
+        double logQ = Math.log1p(-p);
+        int[] row = new int[(int) Math.min(n, n * p + 4 * Math.sqrt(n * p)
+            + 16)];
+        int m = 0;
+        long t = -1;
+        while (true) {
+            // 1 - nextDouble() is in (0, 1], so the log is finite
+            t += 1 + (long) (Math.log(1 - rand.nextDouble()) / logQ);
+            if (t >= n) {
+                break;
+            }
+            if (m == row.length) {
+                row = Arrays.copyOf(row, Math.min(n, row.length * 2));
+            }
+            row[m++] = (int) t;
+        }
+        return m == row.length ? row : Arrays.copyOf(row, m);
     }
 
     /**
@@ -262,17 +402,25 @@ public class Sparse implements ConnectNeurons {
         targetNeurons = recurrent ? sourceNeurons : synapseGroup
             .getTargetNeurons().toArray(new Neuron[numTar]);
         if (isPermitDensityEditing()) {
-            generateSparseOrdering(recurrent);
-            if (equalizeEfferents) {
-                connectEqualized(synapseGroup);
-            } else {
-                connectRandom(synapseGroup);
-            }
+            long connectSeed = nextSeed();
+            generateSparseOrdering(recurrent, connectSeed);
+            connectOrdered(synapseGroup);
         } else {
-            List<Synapse> syns = this.connectSparse(synapseGroup
-                    .getSourceNeurons(), synapseGroup.getTargetNeurons());
-            for (Synapse s : syns) {
-                synapseGroup.addNewSynapse(s);
+            // Add the sampled connections straight to the group
+            int[][] targets = sampleTargets(numSrc, numTar,
+                connectionDensity, equalizeEfferents,
+                recurrent && !selfConnectionAllowed, nextSeed());
+            int numSyns = 0;
+            for (int[] row : targets) {
+                numSyns += row.length;
+            }
+            synapseGroup.preAllocateSynapses(numSyns);
+            for (int i = 0; i < numSrc; i++) {
+                Neuron src = sourceNeurons[i];
+                for (int j : targets[i]) {
+                    synapseGroup.addNewSynapse(new Synapse(src,
+                        targetNeurons[j]));
+                }
             }
         }
 
@@ -281,117 +429,91 @@ public class Sparse implements ConnectNeurons {
     /**
      * Populates the synapse group with synapses by making individual synaptic
      * connections between the neurons in the synapse group's source and target
-     * groups. These synapses are initialized with default attributes and zero
-     * strength. Each source neuron will have exactly the same number of
-     * efferent synapses. This number being whichever satisfies the constraints
-     * given by the sparsity and whether or not the synapse group is recurrent
-     * and self connections are allowed.
+     * groups, connecting each source neuron to the first
+     * <code>currentOrderingIndices[i]</code> targets of its ordering. These
+     * synapses are initialized with default attributes and zero strength.
      *
      * @param synapseGroup
      */
-    private void connectEqualized(SynapseGroup synapseGroup) {
-        currentOrderingIndices = new int[sourceNeurons.length];
-        int numConnectsPerSrc;
-        int expectedNumSyns;
-        if (synapseGroup.isRecurrent() && !selfConnectionAllowed) {
-            numConnectsPerSrc =
-                (int) (connectionDensity * (sourceNeurons.length - 1));
-        } else {
-            numConnectsPerSrc =
-                (int) (connectionDensity * targetNeurons.length);
+    private void connectOrdered(SynapseGroup synapseGroup) {
+        long numSyns = 0;
+        for (int count : currentOrderingIndices) {
+            numSyns += count;
         }
-        expectedNumSyns = numConnectsPerSrc * sourceNeurons.length;
-        synapseGroup.preAllocateSynapses(expectedNumSyns);
+        synapseGroup.preAllocateSynapses((int) Math.min(numSyns,
+            Integer.MAX_VALUE));
         for (int i = 0, n = sourceNeurons.length; i < n; i++) {
-            currentOrderingIndices[i] = numConnectsPerSrc;
             Neuron src = sourceNeurons[i];
-            Neuron tar;
-            for (int j = 0; j < numConnectsPerSrc; j++) {
-                tar = targetNeurons[sparseOrdering[i][j]];
-                Synapse s = new Synapse(src, tar);
+            TargetOrdering o = sparseOrdering[i];
+            for (int j = 0; j < currentOrderingIndices[i]; j++) {
+                Synapse s = new Synapse(src, targetNeurons[o.get(j)]);
                 synapseGroup.addNewSynapse(s);
             }
         }
     }
 
     /**
-     * Populates the synapse group with synapses by making individual synaptic
-     * connections between the neurons in the synapse group's source and target
-     * groups. These synapses are initialized with default attributes and zero
-     * strength. The number of efferent synapses assigned to each source neuron
-     * is drawn from a binomial distribution with a mean of
-     * NumberOfTargetNeurons * sparsity
+     * Decides how many targets each source neuron connects to and orders that
+     * many of its possible targets at random, so that later density edits
+     * add and remove connections in a fixed order. If efferents are equalized
+     * every source gets the same number of targets; otherwise each source's
+     * number is binomial, drawn by skipping geometrically over its possible
+     * connections. The rest of each ordering is only generated if the density
+     * is raised, so the work is proportional to the number of connections.
+     * Sources are handled in parallel, each from its own streams of the seed.
      *
-     * @param synapseGroup
+     * @param recurrent whether the source and target neurons are the same
+     * @param seed the seed of the random connectivity
      */
-    private void connectRandom(SynapseGroup synapseGroup) {
+    private void generateSparseOrdering(final boolean recurrent,
+        final long seed) {
+        final boolean excludeSelf = recurrent && !selfConnectionAllowed;
+        final int possible = excludeSelf ? targetNeurons.length - 1
+            : targetNeurons.length;
+        final int perSource = (int) (connectionDensity * possible);
+        sparseOrdering = new TargetOrdering[sourceNeurons.length];
         currentOrderingIndices = new int[sourceNeurons.length];
-        int numTars =
-            synapseGroup.isRecurrent() && !selfConnectionAllowed
-                ? (sourceNeurons.length - 1)
-                : targetNeurons.length;
-        synapseGroup
-            .preAllocateSynapses((int) (sourceNeurons.length * numTars * connectionDensity));
-        for (int i = 0, n = sourceNeurons.length; i < n; i++) {
-            currentOrderingIndices[i] = BinomialGen.nextInt(
-                SimbrainMath.DEFAULT_RANDOM_STREAM, numTars,
-                connectionDensity);
-            Neuron src = sourceNeurons[i];
-            Neuron tar;
-            int tarLen = targetNeurons.length - 1;
-            int [] o = null;
-            if (sourceNeurons == targetNeurons && !selfConnectionAllowed) {
-	            o = SimbrainMath.randPermuteWithExclusion(0,
-	                    tarLen + 1, i);
-            } else {
-	            o = SimbrainMath.randPermute(0, tarLen + 1);
-            }
-            for (int j = 0; j < currentOrderingIndices[i]; j++) {
-                tar = targetNeurons[o[j]];
-                Synapse s = new Synapse(src, tar);
-                synapseGroup.addNewSynapse(s);
-            }
-        }
-
+        IntStream.range(0, sourceNeurons.length).parallel().forEach(i -> {
+            // Binomial number of targets, from a stream independent of the
+            // one that orders them
+            int count = equalizeEfferents ? perSource
+                : countBernoulli(possible, connectionDensity,
+                    new SplittableRandom(sourceSeed(~seed, i)));
+            TargetOrdering o = new TargetOrdering(possible,
+                excludeSelf ? i : -1, new SplittableRandom(sourceSeed(seed,
+                    i)));
+            o.extend(count);
+            sparseOrdering[i] = o;
+            currentOrderingIndices[i] = count;
+        });
     }
 
     /**
+     * Counts how many of n trials with success probability p succeed,
+     * skipping geometrically distributed gaps between successes.
      *
-     * @param recurrent
-     */
-    private void generateSparseOrdering(boolean recurrent) {
-        int srcLen = sourceNeurons.length;
-        if (recurrent && !selfConnectionAllowed) {
-            int tarLen = targetNeurons.length - 1;
-            sparseOrdering = new int[sourceNeurons.length][tarLen];
-            for (int i = 0; i < srcLen; i++) {
-                sparseOrdering[i] = SimbrainMath.randPermuteWithExclusion(0,
-                    tarLen + 1, i);
-            }
-        } else {
-            int tarLen = targetNeurons.length;
-            sparseOrdering = new int[sourceNeurons.length][tarLen];
-            for (int i = 0; i < srcLen; i++) {
-                sparseOrdering[i] = SimbrainMath.randPermute(0, tarLen);
-            }
+     * @param n number of trials
+     * @param p probability of success
+     * @param rand the random stream
+     * @return the number of successes
+     */
+    private static int countBernoulli(int n, double p,
+        SplittableRandom rand) {
+        if (n <= 0 || !(p > 0)) {
+            return 0;
         }
-    }
-
-    /**
-     * Randomly shuffles k integers in a list. The first k elements are randomly
-     * swapped with other elements in the list. This method will alter the list
-     * passed to it, so situations where this would be undesirable should pass
-     * this method a copy.
-     *
-     * @param inds a list of integers. This methods WILL shuffle inds, so pass a
-     *            copy unless inds being shuffled is not a problem.
-     * @param k how many elements will be shuffled
-     * @param rand a random number generator
-     */
-    public static void
-        randShuffleK(ArrayList<Integer> inds, int k, Random rand) {
-        for (int i = 0; i < k; i++) {
-            Collections.swap(inds, i, rand.nextInt(inds.size()));
+        if (p >= 1) {
+            return n;
+        }
+        double logQ = Math.log1p(-p);
+        int count = 0;
+        long t = -1;
+        while (true) {
+            t += 1 + (long) (Math.log(1 - rand.nextDouble()) / logQ);
+            if (t >= n) {
+                return count;
+            }
+            count++;
         }
     }
 
@@ -414,7 +536,7 @@ public class Sparse implements ConnectNeurons {
             for (int i = 0, n = sourceNeurons.length; i < n; i++) {
                 for (int j = curNumConPerSource - 1; j >= finalNumConPerSource; j--) {
                     Synapse toRemove = Network.getSynapse(sourceNeurons[i],
-                        targetNeurons[sparseOrdering[i][j]]);
+                        targetNeurons[sparseOrdering[i].get(j)]);
                     net.removeSynapse(toRemove);
                 }
                 currentOrderingIndices[i] = finalNumConPerSource;
@@ -457,14 +579,14 @@ public class Sparse implements ConnectNeurons {
             int curNumConPerSource = synapseGroup.size() / sourceNeurons.length;
             int addPerSource = addTotal / sourceNeurons.length;
             int finalNumConPerSource = curNumConPerSource + addPerSource;
-            if (finalNumConPerSource > sparseOrdering[0].length) {
-                finalNumConPerSource = sparseOrdering[0].length;
+            if (finalNumConPerSource > sparseOrdering[0].size()) {
+                finalNumConPerSource = sparseOrdering[0].size();
             }
             for (int i = 0, n = sourceNeurons.length; i < n; i++) {
                 for (int j = curNumConPerSource; j < finalNumConPerSource; j++)
                 {
                     Synapse toAdd = new Synapse(sourceNeurons[i],
-                        targetNeurons[sparseOrdering[i][j]]);
+                        targetNeurons[sparseOrdering[i].get(j)]);
                     addList.add(toAdd);
                 }
                 currentOrderingIndices[i] = finalNumConPerSource;
@@ -477,8 +599,8 @@ public class Sparse implements ConnectNeurons {
                 int finalNumConPerSource =
                     numToAdd >= currentOrderingIndices[i]
                         ? numToAdd : currentOrderingIndices[i];
-                if (finalNumConPerSource > sparseOrdering[i].length) {
-                    finalNumConPerSource = sparseOrdering[i].length;
+                if (finalNumConPerSource > sparseOrdering[i].size()) {
+                    finalNumConPerSource = sparseOrdering[i].size();
                 }
                 if (finalNumConPerSource >= currentOrderingIndices[i]) {
                     addList.addAll(increaseDensity(i, finalNumConPerSource));
@@ -510,7 +632,7 @@ public class Sparse implements ConnectNeurons {
             - currentOrderingIndices[i]);
         for (int j = currentOrderingIndices[i]; j < finalNumConnections; j++) {
             Synapse toAdd = new Synapse(sourceNeurons[i],
-                targetNeurons[sparseOrdering[i][j]]);
+                targetNeurons[sparseOrdering[i].get(j)]);
             added.add(toAdd);
         }
         return added;
@@ -528,7 +650,7 @@ public class Sparse implements ConnectNeurons {
                 - finalNumConnections);
         for (int j = currentOrderingIndices[i] - 1; j >= finalNumConnections; j--) {
             Synapse toRemove = Network.getSynapse(sourceNeurons[i],
-                targetNeurons[sparseOrdering[i][j]]);
+                targetNeurons[sparseOrdering[i].get(j)]);
             removed.add(toRemove);
         }
         return removed;
@@ -625,6 +747,25 @@ public class Sparse implements ConnectNeurons {
         }
     }
 
+    /**
+     * @return the seed of the random connectivity, or null if a new seed is
+     *         drawn each time connections are made
+     */
+    public Long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Set the seed of the random connectivity, so that connections can be
+     * reproduced.
+     *
+     * @param seed the seed, or null to draw a new seed each time connections
+     *            are made
+     */
+    public void setSeed(Long seed) {
+        this.seed = seed;
+    }
+
     /**
      * @return the synapse group tied to this sparse object.
      */
@@ -646,4 +787,98 @@ public class Sparse implements ConnectNeurons {
         return getName();
     }
 
+    /**
+     * A random order of the possible targets of one source neuron, made by a
+     * Fisher-Yates shuffle that is only carried as far as the entries asked
+     * for. Entries of the unshuffled remainder that have been swapped out of
+     * place are kept in a map, so the space and time used are proportional
+     * to the number of targets ordered, not to the number possible.
+     */
+    private static final class TargetOrdering {
+
+        /** Number of possible targets. */
+        private final int possible;
+
+        /** Index of the source's own target, which is skipped, or -1. */
+        private final int skip;
+
+        /** The stream the shuffle continues from. */
+        private final SplittableRandom rand;
+
+        /** The targets ordered so far. */
+        private int[] ordered = new int[0];
+
+        /** Number of targets ordered so far. */
+        private int length;
+
+        /** Entries of the unshuffled remainder that are out of place. */
+        private final Map<Integer, Integer> displaced =
+            new HashMap<Integer, Integer>();
+
+        /**
+         * @param possible number of possible targets
+         * @param skip index of a target to leave out, or -1
+         * @param rand the stream to shuffle with
+         */
+        TargetOrdering(int possible, int skip, SplittableRandom rand) {
+            this.possible = possible;
+            this.skip = skip;
+            this.rand = rand;
+        }
+
+        /**
+         * @return the number of possible targets
+         */
+        int size() {
+            return possible;
+        }
+
+        /**
+         * @param j a position in the ordering, less than {@link #size()}
+         * @return the index of the target at that position
+         */
+        int get(int j) {
+            if (j >= length) {
+                extend(j + 1);
+            }
+            return ordered[j];
+        }
+
+        /**
+         * Orders at least the first n targets.
+         *
+         * @param n the number of targets to order
+         */
+        void extend(int n) {
+            n = Math.min(n, possible);
+            if (n <= length) {
+                return;
+            }
+            if (n > ordered.length) {
+                ordered = Arrays.copyOf(ordered, Math.max(n,
+                    Math.min(possible, 2 * ordered.length)));
+            }
+            for (int k = length; k < n; k++) {
+                int j = k + rand.nextInt(possible - k);
+                int picked = valueAt(j);
+                if (j != k) {
+                    displaced.put(j, valueAt(k));
+                }
+                displaced.remove(k);
+                ordered[k] = skip >= 0 && picked >= skip ? picked + 1
+                    : picked;
+            }
+            length = n;
+        }
+
+        /**
+         * @param j a position in the remainder of the shuffle
+         * @return the entry at that position
+         */
+        private int valueAt(int j) {
+            Integer v = displaced.get(j);
+            return v == null ? j : v;
+        }
+    }
+
 }
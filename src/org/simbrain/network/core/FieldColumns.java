@@ -0,0 +1,581 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.core;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.thoughtworks.xstream.mapper.Mapper;
+
+/**
+ * Writes the persistent fields of many objects of one class as columns, one
+ * array of values per field, for {@link NetworkSnapshot}.
+ * <p>
+ * Primitive, String, enum and double[] fields are supported, as are fields
+ * holding objects of a Simbrain class that is itself supported as a rule
+ * (e.g. the {@link org.simbrain.util.randomizer.Randomizer} of a neuron
+ * update rule), which are written as nested columns. Columns are written
+ * with their field names and types, so a snapshot can be read after
+ * fields have been added to or removed from a class: unknown columns are
+ * skipped and fields without a column keep the values given to them by the
+ * constructor.
+ * <p>
+ * Only the fields that the network's XStream saves are written (see
+ * {@link Network#getXStream()}); fields it omits, which are typically
+ * rebuilt when a network is resolved, are left to be rebuilt the same way.
+ */
+final class FieldColumns {
+
+    /** Marks rule classes that can not be written as columns. */
+    private static final FieldColumns UNSUPPORTED = new FieldColumns(
+            Collections.<Field> emptyList());
+
+    /** Columns of rule classes, by class. */
+    private static final Map<Class<?>, FieldColumns> RULES =
+            new ConcurrentHashMap<Class<?>, FieldColumns>();
+
+    /** Mapper of the XStream networks are saved with, made when needed. */
+    private static volatile Mapper savedFields;
+
+    /** The fields written. */
+    private final List<Field> fields;
+
+    /**
+     * @param fields the fields written
+     */
+    private FieldColumns(final List<Field> fields) {
+        this.fields = fields;
+    }
+
+    /**
+     * Create columns for the supported fields of a class and its
+     * superclasses, skipping all others.
+     *
+     * @param clazz the class
+     * @param primitivesOnly whether to leave out String, enum and array
+     *            fields
+     * @param exclude names of fields to leave out
+     * @return the columns
+     */
+    static FieldColumns forFields(final Class<?> clazz,
+            final boolean primitivesOnly, final Set<String> exclude) {
+        List<Field> fields = new ArrayList<Field>();
+        for (Field field : persistentFields(clazz)) {
+            if (exclude.contains(field.getName())
+                    || typeCode(field.getType()) == 0
+                    || (primitivesOnly && !field.getType().isPrimitive())) {
+                continue;
+            }
+            fields.add(field);
+        }
+        return new FieldColumns(fields);
+    }
+
+    /**
+     * Create columns for a rule class, e.g. a neuron update rule or spike
+     * responder, whose instances can be rebuilt from columns alone. That is
+     * the case if the class is concrete, has a no argument constructor and
+     * all of its persistent fields are supported.
+     *
+     * @param clazz the class
+     * @return the columns, or null if the class is not supported
+     */
+    static FieldColumns forRule(final Class<?> clazz) {
+        FieldColumns columns = RULES.get(clazz);
+        if (columns == null) {
+            columns = UNSUPPORTED;
+            // Unsupported until shown otherwise, which ends recursion through
+            // nested fields
+            RULES.put(clazz, UNSUPPORTED);
+            try {
+                clazz.getDeclaredConstructor();
+                List<Field> fields = persistentFields(clazz);
+                boolean supported = !Modifier.isAbstract(clazz.getModifiers());
+                for (Field field : fields) {
+                    supported &= typeCode(field.getType()) != 0;
+                }
+                if (supported) {
+                    columns = new FieldColumns(fields);
+                }
+            } catch (NoSuchMethodException e) {
+                // Unsupported
+            }
+            RULES.put(clazz, columns);
+        }
+        return columns == UNSUPPORTED ? null : columns;
+    }
+
+    /**
+     * Create an instance of a rule class.
+     *
+     * @param clazz the class
+     * @return a new instance made with the no argument constructor
+     * @throws IOException if the instance can not be created
+     */
+    static Object newInstance(final Class<?> clazz) throws IOException {
+        try {
+            Constructor<?> constructor = clazz.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor.newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Can not create " + clazz.getName(), e);
+        }
+    }
+
+    /**
+     * @param clazz a class
+     * @return the fields of the class and its superclasses that are saved
+     *         with a network: those that are not static, transient or
+     *         omitted by the network's XStream
+     */
+    private static List<Field> persistentFields(final Class<?> clazz) {
+        Mapper mapper = savedFields;
+        if (mapper == null) {
+            mapper = Network.getXStream().getMapper();
+            savedFields = mapper;
+        }
+        List<Field> fields = new ArrayList<Field>();
+        for (Class<?> c = clazz; c != null && c != Object.class; c = c
+                .getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers)
+                        || Modifier.isTransient(modifiers)
+                        || field.isSynthetic()
+                        || !mapper.shouldSerializeMember(c, field.getName())) {
+                    continue;
+                }
+                field.setAccessible(true);
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * @param type a field type
+     * @return the code the type is written with, or 0 if not supported
+     */
+    private static char typeCode(final Class<?> type) {
+        if (type == double.class) {
+            return 'D';
+        } else if (type == float.class) {
+            return 'F';
+        } else if (type == int.class) {
+            return 'I';
+        } else if (type == long.class) {
+            return 'J';
+        } else if (type == short.class) {
+            return 'S';
+        } else if (type == byte.class) {
+            return 'B';
+        } else if (type == boolean.class) {
+            return 'Z';
+        } else if (type == char.class) {
+            return 'C';
+        } else if (type == String.class) {
+            return 'T';
+        } else if (type.isEnum()) {
+            return 'E';
+        } else if (type == double[].class) {
+            return 'A';
+        } else if (type.getName().startsWith("org.simbrain.")
+                && !type.isInterface() && forRule(type) != null) {
+            return 'O';
+        }
+        return 0;
+    }
+
+    /**
+     * Whether an object can be written with these columns. That is not the
+     * case if a nested field holds an instance of a subclass of the field's
+     * type, as nested columns are written for the declared type only.
+     *
+     * @param object the object
+     * @return true if the object's nested objects are all of their fields'
+     *         declared types
+     */
+    boolean fits(final Object object) {
+        try {
+            for (Field field : fields) {
+                if (typeCode(field.getType()) != 'O') {
+                    continue;
+                }
+                Object value = field.get(object);
+                if (value != null && (value.getClass() != field.getType()
+                        || !forRule(field.getType()).fits(value))) {
+                    return false;
+                }
+            }
+        } catch (IllegalAccessException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the fields written, e.g. to omit them elsewhere
+     */
+    List<Field> getFields() {
+        return fields;
+    }
+
+    /**
+     * Write the fields of a list of objects, column by column.
+     *
+     * @param out the stream to write to
+     * @param objects the objects, all of the class the columns were made for
+     * @throws IOException if writing fails
+     */
+    void write(final DataOutputStream out, final List<?> objects)
+            throws IOException {
+        out.writeInt(fields.size());
+        try {
+            for (Field field : fields) {
+                out.writeUTF(field.getName());
+                char code = typeCode(field.getType());
+                out.writeChar(code);
+                writeColumn(out, code, field, objects);
+            }
+        } catch (IllegalAccessException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Write the values of one field of a list of objects.
+     *
+     * @param out the stream
+     * @param code the type code of the field
+     * @param field the field
+     * @param objects the objects
+     * @throws IOException if writing fails
+     * @throws IllegalAccessException if the field can not be read
+     */
+    private static void writeColumn(final DataOutputStream out,
+            final char code, final Field field, final List<?> objects)
+            throws IOException, IllegalAccessException {
+        for (Object object : objects) {
+            switch (code) {
+            case 'D':
+                out.writeDouble(field.getDouble(object));
+                break;
+            case 'F':
+                out.writeFloat(field.getFloat(object));
+                break;
+            case 'I':
+                out.writeInt(field.getInt(object));
+                break;
+            case 'J':
+                out.writeLong(field.getLong(object));
+                break;
+            case 'S':
+                out.writeShort(field.getShort(object));
+                break;
+            case 'B':
+                out.writeByte(field.getByte(object));
+                break;
+            case 'Z':
+                out.writeBoolean(field.getBoolean(object));
+                break;
+            case 'C':
+                out.writeChar(field.getChar(object));
+                break;
+            case 'T':
+                writeString(out, (String) field.get(object));
+                break;
+            case 'E':
+                Enum<?> e = (Enum<?>) field.get(object);
+                writeString(out, e == null ? null : e.name());
+                break;
+            case 'O':
+                // Nested objects are written once the column is done
+                out.writeBoolean(field.get(object) != null);
+                break;
+            default:
+                double[] array = (double[]) field.get(object);
+                out.writeInt(array == null ? -1 : array.length);
+                if (array != null) {
+                    for (double d : array) {
+                        out.writeDouble(d);
+                    }
+                }
+            }
+        }
+        if (code == 'O') {
+            List<Object> nested = new ArrayList<Object>();
+            for (Object object : objects) {
+                Object value = field.get(object);
+                if (value != null) {
+                    nested.add(value);
+                }
+            }
+            forRule(field.getType()).write(out, nested);
+        }
+    }
+
+    /**
+     * @param out the stream
+     * @param value a string, may be null
+     * @throws IOException if writing fails
+     */
+    private static void writeString(final DataOutputStream out,
+            final String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * Read columns written by {@link #write(DataOutputStream, List)} for a
+     * number of objects, to be applied once the objects exist.
+     *
+     * @param in the stream to read from
+     * @param count the number of objects written
+     * @return the values read
+     * @throws IOException if reading fails
+     */
+    Values read(final DataInputStream in, final int count)
+            throws IOException {
+        Map<String, Field> byName = new HashMap<String, Field>();
+        for (Field field : fields) {
+            byName.put(field.getName(), field);
+        }
+        int columns = in.readInt();
+        List<Field> read = new ArrayList<Field>();
+        List<Object> values = new ArrayList<Object>();
+        for (int c = 0; c < columns; c++) {
+            String name = in.readUTF();
+            char code = in.readChar();
+            Field field = byName.get(name);
+            if (field != null && typeCode(field.getType()) != code) {
+                field = null;
+            }
+            // Nested columns of unknown fields are read as if for a class
+            // without fields, which skips them
+            Object column = readColumn(in, code, count,
+                    field != null && code == 'O' ? forRule(field.getType())
+                            : UNSUPPORTED);
+            // Skip columns of removed fields or fields whose type changed
+            if (field != null) {
+                read.add(field);
+                values.add(column);
+            }
+        }
+        return new Values(read, values);
+    }
+
+    /**
+     * Read the values of one column into an array of the column's type.
+     *
+     * @param in the stream
+     * @param code the type code
+     * @param count the number of values
+     * @param nested columns of the field's class, for nested objects
+     * @return the values, in a primitive array for primitive types
+     * @throws IOException if reading fails
+     */
+    private static Object readColumn(final DataInputStream in,
+            final char code, final int count, final FieldColumns nested)
+            throws IOException {
+        switch (code) {
+        case 'D':
+            double[] d = new double[count];
+            for (int i = 0; i < count; i++) {
+                d[i] = in.readDouble();
+            }
+            return d;
+        case 'F':
+            float[] f = new float[count];
+            for (int i = 0; i < count; i++) {
+                f[i] = in.readFloat();
+            }
+            return f;
+        case 'I':
+            int[] ints = new int[count];
+            for (int i = 0; i < count; i++) {
+                ints[i] = in.readInt();
+            }
+            return ints;
+        case 'J':
+            long[] l = new long[count];
+            for (int i = 0; i < count; i++) {
+                l[i] = in.readLong();
+            }
+            return l;
+        case 'S':
+            short[] s = new short[count];
+            for (int i = 0; i < count; i++) {
+                s[i] = in.readShort();
+            }
+            return s;
+        case 'B':
+            byte[] b = new byte[count];
+            in.readFully(b);
+            return b;
+        case 'Z':
+            boolean[] z = new boolean[count];
+            for (int i = 0; i < count; i++) {
+                z[i] = in.readBoolean();
+            }
+            return z;
+        case 'C':
+            char[] c = new char[count];
+            for (int i = 0; i < count; i++) {
+                c[i] = in.readChar();
+            }
+            return c;
+        case 'T':
+        case 'E':
+            String[] t = new String[count];
+            for (int i = 0; i < count; i++) {
+                t[i] = in.readBoolean() ? in.readUTF() : null;
+            }
+            return t;
+        case 'A':
+            double[][] a = new double[count][];
+            for (int i = 0; i < count; i++) {
+                int length = in.readInt();
+                if (length >= 0) {
+                    a[i] = new double[length];
+                    for (int j = 0; j < length; j++) {
+                        a[i][j] = in.readDouble();
+                    }
+                }
+            }
+            return a;
+        case 'O':
+            int[] rows = new int[count];
+            int present = 0;
+            for (int i = 0; i < count; i++) {
+                rows[i] = in.readBoolean() ? present++ : -1;
+            }
+            return new Nested(rows, nested.read(in, present));
+        default:
+            throw new IOException("Unknown column type " + code);
+        }
+    }
+
+    /**
+     * A column of nested objects read from a snapshot.
+     */
+    private static final class Nested {
+
+        /** Row of each object's nested object, or -1 if it was null. */
+        private final int[] rows;
+
+        /** Values of the nested objects. */
+        private final Values values;
+
+        /**
+         * @param rows row of each object's nested object, or -1
+         * @param values values of the nested objects
+         */
+        private Nested(final int[] rows, final Values values) {
+            this.rows = rows;
+            this.values = values;
+        }
+    }
+
+    /**
+     * Column values read from a snapshot.
+     */
+    static final class Values {
+
+        /** The fields that have a column. */
+        private final List<Field> fields;
+
+        /** A column of values per field, as returned by readColumn. */
+        private final List<Object> columns;
+
+        /**
+         * @param fields the fields that have a column
+         * @param columns a column of values per field
+         */
+        private Values(final List<Field> fields, final List<Object> columns) {
+            this.fields = fields;
+            this.columns = columns;
+        }
+
+        /**
+         * Set the fields of an object to one row of values.
+         *
+         * @param row the row
+         * @param object the object
+         * @throws IOException if a field can not be set
+         */
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        void apply(final int row, final Object object) throws IOException {
+            try {
+                for (int f = 0; f < fields.size(); f++) {
+                    Field field = fields.get(f);
+                    Object column = columns.get(f);
+                    if (column instanceof double[]) {
+                        field.setDouble(object, ((double[]) column)[row]);
+                    } else if (column instanceof float[]) {
+                        field.setFloat(object, ((float[]) column)[row]);
+                    } else if (column instanceof int[]) {
+                        field.setInt(object, ((int[]) column)[row]);
+                    } else if (column instanceof long[]) {
+                        field.setLong(object, ((long[]) column)[row]);
+                    } else if (column instanceof short[]) {
+                        field.setShort(object, ((short[]) column)[row]);
+                    } else if (column instanceof byte[]) {
+                        field.setByte(object, ((byte[]) column)[row]);
+                    } else if (column instanceof boolean[]) {
+                        field.setBoolean(object, ((boolean[]) column)[row]);
+                    } else if (column instanceof char[]) {
+                        field.setChar(object, ((char[]) column)[row]);
+                    } else if (column instanceof double[][]) {
+                        field.set(object, ((double[][]) column)[row]);
+                    } else if (column instanceof Nested) {
+                        Nested nested = (Nested) column;
+                        Object value = null;
+                        if (nested.rows[row] >= 0) {
+                            value = newInstance(field.getType());
+                            nested.values.apply(nested.rows[row], value);
+                        }
+                        field.set(object, value);
+                    } else {
+                        String value = ((String[]) column)[row];
+                        field.set(object, field.getType().isEnum()
+                                && value != null ? Enum.valueOf(
+                                (Class<Enum>) field.getType(), value)
+                                : value);
+                    }
+                }
+            } catch (IllegalAccessException | IllegalArgumentException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+}
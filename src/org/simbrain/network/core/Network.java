@@ -19,6 +19,7 @@
 package org.simbrain.network.core;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -27,6 +28,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.simbrain.network.NetworkComponent;
 import org.simbrain.network.connections.AllToAll;
@@ -43,8 +45,11 @@ import org.simbrain.network.listeners.NeuronListener;
 import org.simbrain.network.listeners.SynapseListener;
 import org.simbrain.network.listeners.TextListener;
 import org.simbrain.network.neuron_update_rules.interfaces.BiasedUpdateRule;
+import org.simbrain.network.update_actions.CompiledUpdate;
 import org.simbrain.network.update_actions.ConcurrentBufferedUpdate;
 import org.simbrain.network.update_actions.CustomUpdate;
+import org.simbrain.network.update_actions.EventDrivenUpdate;
+import org.simbrain.network.update_actions.WholeNetworkUpdate;
 import org.simbrain.util.SimbrainConstants.Polarity;
 import org.simbrain.util.SimbrainPreferences;
 import org.simbrain.util.SimbrainPreferences.PropertyNotFoundException;
@@ -72,6 +77,13 @@ public class Network {
     /** Since groups span all levels of the hierarchy they are stored here. */
     private final List<Group> groupList = new ArrayList<Group>();
 
+    /**
+     * All neurons, as returned by {@link #getFlatNeuronList()}, kept so that
+     * the update loop does not build the list every time. Null when it needs
+     * to be rebuilt, i.e. after neurons or groups have been added or removed.
+     */
+    private volatile Neuron[] flatNeurons;
+
     /** Text objects. */
     private List<NetworkTextObject> textList =
             new ArrayList<NetworkTextObject>();
@@ -161,6 +173,24 @@ public class Network {
      */
     private volatile boolean fireUpdates = true;
 
+    /**
+     * Most frames per second published for the gui to draw (see
+     * {@link NetworkFrame}). When it is 0, update events are fired after
+     * every iteration instead.
+     */
+    private volatile int frameRate;
+
+    /** System time the last frame was published, in nanoseconds. */
+    private long lastFrameTime;
+
+    /** The latest frame published, until the gui takes it. */
+    private AtomicReference<NetworkFrame> publishedFrame =
+            new AtomicReference<NetworkFrame>();
+
+    /** A frame the gui has drawn and handed back, to be reused. */
+    private AtomicReference<NetworkFrame> spareFrame =
+            new AtomicReference<NetworkFrame>();
+
     /**
      * An internal id giving networks unique numbers within the same simbrain
      * session.
@@ -203,15 +233,30 @@ public class Network {
             updateManager.getActionList().get(i).invoke();
         }
 
-        if (fireUpdates) {
+        if (fireUpdates && frameRate > 0) {
+            // Publish a frame for the GUI to draw in its own time, at most
+            // frameRate times a second
+            if (!networkListeners.isEmpty()) {
+                long now = System.nanoTime();
+                if (now - lastFrameTime >= 1000000000L / frameRate) {
+                    lastFrameTime = now;
+                    publishFrame();
+                }
+            }
+        } else if (fireUpdates) {
             // Fire update events for GUI update. Loose items, then groups.
+            // Without listeners (e.g. no GUI) there is nothing to do.
 
             // Todo: fireSynapsesUpdated(synapseList) is a performance drain,
             // but needed e.g. to view Hebbian dynamics
-            fireSynapsesUpdated(synapseList); // Loose synapses
-            fireNeuronsUpdated(neuronList); // Loose neurons
-            for (int i = 0, n = groupList.size(); i < n; i++) {
-                fireGroupUpdated(groupList.get(i)); // Groups
+            if (!networkListeners.isEmpty()) {
+                fireSynapsesUpdated(synapseList); // Loose synapses
+                fireNeuronsUpdated(neuronList); // Loose neurons
+            }
+            if (!groupListeners.isEmpty()) {
+                for (int i = 0, n = groupList.size(); i < n; i++) {
+                    fireGroupUpdated(groupList.get(i)); // Groups
+                }
             }
         }
 
@@ -222,6 +267,46 @@ public class Network {
         setUpdateCompleted(true);
     }
 
+    /**
+     * Copy the current state of the network into a frame and publish it,
+     * replacing (and reusing) any frame the gui has not taken yet. Called
+     * from {@link #update()} when there is a frame rate, and when a run
+     * ends so that the last state reached is drawn.
+     */
+    public void publishFrame() {
+        NetworkFrame frame = publishedFrame.getAndSet(null);
+        if (frame == null) {
+            frame = spareFrame.getAndSet(null);
+        }
+        if (frame == null) {
+            frame = new NetworkFrame();
+        }
+        frame.capture(this, getFlatNeurons(), synapseList,
+                getSynapseGroups());
+        publishedFrame.set(frame);
+    }
+
+    /**
+     * Take the latest frame published. It belongs to the caller until it is
+     * handed back with {@link #releaseFrame(NetworkFrame)}.
+     *
+     * @return the frame, or null if none has been published since the last
+     *         one was taken
+     */
+    public NetworkFrame takeFrame() {
+        return publishedFrame.getAndSet(null);
+    }
+
+    /**
+     * Hand back a frame that has been drawn, so that its arrays can be reused
+     * for a later frame.
+     *
+     * @param frame the frame
+     */
+    public void releaseFrame(final NetworkFrame frame) {
+        spareFrame.set(frame);
+    }
+
     /**
      * Update all neuron groups and other groups.
      */
@@ -289,8 +374,9 @@ public class Network {
         // TODO: Is there a more efficient way to handle this?
         // i.e. a way to get a list of neurons that (1) are coupled or better,
         // (2) have input values which consume.
-        for (Neuron neuron : this.getFlatNeuronList()) {
-            neuron.setInputValue(0);
+        Neuron[] neurons = getFlatNeurons();
+        for (int i = 0; i < neurons.length; i++) {
+            neurons[i].setInputValue(0);
         }
     }
 
@@ -316,6 +402,14 @@ public class Network {
         return Collections.unmodifiableCollection(synapseList);
     }
 
+    /**
+     * @return the modifiable set of loose synapses, for
+     *         {@link NetworkSnapshot}, which moves synapses out of the xml
+     */
+    Set<Synapse> getSynapseSet() {
+        return synapseList;
+    }
+
     /**
      * @return Number of neurons in network.
      */
@@ -683,6 +777,7 @@ public class Network {
      *            value to set
      */
     public void setWeights(final double value) {
+        decompressSynapseGroups();
         for (Synapse synapse : this.getFlatSynapseList()) {
             synapse.setStrength(value);
         }
@@ -849,6 +944,40 @@ public class Network {
      * @return the flat list
      */
     public List<Neuron> getFlatNeuronList() {
+        return new ArrayList<Neuron>(Arrays.asList(getFlatNeurons()));
+    }
+
+    /**
+     * Return the flat list of neurons as an array that is reused until
+     * neurons or groups are added or removed.
+     *
+     * @return all neurons; must not be modified
+     */
+    private Neuron[] getFlatNeurons() {
+        Neuron[] neurons = flatNeurons;
+        if (neurons == null) {
+            List<Neuron> list = buildFlatNeuronList();
+            neurons = list.toArray(new Neuron[list.size()]);
+            flatNeurons = neurons;
+        }
+        return neurons;
+    }
+
+    /**
+     * Discard the cached flat list of neurons, so that it is rebuilt the next
+     * time it is used. Called when neuron or group added or removed events
+     * are fired, and by groups whose neurons change without an event.
+     */
+    public void invalidateFlatNeuronList() {
+        flatNeurons = null;
+    }
+
+    /**
+     * Build the flat list of neurons.
+     *
+     * @return a new list of all neurons
+     */
+    private List<Neuron> buildFlatNeuronList() {
 
         List<Neuron> ret = new ArrayList<Neuron>();
         ret.addAll(neuronList);
@@ -867,9 +996,23 @@ public class Network {
         return ret;
     }
 
+    /**
+     * Restores the synapse objects of any compressed synapse groups, so that
+     * changes made through {@link #getFlatSynapseList()} reach every
+     * connection.
+     */
+    private void decompressSynapseGroups() {
+        for (SynapseGroup group : getSynapseGroups()) {
+            if (group.isCompressed()) {
+                group.setCompressed(false);
+            }
+        }
+    }
+
     /**
      * Create "flat" list of synapses, which includes the top-level synapses
-     * plus all subnet synapses.
+     * plus all subnet synapses. Compressed synapse groups have no synapse
+     * objects and contribute none.
      *
      * @return the flat list
      */
@@ -879,7 +1022,8 @@ public class Network {
         for (int i = 0; i < groupList.size(); i++) {
             if (groupList.get(i) instanceof SynapseGroup) {
                 SynapseGroup group = (SynapseGroup) groupList.get(i);
-                ret.addAll(group.getAllSynapses());
+                ret.addAll(group.getExcitatorySynapsesUnsafe());
+                ret.addAll(group.getInhibitorySynapsesUnsafe());
             } else if (groupList.get(i) instanceof Subnetwork) {
                 Subnetwork group = (Subnetwork) groupList.get(i);
                 ret.addAll(group.getFlatSynapseList());
@@ -964,11 +1108,11 @@ public class Network {
      */
     public static void updateNeurons(List<Neuron> neuronList) {
         // TODO: Update by priority if priority based update?
-        for (Neuron neuron : neuronList) {
-            neuron.update();
+        for (int i = 0, n = neuronList.size(); i < n; i++) {
+            neuronList.get(i).update();
         }
-        for (Neuron neuron : neuronList) {
-            neuron.setToBufferVals();
+        for (int i = 0, n = neuronList.size(); i < n; i++) {
+            neuronList.get(i).setToBufferVals();
         }
     }
 
@@ -1015,26 +1159,56 @@ public class Network {
         xstream.omitField(Network.class, "synapseListeners");
         xstream.omitField(Network.class, "textListeners");
         xstream.omitField(Network.class, "updateCompleted");
+        xstream.omitField(Network.class, "flatNeurons");
+        xstream.omitField(Network.class, "frameRate");
+        xstream.omitField(Network.class, "lastFrameTime");
+        xstream.omitField(Network.class, "publishedFrame");
+        xstream.omitField(Network.class, "spareFrame");
         xstream.omitField(Network.class, "logger");
         xstream.omitField(Network.class, "synapseVisibilityThreshold");
 
         xstream.omitField(NetworkUpdateManager.class, "listeners");
-        xstream.omitField(ConcurrentBufferedUpdate.class, "consumerThreads");
         xstream.omitField(ConcurrentBufferedUpdate.class, "neurons");
-        xstream.omitField(ConcurrentBufferedUpdate.class, "taskSet");
+        xstream.omitField(ConcurrentBufferedUpdate.class, "partition");
+        xstream.omitField(ConcurrentBufferedUpdate.class, "dirty");
         xstream.omitField(ConcurrentBufferedUpdate.class, "network");
+        // Fields of the older producer/consumer implementation
+        xstream.omitField(ConcurrentBufferedUpdate.class, "consumerThreads");
+        xstream.omitField(ConcurrentBufferedUpdate.class, "taskSet");
         xstream.omitField(ConcurrentBufferedUpdate.class, "producer");
         xstream.omitField(ConcurrentBufferedUpdate.class, "collectorThread");
-//        xstream.omitField(ConcurrentBufferedUpdate.class,
-//                "synchronizingBarrier");
+        xstream.omitField(ConcurrentBufferedUpdate.class, "executors");
         xstream.omitField(ConcurrentBufferedUpdate.class,
-                "executors");
-        
+                "currentAvailableProcessors");
+        xstream.omitField(ConcurrentBufferedUpdate.class, "pendingOperations");
+        xstream.omitField(ConcurrentBufferedUpdate.class, "lock");
+        xstream.omitField(ConcurrentBufferedUpdate.class,
+                "collectionInProgress");
+        xstream.omitField(ConcurrentBufferedUpdate.class, "ops");
+
+        xstream.omitField(WholeNetworkUpdate.class, "inputGroups");
+        xstream.omitField(WholeNetworkUpdate.class, "outputGroups");
+
+        xstream.omitField(CompiledUpdate.class, "network");
+        xstream.omitField(CompiledUpdate.class, "compiled");
+        xstream.omitField(CompiledUpdate.class, "compressedGroups");
+
+        xstream.omitField(EventDrivenUpdate.class, "network");
+        xstream.omitField(EventDrivenUpdate.class, "schedule");
+        xstream.omitField(EventDrivenUpdate.class, "compressedGroups");
+
         xstream.omitField(CustomUpdate.class, "interpreter");
         xstream.omitField(CustomUpdate.class, "theAction");
 
+        xstream.omitField(NeuronGroup.class, "recorder");
+
         xstream.omitField(SynapseGroup.class, "exTemp");
         xstream.omitField(SynapseGroup.class, "inTemp");
+        xstream.omitField(SynapseGroup.class, "sparseMatrix");
+        xstream.omitField(SynapseGroup.class, "saveAsColumns");
+        xstream.omitField(SynapseGroup.class, "columnSources");
+        xstream.omitField(SynapseGroup.class, "columnTargets");
+        xstream.omitField(SynapseGroup.class, "columnStrengths");
         xstream.omitField(Sparse.class, "sparseOrdering");
         xstream.omitField(Sparse.class, "currentOrderingIndices");
         xstream.omitField(Sparse.class, "sourceNeurons");
@@ -1043,6 +1217,7 @@ public class Network {
         xstream.omitField(Neuron.class, "fanOut");
         xstream.omitField(Neuron.class, "fanIn");
         xstream.omitField(Neuron.class, "generator");
+        xstream.omitField(Neuron.class, "synapticInputExternal");
 
         xstream.omitField(AllToAll.class, "selfConnectionAllowed");
 
@@ -1061,6 +1236,9 @@ public class Network {
      */
     private Object readResolve() {
 
+        // Fill in what a binary snapshot keeps out of the xml
+        NetworkSnapshot.resolve(this);
+
     	fireUpdates = true;
 
         // Initialize listener lists
@@ -1088,6 +1266,8 @@ public class Network {
             synapse.postUnmarshallingInit();
         }
         updateCompleted = new AtomicBoolean(false);
+        publishedFrame = new AtomicReference<NetworkFrame>();
+        spareFrame = new AtomicReference<NetworkFrame>();
         return this;
     }
 
@@ -1227,6 +1407,7 @@ public class Network {
     public void setTimeStep(final double timeStep) {
         double oldTimeStep = this.timeStep;
         this.timeStep = timeStep;
+        decompressSynapseGroups();
         for (Synapse s : getFlatSynapseList()) {
             int newDelay = (int) (s.getDelay() * oldTimeStep / timeStep);
             if (s.getDelay() != 0 && newDelay == 0) {
@@ -1244,6 +1425,7 @@ public class Network {
      *            neuron which has been deleted
      */
     public void fireNeuronRemoved(final Neuron deleted) {
+        invalidateFlatNeuronList();
         for (NeuronListener listener : neuronListeners) {
             listener.neuronRemoved(new NetworkEvent<Neuron>(this, deleted));
         }
@@ -1316,6 +1498,7 @@ public class Network {
      *            neuron which was added
      */
     public void fireNeuronAdded(final Neuron added) {
+        invalidateFlatNeuronList();
         for (NeuronListener listener : neuronListeners) {
             listener.neuronAdded(new NetworkEvent<Neuron>(this, added));
         }
@@ -1479,6 +1662,7 @@ public class Network {
      *            Group that has been added
      */
     public void fireGroupAdded(final Group added) {
+        invalidateFlatNeuronList();
         for (GroupListener listener : groupListeners) {
             listener.groupAdded(new NetworkEvent<Group>(this, added));
         }
@@ -1491,6 +1675,7 @@ public class Network {
      *            Group to be deleted
      */
     public void fireGroupRemoved(final Group deleted) {
+        invalidateFlatNeuronList();
         for (GroupListener listener : groupListeners) {
             listener.groupRemoved(new NetworkEvent<Group>(this, deleted));
         }
@@ -1649,6 +1834,16 @@ public class Network {
         neuronListeners.add(listener);
     }
 
+    /**
+     * Remove a neuron listener.
+     *
+     * @param listener
+     *            the observer to remove
+     */
+    public void removeNeuronListener(final NeuronListener listener) {
+        neuronListeners.remove(listener);
+    }
+
     /**
      * Register a synapse listener.
      *
@@ -1922,6 +2117,27 @@ public class Network {
         this.fireUpdates = fireUpdates;
     }
 
+    /**
+     * @return the most frames per second published for the gui, or 0 if
+     *         update events are fired after every iteration
+     */
+    public int getFrameRate() {
+        return frameRate;
+    }
+
+    /**
+     * Set how the gui follows updates. With a positive rate, the network
+     * publishes a {@link NetworkFrame} at most that many times a second
+     * instead of firing update events, and the gui draws the latest frame on
+     * its own timer, so that updates never wait for drawing.
+     *
+     * @param frameRate frames per second, or 0 to fire update events after
+     *            every iteration
+     */
+    public void setFrameRate(int frameRate) {
+        this.frameRate = frameRate;
+    }
+
     public String getName() {
     	return name;
     }
@@ -0,0 +1,197 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.core;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.simbrain.network.groups.SynapseGroup;
+
+/**
+ * The state of a network that is drawn, copied at the end of an update so
+ * that the gui can draw it while the network goes on updating. Holds the
+ * activation and spike state of every neuron and the strength of every
+ * displayed synapse, together with the time label.
+ * <p>
+ * Frames are published by {@link Network#update()} when the network has a
+ * frame rate (see {@link Network#setFrameRate(int)}), and are taken with
+ * {@link Network#takeFrame()}. Their arrays are reused, so a frame must be
+ * handed back with {@link Network#releaseFrame(NetworkFrame)} once it has
+ * been drawn, and must not be read afterwards.
+ */
+public final class NetworkFrame {
+
+    /** The neurons, in the order of {@link Network#getFlatNeuronList()}. */
+    private Neuron[] neurons = new Neuron[0];
+
+    /** Number of neurons in the frame. */
+    private int numNeurons;
+
+    /** Activation of each neuron. */
+    private double[] activations = new double[0];
+
+    /** Whether each neuron spiked. */
+    private boolean[] spikes = new boolean[0];
+
+    /** Loose synapses, then those of synapse groups that are displayed. */
+    private Synapse[] synapses = new Synapse[0];
+
+    /** Number of synapses in the frame. */
+    private int numSynapses;
+
+    /** Strength of each synapse. */
+    private double[] strengths = new double[0];
+
+    /** Whether the source of each synapse spiked. */
+    private boolean[] sourceSpikes = new boolean[0];
+
+    /** The network's time label. */
+    private String timeLabel = "";
+
+    /**
+     * Copies the drawn state of a network into this frame.
+     *
+     * @param network the network
+     * @param flatNeurons all neurons of the network
+     * @param looseSynapses synapses that are not in groups
+     * @param synapseGroups the network's synapse groups
+     */
+    void capture(final Network network, final Neuron[] flatNeurons,
+            final Collection<Synapse> looseSynapses,
+            final Collection<SynapseGroup> synapseGroups) {
+        numNeurons = flatNeurons.length;
+        if (neurons.length < numNeurons) {
+            neurons = new Neuron[numNeurons];
+            activations = new double[numNeurons];
+            spikes = new boolean[numNeurons];
+        }
+        for (int i = 0; i < numNeurons; i++) {
+            Neuron neuron = flatNeurons[i];
+            neurons[i] = neuron;
+            activations[i] = neuron.getActivation();
+            spikes[i] = neuron.isSpike();
+        }
+        Arrays.fill(neurons, numNeurons, neurons.length, null);
+
+        numSynapses = 0;
+        addSynapses(looseSynapses);
+        for (SynapseGroup group : synapseGroups) {
+            // Compressed groups have no synapse nodes to draw, and their
+            // views are empty, so they are neither copied nor decompressed
+            if (group.isDisplaySynapses()) {
+                addSynapses(group.getExcitatorySynapsesUnsafe());
+                addSynapses(group.getInhibitorySynapsesUnsafe());
+            }
+        }
+        Arrays.fill(synapses, numSynapses, synapses.length, null);
+
+        timeLabel = network.getTimeLabel();
+    }
+
+    /**
+     * Copies synapses into the frame, growing its arrays as needed.
+     *
+     * @param added the synapses
+     */
+    private void addSynapses(final Collection<Synapse> added) {
+        int size = numSynapses + added.size();
+        if (synapses.length < size) {
+            int length = Math.max(size, synapses.length * 2);
+            synapses = Arrays.copyOf(synapses, length);
+            strengths = Arrays.copyOf(strengths, length);
+            sourceSpikes = Arrays.copyOf(sourceSpikes, length);
+        }
+        for (Synapse synapse : added) {
+            synapses[numSynapses] = synapse;
+            strengths[numSynapses] = synapse.getStrength();
+            sourceSpikes[numSynapses] = synapse.getSource().isSpike();
+            numSynapses++;
+        }
+    }
+
+    /**
+     * @return the number of neurons in the frame
+     */
+    public int getNumNeurons() {
+        return numNeurons;
+    }
+
+    /**
+     * @param i index of a neuron
+     * @return the neuron
+     */
+    public Neuron getNeuron(final int i) {
+        return neurons[i];
+    }
+
+    /**
+     * @param i index of a neuron
+     * @return its activation
+     */
+    public double getActivation(final int i) {
+        return activations[i];
+    }
+
+    /**
+     * @param i index of a neuron
+     * @return whether it spiked
+     */
+    public boolean isSpike(final int i) {
+        return spikes[i];
+    }
+
+    /**
+     * @return the number of synapses in the frame
+     */
+    public int getNumSynapses() {
+        return numSynapses;
+    }
+
+    /**
+     * @param i index of a synapse
+     * @return the synapse
+     */
+    public Synapse getSynapse(final int i) {
+        return synapses[i];
+    }
+
+    /**
+     * @param i index of a synapse
+     * @return its strength
+     */
+    public double getStrength(final int i) {
+        return strengths[i];
+    }
+
+    /**
+     * @param i index of a synapse
+     * @return whether its source spiked
+     */
+    public boolean isSourceSpike(final int i) {
+        return sourceSpikes[i];
+    }
+
+    /**
+     * @return the network's time label
+     */
+    public String getTimeLabel() {
+        return timeLabel;
+    }
+
+}
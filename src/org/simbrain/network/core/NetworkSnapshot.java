@@ -0,0 +1,662 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.simbrain.network.groups.SparseSynapseMatrix;
+import org.simbrain.network.groups.SynapseGroup;
+import org.simbrain.network.synapse_update_rules.spikeresponders.SpikeResponder;
+
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * A binary format for networks that keeps the bulk of a network's state out
+ * of XML. It is used when networks are saved in workspace archives.
+ * <p>
+ * A snapshot starts with a magic number and a format version, followed by
+ * columns of primitive values, followed by a manifest: the XML the network
+ * is otherwise saved as, minus what the columns hold. The columns are
+ * <ul>
+ * <li>the primitive state of every neuron (activation, position, etc.), in
+ * the order of {@link Network#getFlatNeuronList()};</li>
+ * <li>the parameters of neuron update rules, one block per rule class;</li>
+ * <li>loose synapses, one block per combination of learning rule and spike
+ * responder class, with source and target given as neuron indices;</li>
+ * <li>the connections of synapse groups saved at the group level (see
+ * {@link SynapseGroup#isSavedAtGroupLevel()}): source indices, target
+ * indices and strengths, one block per group.</li>
+ * </ul>
+ * Rules are written as columns when all their fields are primitives,
+ * strings, enums, double arrays or nested objects of such classes (see
+ * {@link FieldColumns}); neurons and
+ * synapses with other rules stay in the manifest. Synapse groups saved
+ * synapse by synapse are saved in the manifest as before, and the prototype
+ * synapses of all groups stay there.
+ * <p>
+ * Columns are read before the manifest and applied when XStream resolves
+ * the network (see {@link Network}'s readResolve), before the network
+ * finishes initializing itself.
+ */
+public final class NetworkSnapshot {
+
+    /** Magic number at the start of a snapshot, "SBNS". */
+    private static final int MAGIC = 0x53424E53;
+
+    /** Version of the format written. */
+    private static final int VERSION = 2;
+
+    /** Columns of the primitive state of neurons. */
+    private static final FieldColumns NEURON_STATE = FieldColumns.forFields(
+            Neuron.class, true, new HashSet<String>());
+
+    /** Columns of loose synapses, other than their rules and neurons. */
+    private static final FieldColumns SYNAPSE = FieldColumns.forFields(
+            Synapse.class, false, new HashSet<String>(Arrays.asList("source",
+                    "target", "parentNetwork", "parentGroup",
+                    "learningRule", "spikeResponder", "isTemplate")));
+
+    /** Snapshot being read on this thread, applied by resolve. */
+    private static final ThreadLocal<NetworkSnapshot> READING =
+            new ThreadLocal<NetworkSnapshot>();
+
+    /** Neuron state read. */
+    private FieldColumns.Values neuronState;
+
+    /** Neuron rule blocks read. */
+    private final List<RuleBlock> ruleBlocks = new ArrayList<RuleBlock>();
+
+    /** Synapse blocks read. */
+    private final List<SynapseBlock> synapseBlocks =
+            new ArrayList<SynapseBlock>();
+
+    /** Synapse group blocks read. */
+    private final List<GroupBlock> groupBlocks = new ArrayList<GroupBlock>();
+
+    /** Error raised while applying columns, rethrown by read. */
+    private IOException error;
+
+    /**
+     * Not instantiable from outside.
+     */
+    private NetworkSnapshot() {
+    }
+
+    /**
+     * Whether a stream holds a snapshot. The stream must support mark and
+     * reset; nothing is consumed.
+     *
+     * @param input the stream
+     * @return true if the stream starts with a snapshot's magic number
+     * @throws IOException if reading fails
+     */
+    public static boolean isSnapshot(final InputStream input)
+            throws IOException {
+        input.mark(4);
+        try {
+            int magic = 0;
+            for (int i = 0; i < 4; i++) {
+                int b = input.read();
+                if (b < 0) {
+                    return false;
+                }
+                magic = (magic << 8) | b;
+            }
+            return magic == MAGIC;
+        } finally {
+            input.reset();
+        }
+    }
+
+    /**
+     * @return the XStream used for manifests, which leaves out what the
+     *         neuron state columns hold
+     */
+    private static XStream getManifestXStream() {
+        XStream xstream = Network.getXStream();
+        for (Field field : NEURON_STATE.getFields()) {
+            xstream.omitField(field.getDeclaringClass(), field.getName());
+        }
+        return xstream;
+    }
+
+    /**
+     * Write a network as a snapshot. Unlike saving as XML, callers should not
+     * call {@link Network#preSaveInit()} first; this does it, once it has
+     * taken the connections of synapse groups saved at the group level.
+     *
+     * @param network the network
+     * @param output the stream to write to; not closed
+     * @throws IOException if writing fails
+     */
+    public static void write(final Network network, final OutputStream output)
+            throws IOException {
+        List<SynapseGroup> groups = network.getSynapseGroups();
+        List<Integer> savedGroups = new ArrayList<Integer>();
+        List<SparseSynapseMatrix> connections =
+                new ArrayList<SparseSynapseMatrix>();
+        for (int g = 0; g < groups.size(); g++) {
+            SynapseGroup group = groups.get(g);
+            if (group.isSavedAtGroupLevel()) {
+                savedGroups.add(g);
+                connections.add(group.getConnectionMatrix());
+                group.setSaveAsColumns(true);
+            }
+        }
+        network.preSaveInit();
+        try {
+            write(network, output, savedGroups, connections);
+        } finally {
+            network.postSaveReInit();
+        }
+    }
+
+    /**
+     * Write a network that has been prepared for saving as a snapshot.
+     *
+     * @param network the network
+     * @param output the stream to write to
+     * @param savedGroups indices of the synapse groups saved as columns
+     * @param connections the connections of those groups
+     * @throws IOException if writing fails
+     */
+    private static void write(final Network network,
+            final OutputStream output, final List<Integer> savedGroups,
+            final List<SparseSynapseMatrix> connections) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                output, 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+
+        List<Neuron> neurons = network.getFlatNeuronList();
+        Map<Neuron, Integer> index = new IdentityHashMap<Neuron, Integer>();
+        for (int i = 0; i < neurons.size(); i++) {
+            index.put(neurons.get(i), i);
+        }
+        out.writeInt(neurons.size());
+        NEURON_STATE.write(out, neurons);
+
+        // Neuron rules, by class
+        Map<Class<?>, List<Integer>> byRule =
+                new LinkedHashMap<Class<?>, List<Integer>>();
+        Map<NeuronUpdateRule, Integer> uses =
+                new IdentityHashMap<NeuronUpdateRule, Integer>();
+        for (Neuron neuron : neurons) {
+            Integer count = uses.get(neuron.getUpdateRule());
+            uses.put(neuron.getUpdateRule(), count == null ? 1 : count + 1);
+        }
+        for (int i = 0; i < neurons.size(); i++) {
+            NeuronUpdateRule rule = neurons.get(i).getUpdateRule();
+            // Shared rules stay in the manifest so they stay shared
+            if (rule == null || uses.get(rule) > 1
+                    || !fits(rule)) {
+                continue;
+            }
+            List<Integer> block = byRule.get(rule.getClass());
+            if (block == null) {
+                block = new ArrayList<Integer>();
+                byRule.put(rule.getClass(), block);
+            }
+            block.add(i);
+        }
+        out.writeInt(byRule.size());
+        for (Map.Entry<Class<?>, List<Integer>> block : byRule.entrySet()) {
+            out.writeUTF(block.getKey().getName());
+            List<Object> rules = new ArrayList<Object>();
+            out.writeInt(block.getValue().size());
+            for (int i : block.getValue()) {
+                out.writeInt(i);
+                rules.add(neurons.get(i).getUpdateRule());
+            }
+            FieldColumns.forRule(block.getKey()).write(out, rules);
+        }
+
+        // Loose synapses, by learning rule and spike responder class
+        Map<List<Class<?>>, List<Synapse>> bySynapseRule =
+                new LinkedHashMap<List<Class<?>>, List<Synapse>>();
+        Map<Synapse, Integer> ordinals = new IdentityHashMap<Synapse, Integer>();
+        for (Synapse synapse : network.getSynapseSet()) {
+            ordinals.put(synapse, ordinals.size());
+            SpikeResponder responder = synapse.getSpikeResponder();
+            if (!index.containsKey(synapse.getSource())
+                    || !index.containsKey(synapse.getTarget())
+                    || !SYNAPSE.fits(synapse)
+                    || !fits(synapse.getLearningRule())
+                    || (responder != null && !fits(responder))) {
+                continue;
+            }
+            List<Class<?>> key = Arrays.<Class<?>> asList(synapse
+                    .getLearningRule().getClass(),
+                    responder == null ? null : responder.getClass());
+            List<Synapse> block = bySynapseRule.get(key);
+            if (block == null) {
+                block = new ArrayList<Synapse>();
+                bySynapseRule.put(key, block);
+            }
+            block.add(synapse);
+        }
+        out.writeInt(bySynapseRule.size());
+        for (Map.Entry<List<Class<?>>, List<Synapse>> block : bySynapseRule
+                .entrySet()) {
+            Class<?> ruleClass = block.getKey().get(0);
+            Class<?> responderClass = block.getKey().get(1);
+            List<Synapse> synapses = block.getValue();
+            out.writeUTF(ruleClass.getName());
+            out.writeUTF(responderClass == null ? "" : responderClass
+                    .getName());
+            out.writeInt(synapses.size());
+            List<Object> rules = new ArrayList<Object>(synapses.size());
+            List<Object> responders = new ArrayList<Object>(synapses.size());
+            for (Synapse synapse : synapses) {
+                out.writeInt(index.get(synapse.getSource()));
+                rules.add(synapse.getLearningRule());
+                responders.add(synapse.getSpikeResponder());
+            }
+            for (Synapse synapse : synapses) {
+                out.writeInt(index.get(synapse.getTarget()));
+            }
+            // Positions among all loose synapses, which fix the order of
+            // fan-in and so of input sums
+            for (Synapse synapse : synapses) {
+                out.writeInt(ordinals.get(synapse));
+            }
+            SYNAPSE.write(out, synapses);
+            FieldColumns.forRule(ruleClass).write(out, rules);
+            if (responderClass != null) {
+                FieldColumns.forRule(responderClass).write(out, responders);
+            }
+        }
+
+        // Synapse groups saved at the group level, by rows of targets
+        out.writeInt(savedGroups.size());
+        for (int b = 0; b < savedGroups.size(); b++) {
+            SparseSynapseMatrix matrix = connections.get(b);
+            int count = matrix.size();
+            out.writeInt(savedGroups.get(b));
+            out.writeInt(count);
+            for (int k = 0; k < count; k++) {
+                out.writeInt(matrix.getSourceIndex(k));
+            }
+            for (int row = 0; row < matrix.getNumRows(); row++) {
+                for (int k = matrix.getRowStart(row), end = matrix
+                        .getRowEnd(row); k < end; k++) {
+                    out.writeInt(row);
+                }
+            }
+            for (int k = 0; k < count; k++) {
+                out.writeDouble(matrix.getWeight(k));
+            }
+        }
+
+        // The manifest, without what the columns hold
+        Map<Neuron, NeuronUpdateRule> detachedRules =
+                new IdentityHashMap<Neuron, NeuronUpdateRule>();
+        List<Synapse> detachedSynapses = new ArrayList<Synapse>();
+        List<Synapse> looseSynapses = new ArrayList<Synapse>(
+                network.getSynapseSet());
+        try {
+            for (List<Integer> block : byRule.values()) {
+                for (int i : block) {
+                    Neuron neuron = neurons.get(i);
+                    detachedRules.put(neuron, neuron.getUpdateRule());
+                    neuron.setUpdateRuleField(null);
+                }
+            }
+            for (List<Synapse> block : bySynapseRule.values()) {
+                detachedSynapses.addAll(block);
+            }
+            network.getSynapseSet().removeAll(detachedSynapses);
+            getManifestXStream().toXML(network, out);
+        } finally {
+            for (Map.Entry<Neuron, NeuronUpdateRule> rule : detachedRules
+                    .entrySet()) {
+                rule.getKey().setUpdateRuleField(rule.getValue());
+            }
+            network.getSynapseSet().clear();
+            network.getSynapseSet().addAll(looseSynapses);
+        }
+        out.flush();
+    }
+
+    /**
+     * Read a network from a snapshot.
+     *
+     * @param input the stream to read from
+     * @return the network
+     * @throws IOException if the snapshot can not be read
+     */
+    public static Network read(final InputStream input) throws IOException {
+        DataInputStream in = new DataInputStream(input instanceof
+                BufferedInputStream ? input : new BufferedInputStream(input,
+                1 << 16));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a network snapshot");
+        }
+        int version = in.readInt();
+        if (version > VERSION) {
+            throw new IOException("Network snapshot version " + version
+                    + " is newer than this version of Simbrain");
+        }
+        NetworkSnapshot snapshot = new NetworkSnapshot();
+        int neuronCount = in.readInt();
+        snapshot.neuronState = NEURON_STATE.read(in, neuronCount);
+
+        int ruleBlocks = in.readInt();
+        for (int b = 0; b < ruleBlocks; b++) {
+            RuleBlock block = new RuleBlock();
+            block.ruleClass = forName(in.readUTF());
+            block.neurons = new int[in.readInt()];
+            for (int i = 0; i < block.neurons.length; i++) {
+                block.neurons[i] = in.readInt();
+            }
+            block.values = columnsFor(block.ruleClass).read(in,
+                    block.neurons.length);
+            snapshot.ruleBlocks.add(block);
+        }
+
+        int synapseBlocks = in.readInt();
+        for (int b = 0; b < synapseBlocks; b++) {
+            SynapseBlock block = new SynapseBlock();
+            block.ruleClass = forName(in.readUTF());
+            String responder = in.readUTF();
+            block.responderClass = responder.isEmpty() ? null
+                    : forName(responder);
+            int count = in.readInt();
+            block.sources = new int[count];
+            block.targets = new int[count];
+            block.ordinals = new int[count];
+            for (int i = 0; i < count; i++) {
+                block.sources[i] = in.readInt();
+            }
+            for (int i = 0; i < count; i++) {
+                block.targets[i] = in.readInt();
+            }
+            for (int i = 0; i < count; i++) {
+                block.ordinals[i] = in.readInt();
+            }
+            block.synapses = SYNAPSE.read(in, count);
+            block.rules = columnsFor(block.ruleClass).read(in, count);
+            if (block.responderClass != null) {
+                block.responders = columnsFor(block.responderClass).read(in,
+                        count);
+            }
+            snapshot.synapseBlocks.add(block);
+        }
+
+        if (version >= 2) {
+            int groupBlocks = in.readInt();
+            for (int b = 0; b < groupBlocks; b++) {
+                GroupBlock block = new GroupBlock();
+                block.group = in.readInt();
+                int count = in.readInt();
+                block.sources = new int[count];
+                block.targets = new int[count];
+                block.strengths = new double[count];
+                for (int i = 0; i < count; i++) {
+                    block.sources[i] = in.readInt();
+                }
+                for (int i = 0; i < count; i++) {
+                    block.targets[i] = in.readInt();
+                }
+                for (int i = 0; i < count; i++) {
+                    block.strengths[i] = in.readDouble();
+                }
+                snapshot.groupBlocks.add(block);
+            }
+        }
+
+        Network network;
+        READING.set(snapshot);
+        try {
+            network = (Network) getManifestXStream().fromXML(in);
+        } finally {
+            READING.remove();
+        }
+        if (snapshot.error != null) {
+            throw snapshot.error;
+        }
+        return network;
+    }
+
+    /**
+     * @param rule a rule
+     * @return true if the rule can be written as columns
+     */
+    private static boolean fits(final Object rule) {
+        FieldColumns columns = FieldColumns.forRule(rule.getClass());
+        return columns != null && columns.fits(rule);
+    }
+
+    /**
+     * @param name a class name
+     * @return the class
+     * @throws IOException if there is no such class
+     */
+    private static Class<?> forName(final String name) throws IOException {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unknown class in network snapshot: "
+                    + name, e);
+        }
+    }
+
+    /**
+     * @param clazz a rule class
+     * @return its columns
+     * @throws IOException if the class can no longer be read from columns
+     */
+    private static FieldColumns columnsFor(final Class<?> clazz)
+            throws IOException {
+        FieldColumns columns = FieldColumns.forRule(clazz);
+        if (columns == null) {
+            throw new IOException(clazz.getName()
+                    + " can not be read from a network snapshot");
+        }
+        return columns;
+    }
+
+    /**
+     * Apply the columns of the snapshot being read on this thread, if any,
+     * to a network that has just been unmarshalled from its manifest. Called
+     * first thing when a network is resolved.
+     *
+     * @param network the network
+     */
+    static void resolve(final Network network) {
+        NetworkSnapshot snapshot = READING.get();
+        if (snapshot == null) {
+            return;
+        }
+        READING.remove();
+        try {
+            snapshot.apply(network);
+        } catch (IOException e) {
+            snapshot.error = e;
+        }
+    }
+
+    /**
+     * Restore what the columns hold.
+     *
+     * @param network the network read from the manifest
+     * @throws IOException if the columns do not fit the network
+     */
+    private void apply(final Network network) throws IOException {
+        List<Neuron> neurons = network.getFlatNeuronList();
+        for (int i = 0; i < neurons.size(); i++) {
+            neuronState.apply(i, neurons.get(i));
+        }
+        for (RuleBlock block : ruleBlocks) {
+            for (int i = 0; i < block.neurons.length; i++) {
+                NeuronUpdateRule rule = (NeuronUpdateRule) FieldColumns
+                        .newInstance(block.ruleClass);
+                block.values.apply(i, rule);
+                neurons.get(block.neurons[i]).setUpdateRuleField(rule);
+            }
+        }
+        int total = network.getSynapseSet().size();
+        for (SynapseBlock block : synapseBlocks) {
+            total += block.sources.length;
+        }
+        Synapse[] ordered = new Synapse[total];
+        for (SynapseBlock block : synapseBlocks) {
+            boolean stateless = FieldColumns.forRule(block.ruleClass)
+                    .getFields().isEmpty();
+            SynapseUpdateRule shared = (SynapseUpdateRule) FieldColumns
+                    .newInstance(block.ruleClass);
+            for (int i = 0; i < block.sources.length; i++) {
+                SynapseUpdateRule rule = shared;
+                if (!stateless) {
+                    rule = (SynapseUpdateRule) FieldColumns
+                            .newInstance(block.ruleClass);
+                    block.rules.apply(i, rule);
+                }
+                SpikeResponder responder = null;
+                if (block.responderClass != null) {
+                    responder = (SpikeResponder) FieldColumns
+                            .newInstance(block.responderClass);
+                    block.responders.apply(i, responder);
+                }
+                Synapse synapse = new Synapse(network, neurons
+                        .get(block.sources[i]), neurons.get(block.targets[i]),
+                        rule, responder);
+                block.synapses.apply(i, synapse);
+                int ordinal = block.ordinals[i];
+                if (ordinal < 0 || ordinal >= total
+                        || ordered[ordinal] != null) {
+                    throw new IOException("Bad synapse position " + ordinal
+                            + " in network snapshot");
+                }
+                ordered[ordinal] = synapse;
+            }
+        }
+        // Synapses from the manifest fill the gaps, in their saved order.
+        // Fan-in and fan-out are rebuilt from this as the network resolves.
+        int gap = 0;
+        for (Synapse synapse : network.getSynapseSet()) {
+            while (ordered[gap] != null) {
+                gap++;
+            }
+            ordered[gap] = synapse;
+        }
+        network.getSynapseSet().clear();
+        network.getSynapseSet().addAll(Arrays.asList(ordered));
+
+        // Synapse groups rebuild their synapses from these as they resolve
+        List<SynapseGroup> groups = network.getSynapseGroups();
+        for (GroupBlock block : groupBlocks) {
+            if (block.group < 0 || block.group >= groups.size()) {
+                throw new IOException("Bad synapse group " + block.group
+                        + " in network snapshot");
+            }
+            SynapseGroup group = groups.get(block.group);
+            int numSources = group.getSourceNeuronGroup().size();
+            int numTargets = group.getTargetNeuronGroup().size();
+            for (int i = 0; i < block.sources.length; i++) {
+                if (block.sources[i] < 0 || block.sources[i] >= numSources
+                        || block.targets[i] < 0
+                        || block.targets[i] >= numTargets) {
+                    throw new IOException("Bad connection in synapse group "
+                            + group.getLabel() + " in network snapshot");
+                }
+            }
+            group.setConnectionColumns(block.sources, block.targets,
+                    block.strengths);
+        }
+    }
+
+    /**
+     * Neuron update rules of one class.
+     */
+    private static final class RuleBlock {
+
+        /** Class of the rules. */
+        private Class<?> ruleClass;
+
+        /** Indices of the neurons with the rules. */
+        private int[] neurons;
+
+        /** Values of the rules' fields. */
+        private FieldColumns.Values values;
+    }
+
+    /**
+     * Loose synapses with one class of learning rule and spike responder.
+     */
+    private static final class SynapseBlock {
+
+        /** Class of the learning rules. */
+        private Class<?> ruleClass;
+
+        /** Class of the spike responders, or null. */
+        private Class<?> responderClass;
+
+        /** Indices of the source neurons. */
+        private int[] sources;
+
+        /** Indices of the target neurons. */
+        private int[] targets;
+
+        /** Positions of the synapses among all loose synapses. */
+        private int[] ordinals;
+
+        /** Values of the synapses' fields. */
+        private FieldColumns.Values synapses;
+
+        /** Values of the learning rules' fields. */
+        private FieldColumns.Values rules;
+
+        /** Values of the spike responders' fields, or null. */
+        private FieldColumns.Values responders;
+    }
+
+    /**
+     * The connections of a synapse group saved at the group level.
+     */
+    private static final class GroupBlock {
+
+        /** Index of the group among the network's synapse groups. */
+        private int group;
+
+        /** Indices of the source neurons in the group's source group. */
+        private int[] sources;
+
+        /** Indices of the target neurons in the group's target group. */
+        private int[] targets;
+
+        /** Strengths of the connections. */
+        private double[] strengths;
+    }
+
+}
@@ -27,10 +27,13 @@ import org.simbrain.network.groups.Group;
 import org.simbrain.network.listeners.GroupAdapter;
 import org.simbrain.network.listeners.NetworkEvent;
 import org.simbrain.network.update_actions.BufferedUpdate;
+import org.simbrain.network.update_actions.CompiledUpdate;
 import org.simbrain.network.update_actions.ConcurrentBufferedUpdate;
+import org.simbrain.network.update_actions.EventDrivenUpdate;
 import org.simbrain.network.update_actions.CustomUpdate;
 import org.simbrain.network.update_actions.PriorityUpdate;
 import org.simbrain.network.update_actions.UpdateGroup;
+import org.simbrain.network.update_actions.WholeNetworkUpdate;
 
 /**
  * Manage network updates. Maintains a list of actions that are updated in the
@@ -84,8 +87,26 @@ public class NetworkUpdateManager {
             NetworkUpdateAction nua = actions.next();
             if (nua instanceof ConcurrentBufferedUpdate) {
                 actions.remove();
-                actionList.add(ConcurrentBufferedUpdate
-                        .createConcurrentBufferedUpdate(network));
+                actionList.add(attach(ConcurrentBufferedUpdate
+                        .createConcurrentBufferedUpdate(network)));
+                break;
+            }
+        }
+        actions = actionList.iterator();
+        while (actions.hasNext()) {
+            if (actions.next() instanceof CompiledUpdate) {
+                actions.remove();
+                actionList.add(
+                        attach(CompiledUpdate.createCompiledUpdate(network)));
+                break;
+            }
+        }
+        actions = actionList.iterator();
+        while (actions.hasNext()) {
+            if (actions.next() instanceof EventDrivenUpdate) {
+                actions.remove();
+                actionList.add(attach(
+                        EventDrivenUpdate.createEventDrivenUpdate(network)));
                 break;
             }
         }
@@ -119,7 +140,8 @@ public class NetworkUpdateManager {
     }
 
     /**
-     * Returns a list of network update actions that can be added.
+     * Returns a list of network update actions that can be added. Actions
+     * which listen to the network only register their listeners once added.
      *
      * @return available action list
      */
@@ -132,6 +154,9 @@ public class NetworkUpdateManager {
         availableActionList.add(new PriorityUpdate(network));
         availableActionList.add(ConcurrentBufferedUpdate
                 .createConcurrentBufferedUpdate(network));
+        availableActionList.add(CompiledUpdate.createCompiledUpdate(network));
+        availableActionList
+                .add(EventDrivenUpdate.createEventDrivenUpdate(network));
 
         // Add update actions for all groups available
         for (Group group : network.getGroupList()) {
@@ -213,7 +238,7 @@ public class NetworkUpdateManager {
      *            the action to add.
      */
     public void addAction(NetworkUpdateAction action) {
-        actionList.add(action);
+        actionList.add(attach(action));
         for (UpdateManagerListener listener : listeners) {
             listener.actionAdded(action);
         }
@@ -226,7 +251,9 @@ public class NetworkUpdateManager {
      *            the action to completely remove
      */
     public void removeAction(NetworkUpdateAction action) {
-        actionList.remove(action);
+        if (actionList.remove(action)) {
+            detach(action);
+        }
         for (UpdateManagerListener listener : listeners) {
             listener.actionRemoved(action);
         }
@@ -262,6 +289,7 @@ public class NetworkUpdateManager {
      */
     public void clear() {
         for (NetworkUpdateAction action : actionList) {
+            detach(action);
             for (UpdateManagerListener l : listeners) {
                 l.actionRemoved(action);
             }
@@ -269,4 +297,28 @@ public class NetworkUpdateManager {
         actionList.clear();
     }
 
+    /**
+     * Register the listeners of an action which updates the whole network.
+     *
+     * @param action an action being added to the list
+     * @return the action
+     */
+    private static NetworkUpdateAction attach(NetworkUpdateAction action) {
+        if (action instanceof WholeNetworkUpdate) {
+            ((WholeNetworkUpdate) action).addListeners();
+        }
+        return action;
+    }
+
+    /**
+     * Remove the listeners of an action which updates the whole network.
+     *
+     * @param action an action removed from the list
+     */
+    private static void detach(NetworkUpdateAction action) {
+        if (action instanceof WholeNetworkUpdate) {
+            ((WholeNetworkUpdate) action).removeListeners();
+        }
+    }
+
 }
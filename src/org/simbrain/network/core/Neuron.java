@@ -152,6 +152,14 @@ public class Neuron {
      * values can be useful in scripts.
      */
     private double auxValue;
+
+    /**
+     * If true, the post-synaptic responses of this neuron's afferent synapses
+     * are being supplied in its input value by an event driven update (see
+     * {@link org.simbrain.network.update_actions.EventDrivenUpdate}), so
+     * {@link #getSynapticInput()} does not compute them from the fan-in.
+     */
+    private boolean synapticInputExternal;
     
     /**
      * Construct a neuron with all default values in the specified network.
@@ -310,6 +318,17 @@ public class Neuron {
         }
     }
 
+    /**
+     * Set the update rule without re-initializing spike responders or firing
+     * events. Used by {@link NetworkSnapshot}, which takes rules out of
+     * neurons while writing the manifest and puts them back while reading.
+     *
+     * @param updateRule the rule, or null
+     */
+    void setUpdateRuleField(final NeuronUpdateRule updateRule) {
+        this.updateRule = updateRule;
+    }
+
     /**
      * Updates neuron.
      */
@@ -493,6 +512,9 @@ public class Neuron {
      * neuron.
      */
     public double getSynapticInput() {
+        if (synapticInputExternal) {
+            return inputValue;
+        }
         double wtdSum = inputValue;
         for (int i = 0, n = fanIn.size(); i < n; i++) {
         	wtdSum += fanIn.get(i).calcPSR();
@@ -663,6 +685,26 @@ public class Neuron {
         this.inputValue = inputValue;
     }
 
+    /**
+     * @param synapticInputExternal whether post-synaptic responses are
+     *            supplied in this neuron's input value rather than computed
+     *            from its fan-in by {@link #getSynapticInput()}
+     */
+    public void setSynapticInputExternal(final boolean synapticInputExternal) {
+        this.synapticInputExternal = synapticInputExternal;
+    }
+
+    /**
+     * Add to the input value of the neuron. Used by sources of input, like
+     * compressed synapse groups, which accumulate into the same "external
+     * input" as other components.
+     *
+     * @param toAdd the amount to add to the input value
+     */
+    public void addInputValue(final double toAdd) {
+        this.inputValue += toAdd;
+    }
+
     /**
      * The name of the update rule of this neuron; it's "type". Used via
      * reflection for consistency checking in the gui. (Open multiple neurons
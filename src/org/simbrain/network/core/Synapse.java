@@ -253,6 +253,28 @@ public class Synapse {
         isTemplate = source == null;
     }
 
+    /**
+     * Construct a synapse read from a {@link NetworkSnapshot}. The synapse is
+     * not yet in its neurons' fan-in and fan-out, which are rebuilt when the
+     * network is resolved.
+     *
+     * @param parent parent network
+     * @param source source neuron
+     * @param target target neuron
+     * @param learningRule update rule for this synapse
+     * @param spikeResponder spike responder, or null
+     */
+    Synapse(final Network parent, final Neuron source, final Neuron target,
+            final SynapseUpdateRule learningRule,
+            final SpikeResponder spikeResponder) {
+        this.parentNetwork = parent;
+        this.source = source;
+        this.target = target;
+        this.learningRule = learningRule;
+        this.spikeResponder = spikeResponder;
+        isTemplate = false;
+    }
+
     /**
      * Copy a synapse with a specified new parent.
      *
@@ -206,7 +206,7 @@ public final class NetworkDesktopComponent extends
     private boolean showUncompressedSynapseGroupWarning() {
         boolean showPanel = false;
         for (SynapseGroup group : networkPanel.getNetwork().getSynapseGroups()) {
-            if (group.getAllSynapses().size() > saveWarningThreshold) {
+            if (group.size() > saveWarningThreshold) {
                 if (!group.isUseGroupLevelSettings()) {
                     showPanel = true;
                 }
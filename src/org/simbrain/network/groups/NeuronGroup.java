@@ -39,6 +39,7 @@ import org.simbrain.network.layouts.Layout;
 import org.simbrain.network.layouts.LineLayout;
 import org.simbrain.network.layouts.LineLayout.LineOrientation;
 import org.simbrain.network.neuron_update_rules.interfaces.BiasedUpdateRule;
+import org.simbrain.network.util.ActivationRecorder;
 import org.simbrain.util.Utils;
 import org.simbrain.util.math.SimbrainMath;
 
@@ -114,6 +115,12 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
     /** The output stream which writes activation values to a file.*/
     private PrintWriter valueWriter;
 
+    /**
+     * Records activations to a binary file in the background, when recording
+     * to a file with the {@link ActivationRecorder#FILE_EXTENSION} extension.
+     */
+    private volatile ActivationRecorder recorder;
+
     /** Whether or not this group is in a state that allows recording. */
     private boolean recording;
 
@@ -304,6 +311,9 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
             // Surrounded by checks, so actually safe.
             readNextInputUnsafe();
         } else {
+            for (SynapseGroup sg : incomingSgs) {
+                sg.applyCompressedInput();
+            }
             Network.updateNeurons(neuronList);
         }
         if (isRecording()) {
@@ -369,6 +379,11 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      * {@link #recordAsSpikes} to true, since {@link #writeActsToFile()} writes
      * activations differently if the neuron group contains only spiking
      * neurons.
+     * <p>
+     * If the file has the {@link ActivationRecorder#FILE_EXTENSION} extension
+     * the activations are recorded in binary by an
+     * {@link ActivationRecorder}, which writes them in the background;
+     * otherwise they are written as text.
      *
      * @param outputFile the file to write the activations to 
      */
@@ -383,11 +398,18 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
         recordAsSpikes = spikeRecord;
         recording = true;
         try {
-            if (valueWriter != null) {
-                valueWriter.close();
+            closeRecordingStreams();
+            if (outputFile.getName().endsWith("."
+                    + ActivationRecorder.FILE_EXTENSION)) {
+                Network net = getParentNetwork();
+                recorder = new ActivationRecorder(outputFile, getLabel(),
+                        size(), recordAsSpikes, net.getTimeStep(),
+                        Network.getUnits()[net.getTimeType()
+                                == Network.TimeType.DISCRETE ? 1 : 0]);
+            } else {
+                FileWriter fw = new FileWriter(outputFile);
+                valueWriter = new PrintWriter(fw);
             }
-            FileWriter fw = new FileWriter(outputFile);
-            valueWriter = new PrintWriter(fw);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -399,13 +421,30 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      * Halts recording of activations. Closes all involved output streams.
      */
     public void stopRecording() {
+        closeRecordingStreams();
+        recording = false;
+        this.getParentNetwork().fireGroupParametersChanged(this);
+        this.getParentNetwork().fireGroupChanged(this, "Recording Stopped");
+    }
+
+    /**
+     * Closes the output stream or binary recorder, if any, waiting for the
+     * recorder to write what it holds.
+     */
+    private void closeRecordingStreams() {
         if (valueWriter != null) {
             valueWriter.close();
             valueWriter = null;
         }
-        recording = false;
-        this.getParentNetwork().fireGroupParametersChanged(this);
-        this.getParentNetwork().fireGroupChanged(this, "Recording Stopped");
+        ActivationRecorder r = recorder;
+        recorder = null;
+        if (r != null) {
+            try {
+                r.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
     }
 
     /**
@@ -415,9 +454,20 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      * methods writes the activations to a file as spike trains in [neuron
      * id][spk time] couplets. Otherwise it writes the neurons' activation
      * values as a state matrix to the file. Flushes the output stream every
-     * {@link #FLUSH_FREQUENCY} invocations.
+     * {@link #FLUSH_FREQUENCY} invocations. When recording in binary, the
+     * activations or spikes are only copied, and written in the background.
      */
     public void writeActsToFile() {
+        ActivationRecorder r = recorder;
+        if (r != null) {
+            try {
+                r.record(neuronList, getParentNetwork().getTime());
+            } catch (IOException e) {
+                e.printStackTrace();
+                stopRecording();
+            }
+            return;
+        }
         try {
             if (writeCounter >= FLUSH_FREQUENCY) {
                 valueWriter.flush();
@@ -648,6 +698,7 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
         neuronList.add(neuron);
         neuron.setParentGroup(this);
         if (getParentNetwork() != null) {
+            getParentNetwork().invalidateFlatNeuronList();
             neuron.setId(getParentNetwork().getNeuronIdGenerator().getId());
             if (fireEvent) {
                 getParentNetwork().fireNeuronAdded(neuron);
@@ -676,6 +727,9 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      */
     public void removeNeuron(Neuron toDelete) {
         neuronList.remove(toDelete);
+        if (getParentNetwork() != null) {
+            getParentNetwork().invalidateFlatNeuronList();
+        }
         if (isEmpty()) {
             delete();
         }
@@ -1469,6 +1523,9 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      */
     public void clearNeuronList() {
         neuronList.clear();
+        if (getParentNetwork() != null) {
+            getParentNetwork().invalidateFlatNeuronList();
+        }
     }
 
     /**
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2005,2007 The Authors. See http://www.simbrain.net/credits This
+ * program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package org.simbrain.network.groups;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.Synapse;
+
+/**
+ * The weights of a compressed {@link SynapseGroup} stored in compressed sparse
+ * row form, one row per target neuron. For each row the indices (into the
+ * source neuron group) and strengths of the afferent connections are stored
+ * contiguously in primitive arrays, ordered by source index, along with their
+ * delays if any connection has one. A connection costs an int and a double
+ * (plus an int if delays are present) instead of a full {@link Synapse}
+ * object.
+ * <p>
+ * Since the weights are fixed, a delayed connection is equivalent to reading
+ * the source activation from <i>delay</i> updates ago, so delays are handled
+ * with a ring buffer of past source activation vectors rather than a queue
+ * per connection.
+ * <p>
+ * A compressed group's matrix can be read through
+ * {@link SynapseGroup#getSparseMatrix()}; it is only changed by its group.
+ */
+public final class SparseSynapseMatrix {
+
+    /** Offset of each target neuron's row; row i is [rowStart[i], rowStart[i+1]). */
+    private final int[] rowStart;
+
+    /** Index of the source neuron of each connection. */
+    private final int[] sourceIndices;
+
+    /** Strength of each connection. */
+    private final double[] weights;
+
+    /** Delay of each connection, or null if no connection has a delay. */
+    private final int[] delays;
+
+    /**
+     * Past source activation vectors, most recent at {@link #head}. Has one
+     * row if there are no delays.
+     */
+    private final double[][] history;
+
+    /** Index in {@link #history} of the current source activations. */
+    private int head;
+
+    /** Number of connections with a negative strength. */
+    private final int numInhibitory;
+
+    /**
+     * Builds the matrix from synapses connecting the given source and target
+     * neurons.
+     *
+     * @param sources the source neurons, defining the source indices
+     * @param targets the target neurons, defining the rows
+     * @param synapses the synapses to compress
+     */
+    SparseSynapseMatrix(final List<Neuron> sources,
+            final List<Neuron> targets, final Collection<Synapse> synapses) {
+        Map<Neuron, Integer> srcMap = new HashMap<Neuron, Integer>(
+                (int) (sources.size() / 0.75) + 1);
+        Map<Neuron, Integer> tarMap = new HashMap<Neuron, Integer>(
+                (int) (targets.size() / 0.75) + 1);
+        for (int i = 0, n = sources.size(); i < n; i++) {
+            srcMap.put(sources.get(i), i);
+        }
+        for (int i = 0, n = targets.size(); i < n; i++) {
+            tarMap.put(targets.get(i), i);
+        }
+        int nnz = synapses.size();
+        int[] src = new int[nnz];
+        int[] tar = new int[nnz];
+        double[] wts = new double[nnz];
+        int[] dlys = new int[nnz];
+        int maxDelay = 0;
+        int inhib = 0;
+        int k = 0;
+        for (Synapse s : synapses) {
+            src[k] = srcMap.get(s.getSource());
+            tar[k] = tarMap.get(s.getTarget());
+            wts[k] = s.getStrength();
+            dlys[k] = Math.max(0, s.getDelay());
+            maxDelay = Math.max(maxDelay, dlys[k]);
+            if (wts[k] < 0) {
+                inhib++;
+            }
+            k++;
+        }
+        numInhibitory = inhib;
+        // Two stable counting sorts: by source, then by target, so that each
+        // row ends up ordered by source index.
+        int[] bySource = countingSort(src, sources.size(), identity(nnz));
+        int[] order = countingSort(tar, targets.size(), bySource);
+        rowStart = new int[targets.size() + 1];
+        sourceIndices = new int[nnz];
+        weights = new double[nnz];
+        delays = maxDelay == 0 ? null : new int[nnz];
+        for (int i = 0; i < nnz; i++) {
+            int o = order[i];
+            rowStart[tar[o] + 1]++;
+            sourceIndices[i] = src[o];
+            weights[i] = wts[o];
+            if (delays != null) {
+                delays[i] = dlys[o];
+            }
+        }
+        for (int i = 0; i < targets.size(); i++) {
+            rowStart[i + 1] += rowStart[i];
+        }
+        history = new double[maxDelay + 1][sources.size()];
+    }
+
+    /**
+     * @param n length
+     * @return the array 0, 1, ..., n - 1
+     */
+    private static int[] identity(final int n) {
+        int[] id = new int[n];
+        for (int i = 0; i < n; i++) {
+            id[i] = i;
+        }
+        return id;
+    }
+
+    /**
+     * Stable counting sort of a permutation by a key.
+     *
+     * @param keys the key of each element
+     * @param numKeys the number of distinct keys
+     * @param perm the current ordering of the elements
+     * @return the elements of perm reordered by key
+     */
+    private static int[] countingSort(final int[] keys, final int numKeys,
+            final int[] perm) {
+        int[] counts = new int[numKeys + 1];
+        for (int i = 0; i < keys.length; i++) {
+            counts[keys[i] + 1]++;
+        }
+        for (int i = 0; i < numKeys; i++) {
+            counts[i + 1] += counts[i];
+        }
+        int[] sorted = new int[perm.length];
+        for (int i = 0; i < perm.length; i++) {
+            sorted[counts[keys[perm[i]]]++] = perm[i];
+        }
+        return sorted;
+    }
+
+    /**
+     * Computes the weighted input from the current source activations to each
+     * target neuron and adds it to that neuron's input value, to be included
+     * in its next update.
+     *
+     * @param sources the source neurons
+     * @param targets the target neurons
+     */
+    void propagate(final List<Neuron> sources, final List<Neuron> targets) {
+        int len = history.length;
+        head = head + 1 == len ? 0 : head + 1;
+        double[] acts = history[head];
+        for (int i = 0, n = acts.length; i < n; i++) {
+            acts[i] = sources.get(i).getActivation();
+        }
+        for (int i = 0, n = rowStart.length - 1; i < n; i++) {
+            double sum = 0;
+            if (delays == null) {
+                for (int k = rowStart[i], end = rowStart[i + 1]; k < end;
+                        k++) {
+                    sum += weights[k] * acts[sourceIndices[k]];
+                }
+            } else {
+                for (int k = rowStart[i], end = rowStart[i + 1]; k < end;
+                        k++) {
+                    int slot = head - delays[k];
+                    if (slot < 0) {
+                        slot += len;
+                    }
+                    sum += weights[k] * history[slot][sourceIndices[k]];
+                }
+            }
+            if (sum != 0) {
+                targets.get(i).addInputValue(sum);
+            }
+        }
+    }
+
+    /**
+     * @return the number of connections
+     */
+    public int size() {
+        return weights.length;
+    }
+
+    /**
+     * @return the number of connections with negative strength
+     */
+    public int getNumInhibitory() {
+        return numInhibitory;
+    }
+
+    /**
+     * @return the number of target neurons (rows)
+     */
+    public int getNumRows() {
+        return rowStart.length - 1;
+    }
+
+    /**
+     * @param row a target neuron index
+     * @return the offset of the first connection in the row
+     */
+    public int getRowStart(final int row) {
+        return rowStart[row];
+    }
+
+    /**
+     * @param row a target neuron index
+     * @return the offset one past the last connection in the row
+     */
+    public int getRowEnd(final int row) {
+        return rowStart[row + 1];
+    }
+
+    /**
+     * @param k a connection offset
+     * @return the source neuron index of the connection
+     */
+    public int getSourceIndex(final int k) {
+        return sourceIndices[k];
+    }
+
+    /**
+     * Multiply all weights by a non-negative factor.
+     *
+     * @param scalar the factor
+     */
+    void scale(final double scalar) {
+        for (int k = 0; k < weights.length; k++) {
+            weights[k] *= scalar;
+        }
+    }
+
+    /**
+     * @param k a connection offset
+     * @return the strength of the connection
+     */
+    public double getWeight(final int k) {
+        return weights[k];
+    }
+
+    /**
+     * @param k a connection offset
+     * @return the delay of the connection
+     */
+    public int getDelay(final int k) {
+        return delays == null ? 0 : delays[k];
+    }
+
+}
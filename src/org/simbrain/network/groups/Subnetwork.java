@@ -420,7 +420,8 @@ public abstract class Subnetwork extends Group {
     public List<Synapse> getFlatSynapseList() {
         List<Synapse> ret = new ArrayList<Synapse>();
         for (SynapseGroup group : synapseGroupList) {
-            ret.addAll(group.getAllSynapses());
+            ret.addAll(group.getExcitatorySynapsesUnsafe());
+            ret.addAll(group.getInhibitorySynapsesUnsafe());
         }
         return Collections.unmodifiableList(ret);
     }
@@ -19,6 +19,7 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -35,6 +36,7 @@ import org.simbrain.network.connections.ConnectionUtilities.SynapseParameterSett
 import org.simbrain.network.connections.Sparse;
 import org.simbrain.network.core.Network;
 import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.NeuronUpdateRule.InputType;
 import org.simbrain.network.core.Synapse;
 import org.simbrain.network.core.SynapseUpdateRule;
 import org.simbrain.network.synapse_update_rules.StaticSynapseRule;
@@ -230,6 +232,39 @@ public class SynapseGroup extends Group {
     /** Whether or not to use the compressed rep or the full rep. */
     private boolean useFullRepOnSave = false;
 
+    /**
+     * Whether the next {@link #preSaveInit()} leaves out the compressed rep,
+     * because a network snapshot saves this group's connections as columns
+     * instead. Not saved.
+     */
+    private boolean saveAsColumns;
+
+    /**
+     * Source indices of the connections read from the columns of a network
+     * snapshot, rebuilt by {@link #postUnmarshallingInit()}; otherwise null.
+     * Not saved.
+     */
+    private int[] columnSources;
+
+    /** Target indices of the connections read from columns. Not saved. */
+    private int[] columnTargets;
+
+    /** Strengths of the connections read from columns. Not saved. */
+    private double[] columnStrengths;
+
+    /**
+     * Whether this group's connections are stored as a sparse matrix instead
+     * of as individual synapse objects. See {@link #setCompressed(boolean)}.
+     */
+    private boolean compressed = false;
+
+    /**
+     * The live representation of this group's connections while it is
+     * compressed, otherwise null. Not saved; rebuilt on opening from the
+     * compressed matrix rep.
+     */
+    private SparseSynapseMatrix sparseMatrix;
+
     /**
      * Completely creates a synapse group between the two neuron groups with all
      * default parameters. This method creates the individual connections.
@@ -417,6 +452,7 @@ public class SynapseGroup extends Group {
      * be called to sort synapses into their appropriate sets.
      */
     public void revalidateSynapseSets() {
+        materialize();
         Iterator<Synapse> exIterator = exSynapseSet.iterator();
         ArrayList<Synapse> exSwitches = new ArrayList<Synapse>(
                 exSynapseSet.size());
@@ -448,6 +484,10 @@ public class SynapseGroup extends Group {
      * call super.update() some time during the custom update.
      */
     public void update() {
+        if (compressed) {
+            // Only static synapses can be compressed
+            return;
+        }
         if (useGroupLevelSettings) {
             if (!exStatic) { // Only iterate if excitatory synapses aren't
                              // static
@@ -492,6 +532,9 @@ public class SynapseGroup extends Group {
 
     /** {@inheritDoc} */
     public int size() {
+        if (compressed) {
+            return sparseMatrix.size();
+        }
         return exSynapseSet.size() + inSynapseSet.size();
     }
 
@@ -500,6 +543,9 @@ public class SynapseGroup extends Group {
      */
     @Override
     public boolean isEmpty() {
+        if (compressed) {
+            return sparseMatrix.size() == 0;
+        }
         return exSynapseSet.isEmpty() && inSynapseSet.isEmpty();
     }
 
@@ -592,6 +638,7 @@ public class SynapseGroup extends Group {
      * @return the deleted synapse
      */
     public Synapse removeSynapse(Synapse toDelete) {
+        materialize();
         exSynapseSet.remove(toDelete);
         inSynapseSet.remove(toDelete);
         toDelete.getSource().removeEfferent(toDelete);
@@ -623,6 +670,8 @@ public class SynapseGroup extends Group {
      * synapses in this group.
      */
     public void clear() {
+        compressed = false;
+        sparseMatrix = null;
         for (Synapse toDelete : exSynapseSet) {
             // Remove references to this synapse from parent neurons
             toDelete.getSource().removeEfferent(toDelete);
@@ -678,6 +727,7 @@ public class SynapseGroup extends Group {
      *            this group.
      */
     public void addNewExcitatorySynapse(final Synapse synapse) {
+        materialize();
         getParentNetwork().fireGroupChanged(this, this, "synapseAdded");
         synapse.setId(getParentNetwork().getSynapseIdGenerator().getId());
         synapse.setParentGroup(this);
@@ -705,6 +755,7 @@ public class SynapseGroup extends Group {
      *            this group.
      */
     public void addNewInhibitorySynapse(final Synapse synapse) {
+        materialize();
         getParentNetwork().fireGroupChanged(this, this, "synapseAdded");
         synapse.setId(getParentNetwork().getSynapseIdGenerator().getId());
         synapse.setParentGroup(this);
@@ -760,6 +811,7 @@ public class SynapseGroup extends Group {
      * @param synapse the synapse to add.
      */
     public void addExcitatorySynapseUnsafe(final Synapse synapse) {
+        materialize();
         exSynapseSet.add(synapse);
         excitatoryRatio = exSynapseSet.size() / (double) size();
         if (getParentNetwork() != null) {
@@ -776,6 +828,7 @@ public class SynapseGroup extends Group {
      * @param synapse the synapse to add.
      */
     public void addInhibitorySynapseUnsafe(final Synapse synapse) {
+        materialize();
         inSynapseSet.add(synapse);
         excitatoryRatio = exSynapseSet.size() / (double) size();
         if (getParentNetwork() != null) {
@@ -801,6 +854,7 @@ public class SynapseGroup extends Group {
      */
     public void setExcitatoryRatio(double excitatoryRatio)
             throws IllegalArgumentException {
+        materialize();
         if (excitatoryRatio > 1 || excitatoryRatio < 0) {
             throw new IllegalArgumentException("The parameter"
                     + " 'excitatoryRatio' passed to setExcitatoryRatio"
@@ -892,6 +946,10 @@ public class SynapseGroup extends Group {
      *         excitatory synapses divided by the total.
      */
     public double getExcitatoryRatioPrecise() {
+        if (compressed) {
+            return (size() - sparseMatrix.getNumInhibitory())
+                    / (double) size();
+        }
         return exSynapseSet.size() / (double) size();
     }
 
@@ -910,6 +968,7 @@ public class SynapseGroup extends Group {
      * @return the set of excitatory synapses
      */
     public Set<Synapse> getExcitatorySynapses() {
+        materialize();
         return new HashSet<Synapse>(exSynapseSet);
     }
 
@@ -917,15 +976,56 @@ public class SynapseGroup extends Group {
      * @return the set of inhibitory synapses
      */
     public Set<Synapse> getInhibitorySynapses() {
+        materialize();
         return new HashSet<Synapse>(inSynapseSet);
     }
 
+    /**
+     * Returns a read-only view of the excitatory synapses, which unlike
+     * {@link #getExcitatorySynapses()} neither copies them nor restores the
+     * synapses of a compressed group. It is empty while the group is
+     * compressed; use {@link #getSparseMatrix()} to read its connections.
+     *
+     * @return the excitatory synapses
+     */
+    public Set<Synapse> getExcitatorySynapsesUnsafe() {
+        return Collections.unmodifiableSet(exSynapseSet);
+    }
+
+    /**
+     * Returns a read-only view of the inhibitory synapses, which unlike
+     * {@link #getInhibitorySynapses()} neither copies them nor restores the
+     * synapses of a compressed group. It is empty while the group is
+     * compressed; use {@link #getSparseMatrix()} to read its connections.
+     *
+     * @return the inhibitory synapses
+     */
+    public Set<Synapse> getInhibitorySynapsesUnsafe() {
+        return Collections.unmodifiableSet(inSynapseSet);
+    }
+
+    /**
+     * @return the connections of a compressed group, which must not be kept
+     *         after the group changes, or null if the group is not
+     *         compressed
+     */
+    public SparseSynapseMatrix getSparseMatrix() {
+        return sparseMatrix;
+    }
+
     /**
      * Return weight strengths as a double vector.
      *
      * @return weights
      */
     public double[] getWeightVector() {
+        if (compressed) {
+            double[] ex = getExcitatoryStrengths();
+            double[] in = getInhibitoryStrengths();
+            double[] retArray = Arrays.copyOf(ex, ex.length + in.length);
+            System.arraycopy(in, 0, retArray, ex.length, in.length);
+            return retArray;
+        }
         double[] retArray = new double[size()];
         int i = 0;
         for (Synapse synapse : exSynapseSet) {
@@ -941,6 +1041,9 @@ public class SynapseGroup extends Group {
      * @return the strengths of all the inhibitory synapses as a double array
      */
     public double[] getInhibitoryStrengths() {
+        if (compressed) {
+            return getCompressedStrengths(false);
+        }
         double[] retArray = new double[inSynapseSet.size()];
         int i = 0;
         for (Synapse synapse : inSynapseSet) {
@@ -953,6 +1056,9 @@ public class SynapseGroup extends Group {
      * @return the strengths of all the excitatory synapses as a double array
      */
     public double[] getExcitatoryStrengths() {
+        if (compressed) {
+            return getCompressedStrengths(true);
+        }
         double[] retArray = new double[exSynapseSet.size()];
         int i = 0;
         for (Synapse synapse : exSynapseSet) {
@@ -961,6 +1067,23 @@ public class SynapseGroup extends Group {
         return retArray;
     }
 
+    /**
+     * @param excitatory whether to get the non-negative or negative strengths
+     * @return the strengths of one polarity of a compressed group
+     */
+    private double[] getCompressedStrengths(boolean excitatory) {
+        int numIn = sparseMatrix.getNumInhibitory();
+        double[] retArray = new double[excitatory ? size() - numIn : numIn];
+        int i = 0;
+        for (int k = 0, n = sparseMatrix.size(); k < n; k++) {
+            double w = sparseMatrix.getWeight(k);
+            if ((w >= 0) == excitatory) {
+                retArray[i++] = w;
+            }
+        }
+        return retArray;
+    }
+
     // TODO: Consider putting some of the below methods or part of their bodies
     // into SimbrainMath or Utils
 
@@ -984,16 +1107,26 @@ public class SynapseGroup extends Group {
         for (Neuron n : getSourceNeurons()) {
             sourceMap.put(n, i++);
         }
+        if (compressed) {
+            for (int row = 0; row < sparseMatrix.getNumRows(); row++) {
+                for (int k = sparseMatrix.getRowStart(row), end = sparseMatrix
+                        .getRowEnd(row); k < end; k++) {
+                    weightMatrix[sparseMatrix.getSourceIndex(k)][row] =
+                            sparseMatrix.getWeight(k);
+                }
+            }
+            return weightMatrix;
+        }
         for (Neuron n : getTargetNeurons()) {
             targetMap.put(n, j++);
         }
         // Construct uncompressed matrix from weights
-        for (Synapse s : getExcitatorySynapses()) {
+        for (Synapse s : exSynapseSet) {
             i = sourceMap.get(s.getSource());
             j = targetMap.get(s.getTarget());
             weightMatrix[i][j] = s.getStrength();
         }
-        for (Synapse s : getInhibitorySynapses()) {
+        for (Synapse s : inSynapseSet) {
             i = sourceMap.get(s.getSource());
             j = targetMap.get(s.getTarget());
             weightMatrix[i][j] = s.getStrength();
@@ -1035,9 +1168,19 @@ public class SynapseGroup extends Group {
         // source neuron index in a weight matrix, j is the target index and
         // w is the synapse strength.
         int k = 0;
-        for (Synapse s : getAllSynapses()) {
-            pairs[k++] = new double[] { sourceMap.get(s.getSource()),
-                    targetMap.get(s.getTarget()), s.getStrength() };
+        if (compressed) {
+            for (int row = 0; row < sparseMatrix.getNumRows(); row++) {
+                for (int l = sparseMatrix.getRowStart(row), end = sparseMatrix
+                        .getRowEnd(row); l < end; l++) {
+                    pairs[k++] = new double[] { sparseMatrix.getSourceIndex(l),
+                            row, sparseMatrix.getWeight(l) };
+                }
+            }
+        } else {
+            for (Synapse s : getAllSynapses()) {
+                pairs[k++] = new double[] { sourceMap.get(s.getSource()),
+                        targetMap.get(s.getTarget()), s.getStrength() };
+            }
         }
         // Create a comparator to sort synapse table entries by source, then
         // by column.
@@ -1232,6 +1375,7 @@ public class SynapseGroup extends Group {
      *         it did not and thus failed to set the strength value.
      */
     public boolean setSynapseStrength(Synapse synapse, double newWeight) {
+        materialize();
         if (synapse.getStrength() >= 0 && exSynapseSet.contains(synapse)) {
             synapse.setStrength(newWeight);
             if (newWeight < 0) {
@@ -1253,6 +1397,32 @@ public class SynapseGroup extends Group {
         return false;
     }
 
+    /**
+     * Multiplies the strength of every synapse in this group by a scalar,
+     * without materializing a compressed group. Bounds are ignored, as with
+     * {@link Synapse#forceSetStrength(double)}.
+     *
+     * @param scalar the factor, which must not be negative so that excitatory
+     *            and inhibitory synapses keep their sign
+     * @throws IllegalArgumentException if the scalar is negative
+     */
+    public void scaleWeights(final double scalar) {
+        if (scalar < 0) {
+            throw new IllegalArgumentException("Cannot scale weights by a "
+                    + "negative value: " + scalar);
+        }
+        if (compressed) {
+            sparseMatrix.scale(scalar);
+            return;
+        }
+        for (Synapse s : exSynapseSet) {
+            s.forceSetStrength(s.getStrength() * scalar);
+        }
+        for (Synapse s : inSynapseSet) {
+            s.forceSetStrength(s.getStrength() * scalar);
+        }
+    }
+
     /**
      * Randomizes all the synapses according to their corresponding randomizers.
      * {@link #randomizeExcitatoryConnections()},
@@ -1271,6 +1441,7 @@ public class SynapseGroup extends Group {
      * {@link #revalidateSynapseSets()} first.
      */
     public void randomizeExcitatoryConnections() {
+        materialize();
         ConnectionUtilities.randomizeExcitatorySynapsesUnsafe(exSynapseSet,
                 exciteRand);
     }
@@ -1283,6 +1454,7 @@ public class SynapseGroup extends Group {
      * {@link #revalidateSynapseSets()} first.
      */
     public void randomizeInhibitoryConnections() {
+        materialize();
         ConnectionUtilities.randomizeInhibitorySynapsesUnsafe(inSynapseSet,
                 inhibRand);
     }
@@ -1367,7 +1539,7 @@ public class SynapseGroup extends Group {
      * @return the ratio of synapses in this group that are excitatory.
      */
     public double calculateExcitatoryRatio() {
-        excitatoryRatio = exSynapseSet.size() / (double) size();
+        excitatoryRatio = getExcitatoryRatioPrecise();
         if (Double.isNaN(excitatoryRatio)) {
             return 0;
         }
@@ -1415,10 +1587,16 @@ public class SynapseGroup extends Group {
     }
 
     public boolean hasExcitatory() {
+        if (compressed) {
+            return sparseMatrix.size() > sparseMatrix.getNumInhibitory();
+        }
         return !exSynapseSet.isEmpty();
     }
 
     public boolean hasInhibitory() {
+        if (compressed) {
+            return sparseMatrix.getNumInhibitory() > 0;
+        }
         return !inSynapseSet.isEmpty();
     }
 
@@ -1804,6 +1982,9 @@ public class SynapseGroup extends Group {
      */
     public <T> T checkSynapses(SynapseParameterGetter<T> check,
             Polarity polarity) {
+        if (!useGroupLevelSettings) {
+            materialize();
+        }
         Collection<Synapse> synapses;
         Synapse prototype;
         if (Polarity.EXCITATORY == polarity) {
@@ -1849,6 +2030,7 @@ public class SynapseGroup extends Group {
      */
     public <T> void setSynapses(SynapseParameterSetter<T> set, T val,
             Polarity polarity) {
+        materialize();
         Collection<Synapse> synapses;
         if (Polarity.EXCITATORY == polarity) {
             synapses = exSynapseSet;
@@ -1874,6 +2056,64 @@ public class SynapseGroup extends Group {
         this.useFullRepOnSave = useFullRepOnSave;
     }
 
+    /**
+     * @return whether this group is saved at the group level, as its
+     *         connection strengths and prototype synapses, rather than
+     *         synapse by synapse
+     */
+    public boolean isSavedAtGroupLevel() {
+        return !isUseFullRepOnSave()
+                && (isUseGroupLevelSettings() || compressed);
+    }
+
+    /**
+     * Returns the connections of this group in compressed sparse row form,
+     * without restoring the synapses of a compressed group. Used by network
+     * snapshots to save the connections of groups saved at the group level as
+     * columns.
+     *
+     * @return the connections, which are shared with the group if it is
+     *         compressed
+     */
+    public SparseSynapseMatrix getConnectionMatrix() {
+        if (compressed) {
+            return sparseMatrix;
+        }
+        List<Synapse> synapses = new ArrayList<Synapse>(size());
+        synapses.addAll(exSynapseSet);
+        synapses.addAll(inSynapseSet);
+        return new SparseSynapseMatrix(sourceNeuronGroup.getNeuronListUnsafe(),
+                targetNeuronGroup.getNeuronListUnsafe(), synapses);
+    }
+
+    /**
+     * Sets whether the next {@link #preSaveInit()} leaves the compressed
+     * matrix rep out of a group saved at the group level, because its
+     * connections are saved as the columns of a network snapshot instead.
+     * Reset by {@link #postSaveReInit()}.
+     *
+     * @param saveAsColumns whether to leave out the compressed rep
+     */
+    public void setSaveAsColumns(boolean saveAsColumns) {
+        this.saveAsColumns = saveAsColumns;
+    }
+
+    /**
+     * Sets the connections, read from the columns of a network snapshot, that
+     * {@link #postUnmarshallingInit()} rebuilds a group saved at the group
+     * level from.
+     *
+     * @param sources the source neuron index of each connection
+     * @param targets the target neuron index of each connection
+     * @param strengths the strength of each connection
+     */
+    public void setConnectionColumns(int[] sources, int[] targets,
+            double[] strengths) {
+        columnSources = sources;
+        columnTargets = targets;
+        columnStrengths = strengths;
+    }
+
     /**
      * Perform operations required before saving a synapse group.
      */
@@ -1882,16 +2122,13 @@ public class SynapseGroup extends Group {
             preSaveInitFull();
             return;
         }
-        if (isUseGroupLevelSettings()) {
-            long[] rowCompression = getRowCompressedMatrixRepresentation();
-            // long start = System.nanoTime();
-            // System.out.println("Begin Serialization... ");
-            compressedMatrixRep = GroupSerializer.rowCompMat2CompByteArray(
-                    rowCompression, Precision.FLOAT_32);
-            // long end = System.nanoTime();
-            // System.out.println("Serialization Time: "
-            // + SimbrainMath.roundDouble((end - start) / Math.pow(10, 9),
-            // 4) + " secs.");
+        // A compressed group only has a compressed representation
+        if (isUseGroupLevelSettings() || compressed) {
+            if (saveAsColumns) {
+                compressedMatrixRep = null;
+            } else {
+                compressMatrixRep();
+            }
 
             // Don't explicitly save the synapses.
             inTemp = inSynapseSet;
@@ -1904,6 +2141,21 @@ public class SynapseGroup extends Group {
         }
     }
 
+    /**
+     * Fills in the compressed matrix rep from the connections.
+     */
+    private void compressMatrixRep() {
+        long[] rowCompression = getRowCompressedMatrixRepresentation();
+        // long start = System.nanoTime();
+        // System.out.println("Begin Serialization... ");
+        compressedMatrixRep = GroupSerializer.rowCompMat2CompByteArray(
+                rowCompression, Precision.FLOAT_32);
+        // long end = System.nanoTime();
+        // System.out.println("Serialization Time: "
+        // + SimbrainMath.roundDouble((end - start) / Math.pow(10, 9),
+        // 4) + " secs.");
+    }
+
     /**
      * The pre-save init to be used to save all relevant synapse parameters in
      * the byte array.
@@ -1953,7 +2205,9 @@ public class SynapseGroup extends Group {
      * process sets the synapse sets to null.
      */
     public void postSaveReInit() {
-        if (isUseGroupLevelSettings()) {
+        saveAsColumns = false;
+        // Synapses are set aside whenever they are not saved one by one
+        if (exSynapseSet == null) {
             inSynapseSet = inTemp;
             exSynapseSet = exTemp;
             inTemp = null;
@@ -1967,14 +2221,34 @@ public class SynapseGroup extends Group {
     public void postUnmarshallingInit() {
 
         // Rebuild weight matrix if needed.
-        if (this.isUseGroupLevelSettings() && compressedMatrixRep != null) {
+        if ((this.isUseGroupLevelSettings() || compressed)
+                && (compressedMatrixRep != null || columnSources != null)) {
+            boolean wasCompressed = compressed;
+            compressed = false;
             exSynapseSet = new HashSet<Synapse>();
             inSynapseSet = new HashSet<Synapse>();
-            GroupDeserializer.reconstructCompressedSynapseStrengths(
-                    this.compressedMatrixRep, this);
-            this.compressedMatrixRep = null;
+            if (columnSources != null) {
+                List<Neuron> src = sourceNeuronGroup.getNeuronListUnsafe();
+                List<Neuron> tar = targetNeuronGroup.getNeuronListUnsafe();
+                for (int k = 0; k < columnSources.length; k++) {
+                    Synapse s = new Synapse(src.get(columnSources[k]),
+                            tar.get(columnTargets[k]));
+                    s.setStrength(columnStrengths[k]);
+                    addSynapseUnsafe(s);
+                }
+                columnSources = null;
+                columnTargets = null;
+                columnStrengths = null;
+            } else {
+                GroupDeserializer.reconstructCompressedSynapseStrengths(
+                        this.compressedMatrixRep, this);
+                this.compressedMatrixRep = null;
+            }
             setAndConformToTemplate(excitatoryPrototype, Polarity.EXCITATORY);
             setAndConformToTemplate(inhibitoryPrototype, Polarity.INHIBITORY);
+            if (wasCompressed && canCompress()) {
+                setCompressed(true);
+            }
         } else if (fullSynapseRep != null) {
             exSynapseSet = new HashSet<Synapse>();
             inSynapseSet = new HashSet<Synapse>();
@@ -2036,6 +2310,153 @@ public class SynapseGroup extends Group {
         }
     }
 
+    /**
+     * @return whether this group's connections are stored as a sparse matrix
+     *         rather than as individual synapse objects
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Checks whether this group can be compressed, which requires every
+     * synapse in it to be enabled and static (either frozen or using
+     * {@link StaticSynapseRule}), and its spike responder to be unused, which
+     * is the case if it has none or its target takes weighted input.
+     * Compressed connections always deliver weighted input.
+     *
+     * @return true if {@link #setCompressed(boolean)} can be used to compress
+     *         this group
+     */
+    public boolean canCompress() {
+        if (compressed) {
+            return true;
+        }
+        for (Synapse s : exSynapseSet) {
+            if (!isCompressible(s)) {
+                return false;
+            }
+        }
+        for (Synapse s : inSynapseSet) {
+            if (!isCompressible(s)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param s a synapse
+     * @return whether the synapse can be represented by a weight and a delay
+     */
+    private static boolean isCompressible(Synapse s) {
+        return s.isEnabled()
+                && (s.isFrozen()
+                        || s.getLearningRule() instanceof StaticSynapseRule)
+                && (s.getSpikeResponder() == null
+                        || s.getTarget().getUpdateRule()
+                                .getInputType() == InputType.WEIGHTED);
+    }
+
+    /**
+     * Sets whether this group's connections are stored as a
+     * {@link SparseSynapseMatrix} instead of as individual synapse objects.
+     * <p>
+     * Compressing a group detaches its synapses from their neurons and keeps
+     * only their strengths and delays in primitive arrays. The input from the
+     * group to its target neurons is then computed as a single sparse
+     * matrix-vector product by {@link #applyCompressedInput()}, which is
+     * called before the target neuron group updates. Methods which need
+     * synapse objects, such as {@link #getAllSynapses()} or the group level
+     * parameter setters, materialize them again from this group's prototype
+     * synapses, leaving the group uncompressed.
+     *
+     * @param compress whether to compress this group
+     * @throws IllegalStateException if compression is requested but not all
+     *             synapses are compressible; see {@link #canCompress()}
+     */
+    public void setCompressed(boolean compress) {
+        if (compress == compressed) {
+            return;
+        }
+        if (compress) {
+            if (!canCompress()) {
+                throw new IllegalStateException("Synapse group " + getLabel()
+                        + " cannot be compressed. All of its synapses must be"
+                        + " enabled and static, and its targets must take"
+                        + " weighted input.");
+            }
+            SparseSynapseMatrix matrix = new SparseSynapseMatrix(
+                    sourceNeuronGroup.getNeuronListUnsafe(),
+                    targetNeuronGroup.getNeuronListUnsafe(), getAllSynapses());
+            clear();
+            sparseMatrix = matrix;
+            compressed = true;
+        } else {
+            SparseSynapseMatrix matrix = sparseMatrix;
+            compressed = false;
+            sparseMatrix = null;
+            List<Neuron> src = sourceNeuronGroup.getNeuronListUnsafe();
+            List<Neuron> tar = targetNeuronGroup.getNeuronListUnsafe();
+            for (int row = 0; row < matrix.getNumRows(); row++) {
+                for (int k = matrix.getRowStart(row), end = matrix
+                        .getRowEnd(row); k < end; k++) {
+                    double w = matrix.getWeight(k);
+                    Synapse prototype = w < 0 ? inhibitoryPrototype
+                            : excitatoryPrototype;
+                    Synapse synapse = new Synapse(
+                            src.get(matrix.getSourceIndex(k)), tar.get(row));
+                    synapse.setLearningRule(
+                            prototype.getLearningRule().deepCopy());
+                    synapse.setFrozen(prototype.isFrozen());
+                    synapse.setIncrement(prototype.getIncrement());
+                    synapse.setUpperBound(prototype.getUpperBound());
+                    synapse.setLowerBound(prototype.getLowerBound());
+                    synapse.setSpikeResponder(prototype.getSpikeResponder());
+                    synapse.forceSetStrength(w);
+                    synapse.setDelay(matrix.getDelay(k));
+                    synapse.setId(
+                            getParentNetwork().getSynapseIdGenerator().getId());
+                    synapse.setParentGroup(this);
+                    if (w < 0) {
+                        inSynapseSet.add(synapse);
+                    } else {
+                        exSynapseSet.add(synapse);
+                    }
+                    if (isDisplaySynapses()) {
+                        getParentNetwork().fireSynapseAdded(synapse);
+                    }
+                }
+            }
+        }
+        getParentNetwork().fireGroupChanged(this, this, "compressionChanged");
+    }
+
+    /**
+     * Restores the synapse objects of a compressed group, if it is
+     * compressed, so that they can be accessed or modified.
+     */
+    private void materialize() {
+        if (compressed) {
+            setCompressed(false);
+        }
+    }
+
+    /**
+     * Adds the weighted input from the source neurons of a compressed group to
+     * the input values of its target neurons. Does nothing if the group is
+     * not compressed. Must be called once per update, before the target
+     * neurons are updated, since delayed connections read their source
+     * activations from a history that advances on each call.
+     */
+    public void applyCompressedInput() {
+        SparseSynapseMatrix matrix = sparseMatrix;
+        if (matrix != null) {
+            matrix.propagate(sourceNeuronGroup.getNeuronListUnsafe(),
+                    targetNeuronGroup.getNeuronListUnsafe());
+        }
+    }
+
     /**
      * Take another synapse group and copy it's synapses in to this one.
      *
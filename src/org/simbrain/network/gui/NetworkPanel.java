@@ -53,6 +53,7 @@ import javax.swing.JSplitPane;
 import javax.swing.JToggleButton;
 import javax.swing.JToolBar;
 import javax.swing.JToolTip;
+import javax.swing.Timer;
 import javax.swing.ToolTipManager;
 import javax.swing.event.InternalFrameAdapter;
 import javax.swing.event.InternalFrameEvent;
@@ -66,6 +67,7 @@ import org.piccolo2d.util.PBounds;
 import org.piccolo2d.util.PPaintContext;
 import org.simbrain.network.connections.QuickConnectionManager;
 import org.simbrain.network.core.Network;
+import org.simbrain.network.core.NetworkFrame;
 import org.simbrain.network.core.NetworkTextObject;
 import org.simbrain.network.core.Neuron;
 import org.simbrain.network.core.NeuronUpdateRule;
@@ -363,6 +365,17 @@ public class NetworkPanel extends JPanel {
      */
     private AtomicInteger updateComplete = new AtomicInteger(0);
 
+    /** Milliseconds between checks for frames when there is no frame rate. */
+    private static final int IDLE_FRAME_DELAY = 100;
+
+    /**
+     * Draws the latest frame published by the network when it has a frame
+     * rate (see {@link Network#setFrameRate(int)}). Runs while the panel is
+     * displayed.
+     */
+    private final Timer frameTimer = new Timer(IDLE_FRAME_DELAY,
+            e -> drawFrame());
+
     /**
      * Create a new Network panel.
      * 
@@ -834,6 +847,43 @@ public class NetworkPanel extends JPanel {
         updateComplete.decrementAndGet();
     }
 
+    /**
+     * Update the visible state of neurons and synapses from the latest frame
+     * published by the network, if there is a new one, and follow the
+     * network's frame rate.
+     */
+    private void drawFrame() {
+        int frameRate = network.getFrameRate();
+        if (frameRate > 0) {
+            frameTimer.setDelay(Math.max(1, 1000 / frameRate));
+        } else {
+            frameTimer.setDelay(IDLE_FRAME_DELAY);
+        }
+        NetworkFrame frame = network.takeFrame();
+        if (frame == null) {
+            return;
+        }
+        if (guiOn) {
+            for (int i = 0, n = frame.getNumNeurons(); i < n; i++) {
+                NeuronNode node = (NeuronNode) objectNodeMap
+                        .get(frame.getNeuron(i));
+                if (node != null) {
+                    node.update(frame.getActivation(i), frame.isSpike(i));
+                }
+            }
+            for (int i = 0, n = frame.getNumSynapses(); i < n; i++) {
+                SynapseNode node = (SynapseNode) objectNodeMap
+                        .get(frame.getSynapse(i));
+                if (node != null) {
+                    node.update(frame.getStrength(i), frame.isSourceSpike(i));
+                }
+            }
+            timeLabel.setText(frame.getTimeLabel());
+        }
+        network.releaseFrame(frame);
+        updateComplete.set(0);
+    }
+
     /**
      * Use the GUI to add a new neuron to the underlying network model.
      * 
@@ -1199,14 +1249,14 @@ public class NetworkPanel extends JPanel {
         // List of neuron and synapse nodes
         List<SynapseNode> nodes = new ArrayList<SynapseNode>();
         // Add excitatory synapse nodes to canvas
-        for (Synapse synapse : synapseGroup.getExcitatorySynapses()) {
+        for (Synapse synapse : synapseGroup.getExcitatorySynapsesUnsafe()) {
             addSynapse(synapse);
             SynapseNode node = (SynapseNode) objectNodeMap.get(synapse);
             canvas.getLayer().addChild(node);
             nodes.add(node);
         }
         // Add inhibitory synapse nodes to canvas
-        for (Synapse synapse : synapseGroup.getInhibitorySynapses()) {
+        for (Synapse synapse : synapseGroup.getInhibitorySynapsesUnsafe()) {
             addSynapse(synapse);
             SynapseNode node = (SynapseNode) objectNodeMap.get(synapse);
             canvas.getLayer().addChild(node);
@@ -1400,7 +1450,7 @@ public class NetworkPanel extends JPanel {
      */
     private void removeSynapseGroupNodes(SynapseGroup group) {
         SynapseNode node;
-        for (Synapse synapse : group.getExcitatorySynapses()) {
+        for (Synapse synapse : group.getExcitatorySynapsesUnsafe()) {
             node = (SynapseNode) objectNodeMap.get(synapse);
             if (node != null) {
                 selectionModel.remove(node);
@@ -1408,7 +1458,7 @@ public class NetworkPanel extends JPanel {
                 node.removeFromParent();
             }
         }
-        for (Synapse synapse : group.getInhibitorySynapses()) {
+        for (Synapse synapse : group.getInhibitorySynapsesUnsafe()) {
             node = (SynapseNode) objectNodeMap.get(synapse);
             if (node != null) {
                 selectionModel.remove(node);
@@ -2930,6 +2980,18 @@ public class NetworkPanel extends JPanel {
         this.guiOn = guiOn;
     }
 
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        frameTimer.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        frameTimer.stop();
+        super.removeNotify();
+    }
+
     /**
      * Overridden so that multi-line tooltips can be used.
      * 
@@ -22,6 +22,8 @@ import org.simbrain.network.gui.NetworkPanel;
 import org.simbrain.network.gui.trainer.IterativeControlsPanel;
 import org.simbrain.network.subnetworks.BackpropNetwork;
 import org.simbrain.network.trainers.BackpropTrainer;
+import org.simbrain.network.trainers.IterableTrainer;
+import org.simbrain.network.trainers.MatrixBackpropTrainer;
 
 /**
  * <b>BackpropDialog</b> is a dialog box for editing a Backprop network.
@@ -32,7 +34,7 @@ public class BackpropEditorDialog extends SupervisedTrainingDialog {
     private BackpropNetwork backprop;
 
     /** Reference to backprop trainer. */
-    private BackpropTrainer trainer;
+    private IterableTrainer trainer;
 
     /**
      * Default constructor.
@@ -55,8 +57,12 @@ public class BackpropEditorDialog extends SupervisedTrainingDialog {
         setTitle("Edit Backprop Network");
 
         // Trainer tab
-        trainer = new BackpropTrainer(backprop,
-            backprop.getNeuronGroupsAsList());
+        if (MatrixBackpropTrainer.canTrain(backprop)) {
+            trainer = new MatrixBackpropTrainer(backprop);
+        } else {
+            trainer = new BackpropTrainer(backprop,
+                backprop.getNeuronGroupsAsList());
+        }
         IterativeControlsPanel iterativeControls = new IterativeControlsPanel(
             networkPanel, trainer);
         addTab("Train", iterativeControls);
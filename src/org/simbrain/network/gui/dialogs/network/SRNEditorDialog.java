@@ -24,6 +24,8 @@ import javax.swing.JButton;
 import org.simbrain.network.gui.NetworkPanel;
 import org.simbrain.network.gui.trainer.IterativeControlsPanel;
 import org.simbrain.network.subnetworks.SimpleRecurrentNetwork;
+import org.simbrain.network.trainers.IterableTrainer;
+import org.simbrain.network.trainers.MatrixBackpropTrainer;
 import org.simbrain.network.trainers.SRNTrainer;
 import org.simbrain.util.widgets.ShowHelpAction;
 
@@ -39,7 +41,7 @@ public class SRNEditorDialog extends SupervisedTrainingDialog {
     private SimpleRecurrentNetwork srn;
 
     /** The SRN Trainer. */
-    private SRNTrainer trainer;
+    private IterableTrainer trainer;
 
     /**
      * Constructs a labeled item panel dialog for the creation of a simple
@@ -62,7 +64,11 @@ public class SRNEditorDialog extends SupervisedTrainingDialog {
         setTitle("Edit Simple Recurrent Network");
 
         // Trainer tab
-        trainer = new SRNTrainer(srn);
+        if (MatrixBackpropTrainer.canTrain(srn)) {
+            trainer = new MatrixBackpropTrainer(srn);
+        } else {
+            trainer = new SRNTrainer(srn);
+        }
         IterativeControlsPanel iterativeControls = new IterativeControlsPanel(
             networkPanel, trainer);
         addTab("Train", iterativeControls);
@@ -48,6 +48,7 @@ import org.simbrain.network.groups.NeuronGroup;
 import org.simbrain.network.groups.Subnetwork;
 import org.simbrain.network.gui.NetworkPanel;
 import org.simbrain.network.gui.dialogs.TestInputPanel;
+import org.simbrain.network.util.ActivationRecorder;
 import org.simbrain.resource.ResourceManager;
 import org.simbrain.util.SFileChooser;
 import org.simbrain.util.StandardDialog;
@@ -401,6 +402,8 @@ public class NeuronGroupNode extends PNode implements GroupNode, PropertyChangeL
                 } else {
                     SFileChooser chooser = new SFileChooser(".",
                             "comma-separated-values (csv)", "csv");
+                    chooser.addExtension("binary activation recording",
+                            ActivationRecorder.FILE_EXTENSION);
                     File theFile = chooser.showSaveDialog("Recording_"
                             + Utils.getTimeString() + ".csv");
                     if (theFile != null) {
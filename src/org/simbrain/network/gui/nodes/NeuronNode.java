@@ -189,6 +189,19 @@ public class NeuronNode extends ScreenElement
         updateClampStatus();
     }
 
+    /**
+     * Update the neuron view from a copy of the neuron's state, as held in a
+     * {@link org.simbrain.network.core.NetworkFrame}.
+     *
+     * @param activation the activation to show
+     * @param spike whether to show the neuron as spiking
+     */
+    public void update(final double activation, final boolean spike) {
+        updateColor(activation, spike);
+        updateText(activation);
+        updateClampStatus();
+    }
+
     /**
      * Update the stroke of a node based on whether it is clamped or not.
      */
@@ -208,12 +221,20 @@ public class NeuronNode extends ScreenElement
      * TODO: Redo by scaling the text object.
      */
     private void updateText() {
+        updateText(neuron.getActivation());
+    }
+
+    /**
+     * Determine what font to use for an activation level.
+     *
+     * @param act the activation to show
+     */
+    private void updateText(final double act) {
         if (!currentTextVisibility) {
             return;
         }
         // Todo: a bit of a performance drain.
 
-        double act = neuron.getActivation();
         activationText.setScale(1);
         setActivationTextPosition();
 
@@ -222,12 +243,11 @@ public class NeuronNode extends ScreenElement
         priorityText.setText("" + neuron.getUpdatePriority()); // todo: respond
         // to listener
 
-        if (java.lang.Double.isNaN(neuron.getActivation())) {
+        if (java.lang.Double.isNaN(act)) {
             activationText.setText("NaN");
             activationText.scale(.7);
             activationText.translate(-4, 3);
-        } else if ((act > 0) && (neuron.getActivation() < 1)) { // Between 0 and
-                                                                // 1
+        } else if ((act > 0) && (act < 1)) { // Between 0 and 1
             activationText.setFont(NEURON_FONT_BOLD);
             String text = Utils.round(act, 1);
             if (text.startsWith("0.")) {
@@ -306,7 +326,16 @@ public class NeuronNode extends ScreenElement
      * Sets the color of this neuron based on its activation level.
      */
     private void updateColor() {
-        double activation = neuron.getActivation();
+        updateColor(neuron.getActivation(), neuron.isSpike());
+    }
+
+    /**
+     * Sets the color of this neuron based on an activation level.
+     *
+     * @param activation the activation to show
+     * @param spike whether to show the neuron as spiking
+     */
+    private void updateColor(final double activation, final boolean spike) {
         // Force to blank if 0 (or close to it)
         if ((activation > -.1) && (activation < .1)) {
             mainShape.setPaint(Color.white);
@@ -321,7 +350,7 @@ public class NeuronNode extends ScreenElement
         }
 
         if (!customStrokeColor) {
-            if (neuron.isSpike()) {
+            if (spike) {
                 mainShape.setStrokePaint(spikingColor);
                 mainShape.setPaint(spikingColor);
             } else {
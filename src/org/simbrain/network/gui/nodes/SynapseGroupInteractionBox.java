@@ -236,12 +236,12 @@ public class SynapseGroupInteractionBox extends InteractionBox {
      */
     private void selectSynapses() {
         List<SynapseNode> nodes = new ArrayList<SynapseNode>();
-        for (Synapse synapse : synapseGroup.getExcitatorySynapses()) {
+        for (Synapse synapse : synapseGroup.getExcitatorySynapsesUnsafe()) {
             nodes.add((SynapseNode) getNetworkPanel().getObjectNodeMap().get(
                 synapse));
 
         }
-        for (Synapse synapse : synapseGroup.getInhibitorySynapses()) {
+        for (Synapse synapse : synapseGroup.getInhibitorySynapsesUnsafe()) {
             nodes.add((SynapseNode) getNetworkPanel().getObjectNodeMap().get(
                 synapse));
 
@@ -33,6 +33,8 @@ import org.simbrain.network.gui.trainer.IterativeTrainingPanel;
 import org.simbrain.network.gui.trainer.TrainerGuiActions;
 import org.simbrain.network.subnetworks.BPTTNetwork;
 import org.simbrain.network.trainers.BPTTTrainer;
+import org.simbrain.network.trainers.IterableTrainer;
+import org.simbrain.network.trainers.MatrixBackpropTrainer;
 import org.simbrain.resource.ResourceManager;
 
 /**
@@ -94,8 +96,10 @@ public class BPTTNode extends SubnetworkNode {
         @Override
         public void actionPerformed(ActionEvent arg0) {
             BPTTNetwork network = (BPTTNetwork) getSubnetwork();
+            IterableTrainer trainer = MatrixBackpropTrainer.canTrain(network)
+                ? new MatrixBackpropTrainer(network) : new BPTTTrainer(network);
             IterativeTrainingPanel trainingPanel = new IterativeTrainingPanel(
-                getNetworkPanel(), new BPTTTrainer(network));
+                getNetworkPanel(), trainer);
             JDialog frame = getNetworkPanel().displayPanelInWindow(
                 trainingPanel, "Trainer");
             trainingPanel.setFrame(frame);
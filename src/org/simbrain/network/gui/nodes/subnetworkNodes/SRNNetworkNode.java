@@ -32,6 +32,8 @@ import org.simbrain.network.gui.nodes.SubnetworkNode;
 import org.simbrain.network.gui.trainer.IterativeTrainingPanel;
 import org.simbrain.network.gui.trainer.TrainerGuiActions;
 import org.simbrain.network.subnetworks.SimpleRecurrentNetwork;
+import org.simbrain.network.trainers.IterableTrainer;
+import org.simbrain.network.trainers.MatrixBackpropTrainer;
 import org.simbrain.network.trainers.SRNTrainer;
 import org.simbrain.resource.ResourceManager;
 import org.simbrain.util.StandardDialog;
@@ -106,8 +108,10 @@ public class SRNNetworkNode extends SubnetworkNode {
         public void actionPerformed(ActionEvent arg0) {
             SimpleRecurrentNetwork network =
                 (SimpleRecurrentNetwork) getSubnetwork();
+            IterableTrainer trainer = MatrixBackpropTrainer.canTrain(network)
+                ? new MatrixBackpropTrainer(network) : new SRNTrainer(network);
             IterativeTrainingPanel trainingPanel = new IterativeTrainingPanel(
-                getNetworkPanel(), new SRNTrainer(network));
+                getNetworkPanel(), trainer);
             JDialog frame =
                 getNetworkPanel().displayPanelInWindow(trainingPanel,
                     "Trainer");
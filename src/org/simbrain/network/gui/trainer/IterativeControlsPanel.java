@@ -37,6 +37,7 @@ import javax.swing.SwingConstants;
 import org.simbrain.network.gui.NetworkPanel;
 import org.simbrain.network.trainers.ErrorListener;
 import org.simbrain.network.trainers.IterableTrainer;
+import org.simbrain.network.trainers.MatrixBackpropTrainer;
 import org.simbrain.network.trainers.Trainer.DataNotInitializedException;
 import org.simbrain.resource.ResourceManager;
 import org.simbrain.util.LabelledItemPanel;
@@ -139,6 +140,13 @@ public class IterativeControlsPanel extends JPanel {
 
         // Labels
         LabelledItemPanel labelPanel = new LabelledItemPanel();
+        if (trainer instanceof MatrixBackpropTrainer) {
+            JLabel trainerLabel = new JLabel("Matrix backprop");
+            trainerLabel.setToolTipText("Trains copies of the weights as "
+                    + "matrices and writes them back after each iteration. "
+                    + "Batch size and threads are under Properties.");
+            labelPanel.addItem("Trainer:", trainerLabel);
+        }
         labelPanel.addItem("Iterations:", iterationsLabel);
         numTicks = 10;
         errorBar = new JProgressBar(0, numTicks);
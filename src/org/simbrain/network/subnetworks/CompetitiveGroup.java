@@ -19,10 +19,13 @@
 package org.simbrain.network.subnetworks;
 
 import java.util.Iterator;
+import java.util.List;
 
 import org.simbrain.network.connections.ConnectNeurons;
 import org.simbrain.network.core.Network;
 import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.NeuronUpdateRule;
+import org.simbrain.network.core.NeuronUpdateRule.InputType;
 import org.simbrain.network.core.Synapse;
 import org.simbrain.network.groups.NeuronGroup;
 import org.simbrain.network.groups.SynapseGroup;
@@ -189,6 +192,149 @@ public class CompetitiveGroup extends NeuronGroup {
         // normalizeIncomingWeights();
     }
 
+    /**
+     * Trains the group on rows of input data. This has the same effect as
+     * setting the input layer's activations to each row in turn and calling
+     * {@link #update()}, but while training the weights are kept in a
+     * contiguous prototype matrix and the net inputs of large groups are
+     * computed in parallel. The synapses are written back at the end. This
+     * requires linear, noiseless units whose incoming synapses are
+     * uncompressed, all come from the input layer, and are enabled and
+     * undelayed; otherwise, or if the group is recording or in input mode,
+     * the rows are simply presented one by one.
+     *
+     * @param inputLayer the layer whose activations the data set
+     * @param inputData the rows of input data
+     */
+    public void train(final NeuronGroup inputLayer,
+            final double[][] inputData) {
+        if (inputData.length == 0) {
+            return;
+        }
+        List<Neuron> units = getNeuronList();
+        PrototypeMatrix prototypes = null;
+        if (!isInputMode() && !isRecording() && isLinear()) {
+            prototypes = PrototypeMatrix.create(units,
+                    inputLayer.getNeuronList());
+        }
+        if (prototypes == null) {
+            for (double[] row : inputData) {
+                inputLayer.forceSetActivations(row);
+                update();
+            }
+            return;
+        }
+
+        int numUnits = units.size();
+        int numInputs = prototypes.numInputs;
+        double[] net = new double[numUnits];
+        double[] act = new double[numUnits];
+        for (double[] x : inputData) {
+            // Activations as the linear rule would compute them
+            prototypes.multiply(x, net);
+            max = 0;
+            winner = 0;
+            for (int u = 0; u < numUnits; u++) {
+                Neuron n = units.get(u);
+                if (n.isClamped()) {
+                    act[u] = n.getActivation();
+                } else {
+                    LinearRule rule = (LinearRule) n.getUpdateRule();
+                    double val = rule.getSlope() * (n.getInputValue()
+                            + net[u]) + rule.getBias();
+                    act[u] = rule.isClipped() ? rule.clip(val) : val;
+                }
+                if (act[u] > max) {
+                    max = act[u];
+                    winner = u;
+                }
+            }
+
+            // Update weights on winning neuron
+            for (int u = 0; u < numUnits; u++) {
+                boolean clamped = units.get(u).isClamped();
+                int k0 = u * numInputs;
+                if (u == winner) {
+                    double targetAct = clamped ? act[u] : winValue;
+                    if (updateMethod == UpdateMethod.RUMM_ZIPSER) {
+                        double sumOfInputs = prototypes.totalInput(u, x);
+                        for (int i = 0, k = k0; i < numInputs; i++, k++) {
+                            if (prototypes.has(k)) {
+                                activation = x[i];
+                                if (normalizeInputs && sumOfInputs != 0) {
+                                    activation = activation / sumOfInputs;
+                                }
+                                double w = prototypes.get(k);
+                                prototypes.set(k, prototypes.clip(k,
+                                        w + learningRate * (activation - w)));
+                            }
+                        }
+                    } else if (updateMethod == UpdateMethod.ALVAREZ_SQUIRE) {
+                        double averageInput = prototypes.totalInput(u, x)
+                                / prototypes.fanInSize(u);
+                        for (int i = 0, k = k0; i < numInputs; i++, k++) {
+                            if (prototypes.has(k)) {
+                                double w = prototypes.get(k);
+                                double deltaw = learningRate * targetAct
+                                        * (x[i] - averageInput);
+                                prototypes.set(k, prototypes.clip(k,
+                                        w + deltaw));
+                            }
+                        }
+                        for (int k = 0; k < numUnits * numInputs; k++) {
+                            if (prototypes.has(k)) {
+                                double w = prototypes.get(k);
+                                prototypes.set(k,
+                                        w - synpaseDecayPercent * w);
+                            }
+                        }
+                    }
+                } else if (useLeakyLearning) {
+                    double sumOfInputs = prototypes.totalInput(u, x);
+                    for (int i = 0, k = k0; i < numInputs; i++, k++) {
+                        if (prototypes.has(k)) {
+                            activation = x[i];
+                            if (normalizeInputs && sumOfInputs != 0) {
+                                activation = activation / sumOfInputs;
+                            }
+                            double w = prototypes.get(k);
+                            prototypes.set(k, w + leakyLearningRate
+                                    * (activation - w));
+                        }
+                    }
+                }
+            }
+        }
+        prototypes.store();
+
+        // Leave the network as the last row left it
+        inputLayer.forceSetActivations(inputData[inputData.length - 1]);
+        for (int u = 0; u < numUnits; u++) {
+            units.get(u).setActivation(u == winner ? winValue : loseValue);
+        }
+    }
+
+    /**
+     * @return whether every unit uses a noiseless linear rule on weighted
+     *         input, whose activation can be computed from the prototypes
+     */
+    private boolean isLinear() {
+        for (SynapseGroup sg : getIncomingSgs()) {
+            if (sg.isCompressed()) {
+                return false;
+            }
+        }
+        for (Neuron n : getNeuronList()) {
+            NeuronUpdateRule rule = n.getUpdateRule();
+            if (!(rule instanceof LinearRule)
+                    || ((LinearRule) rule).getAddNoise()
+                    || rule.getInputType() != InputType.WEIGHTED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Update winning neuron's weights in accordance with Alvarez and Squire
      * 1994, eq 2. TODO: rate is unused... in fact everything before
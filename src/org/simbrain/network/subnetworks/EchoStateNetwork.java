@@ -41,6 +41,7 @@ import org.simbrain.network.trainers.TrainingSet;
 import org.simbrain.network.util.NetworkLayoutManager;
 import org.simbrain.network.util.NetworkLayoutManager.Direction;
 import org.simbrain.network.util.SimnetUtils;
+import org.simbrain.util.math.IncrementalRidgeRegression;
 import org.simbrain.util.math.NumericMatrix;
 import org.simbrain.util.math.SquashingFunction;
 import org.simbrain.util.randomizer.Randomizer;
@@ -214,8 +215,7 @@ public class EchoStateNetwork extends Subnetwork {
         addNeuronGroup(neuronGroup);
         addSynapseGroup(synapseGroup);
         // Scale the reservoir's weights to have the desired spectral radius
-        SimnetUtils.scaleEigenvalue(reservoirLayer.getNeuronList(),
-            reservoirLayer.getNeuronList(), spectralRadius);
+        SimnetUtils.scaleSpectralRadius(synapseGroup, spectralRadius);
     }
 
     /**
@@ -278,8 +278,9 @@ public class EchoStateNetwork extends Subnetwork {
         Sparse outToRes) {
 
         addSynapseGroup(connectNeuronGroups(inputLayer, reservoirLayer, inToRes));
-        addSynapseGroup(connectNeuronGroups(reservoirLayer, reservoirLayer,
-            resRecurrent));
+        SynapseGroup recurrent = connectNeuronGroups(reservoirLayer,
+            reservoirLayer, resRecurrent);
+        addSynapseGroup(recurrent);
 
         if (backWeights) {
             addSynapseGroup(connectNeuronGroups(outputLayer, reservoirLayer,
@@ -303,8 +304,7 @@ public class EchoStateNetwork extends Subnetwork {
         }
 
         // Scale the reservoir's weights to have the desired spectral radius
-        SimnetUtils.scaleEigenvalue(reservoirLayer.getNeuronList(),
-            reservoirLayer.getNeuronList(), spectralRadius);
+        SimnetUtils.scaleSpectralRadius(recurrent, spectralRadius);
 
     }
 
@@ -422,6 +422,185 @@ public class EchoStateNetwork extends Subnetwork {
 
     }
 
+    /**
+     * Return a trainer that trains the readout of this ESN without storing
+     * the harvested states. The reservoir is driven exactly as for
+     * {@link #getTrainer()}, but each state row is folded into the
+     * correlation matrices of an {@link IncrementalRidgeRegression} as soon as
+     * it is produced, so memory grows with the square of the number of
+     * readout sources rather than with the length of the input data. The
+     * target data are left unchanged.
+     *
+     * @return the trainer
+     */
+    public StreamingTrainer getStreamingTrainer() {
+        if (targetData[0].length != outputLayer.getNeuronList().size()) {
+            throw new IllegalArgumentException("Output data length does not "
+                + "match the number of output nodes");
+        }
+        final TrainingSet trainingSet = new TrainingSet();
+        trainingSet.setInputData(inputData);
+        trainingSet.setTargetData(targetData);
+        Trainable trainable = new Trainable() {
+
+            @Override
+            public List<Neuron> getInputNeurons() {
+                return getReadoutSources();
+            }
+
+            @Override
+            public List<Neuron> getOutputNeurons() {
+                return getOutputLayer().getNeuronList();
+            }
+
+            @Override
+            public TrainingSet getTrainingSet() {
+                return trainingSet;
+            }
+
+            @Override
+            public void initNetwork() {
+            }
+
+            @Override
+            public Group getNetwork() {
+                return EchoStateNetwork.this;
+            }
+
+        };
+        return new StreamingTrainer(trainable);
+    }
+
+    /**
+     * @return the neurons whose states are regressed onto the outputs, in
+     *         state matrix column order
+     */
+    private List<Neuron> getReadoutSources() {
+        final ArrayList<Neuron> full = new ArrayList<Neuron>();
+        if (directInOutWeights) {
+            full.addAll(getInputLayer().getNeuronList());
+        }
+        full.addAll(reservoirLayer.getNeuronList());
+        if (recurrentOutWeights) {
+            full.addAll(getOutputLayer().getNeuronList());
+        }
+        return full;
+    }
+
+    /**
+     * Trains the readout weights of an ESN by streaming harvested states into
+     * an incremental (ridge) regression. See {@link #getStreamingTrainer()}.
+     */
+    public class StreamingTrainer extends Trainer {
+
+        /** Number of state rows buffered before they are correlated. */
+        private int chunkSize = 256;
+
+        /** Amount added to the diagonal of the state correlation matrix. */
+        private double ridge;
+
+        /**
+         * Construct the trainer.
+         *
+         * @param trainable the readout of the enclosing network
+         */
+        private StreamingTrainer(Trainable trainable) {
+            super(trainable);
+        }
+
+        @Override
+        public void apply() throws DataNotInitializedException {
+            if (inputData == null) {
+                throw new DataNotInitializedException("Input data not set");
+            }
+            if (targetData == null) {
+                throw new DataNotInitializedException("Target data not set");
+            }
+            final List<Neuron> sources = getReadoutSources();
+            final List<Neuron> outputs = getOutputLayer().getNeuronList();
+            final int numTargets = outputs.size();
+            final IncrementalRidgeRegression regression =
+                new IncrementalRidgeRegression(sources.size(), numTargets);
+            final int rows = inputData.length;
+            final double[][] states = new double[Math.min(chunkSize,
+                rows)][];
+            final double[][] targets = new double[states.length][numTargets];
+
+            fireTrainingBegin();
+            harvest((row, state) -> {
+                int i = row % states.length;
+                // Sigmoidal outputs are fit to the inverse of their targets
+                states[i] = state.clone();
+                for (int k = 0; k < numTargets; k++) {
+                    NeuronUpdateRule rule = outputs.get(k).getUpdateRule();
+                    targets[i][k] = rule instanceof SigmoidalRule
+                        ? ((SigmoidalRule) rule).getInverse(targetData[row][k])
+                        : targetData[row][k];
+                }
+                if (i == states.length - 1 || row == rows - 1) {
+                    regression.addRows(states, targets, 0, i + 1);
+                    fireProgressUpdate("Correlating states...",
+                        (int) (100L * (row + 1) / rows));
+                }
+            });
+            fireProgressUpdate("Solving...", 100);
+            double[][] wOut = regression.solve(ridge);
+            SimnetUtils.setWeights(sources, outputs, wOut);
+            fireTrainingEnd();
+        }
+
+        /**
+         * @return the number of state rows buffered before they are
+         *         correlated
+         */
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        /**
+         * @param chunkSize the number of state rows buffered before they are
+         *            correlated
+         */
+        public void setChunkSize(int chunkSize) {
+            if (chunkSize < 1) {
+                throw new IllegalArgumentException("Chunk size must be "
+                    + "positive");
+            }
+            this.chunkSize = chunkSize;
+        }
+
+        /**
+         * @return the amount added to the diagonal of the state correlation
+         *         matrix; 0 for ordinary least squares
+         */
+        public double getRidge() {
+            return ridge;
+        }
+
+        /**
+         * @param ridge the amount added to the diagonal of the state
+         *            correlation matrix; 0 for ordinary least squares
+         */
+        public void setRidge(double ridge) {
+            this.ridge = ridge;
+        }
+
+    }
+
+    /**
+     * Receives harvested state rows.
+     */
+    private interface StateVisitor {
+
+        /**
+         * Called once per row of input data during the harvesting pass.
+         *
+         * @param row the row of input data
+         * @param state the state row; reused between calls
+         */
+        void visit(int row, double[] state);
+    }
+
     /**
      * A general method for harvesting state data for an arbitrary Echo-State
      * Network. This method iterates through each row of input and teacher data
@@ -433,6 +612,20 @@ public class EchoStateNetwork extends Subnetwork {
      * @return a matrix of data to be used for training
      */
     private double[][] harvestData() {
+        final double[][] returnMatrix = new double[inputData.length][];
+        harvest((row, state) -> returnMatrix[row] = state.clone());
+        return returnMatrix;
+    }
+
+    /**
+     * Drive the reservoir with the input and teacher data, passing each state
+     * row (input, reservoir, and teacher-forced output states, as set by the
+     * connectivity) to a visitor. Two full passes are made over the data, the
+     * first letting the internal dynamics settle and the second harvesting.
+     *
+     * @param visitor receives the harvested state rows
+     */
+    private void harvest(StateVisitor visitor) {
 
         // The minimum number of state matrix columns
         int columnNumber = numResNodes;
@@ -446,8 +639,8 @@ public class EchoStateNetwork extends Subnetwork {
             columnNumber += numOutputs;
         }
 
-        // State matrix
-        double[][] returnMatrix = new double[inputData.length][columnNumber];
+        // Current state row
+        double[] state = new double[columnNumber];
 
         boolean harvest = false;
 
@@ -461,16 +654,14 @@ public class EchoStateNetwork extends Subnetwork {
                 int col = 0;
 
                 // Clamp input neurons based on input data
+                int in = 0;
                 for (Neuron neuron : getInputLayer().getNeuronList()) {
-                    double clampValue = inputData[row][col];
-                    neuron.setActivation(clampValue);
-                    if (directInOutWeights && harvest) {
+                    neuron.setActivation(inputData[row][in++]);
+                    if (directInOutWeights) {
                         // Add input states to state matrix if direct in to out
                         // connections are desired
-                        returnMatrix[row][col] = neuron.getActivation();
-                        col++;
+                        state[col++] = neuron.getActivation();
                     }
-
                 }
 
                 if (backWeights) {
@@ -498,27 +689,24 @@ public class EchoStateNetwork extends Subnetwork {
                     } else {
                         n.setActivation(val);
                     }
-
-                    if (harvest) {
-                        returnMatrix[row][col] = n.getActivation();
-                    }
-                    col++;
+                    state[col++] = n.getActivation();
                 }
 
                 // Add output states to state matrix if there are recurrent
                 // outputs
-                if (recurrentOutWeights && harvest) {
+                if (recurrentOutWeights) {
                     for (int i = 0; i < targetData[0].length; i++) {
                         // Teacher-forcing
-                        returnMatrix[row][col] = targetData[row][i];
-                        col++;
+                        state[col++] = targetData[row][i];
                     }
                 }
+
+                if (harvest) {
+                    visitor.visit(row, state);
+                }
             }
             harvest = true;
         }
-
-        return returnMatrix;
     }
 
     /**
@@ -0,0 +1,353 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.subnetworks;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.Synapse;
+import org.simbrain.util.SimbrainConstants.Polarity;
+
+/**
+ * The incoming weight vectors (prototypes) of a layer of units, copied from
+ * their fan-in synapses into one contiguous array so that competitive
+ * learning can search and update them without touching synapse objects.
+ * Entry <code>k = unit * numInputs + input</code> holds the weight from an
+ * input neuron to a unit. Writes through {@link #set(int, double)} behave
+ * like {@link Synapse#setStrength(double)}: frozen synapses keep their
+ * strength, and values are clipped by the source's polarity and then by the
+ * synapse's bounds. {@link #store()} copies the weights back.
+ */
+final class PrototypeMatrix {
+
+    /**
+     * Number of multiply-adds in a search below which it is not split across
+     * threads.
+     */
+    private static final long PARALLEL_THRESHOLD = 1 << 16;
+
+    /** Number of units (rows). */
+    final int numUnits;
+
+    /** Number of input neurons (columns). */
+    final int numInputs;
+
+    /** The weights, one row per unit. */
+    private final double[] weights;
+
+    /** The synapse behind each entry, or null if there is none. */
+    private final Synapse[] synapses;
+
+    /** Lower bound of each entry. */
+    private final double[] lower;
+
+    /** Upper bound of each entry. */
+    private final double[] upper;
+
+    /** Polarity of the source of each entry. */
+    private final Polarity[] polarity;
+
+    /** Whether each entry is frozen (or missing). */
+    private final boolean[] frozen;
+
+    /** Whether every unit is connected to every input. */
+    private boolean complete;
+
+    /**
+     * Construct the matrix.
+     *
+     * @param numUnits number of units
+     * @param numInputs number of inputs
+     */
+    private PrototypeMatrix(final int numUnits, final int numInputs) {
+        this.numUnits = numUnits;
+        this.numInputs = numInputs;
+        int size = numUnits * numInputs;
+        weights = new double[size];
+        synapses = new Synapse[size];
+        lower = new double[size];
+        upper = new double[size];
+        polarity = new Polarity[size];
+        frozen = new boolean[size];
+    }
+
+    /**
+     * Reads the fan-in weights of a layer of units from a list of input
+     * neurons. The matrix can only stand in for the synapses if their only
+     * effect is their strength, so null is returned if any unit has an
+     * incoming synapse that is disabled, delayed, or comes from a neuron
+     * outside the inputs.
+     *
+     * @param units the units whose fan-in is read
+     * @param inputs the input neurons, in column order
+     * @return the matrix, or null if the fan-in can not be represented
+     */
+    static PrototypeMatrix create(final List<Neuron> units,
+            final List<Neuron> inputs) {
+        Map<Neuron, Integer> column = new IdentityHashMap<Neuron, Integer>();
+        for (int i = 0; i < inputs.size(); i++) {
+            column.put(inputs.get(i), i);
+        }
+        PrototypeMatrix m = new PrototypeMatrix(units.size(), inputs.size());
+        int present = 0;
+        for (int u = 0; u < m.numUnits; u++) {
+            for (Synapse s : units.get(u).getFanIn()) {
+                Integer col = column.get(s.getSource());
+                if (col == null || !s.isEnabled() || s.getDelay() != 0) {
+                    return null;
+                }
+                int k = u * m.numInputs + col;
+                if (m.synapses[k] != null) {
+                    return null;
+                }
+                m.synapses[k] = s;
+                present++;
+            }
+        }
+        for (int k = 0; k < m.synapses.length; k++) {
+            Synapse s = m.synapses[k];
+            if (s == null) {
+                m.frozen[k] = true;
+            } else {
+                m.weights[k] = s.getStrength();
+                m.lower[k] = s.getLowerBound();
+                m.upper[k] = s.getUpperBound();
+                m.polarity[k] = s.getSource().getPolarity();
+                m.frozen[k] = s.isFrozen();
+            }
+        }
+        m.complete = present == m.synapses.length;
+        return m;
+    }
+
+    /**
+     * Writes the weights back to the synapses.
+     */
+    void store() {
+        for (int k = 0; k < synapses.length; k++) {
+            if (!frozen[k]) {
+                synapses[k].forceSetStrength(weights[k]);
+            }
+        }
+    }
+
+    /**
+     * @param k an entry
+     * @return whether the entry has a synapse
+     */
+    boolean has(final int k) {
+        return complete || synapses[k] != null;
+    }
+
+    /**
+     * @param k an entry
+     * @return its weight
+     */
+    double get(final int k) {
+        return weights[k];
+    }
+
+    /**
+     * Sets an entry as {@link Synapse#setStrength(double)} would.
+     *
+     * @param k an entry
+     * @param value the new weight
+     */
+    void set(final int k, final double value) {
+        if (!frozen[k]) {
+            weights[k] = clip(k, polarity[k].clip(value));
+        }
+    }
+
+    /**
+     * Clips a value to an entry's bounds, as {@link Synapse#clip(double)}.
+     *
+     * @param k an entry
+     * @param value the value
+     * @return the clipped value
+     */
+    double clip(final int k, final double value) {
+        if (value > upper[k]) {
+            return upper[k];
+        } else if (value < lower[k]) {
+            return lower[k];
+        }
+        return value;
+    }
+
+    /**
+     * Moves the weights of a unit a fraction of the way towards an input
+     * vector.
+     *
+     * @param unit the unit
+     * @param x the input vector
+     * @param rate the fraction
+     */
+    void moveToward(final int unit, final double[] x, final double rate) {
+        for (int i = 0, k = unit * numInputs; i < numInputs; i++, k++) {
+            if (has(k)) {
+                set(k, weights[k] + rate * (x[i] - weights[k]));
+            }
+        }
+    }
+
+    /**
+     * Sums the inputs that reach a unit.
+     *
+     * @param unit the unit
+     * @param x the input vector
+     * @return the sum over the unit's connected inputs
+     */
+    double totalInput(final int unit, final double[] x) {
+        double sum = 0;
+        for (int i = 0, k = unit * numInputs; i < numInputs; i++, k++) {
+            if (has(k)) {
+                sum += x[i];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * @param unit the unit
+     * @return the number of inputs connected to the unit
+     */
+    int fanInSize(final int unit) {
+        if (complete) {
+            return numInputs;
+        }
+        int count = 0;
+        for (int i = 0, k = unit * numInputs; i < numInputs; i++, k++) {
+            if (synapses[k] != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds the unit whose weights are closest to an input vector in squared
+     * Euclidean distance, over its connected inputs. Large layers are searched
+     * in parallel; ties go to the lowest index either way.
+     *
+     * @param x the input vector
+     * @return the closest unit, or -1 if no distance is a number
+     */
+    int findNearest(final double[] x) {
+        int chunks = 1;
+        if ((long) numUnits * numInputs >= PARALLEL_THRESHOLD) {
+            chunks = Math.min(numUnits,
+                    Runtime.getRuntime().availableProcessors() * 4);
+        }
+        if (chunks <= 1) {
+            return findNearest(x, 0, numUnits, new double[1]);
+        }
+        final int n = chunks;
+        final double[] best = new double[n];
+        final int[] winners = new int[n];
+        IntStream.range(0, n).parallel().forEach(c -> {
+            double[] dist = new double[1];
+            winners[c] = findNearest(x, (int) ((long) numUnits * c / n),
+                    (int) ((long) numUnits * (c + 1) / n), dist);
+            best[c] = dist[0];
+        });
+        int winner = -1;
+        double min = Double.POSITIVE_INFINITY;
+        for (int c = 0; c < n; c++) {
+            if (winners[c] >= 0 && best[c] < min) {
+                min = best[c];
+                winner = winners[c];
+            }
+        }
+        return winner;
+    }
+
+    /**
+     * Finds the closest unit within a range.
+     *
+     * @param x the input vector
+     * @param from first unit
+     * @param to end unit, exclusive
+     * @param dist receives the distance of the closest unit
+     * @return the closest unit in the range, or -1
+     */
+    private int findNearest(final double[] x, final int from, final int to,
+            final double[] dist) {
+        int winner = -1;
+        double min = Double.POSITIVE_INFINITY;
+        for (int u = from; u < to; u++) {
+            double d = 0;
+            int k = u * numInputs;
+            if (complete) {
+                for (int i = 0; i < numInputs; i++, k++) {
+                    double diff = weights[k] - x[i];
+                    d += diff * diff;
+                }
+            } else {
+                for (int i = 0; i < numInputs; i++, k++) {
+                    if (synapses[k] != null) {
+                        double diff = weights[k] - x[i];
+                        d += diff * diff;
+                    }
+                }
+            }
+            if (d < min) {
+                min = d;
+                winner = u;
+            }
+        }
+        dist[0] = min;
+        return winner;
+    }
+
+    /**
+     * Computes the weighted input to every unit, in parallel for large
+     * layers.
+     *
+     * @param x the input vector
+     * @param out receives the weighted input of each unit
+     */
+    void multiply(final double[] x, final double[] out) {
+        if ((long) numUnits * numInputs >= PARALLEL_THRESHOLD) {
+            IntStream.range(0, numUnits).parallel()
+                    .forEach(u -> out[u] = dot(u, x));
+        } else {
+            for (int u = 0; u < numUnits; u++) {
+                out[u] = dot(u, x);
+            }
+        }
+    }
+
+    /**
+     * @param unit a unit
+     * @param x the input vector
+     * @return the weighted input to the unit
+     */
+    private double dot(final int unit, final double[] x) {
+        double sum = 0;
+        for (int i = 0, k = unit * numInputs; i < numInputs; i++, k++) {
+            sum += weights[k] * x[i];
+        }
+        return sum;
+    }
+
+}
@@ -20,6 +20,7 @@ package org.simbrain.network.subnetworks;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.IntStream;
 
 import org.simbrain.network.core.Network;
 import org.simbrain.network.core.Neuron;
@@ -28,6 +29,7 @@ import org.simbrain.network.groups.NeuronGroup;
 import org.simbrain.network.layouts.HexagonalGridLayout;
 import org.simbrain.network.layouts.Layout;
 import org.simbrain.network.neuron_update_rules.LinearRule;
+import org.simbrain.network.util.NeuronGrid;
 
 /**
  * <b>SOM</b> implements a Self-Organizing Map network.
@@ -246,6 +248,106 @@ public class SOMGroup extends NeuronGroup {
         }
     }
 
+    /**
+     * Trains the map on rows of input data. This has the same effect as
+     * setting the input layer's activations to each row in turn and calling
+     * {@link #update()}, but while training the weights are kept in a
+     * contiguous prototype matrix, the winner is searched for in parallel for
+     * large maps, and only the units within the neighborhood of the winner
+     * are found and updated, using a grid over the unit positions. The
+     * synapses are written back at the end. If the incoming synapses can not
+     * be represented that way (e.g. some are delayed or come from outside the
+     * input layer) the rows are simply presented one by one.
+     *
+     * @param inputLayer the layer whose activations the data set
+     * @param inputData the rows of input data
+     */
+    public void train(final NeuronGroup inputLayer,
+            final double[][] inputData) {
+        if (inputData.length == 0) {
+            return;
+        }
+        List<Neuron> units = getNeuronList();
+        PrototypeMatrix prototypes = PrototypeMatrix.create(units,
+                inputLayer.getNeuronList());
+        if (prototypes == null) {
+            for (double[] row : inputData) {
+                inputLayer.forceSetActivations(row);
+                update();
+            }
+            return;
+        }
+
+        // The neighborhood is measured in the plane, so the grid can only be
+        // used when the units share a z coordinate
+        final int numUnits = units.size();
+        double z = numUnits > 0 ? units.get(0).getZ() : 0;
+        boolean planar = true;
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (Neuron n : units) {
+            planar &= n.getZ() == z;
+            minX = Math.min(minX, n.getX());
+            maxX = Math.max(maxX, n.getX());
+            minY = Math.min(minY, n.getY());
+            maxY = Math.max(maxY, n.getY());
+        }
+        // Cells of about two units each
+        double spacing = Math.sqrt(Math.max((maxX - minX) * (maxY - minY),
+                1) / Math.max(numUnits, 1) * 2);
+        NeuronGrid grid = planar ? new NeuronGrid(units, spacing) : null;
+
+        final int[] neighbors = new int[numUnits];
+        final int[] count = new int[1];
+        int win = -1;
+        for (double[] row : inputData) {
+            final double[] x = row;
+            win = prototypes.findNearest(x);
+            if (win >= 0) {
+                Neuron w = units.get(win);
+                count[0] = 0;
+                if (grid != null) {
+                    grid.forEachInRadius(w.getX(), w.getY(), z,
+                            neighborhoodSize, u -> neighbors[count[0]++] = u);
+                } else {
+                    for (int u = 0; u < numUnits; u++) {
+                        if (findPhysicalDistance(units.get(u),
+                                w) <= neighborhoodSize) {
+                            neighbors[count[0]++] = u;
+                        }
+                    }
+                }
+                final double rate = alpha;
+                if ((long) count[0] * prototypes.numInputs >= 1 << 16) {
+                    IntStream.range(0, count[0]).parallel().forEach(
+                        i -> prototypes.moveToward(neighbors[i], x, rate));
+                } else {
+                    for (int i = 0; i < count[0]; i++) {
+                        prototypes.moveToward(neighbors[i], x, rate);
+                    }
+                }
+            }
+
+            // Update alpha and neighborhood size
+            alpha -= alpha * alphaDecayRate;
+            if (neighborhoodSize - neighborhoodDecayAmount > 0) {
+                neighborhoodSize -= neighborhoodDecayAmount;
+            } else {
+                neighborhoodSize = 0;
+            }
+        }
+        prototypes.store();
+
+        // Leave the network as the last row left it
+        inputLayer.forceSetActivations(inputData[inputData.length - 1]);
+        winner = win >= 0 ? units.get(win) : null;
+        for (Neuron n : units) {
+            n.setActivation(n == winner ? 1 : 0);
+        }
+    }
+
     /**
      * Find the SOM neuron which is closest to the input vector.
      *
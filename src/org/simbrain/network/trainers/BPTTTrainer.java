@@ -96,7 +96,8 @@ public class BPTTTrainer extends IterableTrainer {
                 // System.out.println("First in set:" + iteration);
                 // For new patterns begin with a regular forward propagation
                 bptt.initNetwork();
-                bptt.getInputLayer().setActivations(
+                // Forced, since the input layer is clamped
+                bptt.getInputLayer().forceSetActivations(
                         network.getTrainingSet().getInputData()[row]);
                 // bptt.getInputLayer().printActivations();
                 bptt.getHiddenLayer().update();
@@ -59,12 +59,8 @@ public class CompetitiveTrainer extends Trainer {
             throw new DataNotInitializedException("Input data not initalized");
         }
 
-        int numRows = network.getTrainingSet().getInputData().length;
-        for (int row = 0; row < numRows; row++) {
-            double[] inputs = network.getTrainingSet().getInputData()[row];
-            network.getInputLayer().forceSetActivations(inputs);
-            network.getCompetitive().update(); // Call a function here to be overriden in subclasses?
-        }
+        network.getCompetitive().train(network.getInputLayer(),
+            network.getTrainingSet().getInputData());
         incrementIteration();
 
         // Make sure excitatory/inhibitory are in proper lists
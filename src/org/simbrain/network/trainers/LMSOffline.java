@@ -27,15 +27,12 @@ package org.simbrain.network.trainers;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 
-import org.ojalgo.access.Access2D.Builder;
-import org.ojalgo.matrix.BasicMatrix;
-import org.ojalgo.matrix.BasicMatrix.Factory;
-import org.ojalgo.matrix.PrimitiveMatrix;
 import org.simbrain.network.core.Neuron;
 import org.simbrain.network.groups.Subnetwork;
 import org.simbrain.network.groups.SynapseGroup;
 import org.simbrain.network.neuron_update_rules.SigmoidalRule;
 import org.simbrain.network.util.SimnetUtils;
+import org.simbrain.util.math.IncrementalRidgeRegression;
 import org.simbrain.util.math.Matrices;
 import org.simbrain.util.propertyeditor.ComboBoxWrapper;
 import org.simbrain.util.randomizer.Randomizer;
@@ -50,6 +47,9 @@ import Jama.Matrix;
  */
 public class LMSOffline extends Trainer {
 
+    /** Number of rows correlated at a time, between progress updates. */
+    private static final int CHUNK_SIZE = 1024;
+
     /** Current solution type. */
     private SolutionType solutionType = SolutionType.WIENER_HOPF;
 
@@ -184,84 +184,48 @@ public class LMSOffline extends Trainer {
     }
 
     /**
-     * Implements the Wiener-Hopf solution to LMS linear regression.
-     * TODO: Fix progress updates to reflect actual training times &#38; %s
+     * Implements the Wiener-Hopf solution to LMS linear regression. The
+     * correlation matrices are accumulated with an
+     * {@link IncrementalRidgeRegression} and the normal equations solved by
+     * Cholesky decomposition rather than by inverting the correlation matrix.
+     *
      * @param network the trainable network being trained
      */
     public void weinerHopfSolution(Trainable network) {
-        long start = System.nanoTime();
         double[][] inputMatrix = network.getTrainingSet().getInputData();
         double[][] trainingMatrix = network.getTrainingSet()
             .getTargetData();
         try {
-
-            Factory<?> mf = PrimitiveMatrix.FACTORY;
-
-            Builder<?> tmpBuilder = mf.getBuilder(inputMatrix.length,
-                inputMatrix[0].length);
-            for (int i = 0; i < tmpBuilder.countRows(); i++) {
-                for (int j = 0; j < tmpBuilder.countColumns(); j++) {
-                    tmpBuilder.set(i, j, inputMatrix[i][j]);
-                }
-            }
-
-            BasicMatrix stateMat = (BasicMatrix) tmpBuilder.build();
-
-            tmpBuilder = mf.getBuilder(trainingMatrix.length,
-                trainingMatrix[0].length);
-            for (int i = 0; i < tmpBuilder.countRows(); i++) {
-                for (int j = 0; j < tmpBuilder.countColumns(); j++) {
-                    tmpBuilder.set(i, j, trainingMatrix[i][j]);
-                    if (Double.isInfinite(trainingMatrix[i][j])
-                        || Double.isNaN(trainingMatrix[i][j])) {
+            for (double[] row : trainingMatrix) {
+                for (double val : row) {
+                    if (Double.isInfinite(val) || Double.isNaN(val)) {
                         throw new NumberFormatException("Invalid target"
                             + " values.");
                     }
                 }
             }
 
-            BasicMatrix teachMat = (BasicMatrix) tmpBuilder.build();
-
-            fireProgressUpdate("Correlating State Matrix (R = S'S)...", 0);
-            teachMat = stateMat.transpose().multiplyRight(teachMat);
-
-            fireProgressUpdate(
-                "Cross-Correlating States with Teacher data (P = S'D)...",
-                15);
-            stateMat = stateMat.transpose().multiplyRight(stateMat);
-
-            fireProgressUpdate("Computing Inverse Correlation Matrix...", 30);
-
-            if (ridgeRegression) {
-                tmpBuilder = mf.getBuilder((int) stateMat.countRows(),
-                    (int) stateMat.countColumns());
-                for (int i = 0, n = (int) stateMat.countColumns(); i < n; i++) {
-                    tmpBuilder.set(i, i, alpha * alpha);
-                }
-                BasicMatrix scaleMat = (BasicMatrix) tmpBuilder.build();
-                stateMat = stateMat.add(scaleMat);
+            fireProgressUpdate("Correlating State Matrix (R = S'S, "
+                + "P = S'D)...", 0);
+            IncrementalRidgeRegression regression =
+                new IncrementalRidgeRegression(inputMatrix[0].length,
+                    trainingMatrix[0].length);
+            int rows = Math.min(inputMatrix.length, trainingMatrix.length);
+            for (int from = 0; from < rows; from += CHUNK_SIZE) {
+                regression.addRows(inputMatrix, trainingMatrix, from,
+                    Math.min(rows, from + CHUNK_SIZE));
+                fireProgressUpdate("Correlating State Matrix (R = S'S, "
+                    + "P = S'D)...", (int) (70L * from / rows));
             }
 
-            stateMat = stateMat.invert();
-
-            fireProgressUpdate("Computing Weights...", 80);
-            tmpBuilder =
-                stateMat.multiplyRight(teachMat).copyToBuilder();
-            BasicMatrix finalMat = (BasicMatrix) tmpBuilder.build();
-            double[][] wOut = new double[(int) tmpBuilder.countRows()]
-                [(int) tmpBuilder.countColumns()];
-            for (int i = 0, n = (int) tmpBuilder.countRows(); i < n; i++) {
-                for (int j = 0, m = (int) tmpBuilder.countColumns(); j < m; j++)
-                {
-                    wOut[i][j] = finalMat.doubleValue(i, j);
-                }
-            }
+            fireProgressUpdate("Computing Weights...", 70);
+            double[][] wOut = regression.solve(ridgeRegression ? alpha * alpha
+                : 0);
             fireProgressUpdate("Setting Weights...", 95);
             SimnetUtils.setWeights(network.getInputNeurons(),
                 network.getOutputNeurons(), wOut);
             fireProgressUpdate("Done!", 100);
 
-            // TODO: What error does JAMA actually throw for singular Matrices?
         } catch (RuntimeException e) {
             JOptionPane.showMessageDialog(new JFrame(), ""
                 + "State Correlation Matrix is Singular."
@@ -270,12 +234,6 @@ public class LMSOffline extends Trainer {
                 "Training Failed", JOptionPane.ERROR_MESSAGE);
             fireProgressUpdate("Training Failed", 0);
         }
-
-        trainingMatrix = null;
-        inputMatrix = null;
-
-        long end = System.nanoTime();
-        System.out.println("Time: " + (end - start) / Math.pow(10, 9));
     }
 
     /**
@@ -0,0 +1,1096 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.trainers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.NeuronUpdateRule;
+import org.simbrain.network.core.Synapse;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.network.groups.Subnetwork;
+import org.simbrain.network.groups.SynapseGroup;
+import org.simbrain.network.neuron_update_rules.LinearRule;
+import org.simbrain.network.neuron_update_rules.SigmoidalRule;
+import org.simbrain.network.neuron_update_rules.interfaces.BiasedUpdateRule;
+import org.simbrain.network.neuron_update_rules.interfaces.DifferentiableUpdateRule;
+import org.simbrain.network.subnetworks.BPTTNetwork;
+import org.simbrain.network.subnetworks.BackpropNetwork;
+import org.simbrain.network.subnetworks.SimpleRecurrentNetwork;
+import org.simbrain.util.math.SquashingFunction;
+
+/**
+ * Backprop trainer that works on dense copies of the weights rather than on
+ * the network itself. Each synapse group is held as a row-major
+ * <code>double[]</code> weight matrix (one row per target neuron) and each
+ * layer as a block of activation rows, so a mini-batch is propagated with a
+ * few matrix products instead of neuron by neuron. Weights and biases are
+ * read from the network at the start of each epoch and written back at the
+ * end, so the network only changes once per call to {@link #apply()}.
+ * <p>
+ * Handles {@link BackpropNetwork}, {@link SimpleRecurrentNetwork} (the
+ * context layer gets the hidden activations of the previous row) and
+ * {@link BPTTNetwork} (weights are changed at the end of each sequence, and
+ * each step after the first in a sequence takes the previous output as
+ * input, except in clamped input neurons, as in
+ * {@link BPTTNetwork#update()}). Layers trained this way must use
+ * {@link SigmoidalRule} or {@link LinearRule}; use
+ * {@link #canTrain(Subnetwork)} to check. Noise in the update rules is
+ * ignored during training.
+ * <p>
+ * As in {@link SRNTrainer} and {@link BPTTTrainer}, the gradient is
+ * truncated: the context layer and the input fed back from the previous
+ * step are treated as fixed inputs, and no error is passed back through
+ * them. With a batch size of 1 this does the same online updates as
+ * {@link BackpropTrainer} and {@link SRNTrainer}, and for backprop through
+ * time networks with a clamped input layer (the default) the same updates
+ * as {@link BPTTTrainer}, including its momentum within each sequence.
+ * Larger batches average the gradient over the batch before changing the
+ * weights.
+ */
+public class MatrixBackpropTrainer extends IterableTrainer {
+
+    /** Default learning rate. */
+    private static final double DEFAULT_LEARNING_RATE = .25;
+
+    /** Default momentum. */
+    private static final double DEFAULT_MOMENTUM = .9;
+
+    /**
+     * Number of multiply-adds below which a matrix product is not worth
+     * splitting across threads.
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 15;
+
+    /** Learning rate. */
+    private double learningRate = DEFAULT_LEARNING_RATE;
+
+    /** Momentum. Must be between 0 and 1. */
+    private double momentum = DEFAULT_MOMENTUM;
+
+    /** Number of rows per weight update, for networks without sequences. */
+    private int batchSize = 1;
+
+    /** Number of threads used for the matrix products. */
+    private int numThreads = 1;
+
+    /** Current error. */
+    private double mse;
+
+    /** The network being trained. */
+    private final Subnetwork subnet;
+
+    /** Layers, with the layers that are updated in update order. */
+    private final List<Layer> layers = new ArrayList<Layer>();
+
+    /** Weight matrices. */
+    private final List<Projection> projections = new ArrayList<Projection>();
+
+    /** The input layer. */
+    private final Layer inputLayer;
+
+    /** The output layer. */
+    private final Layer outputLayer;
+
+    /**
+     * For simple recurrent networks, the context layer, which is set to the
+     * hidden activations of the previous row. Null otherwise.
+     */
+    private final Layer contextLayer;
+
+    /** The layer copied to the context layer, or null. */
+    private final Layer contextSource;
+
+    /**
+     * Sequence length for backprop through time networks, where the output
+     * is fed back to the input. 0 otherwise.
+     */
+    private int stepsPerSequence;
+
+    /** Rows of activations currently allocated for each layer. */
+    private int capacity;
+
+    /**
+     * For backprop through time networks, the weight given to the gradient
+     * of a step, indexed by the number of steps before the end of the
+     * sequence.
+     */
+    private double[] stepScale;
+
+    /**
+     * Pool for the matrix products, shared by all trainers and created when
+     * first needed. Trainers opened from the GUI are never told they are
+     * done with, so a pool per trainer would never be shut down. Its
+     * threads are daemons and idle ones time out.
+     */
+    private static volatile ForkJoinPool pool;
+
+    /**
+     * Create a trainer for a backprop network.
+     *
+     * @param network the network to train
+     */
+    public MatrixBackpropTrainer(BackpropNetwork network) {
+        this(network, network.getNeuronGroupList().get(0), network
+                .getNeuronGroupList().get(
+                        network.getNeuronGroupCount() - 1), null, null, 0);
+    }
+
+    /**
+     * Create a trainer for a simple recurrent network.
+     *
+     * @param srn the network to train
+     */
+    public MatrixBackpropTrainer(SimpleRecurrentNetwork srn) {
+        this(srn, srn.getInputLayer(), srn.getOutputLayer(), srn
+                .getContextLayer(), srn.getHiddenLayer(), 0);
+    }
+
+    /**
+     * Create a trainer for a backprop through time network.
+     *
+     * @param bptt the network to train
+     */
+    public MatrixBackpropTrainer(BPTTNetwork bptt) {
+        this(bptt, bptt.getInputLayer(), bptt.getOutputLayer(), null, null,
+                bptt.getStepsPerSequences());
+    }
+
+    /**
+     * Build the matrix form of a network.
+     *
+     * @param network the network
+     * @param input the input layer
+     * @param output the output layer
+     * @param context the context layer, or null
+     * @param contextSource the layer copied to the context layer, or null
+     * @param stepsPerSequence sequence length if output is fed back to
+     *            input, else 0
+     * @throws IllegalArgumentException if a layer uses an update rule this
+     *             trainer can not handle
+     */
+    private MatrixBackpropTrainer(final Subnetwork network,
+            final NeuronGroup input, final NeuronGroup output,
+            final NeuronGroup context, final NeuronGroup contextSource,
+            final int stepsPerSequence) {
+        super((Trainable) network);
+        if (!canTrain(network)) {
+            throw new IllegalArgumentException("Only sigmoidal and linear "
+                    + "update rules can be trained with matrix backprop");
+        }
+        this.subnet = network;
+        this.stepsPerSequence = stepsPerSequence;
+        Map<NeuronGroup, Layer> byGroup = new HashMap<NeuronGroup, Layer>();
+        for (NeuronGroup group : network.getNeuronGroupList()) {
+            Layer layer = new Layer(group);
+            byGroup.put(group, layer);
+            layers.add(layer);
+        }
+        for (SynapseGroup sg : network.getSynapseGroupList()) {
+            Layer target = byGroup.get(sg.getTargetNeuronGroup());
+            Projection projection = new Projection(sg,
+                    byGroup.get(sg.getSourceNeuronGroup()), target);
+            target.incoming.add(projection);
+            projections.add(projection);
+        }
+        this.inputLayer = byGroup.get(input);
+        this.outputLayer = byGroup.get(output);
+        this.contextLayer = context == null ? null : byGroup.get(context);
+        this.contextSource = context == null ? null : byGroup
+                .get(contextSource);
+        for (Layer layer : layers) {
+            layer.updated = !layer.incoming.isEmpty() && layer != inputLayer
+                    && layer != contextLayer;
+        }
+        setIteration(0);
+    }
+
+    /**
+     * Returns true if every layer with incoming synapse groups uses update
+     * rules this trainer can compute.
+     *
+     * @param network the network to check
+     * @return true if the network can be trained with this class
+     */
+    public static boolean canTrain(final Subnetwork network) {
+        for (SynapseGroup sg : network.getSynapseGroupList()) {
+            for (Neuron neuron : sg.getTargetNeuronGroup().getNeuronList()) {
+                NeuronUpdateRule rule = neuron.getUpdateRule();
+                if (!(rule instanceof SigmoidalRule)
+                        && !(rule instanceof LinearRule)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void apply() {
+        mse = 0;
+        int numRows = getMinimumNumRows(network);
+        if (numRows == 0 || inputLayer.size == 0) {
+            return;
+        }
+        double[][] inputData = network.getTrainingSet().getInputData();
+        double[][] targetData = network.getTrainingSet().getTargetData();
+
+        if (subnet instanceof BPTTNetwork) {
+            stepsPerSequence = Math.max(1,
+                    ((BPTTNetwork) subnet).getStepsPerSequences());
+        }
+        network.initNetwork();
+        readNetwork();
+        int rowsPerUpdate = stepsPerSequence > 0 ? stepsPerSequence : Math
+                .max(1, batchSize);
+        ensureCapacity(Math.min(rowsPerUpdate, numRows));
+        boolean recurrent = contextLayer != null || stepsPerSequence > 0;
+        if (contextLayer != null) {
+            // The first context comes from the network's initial state
+            for (int i = 0; i < contextSource.size; i++) {
+                contextLayer.act[i] = contextSource.neurons[i]
+                        .getActivation();
+            }
+        }
+
+        if (stepsPerSequence > 0) {
+            computeStepScale(rowsPerUpdate);
+        }
+        int rows = 0;
+        for (int start = 0; start < numRows; start += rowsPerUpdate) {
+            if (contextLayer != null && start > 0) {
+                // Carry the last hidden state into the next batch
+                System.arraycopy(contextSource.act, (rows - 1)
+                        * contextSource.size, contextLayer.act, 0,
+                        contextSource.size);
+            }
+            rows = Math.min(rowsPerUpdate, numRows - start);
+            if (recurrent) {
+                for (int r = 0; r < rows; r++) {
+                    setInputs(inputData, start, r);
+                    forward(r, r + 1);
+                }
+            } else {
+                for (int r = 0; r < rows; r++) {
+                    System.arraycopy(inputData[start + r], 0,
+                            inputLayer.act, r * inputLayer.size,
+                            inputLayer.size);
+                }
+                forward(0, rows);
+            }
+            mse += backward(targetData, start, rows);
+            updateWeights(rows);
+        }
+
+        writeActivations(rows - 1);
+        writeNetwork();
+        mse = mse / (numRows * outputLayer.size);
+        incrementIteration();
+        fireErrorUpdated();
+    }
+
+    /**
+     * Set the input (and for simple recurrent networks the context) of a
+     * row of the current batch, for networks updated one row at a time.
+     *
+     * @param inputData the input data
+     * @param start first data row of the batch
+     * @param r row within the batch
+     */
+    private void setInputs(final double[][] inputData, final int start,
+            final int r) {
+        if (stepsPerSequence > 0 && r > 0) {
+            // Later steps of a sequence see the previous output, except in
+            // clamped neurons, which keep their activation
+            int n = inputLayer.size;
+            for (int i = 0; i < n; i++) {
+                inputLayer.act[r * n + i] = i < outputLayer.size
+                        && !inputLayer.clamped[i] ? outputLayer.act[(r - 1)
+                        * outputLayer.size + i] : inputLayer.act[(r - 1) * n
+                        + i];
+            }
+        } else {
+            System.arraycopy(inputData[start + r], 0, inputLayer.act, r
+                    * inputLayer.size, inputLayer.size);
+        }
+        if (contextLayer != null && r > 0) {
+            System.arraycopy(contextSource.act, (r - 1) * contextSource.size,
+                    contextLayer.act, r * contextLayer.size,
+                    contextLayer.size);
+        }
+    }
+
+    /**
+     * Propagate activations through the updated layers for a range of rows
+     * of the current batch.
+     *
+     * @param r0 first row
+     * @param r1 end row, exclusive
+     */
+    private void forward(final int r0, final int r1) {
+        for (Layer layer : layers) {
+            if (!layer.updated) {
+                continue;
+            }
+            int n = layer.size;
+            Arrays.fill(layer.net, r0 * n, r1 * n, 0);
+            for (Projection p : layer.incoming) {
+                multiplyTransposed(p.source.act, p.source.size, p.weights,
+                        layer.net, n, r0, r1);
+            }
+            for (int r = r0; r < r1; r++) {
+                for (int j = 0, k = r * n; j < n; j++, k++) {
+                    layer.activate(j, k);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compute error signals for all updated layers and add the weight and
+     * bias gradients of the batch to the accumulators.
+     *
+     * @param targetData target data
+     * @param start first data row of the batch
+     * @param rows number of rows in the batch
+     * @return summed squared output error of the batch
+     */
+    private double backward(final double[][] targetData, final int start,
+            final int rows) {
+        double sse = 0;
+        for (Layer layer : layers) {
+            Arrays.fill(layer.error, 0, rows * layer.size, 0);
+        }
+        int m = outputLayer.size;
+        for (int r = 0; r < rows; r++) {
+            double[] target = targetData[start + r];
+            for (int j = 0, k = r * m; j < m; j++, k++) {
+                double error = target[j] - outputLayer.act[k];
+                outputLayer.error[k] = error;
+                sse += error * error;
+            }
+        }
+        for (int l = layers.size() - 1; l >= 0; l--) {
+            Layer layer = layers.get(l);
+            if (!layer.updated) {
+                continue;
+            }
+            int n = layer.size;
+            for (int k = 0, end = rows * n; k < end; k++) {
+                layer.error[k] *= layer.derivative(k % n, k);
+            }
+            for (int k = 0, end = rows * n; k < end; k++) {
+                layer.biasGradient[k % n] += layer.error[k];
+            }
+            for (Projection p : layer.incoming) {
+                if (p.source.updated) {
+                    multiply(layer.error, n, p.weights, p.source.error,
+                            p.source.size, rows);
+                }
+            }
+            if (stepsPerSequence > 0) {
+                // Weight the steps as the momentum within a sequence does
+                for (int k = 0, end = rows * n; k < end; k++) {
+                    layer.error[k] *= stepScale[rows - 1 - k / n];
+                }
+            }
+            for (Projection p : layer.incoming) {
+                multiplyTransposedLeft(layer.error, n, p.source.act,
+                        p.source.size, p.gradient, rows);
+            }
+        }
+        return sse;
+    }
+
+    /**
+     * Change weights and biases by the accumulated gradients, with momentum,
+     * and clear the accumulators. For backprop through time networks,
+     * momentum is applied within each sequence instead, by
+     * {@link #stepScale}, and not carried from one sequence to the next.
+     *
+     * @param rows number of rows the gradients were summed over
+     */
+    private void updateWeights(final int rows) {
+        double rate = learningRate / rows;
+        double carried = stepsPerSequence > 0 ? 0 : momentum;
+        for (Projection p : projections) {
+            if (!p.target.updated) {
+                continue;
+            }
+            double[] w = p.weights;
+            for (int k = 0; k < w.length; k++) {
+                double delta = rate * p.gradient[k] + carried * p.delta[k];
+                p.delta[k] = delta;
+                double val = w[k] + delta;
+                w[k] = val > p.upper[k] ? p.upper[k]
+                        : (val < p.lower[k] ? p.lower[k] : val);
+                p.gradient[k] = 0;
+            }
+        }
+        for (Layer layer : layers) {
+            if (!layer.updated) {
+                continue;
+            }
+            double[] g = layer.biasGradient;
+            for (int j = 0; j < layer.size; j++) {
+                int owner = layer.ruleOwner[j];
+                if (owner != j) {
+                    // A shared bias gets the change of every neuron using it
+                    g[owner] += g[j];
+                }
+            }
+            for (int j = 0; j < layer.size; j++) {
+                int owner = layer.ruleOwner[j];
+                if (!layer.biased[j]) {
+                    continue;
+                } else if (owner == j) {
+                    layer.bias[j] += rate * g[j];
+                } else {
+                    layer.bias[j] = layer.bias[owner];
+                }
+            }
+            Arrays.fill(g, 0);
+        }
+    }
+
+    /**
+     * Read current weights, bounds and biases from the network.
+     */
+    private void readNetwork() {
+        for (Projection p : projections) {
+            p.read();
+        }
+        for (Layer layer : layers) {
+            layer.read();
+        }
+    }
+
+    /**
+     * Write weights and biases back to the network.
+     */
+    private void writeNetwork() {
+        for (Projection p : projections) {
+            if (p.target.updated) {
+                p.write();
+            }
+        }
+        for (Layer layer : layers) {
+            if (layer.updated) {
+                layer.write();
+            }
+        }
+        revalidateSynapseGroups();
+    }
+
+    /**
+     * Show the activations of one row of the last batch in the network.
+     *
+     * @param r the row
+     */
+    private void writeActivations(final int r) {
+        for (Layer layer : layers) {
+            for (int j = 0; j < layer.size; j++) {
+                layer.neurons[j].forceSetActivation(layer.act[r * layer.size
+                        + j]);
+            }
+        }
+    }
+
+    /**
+     * Fill {@link #stepScale} for sequences of up to a number of steps.
+     * {@link BPTTTrainer} adds momentum times the change accumulated so far
+     * in a sequence to the change of each step, so the step that is
+     * <code>i</code> steps before the last counts
+     * <code>(1 + momentum)<sup>i</sup></code> times.
+     *
+     * @param steps the number of steps
+     */
+    private void computeStepScale(final int steps) {
+        stepScale = new double[steps];
+        stepScale[0] = 1;
+        for (int i = 1; i < steps; i++) {
+            stepScale[i] = stepScale[i - 1] * (1 + momentum);
+        }
+    }
+
+    /**
+     * Make sure each layer has room for a number of rows.
+     *
+     * @param rows the number of rows
+     */
+    private void ensureCapacity(final int rows) {
+        if (rows <= capacity) {
+            return;
+        }
+        for (Layer layer : layers) {
+            layer.act = Arrays.copyOf(layer.act, rows * layer.size);
+            layer.net = new double[rows * layer.size];
+            layer.error = new double[rows * layer.size];
+        }
+        capacity = rows;
+    }
+
+    /**
+     * Interface for a piece of work over a range of indices.
+     */
+    private interface RangeTask {
+
+        /**
+         * @param from first index
+         * @param to end index, exclusive
+         */
+        void run(int from, int to);
+    }
+
+    /**
+     * Run a task over a range of indices, split across threads if the work
+     * is large enough.
+     *
+     * @param n number of indices
+     * @param work multiply-adds per index
+     * @param task the task
+     */
+    private void split(final int n, final int work, final RangeTask task) {
+        if (numThreads <= 1 || n < 2 || (long) n * work < PARALLEL_THRESHOLD) {
+            task.run(0, n);
+            return;
+        }
+        // At most numThreads chunks, so at most that many threads are busy
+        final int chunks = Math.min(n, numThreads);
+        getPool().submit(() -> IntStream.range(0, chunks).parallel()
+                .forEach(c -> task.run(c * n / chunks, (c + 1) * n / chunks)))
+                .join();
+    }
+
+    /**
+     * Returns the shared pool, creating it with a parallelism equal to the
+     * number of available processors if it does not exist yet.
+     *
+     * @return the pool
+     */
+    private static ForkJoinPool getPool() {
+        ForkJoinPool p = pool;
+        if (p == null) {
+            synchronized (MatrixBackpropTrainer.class) {
+                p = pool;
+                if (p == null) {
+                    p = new ForkJoinPool(
+                            Runtime.getRuntime().availableProcessors());
+                    pool = p;
+                }
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Adds <code>a w<sup>T</sup></code> to <code>out</code> for rows
+     * <code>r0..r1</code>, where <code>w</code> has one row per output
+     * column. Used for forward propagation.
+     *
+     * @param a input rows, <code>aCols</code> wide
+     * @param aCols width of <code>a</code> and <code>w</code>
+     * @param w weight rows
+     * @param out output rows, <code>outCols</code> wide
+     * @param outCols number of rows of <code>w</code>
+     * @param r0 first row
+     * @param r1 end row, exclusive
+     */
+    private void multiplyTransposed(final double[] a, final int aCols,
+            final double[] w, final double[] out, final int outCols,
+            final int r0, final int r1) {
+        if (r1 - r0 > 1) {
+            split(r1 - r0, aCols * outCols, (from, to) -> {
+                for (int r = r0 + from; r < r0 + to; r++) {
+                    dotRows(a, r * aCols, aCols, w, out, r * outCols, 0,
+                            outCols);
+                }
+            });
+        } else {
+            split(outCols, aCols, (from, to) -> dotRows(a, r0 * aCols, aCols,
+                    w, out, r0 * outCols, from, to));
+        }
+    }
+
+    /**
+     * Adds the dot products of one row of <code>a</code> with rows
+     * <code>j0..j1</code> of <code>w</code> to <code>out</code>.
+     *
+     * @param a input matrix
+     * @param aOff offset of the row in <code>a</code>
+     * @param cols row length
+     * @param w weight rows
+     * @param out output
+     * @param outOff offset of the output row
+     * @param j0 first weight row
+     * @param j1 end weight row, exclusive
+     */
+    private static void dotRows(final double[] a, final int aOff,
+            final int cols, final double[] w, final double[] out,
+            final int outOff, final int j0, final int j1) {
+        int blocked = cols & ~3;
+        for (int j = j0; j < j1; j++) {
+            // Four partial sums so the additions do not wait on each other
+            double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+            int wk = j * cols;
+            int i = 0;
+            for (; i < blocked; i += 4, wk += 4) {
+                s0 += a[aOff + i] * w[wk];
+                s1 += a[aOff + i + 1] * w[wk + 1];
+                s2 += a[aOff + i + 2] * w[wk + 2];
+                s3 += a[aOff + i + 3] * w[wk + 3];
+            }
+            for (; i < cols; i++, wk++) {
+                s0 += a[aOff + i] * w[wk];
+            }
+            out[outOff + j] += (s0 + s1) + (s2 + s3);
+        }
+    }
+
+    /**
+     * Adds <code>d w</code> to <code>out</code> over the first
+     * <code>rows</code> rows. Used to pass error back through a weight
+     * matrix.
+     *
+     * @param d error rows, <code>dCols</code> wide
+     * @param dCols number of rows of <code>w</code>
+     * @param w weight rows, <code>outCols</code> wide
+     * @param out output rows
+     * @param outCols width of the output
+     * @param rows number of rows
+     */
+    private void multiply(final double[] d, final int dCols,
+            final double[] w, final double[] out, final int outCols,
+            final int rows) {
+        split(rows > 1 ? rows : outCols, dCols * (rows > 1 ? outCols : 1), (
+                from, to) -> {
+            int r0 = rows > 1 ? from : 0;
+            int r1 = rows > 1 ? to : 1;
+            int i0 = rows > 1 ? 0 : from;
+            int i1 = rows > 1 ? outCols : to;
+            for (int r = r0; r < r1; r++) {
+                for (int j = 0; j < dCols; j++) {
+                    double dj = d[r * dCols + j];
+                    if (dj == 0) {
+                        continue;
+                    }
+                    for (int i = i0, wk = j * outCols + i0, ok = r * outCols
+                            + i0; i < i1; i++, wk++, ok++) {
+                        out[ok] += dj * w[wk];
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Adds <code>d<sup>T</sup> a</code> to <code>g</code> over the first
+     * <code>rows</code> rows. Used to compute weight gradients.
+     *
+     * @param d error rows, <code>dCols</code> wide
+     * @param dCols number of rows of <code>g</code>
+     * @param a activation rows, <code>aCols</code> wide
+     * @param aCols width of <code>g</code>
+     * @param g gradient rows
+     * @param rows number of rows
+     */
+    private void multiplyTransposedLeft(final double[] d, final int dCols,
+            final double[] a, final int aCols, final double[] g,
+            final int rows) {
+        split(dCols, aCols * rows, (from, to) -> {
+            for (int j = from; j < to; j++) {
+                for (int r = 0; r < rows; r++) {
+                    double dj = d[r * dCols + j];
+                    if (dj == 0) {
+                        continue;
+                    }
+                    for (int i = 0, gk = j * aCols, ak = r * aCols; i < aCols;
+                            i++, gk++, ak++) {
+                        g[gk] += dj * a[ak];
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public double getError() {
+        return mse;
+    }
+
+    @Override
+    public void randomize() {
+        for (Layer layer : layers) {
+            if (!layer.updated) {
+                continue;
+            }
+            for (Neuron neuron : layer.neurons) {
+                neuron.clear(); // Looks nicer in the GUI
+                if (subnet instanceof BPTTNetwork) {
+                    neuron.randomizeFanIn();
+                    neuron.randomizeBias(-.5, .5);
+                } else {
+                    for (Synapse synapse : neuron.getFanIn()) {
+                        synapse.setStrength(.1 * Math.random() - .05);
+                    }
+                    ((BiasedUpdateRule) neuron.getUpdateRule())
+                            .setBias(.1 * Math.random() - .05);
+                }
+            }
+        }
+        revalidateSynapseGroups();
+    }
+
+    /**
+     * @return the learningRate
+     */
+    public double getLearningRate() {
+        return learningRate;
+    }
+
+    /**
+     * @param learningRate the learningRate to set
+     */
+    public void setLearningRate(double learningRate) {
+        this.learningRate = learningRate;
+    }
+
+    /**
+     * @return the momentum
+     */
+    public double getMomentum() {
+        return momentum;
+    }
+
+    /**
+     * @param momentum the momentum to set
+     */
+    public void setMomentum(double momentum) {
+        this.momentum = momentum;
+    }
+
+    /**
+     * @return the number of rows per weight update. Not used for backprop
+     *         through time networks, which update once per sequence.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize the number of rows per weight update
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * @return the number of threads used for matrix products
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * @param numThreads the number of threads used for matrix products
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * A neuron group as rows of activations, with the update rule
+     * parameters needed to compute them.
+     */
+    private static final class Layer {
+
+        /** The neurons. */
+        private final Neuron[] neurons;
+
+        /** Number of neurons. */
+        private final int size;
+
+        /** Synapse groups into this layer. */
+        private final List<Projection> incoming = new ArrayList<Projection>();
+
+        /** True if the layer is computed from its inputs. */
+        private boolean updated;
+
+        /** Activations, one row per batch row. */
+        private double[] act;
+
+        /** Weighted inputs, one row per batch row. */
+        private double[] net;
+
+        /** Error signals, one row per batch row. */
+        private double[] error;
+
+        /** Bias of each neuron. */
+        private final double[] bias;
+
+        /** Whether each neuron has a bias. */
+        private final boolean[] biased;
+
+        /** Accumulated bias gradient. */
+        private final double[] biasGradient;
+
+        /**
+         * Index of the first neuron with the same update rule instance as
+         * each neuron. Layers built from a single rule, as in
+         * {@link SimpleRecurrentNetwork}, share one bias, which the other
+         * trainers change by the sum of the changes of its neurons.
+         */
+        private final int[] ruleOwner;
+
+        /** Squashing function of each sigmoidal neuron, null if linear. */
+        private final SquashingFunction[] squash;
+
+        /** Slope of each neuron. */
+        private final double[] slope;
+
+        /** Upper bound of each neuron. */
+        private final double[] upper;
+
+        /** Lower bound of each neuron. */
+        private final double[] lower;
+
+        /** Whether each linear neuron clips. */
+        private final boolean[] clipped;
+
+        /** Whether each neuron is clamped. */
+        private final boolean[] clamped;
+
+        /**
+         * @param group the neuron group
+         */
+        Layer(final NeuronGroup group) {
+            List<Neuron> list = group.getNeuronList();
+            neurons = list.toArray(new Neuron[list.size()]);
+            size = neurons.length;
+            act = new double[0];
+            net = new double[0];
+            error = new double[0];
+            bias = new double[size];
+            biased = new boolean[size];
+            biasGradient = new double[size];
+            ruleOwner = new int[size];
+            squash = new SquashingFunction[size];
+            slope = new double[size];
+            upper = new double[size];
+            lower = new double[size];
+            clipped = new boolean[size];
+            clamped = new boolean[size];
+        }
+
+        /**
+         * Read biases and update rule parameters from the neurons.
+         */
+        void read() {
+            Map<NeuronUpdateRule, Integer> owners =
+                    new IdentityHashMap<NeuronUpdateRule, Integer>();
+            for (int j = 0; j < size; j++) {
+                NeuronUpdateRule rule = neurons[j].getUpdateRule();
+                Integer owner = owners.putIfAbsent(rule, j);
+                ruleOwner[j] = owner == null ? j : owner;
+                clamped[j] = neurons[j].isClamped();
+                biased[j] = rule instanceof BiasedUpdateRule;
+                bias[j] = biased[j] ? ((BiasedUpdateRule) rule).getBias() : 0;
+                if (rule instanceof SigmoidalRule) {
+                    SigmoidalRule sig = (SigmoidalRule) rule;
+                    squash[j] = sig.getSquashFunctionType();
+                    slope[j] = sig.getSlope();
+                    upper[j] = sig.getUpperBound();
+                    lower[j] = sig.getLowerBound();
+                } else if (rule instanceof LinearRule) {
+                    LinearRule lin = (LinearRule) rule;
+                    squash[j] = null;
+                    slope[j] = lin.getSlope();
+                    upper[j] = lin.getUpperBound();
+                    lower[j] = lin.getLowerBound();
+                    clipped[j] = lin.isClipped();
+                }
+            }
+        }
+
+        /**
+         * Write biases back to the neurons.
+         */
+        void write() {
+            for (int j = 0; j < size; j++) {
+                if (biased[j]) {
+                    ((BiasedUpdateRule) neurons[j].getUpdateRule())
+                            .setBias(bias[j]);
+                }
+            }
+        }
+
+        /**
+         * Compute an activation from its weighted input, as the neuron's
+         * update rule would.
+         *
+         * @param j neuron index
+         * @param k index into the activation rows
+         */
+        void activate(final int j, final int k) {
+            if (squash[j] != null) {
+                act[k] = squash[j].valueOf(net[k] + bias[j], upper[j],
+                        lower[j], slope[j]);
+            } else {
+                double val = slope[j] * net[k] + bias[j];
+                if (clipped[j]) {
+                    val = val > upper[j] ? upper[j] : (val < lower[j]
+                            ? lower[j] : val);
+                }
+                act[k] = val;
+            }
+        }
+
+        /**
+         * Returns the derivative of the update rule, evaluated as the other
+         * backprop trainers evaluate it: at the weighted input without the
+         * bias.
+         *
+         * @param j neuron index
+         * @param k index into the activation rows
+         * @return derivative of the activation function at the current input
+         */
+        double derivative(final int j, final int k) {
+            return ((DifferentiableUpdateRule) neurons[j].getUpdateRule())
+                    .getDerivative(net[k]);
+        }
+    }
+
+    /**
+     * A synapse group as a dense weight matrix with one row per target
+     * neuron. Missing synapses have zero weight and bounds.
+     */
+    private static final class Projection {
+
+        /** The synapse group. */
+        private final SynapseGroup group;
+
+        /** Source layer. */
+        private final Layer source;
+
+        /** Target layer. */
+        private final Layer target;
+
+        /** Synapse at each matrix entry, or null. */
+        private final Synapse[] synapses;
+
+        /** Weights. */
+        private final double[] weights;
+
+        /** Upper bound of each weight. */
+        private final double[] upper;
+
+        /** Lower bound of each weight. */
+        private final double[] lower;
+
+        /** Accumulated gradient. */
+        private final double[] gradient;
+
+        /** Last change of each weight, for momentum. */
+        private final double[] delta;
+
+        /**
+         * @param group the synapse group
+         * @param source the source layer
+         * @param target the target layer
+         */
+        Projection(final SynapseGroup group, final Layer source,
+                final Layer target) {
+            this.group = group;
+            this.source = source;
+            this.target = target;
+            int n = source.size * target.size;
+            synapses = new Synapse[n];
+            weights = new double[n];
+            upper = new double[n];
+            lower = new double[n];
+            gradient = new double[n];
+            delta = new double[n];
+        }
+
+        /**
+         * Read weights and bounds from the synapses.
+         */
+        void read() {
+            Map<Neuron, Integer> sourceIndex = index(source);
+            Map<Neuron, Integer> targetIndex = index(target);
+            Arrays.fill(synapses, null);
+            for (Synapse s : group.getAllSynapses()) {
+                Integer i = sourceIndex.get(s.getSource());
+                Integer j = targetIndex.get(s.getTarget());
+                if (i != null && j != null) {
+                    synapses[j * source.size + i] = s;
+                }
+            }
+            for (int k = 0; k < synapses.length; k++) {
+                Synapse s = synapses[k];
+                if (s == null) {
+                    weights[k] = 0;
+                    upper[k] = 0;
+                    lower[k] = 0;
+                } else if (s.isFrozen()) {
+                    weights[k] = s.getStrength();
+                    upper[k] = weights[k];
+                    lower[k] = weights[k];
+                } else {
+                    weights[k] = s.getStrength();
+                    upper[k] = s.getSource().getPolarity()
+                            .clip(s.getUpperBound());
+                    lower[k] = s.getSource().getPolarity()
+                            .clip(s.getLowerBound());
+                }
+            }
+        }
+
+        /**
+         * Write the weights back to the synapses.
+         */
+        void write() {
+            for (int k = 0; k < synapses.length; k++) {
+                if (synapses[k] != null) {
+                    synapses[k].setStrength(weights[k]);
+                }
+            }
+        }
+
+        /**
+         * @param layer a layer
+         * @return the index of each neuron in the layer
+         */
+        private static Map<Neuron, Integer> index(final Layer layer) {
+            Map<Neuron, Integer> map = new HashMap<Neuron, Integer>();
+            for (int i = 0; i < layer.size; i++) {
+                map.put(layer.neurons[i], i);
+            }
+            return map;
+        }
+    }
+
+}
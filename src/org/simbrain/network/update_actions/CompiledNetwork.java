@@ -0,0 +1,399 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.update_actions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.NeuronUpdateRule;
+import org.simbrain.network.core.NeuronUpdateRule.InputType;
+import org.simbrain.network.core.Synapse;
+import org.simbrain.network.neuron_update_rules.BinaryRule;
+import org.simbrain.network.neuron_update_rules.LinearRule;
+import org.simbrain.network.neuron_update_rules.SigmoidalRule;
+import org.simbrain.network.synapse_update_rules.StaticSynapseRule;
+import org.simbrain.util.math.SquashingFunction;
+
+/**
+ * A structure-of-arrays snapshot of a set of neurons and the synapses
+ * impinging on them. Activations, buffers and rule parameters are held in
+ * primitive arrays and the fan-in of every neuron is stored as one row of a
+ * compressed sparse row (CSR) weight matrix, so that a buffered update of the
+ * whole set is a single sparse matrix-vector product followed by an
+ * element-wise activation function.
+ * <p>
+ * Only neurons whose update rules are pure functions of their weighted input
+ * (linear, binary and sigmoidal rules without noise) are evaluated over the
+ * arrays. Every other neuron is "interpreted", i.e. updated through its own
+ * {@link NeuronUpdateRule} as usual, which keeps the results identical to
+ * {@link BufferedUpdate} for mixed networks. Synapses with non-static learning
+ * rules are updated as objects after the neurons have been committed and
+ * their new strengths copied back into the weight array.
+ * <p>
+ * A compiled network is a snapshot: any change in topology or parameters
+ * requires a new one to be built. See {@link CompiledUpdate}, which does this
+ * in response to network events.
+ */
+public class CompiledNetwork {
+
+    /** Neuron is updated externally (clamped); its activation is only read. */
+    static final byte FIXED = 0;
+
+    /** Neuron is updated by calling its own update rule. */
+    static final byte INTERPRETED = 1;
+
+    /** Neuron follows {@link LinearRule}. */
+    static final byte LINEAR = 2;
+
+    /** Neuron follows {@link BinaryRule}. */
+    static final byte BINARY = 3;
+
+    /** Neuron follows {@link SigmoidalRule}. */
+    static final byte SIGMOIDAL = 4;
+
+    /** The neurons of this snapshot, in index order. */
+    private final Neuron[] neurons;
+
+    /** How each neuron is updated. One of the constants above. */
+    private final byte[] kinds;
+
+    /** Activations at the start of the current update. */
+    private final double[] activations;
+
+    /** Values computed in the current update, committed at its end. */
+    private final double[] buffers;
+
+    /** Biases of compiled neurons. */
+    private final double[] biases;
+
+    /** Slopes of linear and sigmoidal neurons. */
+    private final double[] slopes;
+
+    /** Upper bounds (or ceilings for binary neurons). */
+    private final double[] upperBounds;
+
+    /** Lower bounds (or floors for binary neurons). */
+    private final double[] lowerBounds;
+
+    /** Thresholds of binary neurons. */
+    private final double[] thresholds;
+
+    /** Whether linear neurons clip their output. */
+    private final boolean[] clipped;
+
+    /** Squashing functions of sigmoidal neurons. */
+    private final SquashingFunction[] squashingFunctions;
+
+    /**
+     * Row pointers of the CSR weight matrix. The fan-in of neuron i occupies
+     * entries rowStart[i] (inclusive) to rowStart[i + 1] (exclusive).
+     */
+    private final int[] rowStart;
+
+    /** Column (source neuron) indices of the CSR weight matrix. */
+    private final int[] sourceIndices;
+
+    /** Values of the CSR weight matrix. */
+    private final double[] weights;
+
+    /** Synapses which learn and so must be updated as objects. */
+    private final Synapse[] plasticSynapses;
+
+    /** Position of each plastic synapse in {@link #weights}. */
+    private final int[] plasticIndices;
+
+    /** Indices of interpreted neurons. */
+    private final int[] interpreted;
+
+    /**
+     * Build a snapshot of the provided neurons and all the synapses which
+     * impinge upon them.
+     *
+     * @param neuronList the neurons to compile
+     */
+    public CompiledNetwork(final List<Neuron> neuronList) {
+        int n = neuronList.size();
+        neurons = neuronList.toArray(new Neuron[n]);
+        kinds = new byte[n];
+        activations = new double[n];
+        buffers = new double[n];
+        biases = new double[n];
+        slopes = new double[n];
+        upperBounds = new double[n];
+        lowerBounds = new double[n];
+        thresholds = new double[n];
+        clipped = new boolean[n];
+        squashingFunctions = new SquashingFunction[n];
+        rowStart = new int[n + 1];
+
+        Map<Neuron, Integer> indexMap = new HashMap<Neuron, Integer>(
+                (int) (n / 0.75) + 1);
+        for (int i = 0; i < n; i++) {
+            indexMap.put(neurons[i], i);
+        }
+
+        // First pass: classify neurons and count the entries of each row
+        int nnz = 0;
+        int numInterpreted = 0;
+        for (int i = 0; i < n; i++) {
+            kinds[i] = classify(neurons[i], indexMap);
+            if (kinds[i] == INTERPRETED) {
+                numInterpreted++;
+            }
+            for (Synapse s : neurons[i].getFanIn()) {
+                if (s.isEnabled()) {
+                    nnz++;
+                }
+            }
+        }
+
+        // Second pass: fill the CSR arrays
+        sourceIndices = new int[nnz];
+        weights = new double[nnz];
+        interpreted = new int[numInterpreted];
+        List<Synapse> plastic = new ArrayList<Synapse>();
+        List<Integer> plasticPositions = new ArrayList<Integer>();
+        int k = 0;
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            rowStart[i] = k;
+            if (kinds[i] == INTERPRETED) {
+                interpreted[m++] = i;
+            }
+            for (Synapse s : neurons[i].getFanIn()) {
+                if (!s.isEnabled()) {
+                    continue;
+                }
+                Integer src = indexMap.get(s.getSource());
+                // Interpreted neurons never read this row, and classify()
+                // guarantees compiled neurons only have indexed sources.
+                sourceIndices[k] = src == null ? 0 : src;
+                weights[k] = s.getStrength();
+                if (!(s.getLearningRule() instanceof StaticSynapseRule)) {
+                    plastic.add(s);
+                    plasticPositions.add(k);
+                }
+                k++;
+            }
+            storeParameters(i, neurons[i].getUpdateRule());
+        }
+        rowStart[n] = k;
+        plasticSynapses = plastic.toArray(new Synapse[plastic.size()]);
+        plasticIndices = new int[plasticPositions.size()];
+        for (int i = 0; i < plasticIndices.length; i++) {
+            plasticIndices[i] = plasticPositions.get(i);
+        }
+    }
+
+    /**
+     * Decide how a neuron will be updated.
+     *
+     * @param neuron the neuron to classify
+     * @param indexMap index of every neuron in the snapshot
+     * @return one of the neuron kind constants
+     */
+    private static byte classify(final Neuron neuron,
+            final Map<Neuron, Integer> indexMap) {
+        if (neuron.isClamped()) {
+            return FIXED;
+        }
+        NeuronUpdateRule rule = neuron.getUpdateRule();
+        if (rule.getInputType() != InputType.WEIGHTED) {
+            return INTERPRETED;
+        }
+        for (Synapse s : neuron.getFanIn()) {
+            if (s.getDelay() != 0 || !indexMap.containsKey(s.getSource())) {
+                return INTERPRETED;
+            }
+        }
+        // Exact class checks: subclasses may override update().
+        if (rule.getClass() == LinearRule.class) {
+            return ((LinearRule) rule).getAddNoise() ? INTERPRETED : LINEAR;
+        } else if (rule.getClass() == BinaryRule.class) {
+            return BINARY;
+        } else if (rule.getClass() == SigmoidalRule.class) {
+            return ((SigmoidalRule) rule).getAddNoise() ? INTERPRETED
+                    : SIGMOIDAL;
+        }
+        return INTERPRETED;
+    }
+
+    /**
+     * Copy the parameters of a compiled neuron's update rule into the
+     * parameter arrays.
+     *
+     * @param i index of the neuron
+     * @param rule its update rule
+     */
+    private void storeParameters(final int i, final NeuronUpdateRule rule) {
+        switch (kinds[i]) {
+        case LINEAR:
+            LinearRule linear = (LinearRule) rule;
+            biases[i] = linear.getBias();
+            slopes[i] = linear.getSlope();
+            upperBounds[i] = linear.getUpperBound();
+            lowerBounds[i] = linear.getLowerBound();
+            clipped[i] = linear.isClipped();
+            break;
+        case BINARY:
+            BinaryRule binary = (BinaryRule) rule;
+            biases[i] = binary.getBias();
+            thresholds[i] = binary.getThreshold();
+            upperBounds[i] = binary.getUpperBound();
+            lowerBounds[i] = binary.getLowerBound();
+            break;
+        case SIGMOIDAL:
+            SigmoidalRule sigmoidal = (SigmoidalRule) rule;
+            biases[i] = sigmoidal.getBias();
+            slopes[i] = sigmoidal.getSlope();
+            upperBounds[i] = sigmoidal.getUpperBound();
+            lowerBounds[i] = sigmoidal.getLowerBound();
+            squashingFunctions[i] = sigmoidal.getSquashFunctionType();
+            break;
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Perform one buffered update of the snapshot: read current activations
+     * and external inputs from the neurons, compute every buffer, then commit
+     * the buffers to the neurons and update plastic synapses.
+     */
+    public void update() {
+        final int n = neurons.length;
+        for (int i = 0; i < n; i++) {
+            activations[i] = neurons[i].getActivation();
+        }
+
+        // Compiled neurons: one sparse mat-vec plus activation function
+        for (int i = 0; i < n; i++) {
+            final byte kind = kinds[i];
+            if (kind < LINEAR) {
+                continue;
+            }
+            double wtdInput = neurons[i].getInputValue();
+            for (int k = rowStart[i], end = rowStart[i + 1]; k < end; k++) {
+                wtdInput += weights[k] * activations[sourceIndices[k]];
+            }
+            buffers[i] = activate(i, kind, wtdInput);
+        }
+
+        // Interpreted neurons read the (not yet committed) neuron objects
+        for (int j = 0; j < interpreted.length; j++) {
+            neurons[interpreted[j]].update();
+        }
+
+        // Commit
+        for (int i = 0; i < n; i++) {
+            if (kinds[i] >= LINEAR) {
+                neurons[i].setBuffer(buffers[i]);
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            if (kinds[i] != FIXED) {
+                neurons[i].setToBufferVals();
+            }
+        }
+
+        // Learning
+        for (int j = 0; j < plasticSynapses.length; j++) {
+            plasticSynapses[j].update();
+            weights[plasticIndices[j]] = plasticSynapses[j].getStrength();
+        }
+    }
+
+    /**
+     * Apply the activation function of a compiled neuron.
+     *
+     * @param i index of the neuron
+     * @param kind kind of the neuron
+     * @param wtdInput net input to the neuron
+     * @return the new activation value
+     */
+    private double activate(final int i, final byte kind,
+            final double wtdInput) {
+        switch (kind) {
+        case LINEAR:
+            double val = slopes[i] * wtdInput + biases[i];
+            if (clipped[i]) {
+                if (val > upperBounds[i]) {
+                    val = upperBounds[i];
+                } else if (val < lowerBounds[i]) {
+                    val = lowerBounds[i];
+                }
+            }
+            return val;
+        case BINARY:
+            return wtdInput + biases[i] > thresholds[i] ? upperBounds[i]
+                    : lowerBounds[i];
+        case SIGMOIDAL:
+            return squashingFunctions[i].valueOf(wtdInput + biases[i],
+                    upperBounds[i], lowerBounds[i], slopes[i]);
+        default:
+            throw new IllegalStateException("Unknown neuron kind " + kind);
+        }
+    }
+
+    /**
+     * Re-read the strengths of all synapses in the snapshot, e.g. after they
+     * have been edited without a corresponding network event.
+     */
+    public void refreshWeights() {
+        int k = 0;
+        for (int i = 0; i < neurons.length; i++) {
+            for (Synapse s : neurons[i].getFanIn()) {
+                if (s.isEnabled()) {
+                    weights[k++] = s.getStrength();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of neurons in the snapshot
+     */
+    public int getNeuronCount() {
+        return neurons.length;
+    }
+
+    /**
+     * @return the number of neurons evaluated over the primitive arrays
+     */
+    public int getCompiledNeuronCount() {
+        int count = 0;
+        for (byte kind : kinds) {
+            if (kind >= LINEAR) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of (enabled) synapses in the weight matrix
+     */
+    public int getSynapseCount() {
+        return weights.length;
+    }
+
+}
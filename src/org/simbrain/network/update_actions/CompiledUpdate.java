@@ -0,0 +1,252 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.update_actions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.NeuronUpdateRule;
+import org.simbrain.network.core.Synapse;
+import org.simbrain.network.core.SynapseUpdateRule;
+import org.simbrain.network.groups.Group;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.network.groups.SynapseGroup;
+import org.simbrain.network.listeners.GroupListener;
+import org.simbrain.network.listeners.NetworkEvent;
+import org.simbrain.network.listeners.NeuronListener;
+import org.simbrain.network.listeners.SynapseListener;
+
+/**
+ * Buffered update of every neuron in the network (loose and grouped) and of
+ * the synapses impinging on them, performed over a {@link CompiledNetwork}
+ * instead of by walking neuron and synapse objects.
+ * <p>
+ * The compiled snapshot is built lazily on the first invocation and is
+ * discarded whenever a network event reports a change in topology or in
+ * neuron or synapse parameters; it is rebuilt on the following invocation.
+ * Neuron activations are read from and committed to the neuron objects on
+ * every invocation, so the GUI, couplings and serialization see the same
+ * state as with {@link BufferedUpdate}. Synapse objects are only touched when
+ * they learn. Changes made directly to model objects without firing an event
+ * (e.g. from a script) should be followed by a call to {@link #invalidate()}.
+ * <p>
+ * Like {@link ConcurrentBufferedUpdate} this action updates all neurons, so
+ * it is normally used in place of the default update actions rather than
+ * alongside them.
+ */
+public class CompiledUpdate extends WholeNetworkUpdate implements
+        NeuronListener, SynapseListener, GroupListener {
+
+    /** Reference to network to update. */
+    private final Network network;
+
+    /** The current snapshot, or null if it must be rebuilt. */
+    private volatile CompiledNetwork compiled;
+
+    /** Synapse groups stored as sparse matrices. */
+    private final List<SynapseGroup> compressedGroups =
+            new ArrayList<SynapseGroup>();
+
+    /**
+     * A static factory method that creates a compiled update for a network.
+     * It listens to the network once it is added to the network's update
+     * manager.
+     *
+     * @param network the network to update
+     * @return the compiled update action
+     */
+    public static CompiledUpdate createCompiledUpdate(final Network network) {
+        return new CompiledUpdate(network);
+    }
+
+    /**
+     * @param network the network to update
+     */
+    private CompiledUpdate(final Network network) {
+        this.network = network;
+    }
+
+    @Override
+    public void addListeners() {
+        network.addNeuronListener(this);
+        network.addSynapseListener(this);
+        network.addGroupListener(this);
+        invalidate();
+    }
+
+    @Override
+    public void removeListeners() {
+        network.removeNeuronListener(this);
+        network.removeSynapseListener(this);
+        network.removeGroupListener(this);
+    }
+
+    @Override
+    public void invoke() {
+        CompiledNetwork current = compiled;
+        if (current == null) {
+            current = compile();
+        }
+        readInputs();
+        for (int i = 0, n = compressedGroups.size(); i < n; i++) {
+            compressedGroups.get(i).applyCompressedInput();
+        }
+        current.update();
+        writeOutputs();
+    }
+
+    /**
+     * Build a new snapshot of the network. Neurons in groups reading from an
+     * input table are left out, since their activations are set externally.
+     *
+     * @return the new snapshot
+     */
+    private synchronized CompiledNetwork compile() {
+        collectGroups(network);
+        compressedGroups.clear();
+        for (SynapseGroup sg : network.getSynapseGroups()) {
+            if (sg.isCompressed()) {
+                compressedGroups.add(sg);
+            }
+        }
+        List<Neuron> toCompile = new ArrayList<Neuron>();
+        for (Neuron n : network.getFlatNeuronList()) {
+            if (!(n.getParentGroup() instanceof NeuronGroup
+                    && ((NeuronGroup) n.getParentGroup()).isInputMode())) {
+                toCompile.add(n);
+            }
+        }
+        compiled = new CompiledNetwork(toCompile);
+        return compiled;
+    }
+
+    /**
+     * Discard the current snapshot so that it is rebuilt on the next
+     * invocation.
+     */
+    public void invalidate() {
+        compiled = null;
+    }
+
+    /**
+     * Re-read synapse strengths into the current snapshot without rebuilding
+     * it. Cheaper than {@link #invalidate()} when only weights have changed.
+     */
+    public void refreshWeights() {
+        CompiledNetwork current = compiled;
+        if (current != null) {
+            current.refreshWeights();
+        }
+    }
+
+    /**
+     * @return the current snapshot, compiling one if needed
+     */
+    public CompiledNetwork getCompiledNetwork() {
+        CompiledNetwork current = compiled;
+        return current == null ? compile() : current;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Compiled Buffered Update";
+    }
+
+    @Override
+    public String getLongDescription() {
+        return "Compiled Buffered Update (All Neurons)";
+    }
+
+    @Override
+    public void neuronChanged(NetworkEvent<Neuron> networkEvent) {
+        invalidate();
+    }
+
+    @Override
+    public void neuronTypeChanged(NetworkEvent<NeuronUpdateRule> networkEvent) {
+        invalidate();
+    }
+
+    @Override
+    public void labelChanged(NetworkEvent<Neuron> networkEvent) {
+    }
+
+    @Override
+    public void neuronAdded(NetworkEvent<Neuron> networkEvent) {
+        invalidate();
+    }
+
+    @Override
+    public void neuronMoved(NetworkEvent<Neuron> networkEvent) {
+    }
+
+    @Override
+    public void neuronRemoved(NetworkEvent<Neuron> networkEvent) {
+        invalidate();
+    }
+
+    @Override
+    public void synapseRemoved(NetworkEvent<Synapse> networkEvent) {
+        invalidate();
+    }
+
+    @Override
+    public void synapseAdded(NetworkEvent<Synapse> networkEvent) {
+        invalidate();
+    }
+
+    @Override
+    public void synapseChanged(NetworkEvent<Synapse> networkEvent) {
+        invalidate();
+    }
+
+    @Override
+    public void synapseTypeChanged(
+            NetworkEvent<SynapseUpdateRule> networkEvent) {
+        invalidate();
+    }
+
+    @Override
+    public void groupAdded(NetworkEvent<Group> e) {
+        invalidate();
+    }
+
+    @Override
+    public void groupRemoved(NetworkEvent<Group> e) {
+        invalidate();
+    }
+
+    @Override
+    public void groupChanged(NetworkEvent<Group> networkEvent,
+            String changeDescription) {
+        invalidate();
+    }
+
+    @Override
+    public void groupParameterChanged(NetworkEvent<Group> networkEvent) {
+        invalidate();
+    }
+
+    @Override
+    public void groupUpdated(Group group) {
+    }
+
+}
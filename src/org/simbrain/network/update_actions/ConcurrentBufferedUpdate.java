@@ -20,26 +20,20 @@ package org.simbrain.network.update_actions;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Scanner;
 import java.util.Set;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.simbrain.network.connections.Sparse;
 import org.simbrain.network.core.Network;
-import org.simbrain.network.core.NetworkUpdateAction;
 import org.simbrain.network.core.Neuron;
 import org.simbrain.network.core.NeuronUpdateRule;
+import org.simbrain.network.core.SpikingNeuronUpdateRule;
 import org.simbrain.network.core.Synapse;
 import org.simbrain.network.groups.Group;
 import org.simbrain.network.groups.NeuronGroup;
@@ -49,11 +43,12 @@ import org.simbrain.network.layouts.GridLayout;
 import org.simbrain.network.listeners.GroupListener;
 import org.simbrain.network.listeners.NetworkEvent;
 import org.simbrain.network.listeners.NeuronListener;
+import org.simbrain.network.neuron_update_rules.AdExIFRule;
+import org.simbrain.network.neuron_update_rules.HodgkinHuxleyRule;
 import org.simbrain.network.neuron_update_rules.IzhikevichRule;
+import org.simbrain.network.neuron_update_rules.MorrisLecarRule;
 import org.simbrain.network.synapse_update_rules.spikeresponders.ConvolvedJumpAndDecay;
 import org.simbrain.network.update_actions.concurrency_tools.BufferedUpdateTask;
-import org.simbrain.network.update_actions.concurrency_tools.Consumer;
-import org.simbrain.network.update_actions.concurrency_tools.Task;
 import org.simbrain.util.SimbrainConstants.Polarity;
 import org.simbrain.util.math.ProbDistribution;
 import org.simbrain.util.math.SimbrainMath;
@@ -77,193 +72,253 @@ import org.simbrain.util.randomizer.Randomizer;
  *         of neurons when/if neurons or neuron groups are added to or removed
  *         from the network.
  *
- *         Parallelization in this class follows a classical consumer/producer
- *         framework. One thread: the producer has the job of filling a blocking
- *         queue with tasks for the consumers to take. The consumers take tasks
- *         from the queue and execute them until the queue is empty. In this
- *         way, consumers can take on tasks whenever they are available to do so
- *         and there are more tasks to complete, instead of having to wait on
- *         some other condition. In order to keep the sort of synchronization
- *         necessary for a neural network, a cyclic barrier ensures that all
- *         tasks have been completed before more tasks (amounting to the next
- *         network iteration/update) are allowed in the queue. Furthermore this
- *         class implements a synchronous or buffered update. The producer
- *         thread does not set the activation of each neuron to their buffer
- *         values until all tasks have been completed.
+ *         Parallelization in this class uses a fork-join pool. The neurons
+ *         are partitioned into many more tasks than there are threads, each
+ *         task holding a contiguous run of neurons of roughly equal estimated
+ *         cost (rule cost plus fan-in size), so that a few very expensive
+ *         neurons do not leave most threads idle and so that idle workers can
+ *         steal remaining tasks. An update is performed in two fork-join
+ *         passes: in the first every neuron and its afferent synapses are
+ *         updated, in the second every neuron's activation is set from its
+ *         buffer. The second pass does not begin until the first has
+ *         completed, which keeps the update synchronous. The partition is
+ *         rebuilt at the start of the first update after neurons or groups
+ *         are added or removed.
  *
  */
-public class ConcurrentBufferedUpdate implements NetworkUpdateAction,
+public class ConcurrentBufferedUpdate extends WholeNetworkUpdate implements
         NeuronListener, GroupListener {
 
     /**
-     * The initial capacity of the set containing this class's private neuron
-     * list, which is synchronized to the underlying network.
+     * The number of tasks each worker thread should be given on average.
+     * Having many more tasks than threads lets idle workers steal work from
+     * busy ones when the cost estimates are off.
      */
-    private static final int INITIAL_CAPACITY = (int) Math.ceil(15000 / 0.75);
+    private static final int TASKS_PER_THREAD = 8;
 
     /**
-     * A list of threads being used as our "consumers" of tasks (updating
-     * neurons).
+     * The relative cost of updating a neuron with one of the conductance
+     * based models, which solve several coupled equations per time step,
+     * compared with a simple rule.
      */
-    private final List<Consumer> consumerThreads = new ArrayList<Consumer>();
+    private static final int CONDUCTANCE_RULE_COST = 16;
 
-    /**
-     * The current number of available processors to the JVM, should that value
-     * change. Any changes to this value will be reflected in the number of
-     * consumer threads upon subsequent invocation.
-     */
-    private volatile int currentAvailableProcessors;
+    /** The relative cost of updating a neuron with a spiking rule. */
+    private static final int SPIKING_RULE_COST = 4;
+
+    /** The relative cost of updating a neuron with any other rule. */
+    private static final int DEFAULT_RULE_COST = 1;
 
     /**
      * This class's private set of neurons in the network, used for updating.
+     * Insertion order is preserved so that neurons belonging to the same
+     * group tend to end up in the same task.
      */
-    private final Set<Neuron> neurons = Collections
-            .synchronizedSet(new HashSet<Neuron>(INITIAL_CAPACITY));
+    private final Set<Neuron> neurons = new LinkedHashSet<Neuron>();
 
-    private CyclicTaskQueue taskSet;
+    /**
+     * The current partition of the neurons into update tasks. Rebuilt from
+     * {@link #neurons} at the start of the first invocation following any
+     * change to the network.
+     */
+    private BufferedUpdateTask[] partition = new BufferedUpdateTask[0];
 
-    /** A count of the number of network changes which have taken place. */
-    private AtomicInteger pendingOperations = new AtomicInteger(0);
+    /** Whether the partition must be rebuilt before the next update. */
+    private volatile boolean dirty = true;
 
     /** A copy of the network. */
     private final Network network;
 
-    /** A reference to the current thread which is acting as a producer. */
-    private volatile Thread producer;
-
-    private final List<NeuronGroup> inputGroups = new ArrayList<NeuronGroup>();
-
-    private final List<NeuronGroup> outputGroups = new ArrayList<NeuronGroup>();
-
-    private Thread collectorThread = new Thread(new Runnable() {
-        @Override
-        public void run() {
-            try {
-                while (true) {
-                    synchronized (lock) {
-                        while (!collectionInProgress.get()) {
-                            lock.wait();
-                        }
-                    }
-                    // Wait for an entire second so that every individual neuron
-                    // removed over the course of the second will be accounted
-                    // for.
-                    Thread.sleep(1000);
-                    synchronized (collectionInProgress) {
-                        taskSet.repopulateQueue(neurons);
-                        collectionInProgress.getAndSet(false);
-                        pendingOperations.set(pendingOperations.get() - ops);
-                        ops = 0;
-                    }
-                }
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }
-    });
-
-    private Object lock = new Object();
-
-    private AtomicBoolean collectionInProgress = new AtomicBoolean();
-
-    private volatile int ops = 0;
+    /**
+     * Synapse groups stored as sparse matrices, whose input must be sent to
+     * their targets before neurons are updated.
+     */
+    private final List<SynapseGroup> compressedGroups =
+            new ArrayList<SynapseGroup>();
 
-    //private final SynchronizationPoint syncPoint;
-    
-    private ExecutorService executors;
+    /**
+     * The work-stealing pool which executes the update and commit phases.
+     * Shared by all instances, since instances are created and discarded
+     * freely (for example each time the list of available update actions is
+     * built) and nothing would shut a per-instance pool down. Created on
+     * first use; its threads are daemons and idle ones time out.
+     */
+    private static volatile ForkJoinPool pool;
 
     /**
      * A static factory method that creates a concurrent buffered update class
-     * for a network. See {@link #ConcurrentBufferedUpdate(Network)}.
+     * for a network. See {@link #ConcurrentBufferedUpdate(Network)}. It
+     * listens to the network once it is added to the network's update
+     * manager.
      *
      * @param network
      * @return
      */
     public static ConcurrentBufferedUpdate createConcurrentBufferedUpdate(
             final Network network) {
-        ConcurrentBufferedUpdate cbu = new ConcurrentBufferedUpdate(network);
-//        for (int i = 0; i < cbu.currentAvailableProcessors; i++) {
-//            cbu.consumerThreads.add(new Consumer(cbu.taskSet, i));
-//            new Thread(cbu.consumerThreads.get(i)).start();
-//        }
-        
-        network.addGroupListener(cbu);
-        network.addNeuronListener(cbu);
-        // Checks for inconsistencies between the input and output group
-        // lists and what neuron groups are labeled as input or output
-        // groups in the network.
-        for (NeuronGroup ng : network.getFlatNeuronGroupList()) {
-            network.fireGroupChanged(ng, "Check In");
-        }
-        //System.out.println("Num neurons in task set: " + cbu.taskSet.size());
-        cbu.collectorThread.start();
-        return cbu;
+        return new ConcurrentBufferedUpdate(network);
     }
 
     /**
-     * Creates the consumer threads, in a quantity equal to the number of
-     * available processors, since the producer's job is small enough that
-     * having more threads than processors will not be problematic (they are
-     * also not active at the same time at least half the time). Also populates
-     * this classes copy of the neurons in the network.
+     * Populates this class's copy of the neurons in the network.
      *
      * @param network
      *            the network being updated by this updater.
      */
     private ConcurrentBufferedUpdate(final Network network) {
         this.network = network;
-        currentAvailableProcessors = getAvailableConsumerProcessors();
-        executors = Executors.newFixedThreadPool(currentAvailableProcessors);
-        //syncPoint = new SynchronizationPoint(currentAvailableProcessors);
-        for (Neuron n : network.getFlatNeuronList()) {
-            neurons.add(n);
+        collectNeurons();
+    }
+
+    /**
+     * Rebuilds this class's copy of the neurons in the network, and its lists
+     * of input, recording and compressed groups.
+     */
+    private void collectNeurons() {
+        synchronized (neurons) {
+            neurons.clear();
+            for (Neuron n : network.getFlatNeuronList()) {
+                neurons.add(n);
+            }
+            for (NeuronGroup ng : network.getFlatNeuronGroupList()) {
+                neurons.addAll(ng.getNeuronList());
+            }
         }
-        for (NeuronGroup ng : network.getFlatNeuronGroupList()) {
-            neurons.addAll(ng.getNeuronList());
+        collectGroups(network);
+        synchronized (compressedGroups) {
+            compressedGroups.clear();
+            for (SynapseGroup sg : network.getSynapseGroups()) {
+                if (sg.isCompressed()) {
+                    compressedGroups.add(sg);
+                }
+            }
         }
-        taskSet = new CyclicTaskQueue(neurons, currentAvailableProcessors);
+        invalidate();
+    }
+
+    @Override
+    public void addListeners() {
+        network.addGroupListener(this);
+        network.addNeuronListener(this);
+        // The network may have changed while nothing was listening
+        collectNeurons();
+    }
+
+    @Override
+    public void removeListeners() {
+        network.removeGroupListener(this);
+        network.removeNeuronListener(this);
     }
-    //int z = 0;
+
     @Override
     public void invoke() {
-        producer = Thread.currentThread();
         // Update input neurons accordingly
-        for (int i = 0, n = inputGroups.size(); i < n; i++) {
-            inputGroups.get(i).readNextInputs();
-        }      
-        try {
-        	synchronized(taskSet) {
-	        	//System.out.println(z++);
-	        	List<Future<Task>> results = executors.invokeAll(taskSet.getCallableTasks());
-	        	for (int i = 0; i < results.size(); i++) {		
-	        		for (int j = 0; j < ((BufferedUpdateTask)results.get(i)
-	        				.get()).getHosts().length; j++) {
-	        			((BufferedUpdateTask)results.get(i)
-	    				.get()).getHosts()[j].setToBufferVals();
-	        		}
-	        	}
-        	}
-            while (pendingOperations.get() > 0) {
-                synchronized (producer) {
-                    producer.wait();
-                }
+        readInputs();
+        for (int i = 0, n = compressedGroups.size(); i < n; i++) {
+            compressedGroups.get(i).applyCompressedInput();
+        }
+        BufferedUpdateTask[] tasks = getPartition();
+        if (tasks.length != 0) {
+            // Every neuron must be updated before any activation is set from
+            // its buffer, so the two phases are separate fork-join passes.
+            ForkJoinPool p = getPool();
+            p.invoke(new PhaseAction(tasks, 0, tasks.length, false));
+            p.invoke(new PhaseAction(tasks, 0, tasks.length, true));
+        }
+        writeOutputs();
+    }
+
+    /**
+     * Returns the current partition of the neurons into tasks, rebuilding it
+     * first if the network has changed since it was last built.
+     *
+     * @return the update tasks
+     */
+    private BufferedUpdateTask[] getPartition() {
+        if (dirty) {
+            synchronized (neurons) {
+                dirty = false;
+                partition = partition(neurons,
+                        getPool().getParallelism() * TASKS_PER_THREAD);
             }
-        } catch (InterruptedException | ExecutionException e1) {
-        	e1.getCause().printStackTrace();
-            e1.printStackTrace();
         }
-//        synchronized (neurons) {
-//            for (int i = 0, n = taskSet.taskArray.length; i < n; i++) {
-//                for (int j = 0, m = taskSet.taskArray[i].getHosts().length;
-//                        j < m; j++)
-//                {
-//                    taskSet.taskArray[i].getHosts()[j].setToBufferVals();
-//                }
-//            }
-//        }
-        for (int i = 0, n = outputGroups.size(); i < n; i++) {
-            outputGroups.get(i).writeActsToFile();
+        return partition;
+    }
+
+    /**
+     * Splits neurons into contiguous tasks of roughly equal estimated cost.
+     * A neuron whose cost alone exceeds the target is given a task of its
+     * own.
+     *
+     * @param toSplit
+     *            the neurons to partition
+     * @param numTasks
+     *            the desired number of tasks
+     * @return the tasks
+     */
+    private static BufferedUpdateTask[] partition(
+            final Collection<Neuron> toSplit, final int numTasks) {
+        Neuron[] neurArr = toSplit.toArray(new Neuron[toSplit.size()]);
+        long[] costs = new long[neurArr.length];
+        long totalCost = 0;
+        for (int i = 0; i < neurArr.length; i++) {
+            costs[i] = estimateCost(neurArr[i]);
+            totalCost += costs[i];
+        }
+        long grain = Math.max(1, totalCost / Math.max(1, numTasks));
+        List<BufferedUpdateTask> tasks = new ArrayList<BufferedUpdateTask>(
+                numTasks + 1);
+        int start = 0;
+        long acc = 0;
+        for (int i = 0; i < neurArr.length; i++) {
+            acc += costs[i];
+            if (acc >= grain || i == neurArr.length - 1) {
+                tasks.add(new BufferedUpdateTask(
+                        Arrays.copyOfRange(neurArr, start, i + 1)));
+                start = i + 1;
+                acc = 0;
+            }
+        }
+        return tasks.toArray(new BufferedUpdateTask[tasks.size()]);
+    }
+
+    /**
+     * Estimates the relative cost of updating a neuron and its afferent
+     * synapses: the cost of its update rule plus one unit per incoming
+     * synapse.
+     *
+     * @param n
+     *            the neuron
+     * @return the estimated cost
+     */
+    private static long estimateCost(final Neuron n) {
+        NeuronUpdateRule rule = n.getUpdateRule();
+        int ruleCost;
+        if (rule instanceof HodgkinHuxleyRule
+                || rule instanceof MorrisLecarRule
+                || rule instanceof AdExIFRule) {
+            ruleCost = CONDUCTANCE_RULE_COST;
+        } else if (rule instanceof SpikingNeuronUpdateRule) {
+            ruleCost = SPIKING_RULE_COST;
+        } else {
+            ruleCost = DEFAULT_RULE_COST;
         }
+        return ruleCost + n.getFanIn().size();
+    }
+
+    /**
+     * Marks the partition as out of date. It is rebuilt at the start of the
+     * next invocation.
+     */
+    private void invalidate() {
+        dirty = true;
+    }
+
+    /**
+     * @return the number of tasks the neurons are currently divided into
+     */
+    public int getNumTasks() {
+        return getPartition().length;
     }
 
     @Override
@@ -279,46 +334,39 @@ public class ConcurrentBufferedUpdate implements NetworkUpdateAction,
     @Override
     public void groupAdded(NetworkEvent<Group> e) {
         if (e.getObject() instanceof NeuronGroup) {
-            pendingOperations.incrementAndGet();
             synchronized (neurons) {
-                for (Neuron n : ((NeuronGroup) e.getObject()).getNeuronList()) {
-                    neurons.add(n);
-                }
-                taskSet.repopulateQueue(neurons);
+                neurons.addAll(((NeuronGroup) e.getObject()).getNeuronList());
             }
-            decrementPendingOperations();
         } else if (e.getObject() instanceof Subnetwork) {
             List<NeuronGroup> neuronGroups = ((Subnetwork) e.getObject())
                     .getNeuronGroupList();
             for (NeuronGroup ng : neuronGroups) {
                 groupAdded(new NetworkEvent<Group>(network, null, ng));
             }
-        } else {
-            return;
         }
-
+        // Added synapse groups change the fan-in, and so the cost, of neurons
+        invalidate();
     }
 
     @Override
     public void groupRemoved(NetworkEvent<Group> e) {
         if (e.getObject() instanceof NeuronGroup) {
-            pendingOperations.incrementAndGet();
             synchronized (neurons) {
-                for (Neuron n : ((NeuronGroup) e.getObject()).getNeuronList()) {
-                    neurons.remove(n);
-                }
+                neurons.removeAll(((NeuronGroup) e.getObject())
+                        .getNeuronList());
             }
-            taskSet.repopulateQueue(neurons);
-            decrementPendingOperations();
         } else if (e.getObject() instanceof Subnetwork) {
             List<NeuronGroup> neuronGroups = ((Subnetwork) e.getObject())
                     .getNeuronGroupList();
             for (NeuronGroup ng : neuronGroups) {
                 groupRemoved(new NetworkEvent<Group>(network, null, ng));
             }
-        } else {
-            return;
+        } else if (e.getObject() instanceof SynapseGroup) {
+            synchronized (compressedGroups) {
+                compressedGroups.remove(e.getObject());
+            }
         }
+        invalidate();
     }
 
     @Override
@@ -326,28 +374,21 @@ public class ConcurrentBufferedUpdate implements NetworkUpdateAction,
             String changeDescription) {
         if (networkEvent.getObject() instanceof NeuronGroup) {
             NeuronGroup ng = (NeuronGroup) networkEvent.getObject();
-            synchronized (outputGroups) {
-                if (ng.isRecording()) {
-                    if (!outputGroups.contains(ng)) {
-                        outputGroups.add(ng);
+            checkGroup(ng);
+        } else if (networkEvent.getObject() instanceof SynapseGroup) {
+            SynapseGroup sg = (SynapseGroup) networkEvent.getObject();
+            synchronized (compressedGroups) {
+                if (sg.isCompressed()) {
+                    if (!compressedGroups.contains(sg)) {
+                        compressedGroups.add(sg);
                     }
                 } else {
-                    if (outputGroups.contains(ng)) {
-                        outputGroups.remove(ng);
-                    }
-                }
-            }
-            synchronized (inputGroups) {
-                if (ng.isInputMode()) {
-                    if (!inputGroups.contains(ng)) {
-                        inputGroups.add(ng);
-                    }
-                } else {
-                    if (inputGroups.contains(ng)) {
-                        inputGroups.remove(ng);
-                    }
+                    compressedGroups.remove(sg);
                 }
             }
+            // Compressing or expanding a group changes the fan-in of its
+            // targets, and so their cost
+            invalidate();
         }
         return;
     }
@@ -364,7 +405,8 @@ public class ConcurrentBufferedUpdate implements NetworkUpdateAction,
 
     @Override
     public void neuronTypeChanged(NetworkEvent<NeuronUpdateRule> networkEvent) {
-        return;
+        // The new rule may be more or less expensive than the old one.
+        invalidate();
     }
 
     @Override
@@ -374,17 +416,10 @@ public class ConcurrentBufferedUpdate implements NetworkUpdateAction,
 
     @Override
     public void neuronAdded(NetworkEvent<Neuron> networkEvent) {
-        pendingOperations.incrementAndGet();
-        synchronized (collectionInProgress) {
+        synchronized (neurons) {
             neurons.add(networkEvent.getObject());
-            ops++;
-            if (!collectionInProgress.get()) {
-                collectionInProgress.getAndSet(true);
-                synchronized (lock) {
-                    lock.notify();
-                }
-            }
         }
+        invalidate();
     }
 
     @Override
@@ -394,173 +429,92 @@ public class ConcurrentBufferedUpdate implements NetworkUpdateAction,
 
     @Override
     public void neuronRemoved(NetworkEvent<Neuron> networkEvent) {
-        pendingOperations.incrementAndGet();
-        synchronized (collectionInProgress) {
+        synchronized (neurons) {
             neurons.remove(networkEvent.getObject());
-            ops++;
-            if (!collectionInProgress.get()) {
-                collectionInProgress.getAndSet(true);
-                synchronized (lock) {
-                    lock.notify();
+        }
+        invalidate();
+    }
+
+    /**
+     * Returns the shared work-stealing pool, creating it with a parallelism
+     * equal to the number of available processors if it does not exist yet.
+     *
+     * @return the pool
+     */
+    private static ForkJoinPool getPool() {
+        ForkJoinPool p = pool;
+        if (p == null) {
+            synchronized (ConcurrentBufferedUpdate.class) {
+                p = pool;
+                if (p == null) {
+                    p = new ForkJoinPool(getAvailableConsumerProcessors());
+                    pool = p;
                 }
             }
         }
+        return p;
     }
 
-    public List<NeuronGroup> getInputGroups() {
-        return new ArrayList<NeuronGroup>(inputGroups);
-    }
-    
-    private int getAvailableConsumerProcessors() {
+    private static int getAvailableConsumerProcessors() {
         return Runtime.getRuntime().availableProcessors();
     }
 
-    private int decrementPendingOperations() {
-        if (producer != null) {
-            synchronized (producer) {
-                producer.notify();
-            }
-        }
-        return pendingOperations.decrementAndGet();
-    }
-
     /**
-     * A memory saving version of a BlockingQueue specifically set up to prevent
-     * memory leaks in the form of LinkedList nodes and with the express purpose
-     * of making synchronization points easier to implement.
-     * 
-     * @author Zoë Tosi
-     *
+     * Performs one phase of a buffered update over a range of tasks,
+     * recursively splitting the range in half so that idle workers can steal
+     * the other half.
      */
-    public class CyclicTaskQueue {
-
-        // TODO: Make this dependent on the number of neurons to be update and
-        // the number of available processor cores.
-        //private static final int DEFAULT_TASK_PARTITION_RATIO = 128;
-
-        private AtomicInteger indexPtr;
-
-        private BufferedUpdateTask[] taskArray;
-
-        private int taskPartition;
-
-//        public CyclicTaskQueue(Collection<Neuron> tasks) {
-//            this(tasks, DEFAULT_TASK_PARTITION_RATIO);
-//        }
-
-        public CyclicTaskQueue(Collection<Neuron> tasks, int taskPartition) {
-            this.taskPartition = taskPartition;
-            repopulateQueue(tasks);
+    private static class PhaseAction extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final BufferedUpdateTask[] tasks;
+
+        private final int lo;
+
+        private final int hi;
+
+        /**
+         * If true set neurons from their buffers, otherwise update neurons
+         * and their afferent synapses.
+         */
+        private final boolean commit;
+
+        /**
+         * @param tasks
+         *            all the tasks of the update
+         * @param lo
+         *            the first task in this action's range (inclusive)
+         * @param hi
+         *            the last task in this action's range (exclusive)
+         * @param commit
+         *            whether this is the commit phase
+         */
+        PhaseAction(final BufferedUpdateTask[] tasks, final int lo,
+                final int hi, final boolean commit) {
+            this.tasks = tasks;
+            this.lo = lo;
+            this.hi = hi;
+            this.commit = commit;
         }
 
-        public synchronized void repopulateQueue(Collection<Neuron> tasks) {
-        	setUpCallableTasks();
-            int chunkSize = (int) Math.floor(tasks.size() / taskPartition);
-            int remainingTasks = tasks.size() % taskPartition;
-            Iterator<Neuron> taskIter = tasks.iterator();
-            if (remainingTasks != 0) {
-                taskArray = new BufferedUpdateTask[taskPartition + 1];
-                indexPtr = new AtomicInteger(taskPartition + 1);
-                for (int i = 0; i < taskPartition; i++) {
-                    Neuron[] neurArr = new Neuron[chunkSize];
-                    for (int j = 0; j < chunkSize; j++) {
-                        neurArr[j] = taskIter.next();
-                    }
-                    taskArray[i] = new BufferedUpdateTask(neurArr);
-                }
-                Neuron[] neurArr = new Neuron[remainingTasks];
-                for (int j = 0; j < remainingTasks; j++) {
-                    neurArr[j] = taskIter.next();
+        @Override
+        protected void compute() {
+            if (hi - lo == 1) {
+                if (commit) {
+                    tasks[lo].commit();
+                } else {
+                    tasks[lo].perform();
                 }
-                taskArray[taskPartition] = new BufferedUpdateTask(neurArr);
             } else {
-                taskArray = new BufferedUpdateTask[taskPartition];
-                indexPtr = new AtomicInteger(taskPartition);
-                for (int i = 0; i < taskPartition; i++) {
-                    Neuron[] neurArr = new Neuron[chunkSize];
-                    for (int j = 0; j < chunkSize; j++) {
-                        neurArr[j] = taskIter.next();
-                    }
-                    taskArray[i] = new BufferedUpdateTask(neurArr);
-                }
-            }
-            indexPtr.set(taskArray.length);
-        }
-
-        public Task take() {
-//            synchronized (indexPtr) {
-//                if (indexPtr.get() >= taskArray.length) {
-//                    syncPoint.setWorkAvailable(false);
-//                    return syncPoint;
-//                }
-                return taskArray[indexPtr.getAndIncrement()];
-            
-        }
-        
-        List<Callable<Task>> taskList = new ArrayList<Callable<Task>>();
-        public void setUpCallableTasks() {
-        	taskList.clear();
-        	taskList = new ArrayList<Callable<Task>>();
-        	int chunkSize = neurons.size()/currentAvailableProcessors;
-        	Neuron[] neuronTasks = null;
-        	int i = 0;
-        	int j = 0;
-        	int k = 1;
-        	for (Neuron n : neurons) {
-        		if(j % chunkSize == 0) {
-        			if (neuronTasks != null) {
-        				taskList.add(new CallableTask(new BufferedUpdateTask(neuronTasks)));
-        				//System.out.println(neuronTasks.length + " " + k++);
-        			}
-    				i = 0;
-    				neuronTasks = new Neuron[((neurons.size()-j)
-    						> chunkSize) ? chunkSize:(neurons.size()-j)];
-        		}
-        		neuronTasks[i] = n;
-        		i++;
-        		j++;
-        	}
-			taskList.add(new CallableTask(new BufferedUpdateTask(neuronTasks)));
-			//System.out.println(neuronTasks.length + " " + k++);
-        }
-        
-        public List<Callable<Task>> getCallableTasks() {
-        	return taskList;
-        }
-
-        public int size() {
-            int size = 0;
-            for (BufferedUpdateTask but : taskArray) {
-                size += but.getHosts().length;
-            }
-            return size;
-        }
-        
-        public void reset() {
-            synchronized (indexPtr) {
-                indexPtr.set(0);
-               // syncPoint.setWorkAvailable(true);
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new PhaseAction(tasks, lo, mid, commit),
+                        new PhaseAction(tasks, mid, hi, commit));
             }
         }
 
     }
 
-    private static class CallableTask implements Callable<Task> {
-
-    	public final Task t;
-    	
-    	public CallableTask(Task t) {
-    		this.t = t;
-    	}
-    	
-		@Override
-		public Task call() throws Exception {
-			t.perform();
-			return t;
-		}
-    	
-    }
-    
     /**
      * Test main to demonstrate performance improvements over serial updates
      * without a GUI.
@@ -657,11 +611,6 @@ public class ConcurrentBufferedUpdate implements NetworkUpdateAction,
         ConcurrentBufferedUpdate cbu = ConcurrentBufferedUpdate
                 .createConcurrentBufferedUpdate(net);
         net.getUpdateManager().addAction(cbu);
-        int siz = 0;
-        for (BufferedUpdateTask but : cbu.taskSet.taskArray) {
-            siz += but.getHosts().length;
-        }
-//        System.out.println(siz);
         System.out.println();
         for (int i = 0; i < 10000; i++) {
             net.update();
@@ -0,0 +1,607 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.update_actions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.NeuronUpdateRule;
+import org.simbrain.network.core.NeuronUpdateRule.InputType;
+import org.simbrain.network.core.SpikingNeuronUpdateRule;
+import org.simbrain.network.core.Synapse;
+import org.simbrain.network.core.SynapseUpdateRule;
+import org.simbrain.network.groups.Group;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.network.groups.SynapseGroup;
+import org.simbrain.network.listeners.GroupListener;
+import org.simbrain.network.listeners.NetworkEvent;
+import org.simbrain.network.listeners.NeuronListener;
+import org.simbrain.network.listeners.SynapseListener;
+import org.simbrain.network.neuron_update_rules.AdExIFRule;
+import org.simbrain.network.synapse_update_rules.StaticSynapseRule;
+import org.simbrain.network.synapse_update_rules.spikeresponders.ConvolvedJumpAndDecay;
+import org.simbrain.network.synapse_update_rules.spikeresponders.JumpAndDecay;
+
+/**
+ * Buffered update of every neuron in the network in which the post-synaptic
+ * responses of spiking synapses are computed from spike events rather than
+ * by updating every synapse's spike responder on every time step.
+ * <p>
+ * A synapse is handled by events if it is enabled and static (frozen or
+ * using {@link StaticSynapseRule}), its source uses a spiking rule, its target
+ * takes synaptic input, and its spike responder is a {@link JumpAndDecay} or
+ * {@link ConvolvedJumpAndDecay}. When the source of such a synapse spikes, an
+ * event is placed in the delay bucket for the step at which the spike
+ * arrives. Between events the response of each synapse decays with a factor
+ * (1 - dt / tau) per step, the same as the responders themselves, so
+ * responses sharing a time constant are decayed together as one sum per
+ * target, and an individual synapse's response is only computed, in closed
+ * form from its last event, when it receives a new spike. The work per step
+ * is thus proportional to the number of neurons plus the number of spikes
+ * times their fan-out, not to the number of synapses.
+ * <p>
+ * All other synapses are updated as usual. Targets using an
+ * {@link AdExIFRule}, which separates excitatory and inhibitory input synapse
+ * by synapse, are also left to their synapses. Event driven synapses do not
+ * update the post-synaptic response stored in the synapse objects. Unlike
+ * per-synapse responders, which only advance when their target reads its
+ * input, event driven responses also decay while their target is in a
+ * refractory period.
+ * <p>
+ * The schedule is built lazily and rebuilt whenever a network event reports a
+ * change to neurons, synapses or groups, or the time step changes. Spikes in
+ * flight when it is rebuilt are dropped. Like {@link CompiledUpdate} this
+ * action updates all neurons, so it is normally used in place of the default
+ * update actions.
+ */
+public class EventDrivenUpdate extends WholeNetworkUpdate implements
+        NeuronListener, SynapseListener, GroupListener {
+
+    /** Reference to network to update. */
+    private final Network network;
+
+    /** The current schedule, or null if it must be rebuilt. */
+    private volatile Schedule schedule;
+
+    /** Synapse groups stored as sparse matrices. */
+    private final List<SynapseGroup> compressedGroups =
+            new ArrayList<SynapseGroup>();
+
+    /**
+     * A static factory method that creates an event driven update for a
+     * network. It listens to the network once it is added to the network's
+     * update manager.
+     *
+     * @param network the network to update
+     * @return the event driven update action
+     */
+    public static EventDrivenUpdate createEventDrivenUpdate(
+            final Network network) {
+        return new EventDrivenUpdate(network);
+    }
+
+    /**
+     * @param network the network to update
+     */
+    private EventDrivenUpdate(final Network network) {
+        this.network = network;
+    }
+
+    @Override
+    public void addListeners() {
+        network.addNeuronListener(this);
+        network.addSynapseListener(this);
+        network.addGroupListener(this);
+        invalidate();
+    }
+
+    @Override
+    public void removeListeners() {
+        network.removeNeuronListener(this);
+        network.removeSynapseListener(this);
+        network.removeGroupListener(this);
+    }
+
+    @Override
+    public void invoke() {
+        Schedule current = schedule;
+        if (current == null || current.timeStep != network.getTimeStep()) {
+            current = build();
+        }
+        readInputs();
+        for (int i = 0, n = compressedGroups.size(); i < n; i++) {
+            compressedGroups.get(i).applyCompressedInput();
+        }
+        current.update();
+        writeOutputs();
+    }
+
+    /**
+     * Build a new schedule from the network.
+     *
+     * @return the new schedule
+     */
+    private synchronized Schedule build() {
+        collectGroups(network);
+        compressedGroups.clear();
+        for (SynapseGroup sg : network.getSynapseGroups()) {
+            if (sg.isCompressed()) {
+                compressedGroups.add(sg);
+            }
+        }
+        List<Neuron> all = network.getFlatNeuronList();
+        List<Neuron> toUpdate = new ArrayList<Neuron>(all.size());
+        for (Neuron n : all) {
+            if (!(n.getParentGroup() instanceof NeuronGroup
+                    && ((NeuronGroup) n.getParentGroup()).isInputMode())) {
+                toUpdate.add(n);
+            }
+        }
+        schedule = new Schedule(all, toUpdate, network.getTimeStep());
+        return schedule;
+    }
+
+    /**
+     * Discard the current schedule so that it is rebuilt on the next
+     * invocation.
+     */
+    public void invalidate() {
+        schedule = null;
+    }
+
+    /**
+     * @return the number of synapses currently handled by events, building
+     *         the schedule if needed
+     */
+    public int getEventDrivenSynapseCount() {
+        Schedule current = schedule;
+        return (current == null ? build() : current).synTarget.length;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Event Driven Spiking Update";
+    }
+
+    @Override
+    public String getLongDescription() {
+        return "Event Driven Spiking Update (All Neurons)";
+    }
+
+    /**
+     * The state of an event driven update: the neurons, the event driven
+     * synapses indexed by source, the summed responses of each target and the
+     * delay buckets of pending spike arrivals.
+     */
+    private static final class Schedule {
+
+        /** The time step the decay factors were computed with. */
+        private final double timeStep;
+
+        /** The neurons to update. */
+        private final Neuron[] neurons;
+
+        /** For each neuron to update, whether it receives events. */
+        private final boolean[] eventTarget;
+
+        /**
+         * For each neuron to update, the offset of its non event driven
+         * afferents in {@link #interpreted}.
+         */
+        private final int[] interpretedStart;
+
+        /**
+         * The afferents of event targets whose responses are computed by
+         * their own responders.
+         */
+        private final Synapse[] interpreted;
+
+        /** Synapses which learn, updated after the neurons every step. */
+        private final Synapse[] plastic;
+
+        /** Per-step decay factor of each time constant class. */
+        private final double[] classDecay;
+
+        /**
+         * Summed deviation from baseline of the responses of each target,
+         * per class: entry [target * classes + class].
+         */
+        private final double[] responseSums;
+
+        /** Summed baseline of the event driven afferents of each target. */
+        private final double[] baseSums;
+
+        /** Neurons with event driven efferents. */
+        private final Neuron[] sources;
+
+        /** Offset of each source's efferents in the synapse arrays. */
+        private final int[] sourceStart;
+
+        /** Index of the target of each event driven synapse. */
+        private final int[] synTarget;
+
+        /** Time constant class of each event driven synapse. */
+        private final int[] synClass;
+
+        /** Response to a spike (jump height times strength). */
+        private final double[] synJump;
+
+        /** Baseline response. */
+        private final double[] synBase;
+
+        /** Response as of the step in {@link #synLast}. */
+        private final double[] synValue;
+
+        /** Step at which {@link #synValue} was last set. */
+        private final long[] synLast;
+
+        /** Delay in steps. */
+        private final int[] synDelay;
+
+        /** Whether spikes add to (true) or replace (false) the response. */
+        private final boolean[] synConvolved;
+
+        /** Pending arrivals, a bucket of synapse indices per step. */
+        private final int[][] buckets;
+
+        /** Number of arrivals in each bucket. */
+        private final int[] bucketSize;
+
+        /** Number of steps performed. */
+        private long step;
+
+        /**
+         * @param all every neuron in the network, any of which may be a
+         *            source of spikes
+         * @param toUpdate the neurons to update
+         * @param timeStep the network time step
+         */
+        Schedule(final List<Neuron> all, final List<Neuron> toUpdate,
+                final double timeStep) {
+            this.timeStep = timeStep;
+            int numNeurons = toUpdate.size();
+            neurons = toUpdate.toArray(new Neuron[numNeurons]);
+            Map<Neuron, Integer> index = new IdentityHashMap<Neuron, Integer>(
+                    numNeurons);
+            for (int i = 0; i < numNeurons; i++) {
+                index.put(neurons[i], i);
+            }
+            eventTarget = new boolean[numNeurons];
+            for (int i = 0; i < numNeurons; i++) {
+                NeuronUpdateRule rule = neurons[i].getUpdateRule();
+                eventTarget[i] = rule.getInputType() == InputType.SYNAPTIC
+                        && !(rule instanceof AdExIFRule);
+            }
+
+            // Collect event driven synapses grouped by source
+            Map<Double, Integer> classes = new HashMap<Double, Integer>();
+            List<Double> decays = new ArrayList<Double>();
+            List<Synapse> events = new ArrayList<Synapse>();
+            List<Integer> eventClasses = new ArrayList<Integer>();
+            List<Neuron> srcList = new ArrayList<Neuron>();
+            List<Integer> srcStarts = new ArrayList<Integer>();
+            for (Neuron src : all) {
+                if (!(src.getUpdateRule() instanceof SpikingNeuronUpdateRule)) {
+                    continue;
+                }
+                int start = events.size();
+                for (Synapse s : src.getFanOutUnsafe().values()) {
+                    Integer tar = index.get(s.getTarget());
+                    if (tar == null || !eventTarget[tar]
+                            || !isEventDriven(s)) {
+                        continue;
+                    }
+                    double decay = 1 - timeStep / getTimeConstant(s);
+                    Integer c = classes.get(decay);
+                    if (c == null) {
+                        c = decays.size();
+                        classes.put(decay, c);
+                        decays.add(decay);
+                    }
+                    events.add(s);
+                    eventClasses.add(c);
+                }
+                if (events.size() > start) {
+                    srcList.add(src);
+                    srcStarts.add(start);
+                }
+            }
+            sources = srcList.toArray(new Neuron[srcList.size()]);
+            sourceStart = new int[sources.length + 1];
+            for (int i = 0; i < sources.length; i++) {
+                sourceStart[i] = srcStarts.get(i);
+            }
+            sourceStart[sources.length] = events.size();
+            classDecay = new double[Math.max(1, decays.size())];
+            for (int c = 0; c < decays.size(); c++) {
+                classDecay[c] = decays.get(c);
+            }
+            int numClasses = classDecay.length;
+            responseSums = new double[numNeurons * numClasses];
+            baseSums = new double[numNeurons];
+
+            int numSyns = events.size();
+            synTarget = new int[numSyns];
+            synClass = new int[numSyns];
+            synJump = new double[numSyns];
+            synBase = new double[numSyns];
+            synValue = new double[numSyns];
+            synLast = new long[numSyns];
+            synDelay = new int[numSyns];
+            synConvolved = new boolean[numSyns];
+            int maxDelay = 0;
+            Map<Synapse, Boolean> handled = new IdentityHashMap<Synapse,
+                    Boolean>(numSyns);
+            for (int k = 0; k < numSyns; k++) {
+                Synapse s = events.get(k);
+                handled.put(s, Boolean.TRUE);
+                synTarget[k] = index.get(s.getTarget());
+                synClass[k] = eventClasses.get(k);
+                if (s.getSpikeResponder() instanceof ConvolvedJumpAndDecay) {
+                    ConvolvedJumpAndDecay cjd = (ConvolvedJumpAndDecay) s
+                            .getSpikeResponder();
+                    synJump[k] = cjd.getJumpHeight() * s.getStrength();
+                    synBase[k] = cjd.getBaseLine();
+                    synConvolved[k] = true;
+                } else {
+                    JumpAndDecay jd = (JumpAndDecay) s.getSpikeResponder();
+                    synJump[k] = jd.getJumpHeight() * s.getStrength();
+                    synBase[k] = jd.getBaseLine();
+                }
+                synValue[k] = s.getPsr();
+                synDelay[k] = Math.max(0, s.getDelay());
+                maxDelay = Math.max(maxDelay, synDelay[k]);
+                responseSums[synTarget[k] * numClasses + synClass[k]] +=
+                        synValue[k] - synBase[k];
+                baseSums[synTarget[k]] += synBase[k];
+            }
+            buckets = new int[maxDelay + 1][16];
+            bucketSize = new int[maxDelay + 1];
+
+            // Everything else is handled by the synapses themselves
+            interpretedStart = new int[numNeurons + 1];
+            List<Synapse> interp = new ArrayList<Synapse>();
+            List<Synapse> learning = new ArrayList<Synapse>();
+            for (int i = 0; i < numNeurons; i++) {
+                interpretedStart[i] = interp.size();
+                for (Synapse s : neurons[i].getFanIn()) {
+                    if (handled.containsKey(s)) {
+                        continue;
+                    }
+                    if (eventTarget[i]) {
+                        interp.add(s);
+                    }
+                    if (!s.isFrozen() && !(s
+                            .getLearningRule() instanceof StaticSynapseRule)) {
+                        learning.add(s);
+                    }
+                }
+            }
+            interpretedStart[numNeurons] = interp.size();
+            interpreted = interp.toArray(new Synapse[interp.size()]);
+            plastic = learning.toArray(new Synapse[learning.size()]);
+        }
+
+        /**
+         * @param s a synapse from a spiking neuron to an event target
+         * @return whether the synapse's response can be computed from events
+         */
+        private static boolean isEventDriven(final Synapse s) {
+            Class<?> responder = s.getSpikeResponder() == null ? null
+                    : s.getSpikeResponder().getClass();
+            return s.isEnabled()
+                    && (s.isFrozen()
+                            || s.getLearningRule() instanceof StaticSynapseRule)
+                    && (responder == JumpAndDecay.class
+                            || responder == ConvolvedJumpAndDecay.class);
+        }
+
+        /**
+         * @param s a synapse with a jump and decay responder
+         * @return the time constant of its responder
+         */
+        private static double getTimeConstant(final Synapse s) {
+            if (s.getSpikeResponder() instanceof ConvolvedJumpAndDecay) {
+                return ((ConvolvedJumpAndDecay) s.getSpikeResponder())
+                        .getTimeConstant();
+            }
+            return ((JumpAndDecay) s.getSpikeResponder()).getTimeConstant();
+        }
+
+        /**
+         * Perform one buffered update step.
+         */
+        void update() {
+            step++;
+            int len = buckets.length;
+
+            // Spikes from the previous step are seen by responders on this
+            // one, and by targets after the synapse's delay.
+            for (int i = 0; i < sources.length; i++) {
+                if (sources[i].isSpike()) {
+                    for (int k = sourceStart[i], end = sourceStart[i + 1];
+                            k < end; k++) {
+                        schedule(k, (int) ((step + synDelay[k]) % len));
+                    }
+                }
+            }
+
+            int numClasses = classDecay.length;
+            for (int j = 0; j < responseSums.length; j += numClasses) {
+                for (int c = 0; c < numClasses; c++) {
+                    responseSums[j + c] *= classDecay[c];
+                }
+            }
+
+            int slot = (int) (step % len);
+            int[] arrivals = buckets[slot];
+            for (int e = 0, n = bucketSize[slot]; e < n; e++) {
+                deliver(arrivals[e]);
+            }
+            bucketSize[slot] = 0;
+
+            for (int i = 0; i < neurons.length; i++) {
+                Neuron n = neurons[i];
+                if (eventTarget[i]) {
+                    double input = baseSums[i];
+                    for (int c = 0; c < numClasses; c++) {
+                        input += responseSums[i * numClasses + c];
+                    }
+                    for (int k = interpretedStart[i],
+                            end = interpretedStart[i + 1]; k < end; k++) {
+                        input += interpreted[k].calcPSR();
+                    }
+                    double external = n.getInputValue();
+                    n.setInputValue(external + input);
+                    n.setSynapticInputExternal(true);
+                    n.update();
+                    n.setSynapticInputExternal(false);
+                    n.setInputValue(external);
+                } else {
+                    n.update();
+                }
+            }
+            for (int k = 0; k < plastic.length; k++) {
+                plastic[k].update();
+            }
+            for (int i = 0; i < neurons.length; i++) {
+                neurons[i].setToBufferVals();
+            }
+        }
+
+        /**
+         * Add an arrival to a delay bucket.
+         *
+         * @param k the synapse index
+         * @param slot the bucket
+         */
+        private void schedule(final int k, final int slot) {
+            int size = bucketSize[slot];
+            if (size == buckets[slot].length) {
+                buckets[slot] = Arrays.copyOf(buckets[slot], size * 2);
+            }
+            buckets[slot][size] = k;
+            bucketSize[slot] = size + 1;
+        }
+
+        /**
+         * Apply a spike arriving at a synapse on the current step. Its
+         * response as of the previous step is computed in closed form from
+         * its last event; the jump replaces or adds to it without decay on
+         * this step, as in the responders.
+         *
+         * @param k the synapse index
+         */
+        private void deliver(final int k) {
+            int c = synClass[k];
+            double decay = classDecay[c];
+            double base = synBase[k];
+            double prev = base + (synValue[k] - base)
+                    * Math.pow(decay, step - 1 - synLast[k]);
+            double next = synConvolved[k] ? prev + synJump[k] : synJump[k];
+            // The sum has already decayed this synapse's previous response
+            responseSums[synTarget[k] * classDecay.length + c] +=
+                    (next - base) - decay * (prev - base);
+            synValue[k] = next;
+            synLast[k] = step;
+        }
+
+    }
+
+    @Override
+    public void neuronChanged(NetworkEvent<Neuron> networkEvent) {
+        invalidate();
+    }
+
+    @Override
+    public void neuronTypeChanged(NetworkEvent<NeuronUpdateRule> networkEvent) {
+        invalidate();
+    }
+
+    @Override
+    public void labelChanged(NetworkEvent<Neuron> networkEvent) {
+    }
+
+    @Override
+    public void neuronAdded(NetworkEvent<Neuron> networkEvent) {
+        invalidate();
+    }
+
+    @Override
+    public void neuronMoved(NetworkEvent<Neuron> networkEvent) {
+    }
+
+    @Override
+    public void neuronRemoved(NetworkEvent<Neuron> networkEvent) {
+        invalidate();
+    }
+
+    @Override
+    public void synapseRemoved(NetworkEvent<Synapse> networkEvent) {
+        invalidate();
+    }
+
+    @Override
+    public void synapseAdded(NetworkEvent<Synapse> networkEvent) {
+        invalidate();
+    }
+
+    @Override
+    public void synapseChanged(NetworkEvent<Synapse> networkEvent) {
+        invalidate();
+    }
+
+    @Override
+    public void synapseTypeChanged(
+            NetworkEvent<SynapseUpdateRule> networkEvent) {
+        invalidate();
+    }
+
+    @Override
+    public void groupAdded(NetworkEvent<Group> e) {
+        invalidate();
+    }
+
+    @Override
+    public void groupRemoved(NetworkEvent<Group> e) {
+        invalidate();
+    }
+
+    @Override
+    public void groupChanged(NetworkEvent<Group> networkEvent,
+            String changeDescription) {
+        invalidate();
+    }
+
+    @Override
+    public void groupParameterChanged(NetworkEvent<Group> networkEvent) {
+        invalidate();
+    }
+
+    @Override
+    public void groupUpdated(Group group) {
+    }
+
+}
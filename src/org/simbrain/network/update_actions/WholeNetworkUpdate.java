@@ -0,0 +1,143 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.update_actions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.NetworkUpdateAction;
+import org.simbrain.network.groups.NeuronGroup;
+
+/**
+ * Base class for update actions which update every neuron in a network in
+ * one pass, and so must also read the next row of input into neuron groups
+ * in input mode before the update and write the activations of recording
+ * neuron groups after it.
+ * <p>
+ * These actions listen to their network to keep track of its structure. So
+ * that actions which are only offered in a list of available actions do not
+ * stay registered, the network's update manager calls
+ * {@link #addListeners()} when an action is added to it and
+ * {@link #removeListeners()} when it is removed.
+ */
+public abstract class WholeNetworkUpdate implements NetworkUpdateAction {
+
+    /** Neuron groups that read their activations from an input table. */
+    private final List<NeuronGroup> inputGroups = new ArrayList<NeuronGroup>();
+
+    /** Neuron groups that record their activations. */
+    private final List<NeuronGroup> outputGroups = new ArrayList<NeuronGroup>();
+
+    /**
+     * Register this action as a listener on its network and bring what it
+     * knows of the network up to date.
+     */
+    public abstract void addListeners();
+
+    /**
+     * Remove this action's listeners from its network.
+     */
+    public abstract void removeListeners();
+
+    /**
+     * Read the next row of input into each neuron group in input mode.
+     */
+    protected void readInputs() {
+        for (int i = 0, n = inputGroups.size(); i < n; i++) {
+            inputGroups.get(i).readNextInputs();
+        }
+    }
+
+    /**
+     * Write the activations of each recording neuron group to its file.
+     */
+    protected void writeOutputs() {
+        for (int i = 0, n = outputGroups.size(); i < n; i++) {
+            outputGroups.get(i).writeActsToFile();
+        }
+    }
+
+    /**
+     * Rebuild the input and output group lists from all the neuron groups in
+     * a network.
+     *
+     * @param network the network whose groups are collected
+     */
+    protected void collectGroups(final Network network) {
+        synchronized (inputGroups) {
+            inputGroups.clear();
+            for (NeuronGroup ng : network.getFlatNeuronGroupList()) {
+                if (ng.isInputMode()) {
+                    inputGroups.add(ng);
+                }
+            }
+        }
+        synchronized (outputGroups) {
+            outputGroups.clear();
+            for (NeuronGroup ng : network.getFlatNeuronGroupList()) {
+                if (ng.isRecording()) {
+                    outputGroups.add(ng);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a neuron group to or remove it from the input and output group
+     * lists according to whether it is currently in input mode or recording.
+     *
+     * @param ng the neuron group to check
+     */
+    protected void checkGroup(final NeuronGroup ng) {
+        synchronized (outputGroups) {
+            if (ng.isRecording()) {
+                if (!outputGroups.contains(ng)) {
+                    outputGroups.add(ng);
+                }
+            } else {
+                outputGroups.remove(ng);
+            }
+        }
+        synchronized (inputGroups) {
+            if (ng.isInputMode()) {
+                if (!inputGroups.contains(ng)) {
+                    inputGroups.add(ng);
+                }
+            } else {
+                inputGroups.remove(ng);
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the list of neuron groups in input mode
+     */
+    public List<NeuronGroup> getInputGroups() {
+        return new ArrayList<NeuronGroup>(inputGroups);
+    }
+
+    /**
+     * @return a copy of the list of recording neuron groups
+     */
+    public List<NeuronGroup> getOutputGroups() {
+        return new ArrayList<NeuronGroup>(outputGroups);
+    }
+
+}
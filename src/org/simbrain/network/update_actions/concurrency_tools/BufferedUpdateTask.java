@@ -61,6 +61,19 @@ public class BufferedUpdateTask implements Task {
 		}
 	}
 
+	/**
+	 * Sets the activations of the host neurons to their buffered values.
+	 * Called once every task in an update has been performed.
+	 */
+	public void commit() {
+		for (int i = 0; i < hostSize; i++) {
+			if (hosts[i] == null) {
+				break;
+			}
+			hosts[i].setToBufferVals();
+		}
+	}
+
 	public Neuron[] getHosts() {
 		return hosts;
 	}
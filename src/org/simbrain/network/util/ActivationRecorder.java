@@ -0,0 +1,370 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.simbrain.network.core.Neuron;
+
+/**
+ * Records the activations, or the spikes, of a list of neurons to a binary
+ * file. Each call to {@link #record(List, double)} copies the state of the
+ * neurons into one of a fixed ring of preallocated frames, and a background
+ * thread writes full frames to the file, so recording costs the updating
+ * thread little more than the copy. If the writer falls behind by the whole
+ * ring, recording waits for it rather than dropping frames.
+ * <p>
+ * The file starts with a header, all big-endian:
+ * <ul>
+ * <li>the magic number "SBAR" and the format version (ints);</li>
+ * <li>whether spikes are recorded (a byte, 1 for spikes);</li>
+ * <li>the number of neurons (an int);</li>
+ * <li>the time step (a double), and the unit of time (a string);</li>
+ * <li>the label of what was recorded (a string).</li>
+ * </ul>
+ * Strings are the number of their UTF-8 bytes (an unsigned short) followed by
+ * the bytes. Frames follow. An activation frame is the time (a double)
+ * followed by one activation (double) per neuron. A spike frame is the time,
+ * the number of neurons that spiked (an int) and their indices (ints); updates
+ * in which no neuron spiked are not written. Use
+ * {@link ActivationRecordingReader} to read a recording or convert it to CSV
+ * or NumPy files.
+ */
+public final class ActivationRecorder implements Closeable {
+
+    /** Extension of recording files. */
+    public static final String FILE_EXTENSION = "sbrec";
+
+    /** Magic number at the start of a recording, "SBAR". */
+    static final int MAGIC = 0x53424152;
+
+    /** Version of the format written. */
+    static final int VERSION = 1;
+
+    /** Most frames in the ring. */
+    private static final int MAX_FRAMES = 64;
+
+    /** Approximate most bytes of frame data held in the ring. */
+    private static final int MAX_RING_BYTES = 32 << 20;
+
+    /** A frame of recorded state. */
+    private static final class Frame {
+
+        /** Time of the frame. */
+        private double time;
+
+        /** Activations, when recording activations. */
+        private final double[] activations;
+
+        /** Indices of the neurons that spiked, when recording spikes. */
+        private final int[] spikes;
+
+        /** Number of neurons that spiked. */
+        private int numSpikes;
+
+        /**
+         * @param numNeurons number of neurons recorded
+         * @param recordSpikes whether spikes are recorded
+         */
+        private Frame(final int numNeurons, final boolean recordSpikes) {
+            activations = recordSpikes ? null : new double[numNeurons];
+            spikes = recordSpikes ? new int[numNeurons] : null;
+        }
+    }
+
+    /** Marks the end of the recording for the writer. */
+    private static final Frame END = new Frame(0, true);
+
+    /** Number of neurons recorded. */
+    private final int numNeurons;
+
+    /** Whether spikes, rather than activations, are recorded. */
+    private final boolean recordSpikes;
+
+    /** Frames ready to be filled. */
+    private final BlockingQueue<Frame> free;
+
+    /** Frames filled and waiting to be written, in order. */
+    private final BlockingQueue<Frame> filled;
+
+    /** The file written to. */
+    private final FileChannel channel;
+
+    /** Buffer frames are encoded into before being written. */
+    private final ByteBuffer buffer;
+
+    /** The thread that writes frames. */
+    private final Thread writer;
+
+    /** Error raised while writing, reported by the next call. */
+    private volatile IOException error;
+
+    /** Whether the recorder has been closed. */
+    private boolean closed;
+
+    /**
+     * Create a recording file and start the thread that writes to it.
+     *
+     * @param file the file to write
+     * @param label label of what is recorded, usually a neuron group
+     * @param numNeurons number of neurons recorded
+     * @param recordSpikes whether to record spikes instead of activations
+     * @param timeStep time step of the network
+     * @param timeUnit unit of time of the network
+     * @throws IOException if the file cannot be created
+     */
+    public ActivationRecorder(final File file, final String label,
+            final int numNeurons, final boolean recordSpikes,
+            final double timeStep, final String timeUnit) throws IOException {
+        this.numNeurons = numNeurons;
+        this.recordSpikes = recordSpikes;
+        int frameBytes = 12 + 8 * numNeurons;
+        int numFrames = Math.max(2,
+                Math.min(MAX_FRAMES, MAX_RING_BYTES / frameBytes));
+        free = new ArrayBlockingQueue<Frame>(numFrames);
+        filled = new ArrayBlockingQueue<Frame>(numFrames + 1);
+        for (int i = 0; i < numFrames; i++) {
+            free.add(new Frame(numNeurons, recordSpikes));
+        }
+        byte[] unitBytes = timeUnit.getBytes(StandardCharsets.UTF_8);
+        byte[] labelBytes = label.getBytes(StandardCharsets.UTF_8);
+        buffer = ByteBuffer.allocateDirect(Math.max(frameBytes,
+                25 + unitBytes.length + 2 + labelBytes.length + 2));
+        channel = new FileOutputStream(file).getChannel();
+        try {
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.put((byte) (recordSpikes ? 1 : 0));
+            buffer.putInt(numNeurons);
+            buffer.putDouble(timeStep);
+            putString(unitBytes);
+            putString(labelBytes);
+            writeBuffer();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        writer = new Thread(this::write, "Recorder " + label);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Put a length-prefixed string in the buffer.
+     *
+     * @param bytes the UTF-8 bytes of the string
+     * @throws IOException if the string is longer than 65535 bytes
+     */
+    private void putString(final byte[] bytes) throws IOException {
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("String too long for a recording header");
+        }
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Write out the contents of the buffer and clear it.
+     *
+     * @throws IOException if writing fails
+     */
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Record the state of the neurons at a time. Waits if the writer is a
+     * whole ring of frames behind. Does nothing once the recorder is closed.
+     *
+     * @param neurons the neurons, as many as the recorder was made for
+     * @param time the time of the network
+     * @throws IOException if an earlier frame could not be written
+     */
+    public synchronized void record(final List<Neuron> neurons,
+            final double time) throws IOException {
+        if (closed) {
+            return;
+        }
+        checkError();
+        if (recordSpikes) {
+            // Nothing to write for updates without spikes
+            boolean any = false;
+            for (int i = 0; i < numNeurons && !any; i++) {
+                any = neurons.get(i).isSpike();
+            }
+            if (!any) {
+                return;
+            }
+        }
+        Frame frame = take(free);
+        frame.time = time;
+        if (recordSpikes) {
+            int count = 0;
+            for (int i = 0; i < numNeurons; i++) {
+                if (neurons.get(i).isSpike()) {
+                    frame.spikes[count++] = i;
+                }
+            }
+            frame.numSpikes = count;
+        } else {
+            double[] activations = frame.activations;
+            for (int i = 0; i < numNeurons; i++) {
+                activations[i] = neurons.get(i).getActivation();
+            }
+        }
+        put(filled, frame);
+    }
+
+    /**
+     * Writes frames until the end of the recording. Runs on the writer thread.
+     */
+    private void write() {
+        try {
+            while (true) {
+                Frame frame = take(filled);
+                if (frame == END) {
+                    break;
+                }
+                if (error == null) {
+                    try {
+                        writeFrame(frame);
+                    } catch (IOException e) {
+                        error = e;
+                    }
+                }
+                put(free, frame);
+            }
+        } catch (IOException e) {
+            // Interrupted; close() reports it
+            error = e;
+        }
+    }
+
+    /**
+     * Write one frame to the file.
+     *
+     * @param frame the frame
+     * @throws IOException if writing fails
+     */
+    private void writeFrame(final Frame frame) throws IOException {
+        buffer.putDouble(frame.time);
+        if (recordSpikes) {
+            buffer.putInt(frame.numSpikes);
+            buffer.asIntBuffer().put(frame.spikes, 0, frame.numSpikes);
+            buffer.position(buffer.position() + 4 * frame.numSpikes);
+        } else {
+            buffer.asDoubleBuffer().put(frame.activations);
+            buffer.position(buffer.position() + 8 * numNeurons);
+        }
+        writeBuffer();
+    }
+
+    /**
+     * Wait until every recorded frame is written, then close the file.
+     *
+     * @throws IOException if a frame could not be written or the file could
+     *             not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            put(filled, END);
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while closing recorder");
+            }
+        } finally {
+            channel.close();
+        }
+        checkError();
+    }
+
+    /**
+     * @throws IOException the error raised by the writer, if any
+     */
+    private void checkError() throws IOException {
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * @param queue a queue of frames
+     * @return the next frame, waiting for one if need be
+     * @throws IOException if interrupted while waiting
+     */
+    private static Frame take(final BlockingQueue<Frame> queue)
+            throws IOException {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while recording");
+        }
+    }
+
+    /**
+     * @param queue a queue of frames
+     * @param frame the frame to add, waiting for room if need be
+     * @throws IOException if interrupted while waiting
+     */
+    private static void put(final BlockingQueue<Frame> queue,
+            final Frame frame) throws IOException {
+        try {
+            queue.put(frame);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while recording");
+        }
+    }
+
+    /**
+     * @return the number of neurons recorded
+     */
+    public int getNumNeurons() {
+        return numNeurons;
+    }
+
+    /**
+     * @return whether spikes, rather than activations, are recorded
+     */
+    public boolean isRecordSpikes() {
+        return recordSpikes;
+    }
+
+}
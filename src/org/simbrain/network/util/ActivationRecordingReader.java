@@ -0,0 +1,358 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads a recording made by {@link ActivationRecorder}, frame by frame, and
+ * converts recordings to CSV files or NumPy <code>.npy</code> files. Can be run
+ * from the command line:
+ *
+ * <pre>
+ * java org.simbrain.network.util.ActivationRecordingReader in.sbrec out.npy
+ * </pre>
+ *
+ * The format of the output is chosen by its extension, CSV unless it is
+ * <code>.npy</code>.
+ */
+public final class ActivationRecordingReader implements Closeable {
+
+    /** The recording. */
+    private final DataInputStream in;
+
+    /** Whether spikes, rather than activations, were recorded. */
+    private final boolean spikes;
+
+    /** Number of neurons recorded. */
+    private final int numNeurons;
+
+    /** Time step of the network. */
+    private final double timeStep;
+
+    /** Unit of time of the network. */
+    private final String timeUnit;
+
+    /** Label of what was recorded. */
+    private final String label;
+
+    /** Bytes of the current frame. */
+    private final byte[] bytes;
+
+    /** Time of the current frame. */
+    private double time;
+
+    /** Activations of the current frame. */
+    private final double[] activations;
+
+    /** Indices of the neurons that spiked in the current frame. */
+    private final int[] spikeIndices;
+
+    /** Number of neurons that spiked in the current frame. */
+    private int numSpikes;
+
+    /**
+     * Open a recording and read its header.
+     *
+     * @param file the recording
+     * @throws IOException if the file cannot be read or is not a recording
+     */
+    public ActivationRecordingReader(final File file) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file), 1 << 16));
+        try {
+            if (in.readInt() != ActivationRecorder.MAGIC) {
+                throw new IOException(file + " is not an activation recording");
+            }
+            int version = in.readInt();
+            if (version > ActivationRecorder.VERSION) {
+                throw new IOException("Unsupported recording version "
+                        + version);
+            }
+            spikes = in.readByte() != 0;
+            numNeurons = in.readInt();
+            timeStep = in.readDouble();
+            timeUnit = readString();
+            label = readString();
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        bytes = new byte[(spikes ? 4 : 8) * numNeurons];
+        activations = spikes ? null : new double[numNeurons];
+        spikeIndices = spikes ? new int[numNeurons] : null;
+    }
+
+    /**
+     * @return a string of the header
+     * @throws IOException if reading fails
+     */
+    private String readString() throws IOException {
+        byte[] string = new byte[in.readUnsignedShort()];
+        in.readFully(string);
+        return new String(string, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read the next frame.
+     *
+     * @return false if there are no more frames
+     * @throws IOException if reading fails or the last frame is cut short
+     */
+    public boolean next() throws IOException {
+        try {
+            time = in.readDouble();
+        } catch (EOFException e) {
+            return false;
+        }
+        if (spikes) {
+            numSpikes = in.readInt();
+            in.readFully(bytes, 0, 4 * numSpikes);
+            ByteBuffer.wrap(bytes, 0, 4 * numSpikes).asIntBuffer()
+                    .get(spikeIndices, 0, numSpikes);
+        } else {
+            in.readFully(bytes);
+            ByteBuffer.wrap(bytes).asDoubleBuffer().get(activations);
+        }
+        return true;
+    }
+
+    /**
+     * @return whether spikes, rather than activations, were recorded
+     */
+    public boolean isSpikes() {
+        return spikes;
+    }
+
+    /**
+     * @return the number of neurons recorded
+     */
+    public int getNumNeurons() {
+        return numNeurons;
+    }
+
+    /**
+     * @return the time step of the network
+     */
+    public double getTimeStep() {
+        return timeStep;
+    }
+
+    /**
+     * @return the unit of time of the network
+     */
+    public String getTimeUnit() {
+        return timeUnit;
+    }
+
+    /**
+     * @return the label of what was recorded
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * @return the time of the current frame
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * The activations of the current frame, when activations were recorded.
+     * The array is reused by the next frame.
+     *
+     * @return the activations
+     */
+    public double[] getActivations() {
+        return activations;
+    }
+
+    /**
+     * @return the number of neurons that spiked in the current frame
+     */
+    public int getNumSpikes() {
+        return numSpikes;
+    }
+
+    /**
+     * The indices of the neurons that spiked in the current frame, in its
+     * first {@link #getNumSpikes()} elements, when spikes were recorded. The
+     * array is reused by the next frame.
+     *
+     * @return the indices
+     */
+    public int[] getSpikeIndices() {
+        return spikeIndices;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Convert a recording to a CSV file laid out as neuron groups write it
+     * directly: one line of comma-separated activations per update, or for
+     * spikes one line per update with spikes, holding the time and then the
+     * indices of the neurons that spiked.
+     *
+     * @param recording the recording
+     * @param csv the file to write
+     * @throws IOException if reading or writing fails
+     */
+    public static void toCsv(final File recording, final File csv)
+            throws IOException {
+        try (ActivationRecordingReader reader = new ActivationRecordingReader(
+                recording);
+                PrintWriter out = new PrintWriter(new BufferedWriter(
+                        new FileWriter(csv)))) {
+            StringBuilder line = new StringBuilder();
+            while (reader.next()) {
+                line.setLength(0);
+                if (reader.spikes) {
+                    line.append(reader.time).append(' ');
+                    for (int i = 0; i < reader.numSpikes; i++) {
+                        line.append(reader.spikeIndices[i]).append(' ');
+                    }
+                } else {
+                    for (int i = 0; i < reader.numNeurons; i++) {
+                        if (i > 0) {
+                            line.append(", ");
+                        }
+                        line.append(reader.activations[i]);
+                    }
+                }
+                out.println(line);
+            }
+            if (out.checkError()) {
+                throw new IOException("Could not write " + csv);
+            }
+        }
+    }
+
+    /**
+     * Convert a recording to a NumPy <code>.npy</code> file of doubles. For
+     * activations the array has one row per update and one column per
+     * neuron; for spikes it has one row per spike, holding its time and the
+     * index of the neuron.
+     *
+     * @param recording the recording
+     * @param npy the file to write
+     * @throws IOException if reading or writing fails
+     */
+    public static void toNpy(final File recording, final File npy)
+            throws IOException {
+        // Count the rows first, since they go in the header
+        long rows = 0;
+        int columns;
+        try (ActivationRecordingReader reader = new ActivationRecordingReader(
+                recording)) {
+            columns = reader.spikes ? 2 : reader.numNeurons;
+            while (reader.next()) {
+                rows += reader.spikes ? reader.numSpikes : 1;
+            }
+        }
+        try (ActivationRecordingReader reader = new ActivationRecordingReader(
+                recording);
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(npy),
+                                1 << 16))) {
+            writeNpyHeader(out, rows, columns);
+            while (reader.next()) {
+                if (reader.spikes) {
+                    for (int i = 0; i < reader.numSpikes; i++) {
+                        out.writeDouble(reader.time);
+                        out.writeDouble(reader.spikeIndices[i]);
+                    }
+                } else {
+                    // The frame's bytes are already big-endian doubles
+                    out.write(reader.bytes);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the header of a version 1.0 <code>.npy</code> file holding a
+     * two-dimensional array of big-endian doubles in row-major order.
+     *
+     * @param out the stream to write to
+     * @param rows number of rows
+     * @param columns number of columns
+     * @throws IOException if writing fails
+     */
+    private static void writeNpyHeader(final DataOutputStream out,
+            final long rows, final int columns) throws IOException {
+        StringBuilder header = new StringBuilder("{'descr': '>f8', "
+                + "'fortran_order': False, 'shape': (" + rows + ", "
+                + columns + "), }");
+        // Pad with spaces and a newline so the data is 64-byte aligned
+        while ((10 + header.length() + 1) % 64 != 0) {
+            header.append(' ');
+        }
+        header.append('\n');
+        out.write(0x93);
+        out.writeBytes("NUMPY");
+        out.write(1);
+        out.write(0);
+        // The header length is little-endian
+        out.write(header.length() & 0xFF);
+        out.write(header.length() >> 8);
+        out.writeBytes(header.toString());
+    }
+
+    /**
+     * Convert a recording to CSV or NumPy.
+     *
+     * @param args the recording, and the file to write
+     * @throws IOException if reading or writing fails
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: ActivationRecordingReader "
+                    + "<recording." + ActivationRecorder.FILE_EXTENSION
+                    + "> <output.csv|output.npy>");
+            System.exit(1);
+        }
+        File recording = new File(args[0]);
+        File output = new File(args[1]);
+        if (output.getName().toLowerCase().endsWith(".npy")) {
+            toNpy(recording, output);
+        } else {
+            toCsv(recording, output);
+        }
+    }
+
+}
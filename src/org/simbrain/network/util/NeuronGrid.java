@@ -0,0 +1,270 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+import org.simbrain.network.core.Neuron;
+
+/**
+ * A uniform grid over the positions of a fixed set of neurons, used to find
+ * the neurons within some radius of a point without testing every neuron.
+ * Positions are read when the grid is built; moving a neuron afterwards is not
+ * reflected. The grid is read only once built, so it can be queried from
+ * several threads at once.
+ * <p>
+ * Queries are cheapest when the cell size is about the query radius. If the
+ * requested cell size would make the grid much larger than the number of
+ * neurons it is coarsened.
+ */
+public class NeuronGrid {
+
+    /** The neurons, sorted by cell. */
+    private final Neuron[] neurons;
+
+    /** Index of each sorted neuron in the collection it came from. */
+    private final int[] order;
+
+    /** Positions of the sorted neurons, as x, y, z triples. */
+    private final double[] positions;
+
+    /**
+     * Index into {@link #neurons} of the first neuron of each cell, with a
+     * final entry equal to the number of neurons.
+     */
+    private final int[] cellStart;
+
+    /** Lowest coordinate along each axis. */
+    private final double minX, minY, minZ;
+
+    /** Number of cells along each axis. */
+    private final int nx, ny, nz;
+
+    /** Side length of a cell. */
+    private final double cellSize;
+
+    /**
+     * Build a grid over the given neurons.
+     *
+     * @param neurons the neurons to index
+     * @param cellSize the requested side length of a cell, usually the radius
+     *            that will be queried
+     */
+    public NeuronGrid(final Collection<Neuron> neurons, double cellSize) {
+        int n = neurons.size();
+        double[] pos = new double[n * 3];
+        Neuron[] unsorted = neurons.toArray(new Neuron[n]);
+        double loX = Double.POSITIVE_INFINITY;
+        double loY = Double.POSITIVE_INFINITY;
+        double loZ = Double.POSITIVE_INFINITY;
+        double hiX = Double.NEGATIVE_INFINITY;
+        double hiY = Double.NEGATIVE_INFINITY;
+        double hiZ = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            Neuron neuron = unsorted[i];
+            pos[3 * i] = neuron.getX();
+            pos[3 * i + 1] = neuron.getY();
+            pos[3 * i + 2] = neuron.getZ();
+            loX = Math.min(loX, pos[3 * i]);
+            loY = Math.min(loY, pos[3 * i + 1]);
+            loZ = Math.min(loZ, pos[3 * i + 2]);
+            hiX = Math.max(hiX, pos[3 * i]);
+            hiY = Math.max(hiY, pos[3 * i + 1]);
+            hiZ = Math.max(hiZ, pos[3 * i + 2]);
+        }
+        if (n == 0) {
+            loX = loY = loZ = hiX = hiY = hiZ = 0;
+        }
+        minX = loX;
+        minY = loY;
+        minZ = loZ;
+
+        // Coarsen until there are at most a few cells per neuron
+        double extent = Math.max(hiX - loX, Math.max(hiY - loY, hiZ - loZ));
+        double size = cellSize > 0 && !Double.isInfinite(cellSize) ? cellSize
+            : Math.max(extent, 1);
+        long maxCells = 4L * n + 8;
+        while (cells(hiX - loX, size) * cells(hiY - loY, size)
+            * cells(hiZ - loZ, size) > maxCells) {
+            size *= 2;
+        }
+        this.cellSize = size;
+        nx = (int) cells(hiX - loX, size);
+        ny = (int) cells(hiY - loY, size);
+        nz = (int) cells(hiZ - loZ, size);
+
+        // Counting sort of the neurons by cell
+        int[] cellOf = new int[n];
+        cellStart = new int[nx * ny * nz + 1];
+        for (int i = 0; i < n; i++) {
+            cellOf[i] = cellIndex(cell(pos[3 * i], minX, nx),
+                cell(pos[3 * i + 1], minY, ny),
+                cell(pos[3 * i + 2], minZ, nz));
+            cellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < nx * ny * nz; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] next = new int[nx * ny * nz];
+        System.arraycopy(cellStart, 0, next, 0, next.length);
+        this.neurons = new Neuron[n];
+        this.order = new int[n];
+        this.positions = new double[n * 3];
+        for (int i = 0; i < n; i++) {
+            int j = next[cellOf[i]]++;
+            this.neurons[j] = unsorted[i];
+            this.order[j] = i;
+            System.arraycopy(pos, 3 * i, positions, 3 * j, 3);
+        }
+    }
+
+    /**
+     * @param extent distance between the lowest and highest coordinate
+     * @param size side length of a cell
+     * @return number of cells needed to cover the extent
+     */
+    private static long cells(double extent, double size) {
+        return (long) Math.floor(extent / size) + 1;
+    }
+
+    /**
+     * @param coord a coordinate
+     * @param min lowest coordinate along the axis
+     * @param count number of cells along the axis
+     * @return the cell containing the coordinate, clamped to the grid
+     */
+    private int cell(double coord, double min, int count) {
+        int c = (int) Math.floor((coord - min) / cellSize);
+        return c < 0 ? 0 : (c >= count ? count - 1 : c);
+    }
+
+    /**
+     * @param cx cell along x
+     * @param cy cell along y
+     * @param cz cell along z
+     * @return the flat index of the cell
+     */
+    private int cellIndex(int cx, int cy, int cz) {
+        return (cz * ny + cy) * nx + cx;
+    }
+
+    /**
+     * Returns the indexed neurons whose Euclidean distance from a neuron is at
+     * most a radius, including the neuron itself if it is indexed.
+     *
+     * @param center the neuron at the center of the search
+     * @param radius the radius to search within
+     * @return the neurons in the given radius
+     */
+    public List<Neuron> getNeuronsInRadius(Neuron center, double radius) {
+        List<Neuron> ret = new ArrayList<Neuron>();
+        getNeuronsInRadius(center, radius, ret);
+        return ret;
+    }
+
+    /**
+     * Fills a list with the indexed neurons whose Euclidean distance from a
+     * neuron is at most a radius, including the neuron itself if it is
+     * indexed. The list is cleared first, so it can be reused across queries.
+     *
+     * @param center the neuron at the center of the search
+     * @param radius the radius to search within
+     * @param result the list to fill
+     */
+    public void getNeuronsInRadius(Neuron center, double radius,
+        List<Neuron> result) {
+        result.clear();
+        visit(center.getX(), center.getY(), center.getZ(), radius,
+            i -> result.add(neurons[i]));
+    }
+
+    /**
+     * Passes the position, in the collection the grid was built from, of
+     * every indexed neuron whose Euclidean distance from a point is at most a
+     * radius to an action. Nothing is allocated.
+     *
+     * @param x x coordinate of the point
+     * @param y y coordinate of the point
+     * @param z z coordinate of the point
+     * @param radius the radius to search within
+     * @param action receives the index of each neuron in the radius
+     */
+    public void forEachInRadius(double x, double y, double z, double radius,
+        IntConsumer action) {
+        visit(x, y, z, radius, i -> action.accept(order[i]));
+    }
+
+    /**
+     * Passes the sorted slot of every neuron within a radius of a point to an
+     * action.
+     *
+     * @param x x coordinate of the point
+     * @param y y coordinate of the point
+     * @param z z coordinate of the point
+     * @param radius the radius to search within
+     * @param action receives the slot of each neuron in the radius
+     */
+    private void visit(double x, double y, double z, double radius,
+        IntConsumer action) {
+        if (neurons.length == 0 || !(radius >= 0)) {
+            return;
+        }
+        // Skip queries whose bounding box misses the grid entirely
+        double reach = (radius / cellSize) + 1;
+        if ((x - minX) / cellSize < -reach || (x - minX) / cellSize > nx + reach
+            || (y - minY) / cellSize < -reach
+            || (y - minY) / cellSize > ny + reach
+            || (z - minZ) / cellSize < -reach
+            || (z - minZ) / cellSize > nz + reach) {
+            return;
+        }
+        int x0 = cell(x - radius, minX, nx);
+        int x1 = cell(x + radius, minX, nx);
+        int y0 = cell(y - radius, minY, ny);
+        int y1 = cell(y + radius, minY, ny);
+        int z0 = cell(z - radius, minZ, nz);
+        int z1 = cell(z + radius, minZ, nz);
+        for (int cz = z0; cz <= z1; cz++) {
+            for (int cy = y0; cy <= y1; cy++) {
+                // Cells along x are contiguous
+                int from = cellStart[cellIndex(x0, cy, cz)];
+                int to = cellStart[cellIndex(x1, cy, cz) + 1];
+                for (int i = from; i < to; i++) {
+                    double dx = positions[3 * i] - x;
+                    double dy = positions[3 * i + 1] - y;
+                    double dz = positions[3 * i + 2] - z;
+                    if (Math.sqrt(dx * dx + dy * dy + dz * dz) <= radius) {
+                        action.accept(i);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of indexed neurons
+     */
+    public int size() {
+        return neurons.length;
+    }
+
+}
@@ -15,9 +15,13 @@ package org.simbrain.network.util;
 
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import org.ojalgo.access.Access2D.Builder;
@@ -28,6 +32,7 @@ import org.ojalgo.scalar.ComplexNumber;
 import org.simbrain.network.core.Network;
 import org.simbrain.network.core.Neuron;
 import org.simbrain.network.core.Synapse;
+import org.simbrain.network.groups.SynapseGroup;
 
 /**
  * <b>SimnetUtils</b> provides utility classes relating to Simbrain networks.
@@ -37,6 +42,18 @@ import org.simbrain.network.core.Synapse;
  */
 public class SimnetUtils {
 
+    /** Default relative residual at which spectral radius estimates stop. */
+    public static final double DEFAULT_SPECTRAL_TOLERANCE = 1E-4;
+
+    /** Default iteration cap of spectral radius estimates. */
+    public static final int DEFAULT_SPECTRAL_ITERATIONS = 1000;
+
+    /**
+     * Largest Krylov basis kept by spectral radius estimates, after which
+     * they restart.
+     */
+    private static final int MAX_KRYLOV_DIMENSION = 100;
+
     /**
      * Returns the weights connecting two lists of neurons as an N x M matrix of
      * doubles, where N is the number of source neurons, and M is the number of
@@ -179,6 +196,12 @@ public class SimnetUtils {
     }
 
     /**
+     * Scale the weights connecting two lists of neurons so that the weight
+     * matrix has a given spectral radius. If the lists are the same the
+     * radius is estimated from the existing synapses with
+     * {@link #estimateSpectralRadius(int, int[], int[], double[], double, int)};
+     * otherwise the dense weight matrix is used.
+     *
      * @param src list of source neurons
      * @param tar list of target neurons
      * @param desiredEigen : the new max eig or spectral radius for the weight
@@ -186,8 +209,374 @@ public class SimnetUtils {
      */
     public static void scaleEigenvalue(List<Neuron> src, List<Neuron> tar,
             double desiredEigen) {
-        double maxEigen = findMaxEig(getWeights(src, tar));
-        scaleWeights(src, tar, desiredEigen / maxEigen);
+        if (!src.equals(tar)) {
+            double maxEigen = findMaxEig(getWeights(src, tar));
+            scaleWeights(src, tar, desiredEigen / maxEigen);
+            return;
+        }
+        Map<Neuron, Integer> index = new HashMap<Neuron, Integer>();
+        for (int i = 0; i < src.size(); i++) {
+            index.put(src.get(i), i);
+        }
+        List<Synapse> synapses = new ArrayList<Synapse>();
+        for (Neuron source : src) {
+            for (Synapse s : source.getFanOut().values()) {
+                if (index.containsKey(s.getTarget())) {
+                    synapses.add(s);
+                }
+            }
+        }
+        int nnz = synapses.size();
+        int[] sources = new int[nnz];
+        int[] targets = new int[nnz];
+        double[] weights = new double[nnz];
+        for (int k = 0; k < nnz; k++) {
+            Synapse s = synapses.get(k);
+            sources[k] = index.get(s.getSource());
+            targets[k] = index.get(s.getTarget());
+            weights[k] = s.getStrength();
+        }
+        double radius = estimateSpectralRadius(src.size(), sources, targets,
+                weights, DEFAULT_SPECTRAL_TOLERANCE,
+                DEFAULT_SPECTRAL_ITERATIONS);
+        if (radius > 0) {
+            for (Synapse s : synapses) {
+                s.forceSetStrength(s.getStrength() * desiredEigen / radius);
+            }
+        }
+    }
+
+    /**
+     * Estimate the spectral radius (largest eigenvalue modulus) of the weight
+     * matrix of a recurrent synapse group, using the default tolerance and
+     * iteration cap.
+     *
+     * @param group a synapse group whose source and target are the same
+     * @return the estimated spectral radius
+     */
+    public static double estimateSpectralRadius(SynapseGroup group) {
+        return estimateSpectralRadius(group, DEFAULT_SPECTRAL_TOLERANCE,
+                DEFAULT_SPECTRAL_ITERATIONS);
+    }
+
+    /**
+     * Estimate the spectral radius (largest eigenvalue modulus) of the weight
+     * matrix of a recurrent synapse group. Works on the group's connections
+     * directly, so time and memory grow with the number of synapses and not
+     * with the square of the number of neurons. Compressed groups are not
+     * materialized.
+     *
+     * @param group a synapse group whose source and target are the same
+     * @param tolerance relative residual of the estimate at which to stop
+     * @param maxIterations maximum number of matrix-vector products
+     * @return the estimated spectral radius
+     * @throws IllegalArgumentException if the group is not recurrent
+     */
+    public static double estimateSpectralRadius(SynapseGroup group,
+            double tolerance, int maxIterations) {
+        if (!group.isRecurrent()) {
+            throw new IllegalArgumentException("Spectral radius is only "
+                    + "defined for recurrent synapse groups");
+        }
+        double[][] entries = group.getNumericIndices();
+        int[] sources = new int[entries.length];
+        int[] targets = new int[entries.length];
+        double[] weights = new double[entries.length];
+        for (int k = 0; k < entries.length; k++) {
+            sources[k] = (int) entries[k][0];
+            targets[k] = (int) entries[k][1];
+            weights[k] = entries[k][2];
+        }
+        return estimateSpectralRadius(group.getSourceNeuronGroup().size(),
+                sources, targets, weights, tolerance, maxIterations);
+    }
+
+    /**
+     * Scale the weights of a recurrent synapse group so that its weight
+     * matrix has the given spectral radius. Does nothing if the group has no
+     * non-zero eigenvalues.
+     *
+     * @param group a synapse group whose source and target are the same
+     * @param spectralRadius the desired spectral radius
+     */
+    public static void scaleSpectralRadius(SynapseGroup group,
+            double spectralRadius) {
+        double radius = estimateSpectralRadius(group);
+        if (radius > 0) {
+            group.scaleWeights(spectralRadius / radius);
+        }
+    }
+
+    /**
+     * Estimate the spectral radius of a sparse square matrix given as a list
+     * of entries, using Arnoldi iteration: an orthonormal basis of the Krylov
+     * space spanned by a start vector and its images under the matrix is
+     * built one matrix-vector product at a time, and the eigenvalues of the
+     * matrix projected onto that space (a small Hessenberg matrix, the Ritz
+     * values) converge to the outer eigenvalues of the full matrix. Unlike
+     * plain power iteration this also converges when the largest eigenvalues
+     * are a complex pair, which is typical of random reservoirs. The start
+     * vector is seeded by the matrix size so results are repeatable.
+     * <p>
+     * Iteration stops once the residual of the largest Ritz value &lambda;
+     * and its Ritz vector x, |Ax - &lambda;x|, is at most the tolerance
+     * times |&lambda;|. For a normal matrix that bounds the relative error of
+     * the estimate by the tolerance. Random reservoirs are not normal, and
+     * their outer eigenvalues are closely packed, so there the error is
+     * larger by up to the condition number of the eigenvalue, typically a
+     * small multiple of the tolerance. If the basis reaches
+     * {@link #MAX_KRYLOV_DIMENSION} vectors first, the iteration restarts
+     * from the Ritz vector. If the iteration cap is reached first, the last
+     * estimate is returned as is.
+     *
+     * @param n matrix size
+     * @param sources column (source neuron) index of each entry
+     * @param targets row (target neuron) index of each entry
+     * @param weights value of each entry
+     * @param tolerance relative residual of the estimate at which to stop
+     * @param maxIterations maximum number of matrix-vector products
+     * @return the estimated spectral radius
+     */
+    public static double estimateSpectralRadius(int n, int[] sources,
+            int[] targets, double[] weights, double tolerance,
+            int maxIterations) {
+        if (n == 0 || weights.length == 0) {
+            return 0;
+        }
+        int maxDim = Math.max(1, Math.min(n, Math.min(maxIterations,
+                MAX_KRYLOV_DIMENSION)));
+        double[][] basis = new double[maxDim + 1][];
+        double[][] hessenberg = new double[maxDim + 1][maxDim];
+        Random rand = new Random(n);
+        double[] v = new double[n];
+        for (int i = 0; i < n; i++) {
+            v[i] = rand.nextGaussian();
+        }
+        double estimate = 0;
+        int products = 0;
+        while (true) {
+            scale(v, 1 / norm(v));
+            basis[0] = v;
+            for (double[] row : hessenberg) {
+                Arrays.fill(row, 0);
+            }
+            for (int k = 0; k < maxDim; k++) {
+                double[] w = new double[n];
+                for (int e = 0; e < weights.length; e++) {
+                    w[targets[e]] += weights[e] * basis[k][sources[e]];
+                }
+                products++;
+                // Modified Gram-Schmidt, done twice to keep the basis
+                // orthogonal
+                for (int pass = 0; pass < 2; pass++) {
+                    for (int i = 0; i <= k; i++) {
+                        double h = dot(w, basis[i]);
+                        hessenberg[i][k] += h;
+                        for (int j = 0; j < n; j++) {
+                            w[j] -= h * basis[i][j];
+                        }
+                    }
+                }
+                double h = norm(w);
+                hessenberg[k + 1][k] = h;
+                // Stop if the Krylov space is invariant (the estimate is then
+                // exact), or check the residual every few steps
+                boolean invariant = h <= 1e-12 * Math.max(1, estimate);
+                boolean full = k == maxDim - 1;
+                boolean last = products >= maxIterations;
+                if (invariant || full || last || (k + 1) % 5 == 0) {
+                    double[] ritz = largestEigenvalue(hessenberg, k + 1);
+                    estimate = Math.hypot(ritz[0], ritz[1]);
+                    double[][] y = eigenvector(hessenberg, k + 1, ritz[0],
+                            ritz[1]);
+                    double residual = h * Math.hypot(y[0][k], y[1][k]);
+                    if (invariant || last
+                            || residual <= tolerance * estimate) {
+                        return estimate;
+                    }
+                    if (full) {
+                        // Restart from the Ritz vector, whose real and
+                        // imaginary parts span a complex conjugate pair
+                        v = new double[n];
+                        for (int i = 0; i <= k; i++) {
+                            double c = y[0][i] + y[1][i];
+                            for (int j = 0; j < n; j++) {
+                                v[j] += c * basis[i][j];
+                            }
+                        }
+                        break;
+                    }
+                }
+                scale(w, 1 / h);
+                basis[k + 1] = w;
+            }
+        }
+    }
+
+    /**
+     * @param matrix a square matrix, possibly larger than needed
+     * @param size number of rows and columns to use
+     * @return the real and imaginary parts of the eigenvalue of largest
+     *         modulus of the top left block
+     */
+    private static double[] largestEigenvalue(double[][] matrix, int size) {
+        Builder<PrimitiveMatrix> builder = PrimitiveMatrix.FACTORY
+                .getBuilder(size, size);
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                builder.set(i, j, matrix[i][j]);
+            }
+        }
+        List<ComplexNumber> eigs = builder.build().getEigenvalues();
+        double[] max = new double[2];
+        for (ComplexNumber eig : eigs) {
+            if (eig.getModulus() > Math.hypot(max[0], max[1])) {
+                max[0] = eig.getReal();
+                max[1] = eig.getImaginary();
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Find an eigenvector of the top left block of a matrix by two steps of
+     * inverse iteration in complex arithmetic.
+     *
+     * @param matrix a square matrix, possibly larger than needed
+     * @param size number of rows and columns to use
+     * @param re real part of the eigenvalue
+     * @param im imaginary part of the eigenvalue
+     * @return the real and imaginary parts of the eigenvector, of unit norm,
+     *         with its largest component real
+     */
+    private static double[][] eigenvector(double[][] matrix, int size,
+            double re, double im) {
+        // LU decomposition of the shifted matrix with partial pivoting
+        double[][] ar = new double[size][];
+        double[][] ai = new double[size][size];
+        for (int i = 0; i < size; i++) {
+            ar[i] = Arrays.copyOf(matrix[i], size);
+            ar[i][i] -= re;
+            ai[i][i] = -im;
+        }
+        double tiny = 1e-14 * Math.max(1, Math.hypot(re, im));
+        int[] pivots = new int[size];
+        for (int c = 0; c < size; c++) {
+            int p = c;
+            for (int r = c + 1; r < size; r++) {
+                if (Math.hypot(ar[r][c], ai[r][c]) > Math.hypot(ar[p][c],
+                        ai[p][c])) {
+                    p = r;
+                }
+            }
+            pivots[c] = p;
+            double[] swap = ar[c];
+            ar[c] = ar[p];
+            ar[p] = swap;
+            swap = ai[c];
+            ai[c] = ai[p];
+            ai[p] = swap;
+            // The shift is an eigenvalue, so a pivot may vanish
+            if (Math.hypot(ar[c][c], ai[c][c]) < tiny) {
+                ar[c][c] = tiny;
+                ai[c][c] = 0;
+            }
+            double pr = ar[c][c];
+            double pi = ai[c][c];
+            double pm = pr * pr + pi * pi;
+            for (int r = c + 1; r < size; r++) {
+                double mr = (ar[r][c] * pr + ai[r][c] * pi) / pm;
+                double mi = (ai[r][c] * pr - ar[r][c] * pi) / pm;
+                ar[r][c] = mr;
+                ai[r][c] = mi;
+                for (int j = c + 1; j < size; j++) {
+                    ar[r][j] -= mr * ar[c][j] - mi * ai[c][j];
+                    ai[r][j] -= mr * ai[c][j] + mi * ar[c][j];
+                }
+            }
+        }
+        double[][] y = new double[2][size];
+        Arrays.fill(y[0], 1);
+        for (int step = 0; step < 2; step++) {
+            double[] yr = y[0];
+            double[] yi = y[1];
+            for (int c = 0; c < size; c++) {
+                int p = pivots[c];
+                double t = yr[c];
+                yr[c] = yr[p];
+                yr[p] = t;
+                t = yi[c];
+                yi[c] = yi[p];
+                yi[p] = t;
+                for (int r = c + 1; r < size; r++) {
+                    yr[r] -= ar[r][c] * yr[c] - ai[r][c] * yi[c];
+                    yi[r] -= ar[r][c] * yi[c] + ai[r][c] * yr[c];
+                }
+            }
+            for (int r = size - 1; r >= 0; r--) {
+                double sr = yr[r];
+                double si = yi[r];
+                for (int j = r + 1; j < size; j++) {
+                    sr -= ar[r][j] * yr[j] - ai[r][j] * yi[j];
+                    si -= ar[r][j] * yi[j] + ai[r][j] * yr[j];
+                }
+                double pr = ar[r][r];
+                double pi = ai[r][r];
+                double pm = pr * pr + pi * pi;
+                yr[r] = (sr * pr + si * pi) / pm;
+                yi[r] = (si * pr - sr * pi) / pm;
+            }
+            // Normalize, turning the largest component real
+            int largest = 0;
+            double sum = 0;
+            for (int i = 0; i < size; i++) {
+                double m = yr[i] * yr[i] + yi[i] * yi[i];
+                sum += m;
+                if (m > yr[largest] * yr[largest] + yi[largest] * yi[largest]) {
+                    largest = i;
+                }
+            }
+            double m = Math.hypot(yr[largest], yi[largest]);
+            double cr = yr[largest] / m / Math.sqrt(sum);
+            double ci = -yi[largest] / m / Math.sqrt(sum);
+            for (int i = 0; i < size; i++) {
+                double r = yr[i] * cr - yi[i] * ci;
+                yi[i] = yr[i] * ci + yi[i] * cr;
+                yr[i] = r;
+            }
+        }
+        return y;
+    }
+
+    /**
+     * @param a a vector
+     * @param b a vector of the same length
+     * @return the dot product
+     */
+    private static double dot(double[] a, double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * @param a a vector
+     * @return the euclidean norm
+     */
+    private static double norm(double[] a) {
+        return Math.sqrt(dot(a, a));
+    }
+
+    /**
+     * @param a a vector, scaled in place
+     * @param scalar the factor
+     */
+    private static void scale(double[] a, double scalar) {
+        for (int i = 0; i < a.length; i++) {
+            a[i] *= scalar;
+        }
     }
 
     /**
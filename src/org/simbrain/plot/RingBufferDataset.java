@@ -0,0 +1,624 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.plot;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.locks.StampedLock;
+
+import javax.swing.SwingUtilities;
+
+import org.jfree.data.xy.AbstractXYDataset;
+
+/**
+ * An XY dataset for plots that are fed a stream of points, such as time
+ * series and raster plots. Each series keeps its most recent points in a
+ * pair of primitive arrays used as a ring buffer, so memory is bounded and
+ * adding a point allocates nothing once the arrays have grown.
+ * <p>
+ * Points are added by one thread (normally the workspace update thread)
+ * without locking: the writer fills a slot and then advances a volatile
+ * sequence number. Charts do not read the buffers directly. After points are
+ * added a refresh is scheduled on the Swing event thread, which copies the
+ * visible points out of the buffers, rereads the sequence number after a
+ * load fence, discards any points that the writer overwrote while they were
+ * copied, and thins the rest to roughly one column per pixel
+ * (see {@link #setResolution(int, int)}). The chart then draws that copy,
+ * which only changes on the event thread and so cannot change during a
+ * paint. Line plots keep the first, lowest, highest and last point of each
+ * column; scatter plots keep one point per pixel.
+ * <p>
+ * Decimation assumes the x values of a series do not decrease; if they do,
+ * the plot is still drawn, just less compactly.
+ */
+public class RingBufferDataset extends AbstractXYDataset {
+
+    /** Default number of points kept per series. */
+    public static final int DEFAULT_CAPACITY = 1 << 18;
+
+    /** Initial length of the arrays of a series. */
+    private static final int INITIAL_SIZE = 64;
+
+    /** Number of columns to decimate to before a panel sets it. */
+    private static final int DEFAULT_RESOLUTION = 1000;
+
+    /** Whether points are drawn as unconnected shapes. */
+    private final boolean scatter;
+
+    /** Most points kept per series. */
+    private final int capacity;
+
+    /** The series, replaced rather than modified. */
+    private volatile Series[] series = new Series[0];
+
+    /**
+     * Width in x of the visible window, ending at the last point, or zero to
+     * show every point kept.
+     */
+    private volatile double window;
+
+    /** Number of columns points are decimated to. */
+    private volatile int width = DEFAULT_RESOLUTION;
+
+    /** Number of rows scatter points are decimated to. */
+    private volatile int height = DEFAULT_RESOLUTION;
+
+    /**
+     * Most points currently kept per series: the capacity, or less when a
+     * window that holds fewer points is shown.
+     */
+    private volatile int limit;
+
+    /**
+     * Never locked. Validating a stamp of it is a load fence, which orders
+     * the reads of copied points before the reread of the sequence number;
+     * Java 8 has no other public load fence.
+     */
+    private static final StampedLock FENCE = new StampedLock();
+
+    /** Whether a refresh is waiting on the event thread. */
+    private transient volatile boolean refreshPending;
+
+    /** Points copied out of a buffer, reused across refreshes. */
+    private transient double[] copyX, copyY;
+
+    /** Rows already drawn in the current column of a scatter plot. */
+    private transient BitSet rows;
+
+    /**
+     * Construct an empty dataset that keeps {@link #DEFAULT_CAPACITY} points
+     * per series.
+     *
+     * @param scatter true if points are drawn as unconnected shapes, false
+     *            if they are joined by lines
+     */
+    public RingBufferDataset(final boolean scatter) {
+        this(scatter, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Construct an empty dataset.
+     *
+     * @param scatter true if points are drawn as unconnected shapes, false
+     *            if they are joined by lines
+     * @param capacity most points kept per series; older points are dropped
+     */
+    public RingBufferDataset(final boolean scatter, final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.scatter = scatter;
+        this.capacity = capacity;
+        this.limit = capacity;
+    }
+
+    /**
+     * Adds an empty series, keyed by its position counting from one.
+     */
+    public void addSeries() {
+        Series[] old = series;
+        Series[] ret = Arrays.copyOf(old, old.length + 1);
+        ret[old.length] = new Series(old.length + 1,
+                Math.min(INITIAL_SIZE, limit));
+        series = ret;
+        fireDatasetChanged();
+    }
+
+    /**
+     * Removes a series.
+     *
+     * @param index the series to remove
+     */
+    public void removeSeries(final int index) {
+        Series[] old = series;
+        Series[] ret = new Series[old.length - 1];
+        System.arraycopy(old, 0, ret, 0, index);
+        System.arraycopy(old, index + 1, ret, index, ret.length - index);
+        series = ret;
+        fireDatasetChanged();
+    }
+
+    /**
+     * Adds a point to a series. Only one thread at a time may add points.
+     *
+     * @param index the series
+     * @param x x value, usually the time
+     * @param y y value
+     */
+    public void add(final int index, final double x, final double y) {
+        series[index].add(x, y, limit);
+        scheduleRefresh();
+    }
+
+    /**
+     * Removes the points of every series. May be called from any thread.
+     */
+    public void clear() {
+        for (Series s : series) {
+            s.cleared = s.written;
+        }
+        scheduleRefresh();
+    }
+
+    /**
+     * Sets the width in x of the window shown, which ends at the last point
+     * of each series. Older points are kept, up to the capacity, but not
+     * drawn.
+     *
+     * @param window width of the window, or zero to show every point kept
+     */
+    public void setWindow(final double window) {
+        setWindow(window, 0);
+    }
+
+    /**
+     * Sets the width in x of the window shown, and the most points a series
+     * can have in it. Each series then keeps no more than that many points,
+     * rounded up to a power of two, instead of the full capacity.
+     *
+     * @param window width of the window, or zero to show every point kept
+     * @param points most points in the window, or zero if not known
+     */
+    public void setWindow(final double window, final int points) {
+        int newLimit = capacity;
+        if (window > 0 && points > 0 && points < capacity) {
+            long rounded = points == 1 ? 1
+                    : Long.highestOneBit(points - 1) << 1;
+            newLimit = (int) Math.min(rounded, capacity);
+        }
+        this.limit = newLimit;
+        this.window = window;
+        scheduleRefresh();
+    }
+
+    /**
+     * Sets the size, in pixels, of the area the dataset is drawn in.
+     *
+     * @param width number of columns to decimate to
+     * @param height number of rows scatter points are decimated to
+     */
+    public void setResolution(final int width, final int height) {
+        int w = Math.max(width, 1);
+        int h = Math.max(height, 1);
+        if (w != this.width || h != this.height) {
+            this.width = w;
+            this.height = h;
+            scheduleRefresh();
+        }
+    }
+
+    /**
+     * Schedules a refresh of the points drawn, unless one is already waiting.
+     */
+    private void scheduleRefresh() {
+        if (!refreshPending) {
+            refreshPending = true;
+            SwingUtilities.invokeLater(this::refresh);
+        }
+    }
+
+    /**
+     * Copies and decimates the points to draw from every series that has
+     * changed, and notifies the chart. Runs on the event thread.
+     */
+    private void refresh() {
+        refreshPending = false;
+        boolean changed = false;
+        for (Series s : series) {
+            changed |= refresh(s);
+        }
+        if (changed) {
+            fireDatasetChanged();
+        }
+    }
+
+    /**
+     * Refreshes the points drawn from one series.
+     *
+     * @param s the series
+     * @return whether they changed
+     */
+    private boolean refresh(final Series s) {
+        long end = s.written;
+        long cleared = s.cleared;
+        Buffer b = s.buffer;
+        double shownWindow = window;
+        int columns = width;
+        int lines = height;
+        if (end == s.shownEnd && cleared == s.shownCleared
+                && shownWindow == s.shownWindow && columns == s.shownWidth
+                && lines == s.shownHeight) {
+            return false;
+        }
+        s.shownEnd = end;
+        s.shownCleared = cleared;
+        s.shownWindow = shownWindow;
+        s.shownWidth = columns;
+        s.shownHeight = lines;
+
+        // Copy the visible points, newest first, into the end of the arrays
+        int size = b.x.length;
+        long start = Math.max(Math.max(cleared, b.origin), end - size);
+        int count = (int) (end - start);
+        if (copyX == null || copyX.length < count) {
+            copyX = new double[Math.max(count, INITIAL_SIZE)];
+            copyY = new double[copyX.length];
+        }
+        int from = count;
+        double cutoff = Double.NEGATIVE_INFINITY;
+        for (long i = end - 1; i >= start; i--) {
+            int slot = (int) (i % size);
+            double x = b.x[slot];
+            if (i == end - 1 && shownWindow > 0) {
+                cutoff = x - shownWindow;
+            }
+            if (x < cutoff) {
+                break;
+            }
+            from--;
+            copyX[from] = x;
+            copyY[from] = b.y[slot];
+        }
+
+        // Drop points the writer may have overwritten during the copy,
+        // including the slot of the point it may be writing now. The fence
+        // keeps the copy from being read after the sequence number.
+        FENCE.validate(FENCE.tryOptimisticRead());
+        long overwritten = s.written + 1 - size - start;
+        if (s.buffer == b && overwritten > 0) {
+            from = (int) Math.max(from, Math.min(overwritten, count));
+        }
+        if (scatter) {
+            decimateScatter(s, from, count, columns, lines);
+        } else {
+            decimateLines(s, from, count, columns);
+        }
+        return true;
+    }
+
+    /**
+     * Thins a run of copied points to the first, lowest, highest and last
+     * point of each column.
+     *
+     * @param s the series to store the result in
+     * @param from first copied point
+     * @param to end of the copied points
+     * @param columns number of columns
+     */
+    private void decimateLines(final Series s, final int from, final int to,
+            final int columns) {
+        s.ensureView(Math.min(to - from, 4 * columns + 4));
+        if (to - from <= 2 * columns) {
+            System.arraycopy(copyX, from, s.viewX, 0, to - from);
+            System.arraycopy(copyY, from, s.viewY, 0, to - from);
+            s.viewCount = to - from;
+            return;
+        }
+        double columnWidth = (copyX[to - 1] - copyX[from]) / columns;
+        int n = 0;
+        int first = from;
+        int min = from;
+        int max = from;
+        long column = column(copyX[from], columnWidth);
+        for (int i = from + 1; i <= to; i++) {
+            long c = i < to ? column(copyX[i], columnWidth) : column + 1;
+            if (c != column) {
+                int last = i - 1;
+                int lo = Math.min(min, max);
+                int hi = Math.max(min, max);
+                n = emit(s, n, first);
+                if (lo != first) {
+                    n = emit(s, n, lo);
+                }
+                if (hi != lo && hi != first) {
+                    n = emit(s, n, hi);
+                }
+                if (last != hi && last != first) {
+                    n = emit(s, n, last);
+                }
+                if (i == to) {
+                    break;
+                }
+                column = c;
+                first = i;
+                min = i;
+                max = i;
+            } else if (copyY[i] < copyY[min]) {
+                min = i;
+            } else if (copyY[i] > copyY[max]) {
+                max = i;
+            }
+        }
+        s.viewCount = n;
+    }
+
+    /**
+     * Thins a run of copied points to one per pixel.
+     *
+     * @param s the series to store the result in
+     * @param from first copied point
+     * @param to end of the copied points
+     * @param columns number of columns
+     * @param lines number of rows
+     */
+    private void decimateScatter(final Series s, final int from,
+            final int to, final int columns, final int lines) {
+        if (to - from <= columns) {
+            s.ensureView(to - from);
+            System.arraycopy(copyX, from, s.viewX, 0, to - from);
+            System.arraycopy(copyY, from, s.viewY, 0, to - from);
+            s.viewCount = to - from;
+            return;
+        }
+        double lowY = Double.POSITIVE_INFINITY;
+        double highY = Double.NEGATIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            lowY = Math.min(lowY, copyY[i]);
+            highY = Math.max(highY, copyY[i]);
+        }
+        double columnWidth = (copyX[to - 1] - copyX[from]) / columns;
+        double rowHeight = (highY - lowY) / lines;
+        if (rows == null) {
+            rows = new BitSet();
+        }
+        rows.clear();
+        s.ensureView(Math.min(to - from, (columns + 1) * (lines + 1)));
+        int n = 0;
+        long column = column(copyX[from], columnWidth);
+        for (int i = from; i < to; i++) {
+            long c = column(copyX[i], columnWidth);
+            if (c != column) {
+                column = c;
+                rows.clear();
+            }
+            int row = rowHeight > 0 ? (int) ((copyY[i] - lowY) / rowHeight)
+                    : 0;
+            if (!(row >= 0 && row <= lines)) {
+                n = emit(s, n, i);
+            } else if (!rows.get(row)) {
+                rows.set(row);
+                n = emit(s, n, i);
+            }
+        }
+        s.viewCount = n;
+    }
+
+    /**
+     * @param x an x value
+     * @param columnWidth width of a column
+     * @return the column the value falls in
+     */
+    private static long column(final double x, final double columnWidth) {
+        return columnWidth > 0 ? (long) Math.floor(x / columnWidth) : 0;
+    }
+
+    /**
+     * Appends a copied point to the points drawn from a series, growing the
+     * arrays if needed.
+     *
+     * @param s the series
+     * @param n number of points drawn so far
+     * @param i the copied point
+     * @return the new number of points drawn
+     */
+    private int emit(final Series s, final int n, final int i) {
+        s.ensureView(n + 1);
+        s.viewX[n] = copyX[i];
+        s.viewY[n] = copyY[i];
+        return n + 1;
+    }
+
+    @Override
+    public int getSeriesCount() {
+        return series.length;
+    }
+
+    @Override
+    public Comparable<?> getSeriesKey(final int index) {
+        return series[index].key;
+    }
+
+    @Override
+    public int getItemCount(final int index) {
+        Series[] current = series;
+        return index < current.length ? current[index].viewCount : 0;
+    }
+
+    @Override
+    public double getXValue(final int index, final int item) {
+        return series[index].viewX[item];
+    }
+
+    @Override
+    public double getYValue(final int index, final int item) {
+        return series[index].viewY[item];
+    }
+
+    @Override
+    public Number getX(final int index, final int item) {
+        return getXValue(index, item);
+    }
+
+    @Override
+    public Number getY(final int index, final int item) {
+        return getYValue(index, item);
+    }
+
+    /**
+     * The arrays of a series. They are replaced, never resized, so a reader
+     * holding on to one always sees a consistent pair.
+     */
+    private static final class Buffer {
+
+        /** X values, indexed by sequence number modulo the length. */
+        final double[] x;
+
+        /** Y values, indexed the same way. */
+        final double[] y;
+
+        /** Sequence number of the oldest point copied into the arrays. */
+        final long origin;
+
+        /**
+         * Construct a buffer.
+         *
+         * @param size length of the arrays
+         * @param origin sequence number of the oldest point it holds
+         */
+        Buffer(final int size, final long origin) {
+            x = new double[size];
+            y = new double[size];
+            this.origin = origin;
+        }
+    }
+
+    /**
+     * One series: a ring buffer written by one thread, and the decimated
+     * points drawn from it, which belong to the event thread.
+     */
+    private static final class Series {
+
+        /** Key shown in the legend. */
+        final Comparable<?> key;
+
+        /** The current arrays. */
+        volatile Buffer buffer;
+
+        /** Number of points ever added; the sequence number of the next. */
+        volatile long written;
+
+        /** Sequence number of the first point since the last clear. */
+        volatile long cleared;
+
+        /** X values drawn. */
+        transient double[] viewX;
+
+        /** Y values drawn. */
+        transient double[] viewY;
+
+        /** Number of points drawn. */
+        transient int viewCount;
+
+        /** State the points drawn were computed from. */
+        transient long shownEnd = -1, shownCleared;
+
+        /** Window the points drawn were computed for. */
+        transient double shownWindow;
+
+        /** Resolution the points drawn were computed for. */
+        transient int shownWidth, shownHeight;
+
+        /**
+         * Construct an empty series.
+         *
+         * @param key key shown in the legend
+         * @param size initial length of its arrays
+         */
+        Series(final Comparable<?> key, final int size) {
+            this.key = key;
+            buffer = new Buffer(size, 0);
+        }
+
+        /**
+         * Adds a point, growing the arrays until they reach the capacity and
+         * then overwriting the oldest point. If the capacity has dropped
+         * below the length of the arrays, they are first shrunk to it,
+         * keeping the newest points.
+         *
+         * @param x x value
+         * @param y y value
+         * @param capacity most points kept
+         */
+        void add(final double x, final double y, final int capacity) {
+            long n = written;
+            Buffer b = buffer;
+            int size = b.x.length;
+            long first = Math.max(Math.max(cleared, b.origin), n - size);
+            if ((n - first >= size && size < capacity) || size > capacity) {
+                int newSize = (int) Math.min((long) size * 2, capacity);
+                first = Math.max(first, n - newSize);
+                Buffer resized = new Buffer(newSize, first);
+                for (long i = first; i < n; i++) {
+                    resized.x[(int) (i % newSize)] = b.x[(int) (i % size)];
+                    resized.y[(int) (i % newSize)] = b.y[(int) (i % size)];
+                }
+                buffer = resized;
+                b = resized;
+                size = newSize;
+            }
+            int slot = (int) (n % size);
+            b.x[slot] = x;
+            b.y[slot] = y;
+            written = n + 1;
+        }
+
+        /**
+         * Makes sure the arrays of points drawn hold at least some number of
+         * points, keeping their contents.
+         *
+         * @param size number of points needed
+         */
+        void ensureView(final int size) {
+            if (viewX == null || viewX.length < size) {
+                int length = Math.max(size, viewX == null ? INITIAL_SIZE
+                        : viewX.length * 2);
+                viewX = viewX == null ? new double[length]
+                        : Arrays.copyOf(viewX, length);
+                viewY = viewY == null ? new double[length]
+                        : Arrays.copyOf(viewY, length);
+            }
+        }
+    }
+
+    /**
+     * Recreates the transient state after deserializing.
+     *
+     * @return the initialized object
+     */
+    private Object readResolve() {
+        for (Series s : series) {
+            s.shownEnd = -1;
+        }
+        if (series.length > 0) {
+            scheduleRefresh();
+        }
+        return this;
+    }
+
+}
@@ -25,7 +25,7 @@ import org.jfree.data.xy.XYSeriesCollection;
 import org.simbrain.plot.ChartModel;
 import org.simbrain.util.projection.DataPoint;
 import org.simbrain.util.projection.Dataset;
-import org.simbrain.util.projection.NTree;
+import org.simbrain.util.projection.ProjectSammon;
 import org.simbrain.util.projection.ProjectionMethod;
 import org.simbrain.util.projection.Projector;
 import org.simbrain.util.projection.ProjectorListener;
@@ -147,10 +147,15 @@ public class ProjectionModel extends ChartModel {
         xstream.omitField(Projector.class, "logger");
         xstream.omitField(Projector.class, "listeners");
         xstream.omitField(ProjectionMethod.class, "logger");
+        // Working arrays of the Sammon map in files written by older versions
+        for (String field : new String[] { "yArray", "xI", "xJ", "yI", "yJ",
+                "yM", "yN", "yNew", "dstar", "d", "dstarSum", "partialSum",
+                "currentCloseness", "e" }) {
+            xstream.omitField(ProjectSammon.class, field);
+        }
         xstream.omitField(Dataset.class, "ntree");
         xstream.omitField(Dataset.class, "distances");
         xstream.omitField(Dataset.class, "logger");
-        xstream.omitField(NTree.class, "logger");
         return xstream;
     }
 
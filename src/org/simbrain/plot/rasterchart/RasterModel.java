@@ -21,6 +21,7 @@ package org.simbrain.plot.rasterchart;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
 import org.simbrain.plot.ChartModel;
+import org.simbrain.plot.RingBufferDataset;
 
 import com.thoughtworks.xstream.XStream;
 
@@ -30,7 +31,13 @@ import com.thoughtworks.xstream.XStream;
 public class RasterModel extends ChartModel {
 
     /** Raster Data. */
-    private XYSeriesCollection dataset = new XYSeriesCollection();
+    private RingBufferDataset data = new RingBufferDataset(true);
+
+    /**
+     * Data in the format saved by earlier versions, moved into {@link #data}
+     * when such a file is opened.
+     */
+    private XYSeriesCollection dataset;
 
     /** Default number of data sources for plot initialization. */
     private static final int INITIAL_DATA_SOURCES = 1;
@@ -54,6 +61,7 @@ public class RasterModel extends ChartModel {
      * Raster series model constructor.
      */
     public RasterModel() {
+        updateWindow();
         defaultInit();
     }
 
@@ -63,6 +71,7 @@ public class RasterModel extends ChartModel {
      * @param numDataSources number of data sources to initialize
      */
     public RasterModel(int numDataSources) {
+        updateWindow();
         addDataSources(numDataSources);
     }
 
@@ -89,21 +98,18 @@ public class RasterModel extends ChartModel {
      * Clears the plot.
      */
     public void clearData() {
-        int seriesCount = dataset.getSeriesCount();
-        for (int i = 0; seriesCount > i; ++i) {
-            dataset.getSeries(i).clear();
-        }
+        data.clear();
     }
 
     /**
      * Removes a data source from the chart.
      */
     public void removeDataSource() {
-        Integer lastSeriesIndex = dataset.getSeriesCount() - 1;
+        Integer lastSeriesIndex = data.getSeriesCount() - 1;
 
         if (lastSeriesIndex >= 0) {
             this.fireDataSourceRemoved(lastSeriesIndex);
-            dataset.removeSeries(lastSeriesIndex);
+            data.removeSeries(lastSeriesIndex);
         }
     }
 
@@ -111,16 +117,16 @@ public class RasterModel extends ChartModel {
      * Adds a data source to the chart.
      */
     public void addDataSource() {
-        Integer currentSize = dataset.getSeriesCount();
-        dataset.addSeries(new XYSeries(currentSize + 1));
+        Integer currentSize = data.getSeriesCount();
+        data.addSeries();
         this.fireDataSourceAdded(currentSize);
     }
 
     /**
      * @return JFreeChart data set.
      */
-    public XYSeriesCollection getDataset() {
-        return dataset;
+    public RingBufferDataset getDataset() {
+        return data;
     }
 
     /**
@@ -141,6 +147,21 @@ public class RasterModel extends ChartModel {
      * @return Initialized object.
      */
     private Object readResolve() {
+        if (data == null) {
+            data = new RingBufferDataset(true);
+        }
+        if (dataset != null) {
+            for (int i = 0; i < dataset.getSeriesCount(); i++) {
+                XYSeries series = dataset.getSeries(i);
+                data.addSeries();
+                for (int j = 0; j < series.getItemCount(); j++) {
+                    data.add(i, series.getX(j).doubleValue(), series.getY(j)
+                            .doubleValue());
+                }
+            }
+            dataset = null;
+        }
+        updateWindow();
         return this;
     }
 
@@ -156,6 +177,7 @@ public class RasterModel extends ChartModel {
      */
     public void setFixedWidth(final boolean fixedWidth) {
         this.fixedWidth = fixedWidth;
+        updateWindow();
         fireSettingsChanged();
     }
 
@@ -171,6 +193,7 @@ public class RasterModel extends ChartModel {
      */
     public void setWindowSize(final int windowSize) {
         this.windowSize = windowSize;
+        updateWindow();
         fireSettingsChanged();
     }
 
@@ -228,12 +251,23 @@ public class RasterModel extends ChartModel {
      */
     public void addData(final int dataSourceIndex, final double time,
             final double value) {
-        getDataset().getSeries(dataSourceIndex).add(time, value);
+        data.add(dataSourceIndex, time, value);
+    }
+
+    /**
+     * Shows only the last window of data in fixed width mode. Older data is
+     * kept, up to the capacity of the buffers, but not drawn. A raster series
+     * gets one point per value in an update, so there is no bound on the
+     * points in a window to shrink the buffers to.
+     */
+    private void updateWindow() {
+        data.setWindow(fixedWidth ? windowSize : 0);
     }
 
     /**
-     * Update the model; currently used to remove unused data when in
-     * "fixed width" mode.
+     * Update the model. The data buffers bound their own size and leave out
+     * data outside the window in "fixed width" mode, so there is nothing to
+     * do.
      */
     public void update() {
     }
@@ -22,6 +22,8 @@ import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Shape;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Rectangle2D;
 
@@ -111,6 +113,15 @@ public class RasterPlotPanel extends JPanel {
         chartPanel.setChart(chart);
         chart.setBackgroundPaint(null);
 
+        // Decimate the data to about one point per pixel
+        chartPanel.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                model.getDataset().setResolution(chartPanel.getWidth(),
+                        chartPanel.getHeight());
+            }
+        });
+
         // Create chart settings listener
         model.addChartSettingsListener(new ChartSettingsListener() {
             public void chartSettingsUpdated() {
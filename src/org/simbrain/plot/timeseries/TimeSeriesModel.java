@@ -21,6 +21,7 @@ package org.simbrain.plot.timeseries;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
 import org.simbrain.plot.ChartModel;
+import org.simbrain.plot.RingBufferDataset;
 
 import com.thoughtworks.xstream.XStream;
 
@@ -30,7 +31,13 @@ import com.thoughtworks.xstream.XStream;
 public class TimeSeriesModel extends ChartModel {
 
     /** Time Series Data. */
-    private XYSeriesCollection dataset = new XYSeriesCollection();
+    private RingBufferDataset data = new RingBufferDataset(false);
+
+    /**
+     * Data in the format saved by earlier versions, moved into {@link #data}
+     * when such a file is opened.
+     */
+    private XYSeriesCollection dataset;
 
     /** Default number of data sources for plot initialization. */
     private static final int INITIAL_DATA_SOURCES = 5;
@@ -54,6 +61,7 @@ public class TimeSeriesModel extends ChartModel {
      * Time series model constructor.
      */
     public TimeSeriesModel() {
+        updateWindow();
         defaultInit();
     }
 
@@ -63,6 +71,7 @@ public class TimeSeriesModel extends ChartModel {
      * @param numDataSources
      */
     public TimeSeriesModel(int numDataSources) {
+        updateWindow();
         addDataSources(numDataSources);
     }
 
@@ -89,21 +98,18 @@ public class TimeSeriesModel extends ChartModel {
      * Clears the plot.
      */
     public void clearData() {
-        int seriesCount = dataset.getSeriesCount();
-        for (int i = 0; seriesCount > i; ++i) {
-            dataset.getSeries(i).clear();
-        }
+        data.clear();
     }
 
     /**
      * Removes a data source from the chart.
      */
     public void removeDataSource() {
-        Integer lastSeriesIndex = dataset.getSeriesCount() - 1;
+        Integer lastSeriesIndex = data.getSeriesCount() - 1;
 
         if (lastSeriesIndex >= 0) {
             this.fireDataSourceRemoved(lastSeriesIndex);
-            dataset.removeSeries(lastSeriesIndex);
+            data.removeSeries(lastSeriesIndex);
         }
     }
 
@@ -111,16 +117,16 @@ public class TimeSeriesModel extends ChartModel {
      * Adds a data source to the chart.
      */
     public void addDataSource() {
-        Integer currentSize = dataset.getSeriesCount();
-        dataset.addSeries(new XYSeries(currentSize + 1));
+        Integer currentSize = data.getSeriesCount();
+        data.addSeries();
         this.fireDataSourceAdded(currentSize);
     }
 
     /**
      * @return JFreeChart data set.
      */
-    public XYSeriesCollection getDataset() {
-        return dataset;
+    public RingBufferDataset getDataset() {
+        return data;
     }
 
     /**
@@ -141,6 +147,21 @@ public class TimeSeriesModel extends ChartModel {
      * @return Initialized object.
      */
     private Object readResolve() {
+        if (data == null) {
+            data = new RingBufferDataset(false);
+        }
+        if (dataset != null) {
+            for (int i = 0; i < dataset.getSeriesCount(); i++) {
+                XYSeries series = dataset.getSeries(i);
+                data.addSeries();
+                for (int j = 0; j < series.getItemCount(); j++) {
+                    data.add(i, series.getX(j).doubleValue(), series.getY(j)
+                            .doubleValue());
+                }
+            }
+            dataset = null;
+        }
+        updateWindow();
         return this;
     }
 
@@ -156,6 +177,7 @@ public class TimeSeriesModel extends ChartModel {
      */
     public void setFixedWidth(final boolean fixedWidth) {
         this.fixedWidth = fixedWidth;
+        updateWindow();
         fireSettingsChanged();
     }
 
@@ -171,6 +193,7 @@ public class TimeSeriesModel extends ChartModel {
      */
     public void setWindowSize(final int windowSize) {
         this.windowSize = windowSize;
+        updateWindow();
         fireSettingsChanged();
     }
 
@@ -228,37 +251,28 @@ public class TimeSeriesModel extends ChartModel {
      */
     public void addData(final int dataSourceIndex, final double time,
             final double value) {
-        getDataset().getSeries(dataSourceIndex).add(time, value);
+        data.add(dataSourceIndex, time, value);
     }
 
     /**
-     * Update the model; currently used to remove unused data when in
-     * "fixed width" mode.
+     * Shows only the last window of data in fixed width mode. Time advances
+     * by one per update and each update adds one point per series, so the
+     * buffers need to keep no more than the window's worth of points.
      */
-    public void update() {
-
-        // Trim appropriately if fixed width
-
-        // TODO: This does not work well in trainer.gui. Concurrency issues. So
-        // disabling for now.
-        // if (isFixedWidth()) {
-        // System.out.println("Dataset Size: " +
-        // dataset.getSeries(0).getItemCount());
-        // for (Iterator iterator = getDataset().getSeries().iterator();
-        // iterator
-        // .hasNext();) {
-        // XYSeries series = (XYSeries) iterator.next();
-        // if (series.getItemCount() > getWindowSize()) {
-        // int diff = Math
-        // .abs(series.getItemCount() - getWindowSize());
-        // System.out.println("diff:" + diff);
-        // for (int i = 0; i < diff; i++) {
-        // series.remove(i);
-        // }
-        // }
-        // }
-        // }
+    private void updateWindow() {
+        if (fixedWidth) {
+            data.setWindow(windowSize, windowSize + 1);
+        } else {
+            data.setWindow(0);
+        }
+    }
 
+    /**
+     * Update the model. The data buffers bound their own size and leave out
+     * data outside the window in "fixed width" mode, so there is nothing to
+     * do.
+     */
+    public void update() {
     }
 
 }
@@ -20,6 +20,8 @@ package org.simbrain.plot.timeseries;
 
 import java.awt.BorderLayout;
 import java.awt.Dimension;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 
 import javax.swing.JButton;
 import javax.swing.JDialog;
@@ -95,6 +97,15 @@ public class TimeSeriesPlotPanel extends JPanel {
         chartPanel.setChart(chart);
         chart.setBackgroundPaint(null);
 
+        // Decimate the data to about one point per pixel
+        chartPanel.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                model.getDataset().setResolution(chartPanel.getWidth(),
+                        chartPanel.getHeight());
+            }
+        });
+
         // Create chart settings listener
         model.addChartSettingsListener(new ChartSettingsListener() {
             public void chartSettingsUpdated() {
@@ -0,0 +1,83 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Reads how many bytes of heap the current thread has allocated, so that code
+ * meant to run without allocating (e.g. a steady state workspace update) can
+ * be checked. Relies on the HotSpot extension of {@link ThreadMXBean}; on
+ * other JVMs, or if allocation measurement is turned off, nothing is measured
+ * and {@link #isSupported()} returns false.
+ */
+public final class AllocationMeter {
+
+    /** The HotSpot thread bean, or null if not available. */
+    private static final com.sun.management.ThreadMXBean THREADS = init();
+
+    /**
+     * Not instantiable.
+     */
+    private AllocationMeter() {
+    }
+
+    /**
+     * @return the thread bean if it can measure allocation, or null
+     */
+    private static com.sun.management.ThreadMXBean init() {
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean threads =
+                        (com.sun.management.ThreadMXBean) bean;
+                if (threads.isThreadAllocatedMemorySupported()
+                        && threads.isThreadAllocatedMemoryEnabled()) {
+                    return threads;
+                }
+            }
+        } catch (LinkageError | RuntimeException e) {
+            // Not a HotSpot JVM
+        }
+        return null;
+    }
+
+    /**
+     * @return true if allocation can be measured on this JVM
+     */
+    public static boolean isSupported() {
+        return THREADS != null;
+    }
+
+    /**
+     * Returns the total number of bytes allocated by the current thread so
+     * far. Only differences between two calls on the same thread are
+     * meaningful.
+     *
+     * @return bytes allocated by the current thread, or -1 if not supported
+     */
+    public static long currentThreadAllocatedBytes() {
+        if (THREADS == null) {
+            return -1;
+        }
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+}
@@ -283,48 +283,70 @@ public class SmellSource {
      * @return proximal stimulus to creature caused by this object
      */
     public double[] getStimulus(final double distance) {
-        double[] ret = new double[getStimulusDimension()];
         if (returnVector == null) {
             returnVector = stimulusVector;
         }
-        if (distance < stimulusDispersion) {
-            if (decayFunction == DecayFunction.STEP) {
-                if (distance >= peak) {
-                    ret = (returnVector.clone());
-                }
-            } else if (decayFunction == DecayFunction.LINEAR) {
-                if (distance < peak) {
-                    double scalingFactor = (stimulusDispersion - (2 * peak) + distance)
-                            / (stimulusDispersion - peak);
-
-                    if (scalingFactor < 0) {
-                        scalingFactor = 0;
-                    }
+        double scalingFactor = getScalingFactor(distance);
+        if (scalingFactor == 0) {
+            return new double[getStimulusDimension()];
+        }
+        return SimbrainMath.multVector(returnVector, scalingFactor);
+    }
 
-                    ret = SimbrainMath.multVector(returnVector, scalingFactor);
-                } else {
-                    double scalingFactor = (stimulusDispersion - distance)
-                            / (stimulusDispersion - peak);
-                    ret = SimbrainMath.multVector(returnVector, scalingFactor);
-                }
-            } else if (decayFunction == DecayFunction.GAUSSIAN) {
-                double temp = distance;
-                temp -= peak;
-                double sigma = .5 * (stimulusDispersion - peak);
-                double scalingFactor = Math.exp(-(temp * temp)
-                        / (2 * sigma * sigma));
-                ret = SimbrainMath.multVector(returnVector, scalingFactor);
-            } else if (decayFunction == DecayFunction.QUADRATIC) {
-                double scalingFactor = 1 - Math.pow((distance - peak)
-                        / (stimulusDispersion - peak), 2);
-                if (scalingFactor < 0) {
-                    scalingFactor = 0;
-                }
-                ret = SimbrainMath.multVector(returnVector, scalingFactor);
+    /**
+     * Add the proximal stimulus at a distance (see
+     * {@link #getStimulus(double)}) to a vector, without allocating a new
+     * one. Used by sensors that sum the stimuli of many sources every update.
+     *
+     * @param distance distance of creature from object
+     * @param sum the vector to add to, at least as long as the stimulus
+     */
+    public void addStimulus(final double distance, final double[] sum) {
+        if (returnVector == null) {
+            returnVector = stimulusVector;
+        }
+        double scalingFactor = getScalingFactor(distance);
+        if (scalingFactor != 0) {
+            double[] stimulus = returnVector;
+            for (int i = 0; i < stimulus.length; i++) {
+                sum[i] += stimulus[i] * scalingFactor;
             }
         }
+    }
 
-        return ret;
+    /**
+     * Returns how much of the stimulus reaches a creature at a given distance,
+     * according to the decay function.
+     *
+     * @param distance distance of creature from object
+     * @return the factor the stimulus vector is scaled by, 0 if out of range
+     */
+    private double getScalingFactor(final double distance) {
+        if (distance >= stimulusDispersion) {
+            return 0;
+        }
+        if (decayFunction == DecayFunction.STEP) {
+            return distance >= peak ? 1 : 0;
+        } else if (decayFunction == DecayFunction.LINEAR) {
+            if (distance < peak) {
+                double scalingFactor = (stimulusDispersion - (2 * peak) + distance)
+                        / (stimulusDispersion - peak);
+                return scalingFactor < 0 ? 0 : scalingFactor;
+            } else {
+                return (stimulusDispersion - distance)
+                        / (stimulusDispersion - peak);
+            }
+        } else if (decayFunction == DecayFunction.GAUSSIAN) {
+            double temp = distance;
+            temp -= peak;
+            double sigma = .5 * (stimulusDispersion - peak);
+            return Math.exp(-(temp * temp) / (2 * sigma * sigma));
+        } else if (decayFunction == DecayFunction.QUADRATIC) {
+            double scalingFactor = 1 - Math.pow((distance - peak)
+                    / (stimulusDispersion - peak), 2);
+            return scalingFactor < 0 ? 0 : scalingFactor;
+        }
+        return 0;
     }
 
     /**
@@ -0,0 +1,265 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.util.math;
+
+import java.util.stream.IntStream;
+
+/**
+ * Least squares (optionally ridge) regression from states to targets that
+ * is fed one row, or one block of rows, at a time. Only the correlation
+ * matrices <code>S'S</code> and <code>S'D</code> are kept, so memory does
+ * not depend on the number of rows, and the weights are found by solving
+ * <code>(S'S + ridge I) W = S'D</code> with a Cholesky decomposition.
+ * <p>
+ * Blocks of rows can be accumulated in parallel, either by passing large
+ * blocks to {@link #addRows(double[][], double[][], int, int)} or by filling
+ * several instances from different parts of the data and combining them
+ * with {@link #add(IncrementalRidgeRegression)}.
+ */
+public class IncrementalRidgeRegression {
+
+    /**
+     * Number of multiply-adds in a block update below which it is not split
+     * across threads.
+     */
+    private static final long PARALLEL_THRESHOLD = 1 << 20;
+
+    /** Number of state columns. */
+    private final int numStates;
+
+    /** Number of target columns. */
+    private final int numTargets;
+
+    /** Upper triangle of S'S, row by row. */
+    private final double[][] stateCorrelation;
+
+    /** S'D. */
+    private final double[][] crossCorrelation;
+
+    /** Number of rows accumulated. */
+    private long numRows;
+
+    /**
+     * Construct an empty regression.
+     *
+     * @param numStates number of state (input) columns
+     * @param numTargets number of target (output) columns
+     */
+    public IncrementalRidgeRegression(final int numStates,
+            final int numTargets) {
+        this.numStates = numStates;
+        this.numTargets = numTargets;
+        stateCorrelation = new double[numStates][numStates];
+        crossCorrelation = new double[numStates][numTargets];
+    }
+
+    /**
+     * Add one row.
+     *
+     * @param state the state row
+     * @param target the target row
+     */
+    public void addRow(final double[] state, final double[] target) {
+        for (int i = 0; i < numStates; i++) {
+            double si = state[i];
+            if (si == 0) {
+                continue;
+            }
+            double[] row = stateCorrelation[i];
+            for (int j = i; j < numStates; j++) {
+                row[j] += si * state[j];
+            }
+            double[] cross = crossCorrelation[i];
+            for (int k = 0; k < numTargets; k++) {
+                cross[k] += si * target[k];
+            }
+        }
+        numRows++;
+    }
+
+    /**
+     * Add a block of rows. Large blocks are split across threads by state
+     * column.
+     *
+     * @param states state rows
+     * @param targets target rows
+     * @param from first row to add
+     * @param to end row, exclusive
+     */
+    public void addRows(final double[][] states, final double[][] targets,
+            final int from, final int to) {
+        if (to <= from) {
+            return;
+        }
+        long work = (long) (to - from) * numStates
+                * (numStates / 2 + numTargets);
+        if (work < PARALLEL_THRESHOLD) {
+            addColumns(states, targets, from, to, 0, numStates);
+        } else {
+            // Interleave columns so threads get similar shares of the
+            // triangle
+            int chunks = Math.min(numStates,
+                    Runtime.getRuntime().availableProcessors() * 4);
+            IntStream.range(0, chunks).parallel().forEach(c -> {
+                for (int i = c; i < numStates; i += chunks) {
+                    addColumns(states, targets, from, to, i, i + 1);
+                }
+            });
+        }
+        numRows += to - from;
+    }
+
+    /**
+     * Accumulate the correlations of a range of state columns over a block
+     * of rows.
+     *
+     * @param states state rows
+     * @param targets target rows
+     * @param from first row
+     * @param to end row, exclusive
+     * @param i0 first state column
+     * @param i1 end state column, exclusive
+     */
+    private void addColumns(final double[][] states,
+            final double[][] targets, final int from, final int to,
+            final int i0, final int i1) {
+        for (int i = i0; i < i1; i++) {
+            double[] row = stateCorrelation[i];
+            double[] cross = crossCorrelation[i];
+            for (int r = from; r < to; r++) {
+                double[] state = states[r];
+                double si = state[i];
+                if (si == 0) {
+                    continue;
+                }
+                for (int j = i; j < numStates; j++) {
+                    row[j] += si * state[j];
+                }
+                double[] target = targets[r];
+                for (int k = 0; k < numTargets; k++) {
+                    cross[k] += si * target[k];
+                }
+            }
+        }
+    }
+
+    /**
+     * Add the rows accumulated by another regression of the same shape.
+     *
+     * @param other the other regression
+     */
+    public void add(final IncrementalRidgeRegression other) {
+        if (other.numStates != numStates || other.numTargets != numTargets) {
+            throw new IllegalArgumentException("Regressions differ in shape");
+        }
+        for (int i = 0; i < numStates; i++) {
+            for (int j = i; j < numStates; j++) {
+                stateCorrelation[i][j] += other.stateCorrelation[i][j];
+            }
+            for (int k = 0; k < numTargets; k++) {
+                crossCorrelation[i][k] += other.crossCorrelation[i][k];
+            }
+        }
+        numRows += other.numRows;
+    }
+
+    /**
+     * Solve for the weights.
+     *
+     * @param ridge amount added to the diagonal of <code>S'S</code>; 0 for
+     *            ordinary least squares
+     * @return a numStates x numTargets weight matrix, so that
+     *         <code>target = state W</code>
+     * @throws IllegalStateException if <code>S'S + ridge I</code> is not
+     *             positive definite, i.e. the states are rank deficient and
+     *             the ridge is too small
+     */
+    public double[][] solve(final double ridge) {
+        int n = numStates;
+        // Lower triangular Cholesky factor of S'S + ridge I
+        double[][] l = new double[n][];
+        for (int i = 0; i < n; i++) {
+            l[i] = new double[i + 1];
+            for (int j = 0; j <= i; j++) {
+                double sum = stateCorrelation[j][i];
+                if (i == j) {
+                    sum += ridge;
+                }
+                double[] li = l[i];
+                double[] lj = l[j];
+                for (int k = 0; k < j; k++) {
+                    sum -= li[k] * lj[k];
+                }
+                if (i == j) {
+                    if (!(sum > 0)) {
+                        throw new IllegalStateException("State correlation "
+                                + "matrix is not positive definite");
+                    }
+                    li[i] = Math.sqrt(sum);
+                } else {
+                    li[j] = sum / lj[j];
+                }
+            }
+        }
+        double[][] weights = new double[n][numTargets];
+        double[] y = new double[n];
+        for (int k = 0; k < numTargets; k++) {
+            // Forward substitution: L y = S'd
+            for (int i = 0; i < n; i++) {
+                double sum = crossCorrelation[i][k];
+                double[] li = l[i];
+                for (int j = 0; j < i; j++) {
+                    sum -= li[j] * y[j];
+                }
+                y[i] = sum / li[i];
+            }
+            // Back substitution: L' w = y
+            for (int i = n - 1; i >= 0; i--) {
+                double sum = y[i];
+                for (int j = i + 1; j < n; j++) {
+                    sum -= l[j][i] * weights[j][k];
+                }
+                weights[i][k] = sum / l[i][i];
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * @return the number of rows accumulated so far
+     */
+    public long getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * @return the number of state columns
+     */
+    public int getNumStates() {
+        return numStates;
+    }
+
+    /**
+     * @return the number of target columns
+     */
+    public int getNumTargets() {
+        return numTargets;
+    }
+
+}
@@ -122,11 +122,17 @@ public class Dataset {
     }
 
     /**
-     * Makes sure there is enough space in the distances array
+     * Makes sure there is enough space in the distances array. Called lazily
+     * by the methods that use cached distances, so that datasets whose
+     * interpoint distances are never asked for do not pay for a quadratic
+     * array.
      */
     private void ensureDistances() {
         if (getDistanceEnd() > distances.length) {
             int newLength = distances.length * 4;
+            while (getDistanceEnd() > newLength) {
+                newLength *= 4;
+            }
             double[] newDistances = new double[newLength];
             System.arraycopy(distances, 0, newDistances, 0, distances.length);
             Arrays.fill(newDistances, distances.length, newLength, -1);
@@ -145,7 +151,6 @@ public class Dataset {
         if (existingPoint != null) {
             return existingPoint;
         }
-        ensureDistances();
         lastAddedPoint = point;
         return null;
     }
@@ -192,7 +197,6 @@ public class Dataset {
      */
     private void _setPoint(int index, DataPoint point) {
         ntree.set(index, point);
-        ensureDistances();
     }
 
     /**
@@ -280,6 +284,7 @@ public class Dataset {
      * @param point the point to calculate distances for
      */
     private void calculateDistances(int point) {
+        ensureDistances();
         int start = getDistanceIndex(point);
 
         for (int i = 0; i < point; i++) {
@@ -318,6 +323,7 @@ public class Dataset {
             }
             getPoint(i).setData(data);
         }
+        ntree.rebuild();
 
         Arrays.fill(distances, -1);
 
@@ -427,6 +433,7 @@ public class Dataset {
                 continue;
             }
         }
+        ntree.rebuild();
     }
 
     /**
@@ -510,11 +517,12 @@ public class Dataset {
      *
      * @param point the point to check
      *
-     * @return the index of the point closest to this one in the dataset
+     * @return the index of the point closest to this one in the dataset, or
+     *         -1 if the dataset is empty
      */
     public int getClosestIndex(final DataPoint point) {
-        DataPoint closest = ntree.getClosestPoint(point);
-        return ntree.getIndex(closest);
+        int[] closest = ntree.getClosestIndices(1, point);
+        return closest.length == 0 ? -1 : closest[0];
     }
 
     /**
@@ -530,13 +538,7 @@ public class Dataset {
             return null;
         }
 
-        int[] nearest = new int[k];
-        List<DataPoint> neighbors = ntree.getClosestPoints(k, point);
-        for (int i = 0; i < k; i++) {
-            nearest[i] = ntree.getIndex(neighbors.get(i));
-        }
-
-        return nearest;
+        return ntree.getClosestIndices(k, point);
     }
 
     /**
@@ -564,6 +566,7 @@ public class Dataset {
             return 0;
         }
 
+        ensureDistances();
         if (index1 == index2) {
             return 0;
         } else if (index1 < index2) {
@@ -687,13 +690,30 @@ public class Dataset {
      *         dimension
      */
     public Matrix getCovarianceMatrix() {
+        int numPoints = getNumPoints();
+        double[] mean = new double[dimensions];
+        for (int d = 0; d < dimensions; d++) {
+            mean[d] = getMean(d);
+        }
+        // One pass over the points, accumulating the upper triangle
+        double[][] sums = new double[dimensions][dimensions];
+        double[] delta = new double[dimensions];
+        for (int index = 0; index < numPoints; index++) {
+            double[] point = getPoint(index).getVector();
+            for (int d = 0; d < dimensions; d++) {
+                delta[d] = point[d] - mean[d];
+            }
+            for (int i = 0; i < dimensions; i++) {
+                for (int j = i; j < dimensions; j++) {
+                    sums[i][j] += delta[i] * delta[j];
+                }
+            }
+        }
         Matrix m = new Matrix(dimensions, dimensions);
         for (int i = 0; i < dimensions; i++) {
             for (int j = i; j < dimensions; j++) {
-                m.set(i, j, getCovariance(i, j));
-                if (i != j) {
-                    m.set(j, i, m.get(i, j)); // This is a symmetric matrix
-                }
+                m.set(i, j, sums[i][j] / numPoints);
+                m.set(j, i, m.get(i, j)); // This is a symmetric matrix
             }
         }
 
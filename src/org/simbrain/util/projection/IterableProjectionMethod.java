@@ -36,8 +36,9 @@ public abstract class IterableProjectionMethod extends ProjectionMethod {
     private double error;
 
     /**
-     * Set to true when the iterative algorithm needs to be re-initialized (e.g
-     * after a new datapoint is added to the upstairs dataset.
+     * Set to true when the iterative algorithm needs to be re-initialized.
+     * Points added to the upstairs dataset are instead passed to
+     * {@link #project()} as they arrive.
      */
     private boolean needsReInit;
 
@@ -20,59 +20,61 @@ package org.simbrain.util.projection;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.apache.log4j.Logger;
 
 /**
- * An n-dimensional generalization of a simple QuadTree structure. This is a
- * binary tree that splits elements based on successive dimensions, repeating as
- * necessary. There are two types of nodes in the structure, branches and
- * leaves. The leaf nodes are a n-dimensional 'space' that contains a number of
- * elements. When an element is added that increases the number of points in
- * that leaf beyond the threshold specified by MAX, the leaf is split into two
- * new leaves attached to a new branch that replaces the old leaf. In splitting
- * a leaf, a mid-point is determined which places approximately half of the
- * points from the old leaf elements in each new leaf.
+ * An n-dimensional k-d tree over a list of data points. Branches split their
+ * points at the median of the dimension along which the points are most
+ * spread out, and leaves hold up to {@link #MAX} points (more only if they
+ * are all identical).
  *
  * <p>
- * In searching for an element, the mid-point of each branch is used to
- * determine the path through the tree. When the point to be searched is closer
- * than the given tolerance to the midpoint, the other branch is also followed
- * for correctness.
+ * The tree is kept balanced as points are added: a full leaf is split at its
+ * median, and when a point lands deeper than a balanced tree would put it,
+ * the highest subtree above it with one side holding more than
+ * {@link #BALANCE} of its points is rebuilt, as in a scapegoat tree. Adding
+ * many points at once, through {@link #addAll(Collection)} or the bulk
+ * loading constructor, builds a balanced tree directly.
  *
  * <p>
- * A couple of other standard collections are used to provide efficient
- * index-based access and for reverse lookups of leafs.
+ * Nearest neighbor searches keep the best candidates found so far in a
+ * bounded max-heap and skip any subtree that can not hold a closer point.
+ * Each stored point is reported at most once, and points at the same
+ * distance are ordered by index.
+ *
+ * <p>
+ * Points are indexed by the coordinates they had when they were added. If
+ * the vector of a stored point is changed, {@link #rebuild()} must be called
+ * before searching again.
  *
  * @author James Matthew Watson - July 2, 2007
  */
 public class NTree implements Iterable<DataPoint> {
 
-    /** The number of elements to allow in a leaf before splitting */
-    static final int MAX = 50; /*
-                                * determined ad hoc testing and hand-waving
-                                * optimization theories
-                                */
+    /** The number of points to allow in a leaf before splitting. */
+    static final int MAX = 16;
+
+    /**
+     * The largest fraction of a branch's points allowed on one side before
+     * the branch is rebuilt.
+     */
+    static final double BALANCE = 0.75;
 
     /** The static logger for this class */
     private static final Logger LOGGER = Logger.getLogger(NTree.class);
 
-    /** An instance specific logger */
-    private Logger logger = LOGGER;
-
     /** An enumeration for quick switching on the node type */
     private enum Type {
         branch, leaf
     };
 
     /** The root node, initialized to a leaf */
-    private Node root = new Leaf();
+    private Node root;
 
     /** The number of dimensions this structure supports */
     public final int dimensions;
@@ -80,8 +82,8 @@ public class NTree implements Iterable<DataPoint> {
     /** Indexed list of all elements */
     private List<DataPoint> list = new ArrayList<DataPoint>();
 
-    /** Map of all elements mapped to their leafs */
-    private Map<DataPoint, Leaf> all = new LinkedHashMap<DataPoint, Leaf>();
+    /** The leaf holding each element, by index. */
+    private List<Leaf> leaves = new ArrayList<Leaf>();
 
     /**
      * Constructs an NTree with the given number of dimensions.
@@ -91,7 +93,18 @@ public class NTree implements Iterable<DataPoint> {
     public NTree(int dimensions) {
         LOGGER.debug("Creating an NTree with " + dimensions + " dimensions.");
         this.dimensions = dimensions;
-        logger = Logger.getLogger(logger.getName() + '.' + dimensions);
+        root = new Leaf(dimensions);
+    }
+
+    /**
+     * Constructs a balanced NTree holding the given points, in order.
+     *
+     * @param dimensions the number of dimensions
+     * @param points the points to add
+     */
+    public NTree(int dimensions, Collection<? extends DataPoint> points) {
+        this(dimensions);
+        addAll(points);
     }
 
     /**
@@ -100,196 +113,280 @@ public class NTree implements Iterable<DataPoint> {
      * @return the number of points in the tree
      */
     public int size() {
-        return all.size();
+        return list.size();
     }
 
     /**
      * Adds a point to the set.
      *
      * @param point the point to add
-     * @return
+     * @return null; duplicates are added like any other point
      */
     public DataPoint add(DataPoint point) {
-        //System.out.println(point.getDimension());
-        if (logger.isDebugEnabled()) {
-            logger.debug("adding point " + point);
-        }
+        list.add(point);
+        leaves.add(null);
+        insert(list.size() - 1);
+        return null;
+    }
+
+    /**
+     * Adds points to the set and rebuilds the tree, which is faster than
+     * adding them one at a time.
+     *
+     * @param points the points to add
+     */
+    public void addAll(Collection<? extends DataPoint> points) {
+        list.addAll(points);
+        rebuild();
+    }
+
+    /**
+     * adds all the elements from the given tree to this tree
+     *
+     * @param other the other tree
+     */
+    public void addAll(NTree other) {
+        addAll(other.list);
+    }
 
-        /* Keeps track of the most recent parent branch, if any */
-        Branch parent = null;
+    /**
+     * Rebuilds the tree from the current coordinates of its points. Needed
+     * after the vectors of stored points are changed in place.
+     */
+    public void rebuild() {
+        int[] indices = new int[list.size()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = i;
+        }
+        leaves = new ArrayList<Leaf>(Collections.nCopies(list.size(),
+                (Leaf) null));
+        root = build(indices, 0, indices.length);
+        root.parent = null;
+    }
 
-        /* The current node in the search, initialized to the root */
+    /**
+     * Routes the point at an index to a leaf, splitting the leaf if it
+     * overflows and rebuilding the highest unbalanced subtree on the way.
+     *
+     * @param index the index of the point
+     */
+    private void insert(int index) {
+        double[] x = list.get(index).getVector();
         Node current = root;
-        /*
-         * Keeps track of whether the current node is on the left or right of
-         * it's parent.
-         */
-        boolean onLeft = true;
+        int depth = 0;
+        while (current.type == Type.branch) {
+            Branch branch = (Branch) current;
+            branch.size++;
+            current = x[branch.splitDimension] < branch.midPoint
+                    ? branch.left : branch.right;
+            depth++;
+        }
+        Leaf leaf = (Leaf) current;
+        leaf.add(index, x);
+        leaves.set(index, leaf);
+        if (leaf.size > leaf.limit) {
+            rebuild(leaf);
+            depth++;
+        }
 
         /*
-         * Iterates as long as the current node is a branch setting current to
-         * left or right based on the midpoint of the branches split dimension.
+         * If the point ended up deeper than a balanced tree would put it,
+         * rebuild the highest unbalanced branch above it.
          */
-        while (current.type == Type.branch) {
-            /* Cast current to Branch and set the parent */
-            Branch branch = (Branch) current;
-            parent = branch;
-
-            if (point.get(branch.splitDimension) < branch.midPoint) {
-                if (logger.isDebugEnabled())
-                    logger.debug("at branch : " + branch + " - going left");
-                /* To the left */
-                current = branch.left;
-                onLeft = true;
-            } else {
-                if (logger.isDebugEnabled())
-                    logger.debug("at branch : " + branch + " - going right");
-                /* To the right */
-                current = branch.right;
-                onLeft = false;
+        if (depth > Math.log((double) list.size() / MAX + 1)
+                / -Math.log(BALANCE) + 1) {
+            Branch scapegoat = null;
+            for (Branch b = leaf.parent; b != null; b = b.parent) {
+                if (Math.max(b.left.size(), b.right.size())
+                        > BALANCE * b.size) {
+                    scapegoat = b;
+                }
+            }
+            if (scapegoat != null) {
+                rebuild(scapegoat);
             }
         }
+    }
 
-        /* Cast the current node to a leaf */
-        Leaf leaf = (Leaf) current;
+    /**
+     * Removes the point at an index from its leaf.
+     *
+     * @param index the index of the point
+     */
+    private void remove(int index) {
+        Leaf leaf = leaves.get(index);
+        leaf.remove(index);
+        leaves.set(index, null);
+        for (Branch b = leaf.parent; b != null; b = b.parent) {
+            b.size--;
+        }
+    }
 
-        if (logger.isDebugEnabled())
-            logger.debug("adding point to leaf : " + leaf);
+    /**
+     * Replaces a subtree with a balanced tree over the same points.
+     *
+     * @param node the root of the subtree
+     */
+    private void rebuild(Node node) {
+        int[] indices = new int[node.size()];
+        collect(node, indices, 0);
+        Node rebuilt = build(indices, 0, indices.length);
+        Branch parent = node.parent;
+        rebuilt.parent = parent;
+        if (parent == null) {
+            root = rebuilt;
+        } else if (parent.left == node) {
+            parent.left = rebuilt;
+        } else {
+            parent.right = rebuilt;
+        }
+    }
 
-        /* Add the point to the leaf and the list and map */
-        leaf.points.add(point);
-        list.add(point);
-        all.put(point, leaf);
-
-        /* check the number of points in the leaf */
-        int size = leaf.points.size();
-
-        if (logger.isDebugEnabled())
-            logger.debug("leaf size : " + size);
-
-        if (size > MAX) {
-            /*
-             * the leaf has more elements than the threshold. The leaf will be
-             * split
-             */
-            int splitOn = parent == null ? 0 : (parent.splitDimension + 1)
-                    % dimensions;
-            if (logger.isDebugEnabled())
-                logger.debug("splitting leaf on dimension: " + splitOn);
-
-            /* Get the middle point index */
-            int middle = size / 2;
-            if (logger.isTraceEnabled())
-                logger.trace("middle: " + middle);
-
-            /* Sort the points based on the split dimension */
-            Collections.sort(leaf.points, new PointComparator(splitOn));
-
-            /*
-             * Take the right most point on the left the left most point on the
-             * right
-             */
-            DataPoint leftPoint = leaf.points.get(middle);
-            if (logger.isTraceEnabled())
-                logger.trace("leftPoint: " + leftPoint);
-
-            DataPoint rightPoint = leaf.points.get(middle + 1);
-            if (logger.isTraceEnabled())
-                logger.trace("rightPoint: " + rightPoint);
-
-            /*
-             * Get the average between the points on the split dimension. this
-             * is the midpoint
-             */
-            double midPoint = (leftPoint.get(splitOn) + rightPoint.get(splitOn)) / 2;
-            if (logger.isTraceEnabled())
-                logger.trace("midPoint: " + midPoint);
-
-            /* instantiate the new branch with the midpoint and split-dimension */
-            Branch newBranch = new Branch(midPoint, splitOn);
-
-            /* create the new leaves */
-            Leaf left = new Leaf();
-            Leaf right = new Leaf();
-
-            /* loop through all the points and add to the appropriate leaf */
-            for (int i = 0; i < size; i++) {
-                DataPoint p = leaf.points.get(i);
-
-                if (p.get(splitOn) < midPoint) {
-                    if (logger.isTraceEnabled())
-                        logger.trace("adding to left: " + p);
-                    left.points.add(p);
-                    all.put(p, left);
-                } else {
-                    if (logger.isTraceEnabled())
-                        logger.trace("adding to right: " + p);
-                    right.points.add(p);
-                    all.put(p, right);
+    /**
+     * Copies the indices of the points under a node into an array.
+     *
+     * @param node the node
+     * @param indices the array to fill
+     * @param offset where to start filling
+     * @return the offset after the last index copied
+     */
+    private static int collect(Node node, int[] indices, int offset) {
+        if (node.type == Type.leaf) {
+            Leaf leaf = (Leaf) node;
+            System.arraycopy(leaf.indices, 0, indices, offset, leaf.size);
+            return offset + leaf.size;
+        }
+        Branch branch = (Branch) node;
+        return collect(branch.right, indices,
+                collect(branch.left, indices, offset));
+    }
+
+    /**
+     * Builds a balanced tree over a range of point indices, reordering the
+     * range.
+     *
+     * @param indices point indices
+     * @param from first index in the range
+     * @param to end of the range, exclusive
+     * @return the root of the new tree
+     */
+    private Node build(int[] indices, int from, int to) {
+        int count = to - from;
+        int splitOn = -1;
+        if (count > MAX) {
+            double spread = 0;
+            for (int d = 0; d < dimensions; d++) {
+                double lo = Double.POSITIVE_INFINITY;
+                double hi = Double.NEGATIVE_INFINITY;
+                for (int i = from; i < to; i++) {
+                    double v = list.get(indices[i]).get(d);
+                    lo = Math.min(lo, v);
+                    hi = Math.max(hi, v);
+                }
+                if (hi - lo > spread) {
+                    spread = hi - lo;
+                    splitOn = d;
                 }
             }
-
-            /* set the new branches */
-            newBranch.left = left;
-            newBranch.right = right;
-
-            /*
-             * Set the branch on it's parent, unless there is none: then it's
-             * the new root
-             */
-            if (parent == null) {
-                if (logger.isTraceEnabled())
-                    logger.debug("setting new branch as root");
-                root = newBranch;
-            } else if (onLeft) {
-                if (logger.isTraceEnabled())
-                    logger.debug("setting new branch as left");
-                parent.left = newBranch;
-            } else {
-                if (logger.isTraceEnabled())
-                    logger.debug("setting new branch as right");
-                parent.right = newBranch;
+        }
+        if (splitOn < 0) {
+            // Few enough points, or all the same
+            Leaf leaf = new Leaf(dimensions);
+            leaf.limit = Math.max(MAX, 2 * count);
+            for (int i = from; i < to; i++) {
+                leaf.add(indices[i], list.get(indices[i]).getVector());
+                leaves.set(indices[i], leaf);
             }
+            return leaf;
         }
 
-        return null;
+        select(indices, from, to - 1, from + count / 2, splitOn);
+        double midPoint = list.get(indices[from + count / 2]).get(splitOn);
+        int middle = partition(indices, from, to, splitOn, midPoint);
+        if (middle == from) {
+            // The median is the smallest value; put it on the left instead
+            midPoint = Math.nextUp(midPoint);
+            middle = partition(indices, from, to, splitOn, midPoint);
+        }
+
+        Branch branch = new Branch(midPoint, splitOn);
+        branch.size = count;
+        branch.left = build(indices, from, middle);
+        branch.right = build(indices, middle, to);
+        branch.left.parent = branch;
+        branch.right.parent = branch;
+        return branch;
     }
 
     /**
-     * Comparator used to compare two points on a single dimension
+     * Moves the indices of points below a value on a dimension to the front
+     * of a range.
+     *
+     * @param indices point indices
+     * @param from first index in the range
+     * @param to end of the range, exclusive
+     * @param dimension the dimension to compare on
+     * @param value the value to compare against
+     * @return the end of the points below the value
      */
-    private static final class PointComparator implements Comparator<DataPoint> {
-
-        /** The dimension to compare on */
-        final int dimension;
-
-        /**
-         * Constructs a new comparator on the given dimension
-         *
-         * @param dimension the dimension to compare on
-         */
-        PointComparator(int dimension) {
-            this.dimension = dimension;
+    private int partition(int[] indices, int from, int to, int dimension,
+            double value) {
+        int middle = from;
+        for (int i = from; i < to; i++) {
+            if (list.get(indices[i]).get(dimension) < value) {
+                swap(indices, i, middle++);
+            }
         }
+        return middle;
+    }
 
-        /**
-         * compares two points on one dimension
-         * @param o1
-         * @param o2
-         * @return
-         */
-        public int compare(DataPoint o1, DataPoint o2) {
-            double difference = o1.get(dimension) - o2.get(dimension);
-            if (difference < 0) {
-                return -1;
-            } else if (difference > 0) {
-                return 1;
+    /**
+     * Quickselect: reorders a range so that the point at position k is the
+     * one that would be there if the range were sorted on a dimension.
+     *
+     * @param indices point indices
+     * @param lo first index in the range
+     * @param hi last index in the range, inclusive
+     * @param k the position to fill
+     * @param dimension the dimension to compare on
+     */
+    private void select(int[] indices, int lo, int hi, int k, int dimension) {
+        while (hi > lo) {
+            double pivot = list.get(indices[(lo + hi) >>> 1]).get(dimension);
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (list.get(indices[i]).get(dimension) < pivot) {
+                    i++;
+                }
+                while (list.get(indices[j]).get(dimension) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(indices, i++, j--);
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
             } else {
-                return 0;
+                return;
             }
         }
     }
 
+    /**
+     * @param a an array
+     * @param i an index
+     * @param j another index
+     */
+    private static void swap(int[] a, int i, int j) {
+        int t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+
     /**
      *
      * @param index of element to return.
@@ -305,92 +402,17 @@ public class NTree implements Iterable<DataPoint> {
      *
      * @param point the point to search for
      * @param tolerance the tolerance for determining uniqueness
-     * @return the matching datapoint if it exists, null if the datapoint is unique 
+     * @return the closest datapoint less than the tolerance away, or null if
+     *         the datapoint is unique
      */
     public DataPoint isUnique(final DataPoint point, final double tolerance) {
-        return isUnique(root, point, tolerance);
-    }
-
-    //TODO: Confusing names.   rename or add methods that return booleans?
-    
-    /**
-     * Checks whether the given point already exists in the tree with the
-     * specified tolerance.
-     *
-     * @param from the node to start from
-     * @param point the point to search for
-     * @param tolerance the tolerance for determining uniqueness
-     * @return the matching datapoint if it exists, null if the datapoint is unique
-     */
-    private DataPoint isUnique(Node from, DataPoint point, double tolerance) {
-
-        if (logger.isDebugEnabled())
-            logger.debug("is unique? tolerance " + tolerance + " - " + point);
-
-        /* loop over the from node while it's a branch */
-        while (from.type == Type.branch) {
-
-            /* cast to a branch */
-            Branch branch = (Branch) from;
-            /* get the split dimension */
-            double d = point.get(branch.splitDimension);
-
-            /*
-             * If the point is within tolerance of the split, recurse both paths
-             * otherwise continue branching
-             */
-            if (Math.abs(d - branch.midPoint) < tolerance) {
-                if (logger.isDebugEnabled())
-                    logger.debug("at branch : " + branch
-                            + " - recursing both paths");
-                DataPoint leftCheck = isUnique(branch.left, point, tolerance);
-                DataPoint rightCheck = isUnique(branch.right, point, tolerance);
-                if ((leftCheck == null) && (rightCheck == null)) {
-                    return null;
-                } else {
-                    if (leftCheck != null) {
-                        return leftCheck;
-                    } else {
-                        return rightCheck;
-                    }
-                }
-            } else if (point.getVector()[branch.splitDimension] < branch.midPoint) {
-                if (logger.isDebugEnabled())
-                    logger.debug("at branch : " + branch + " - going left");
-                from = branch.left;
-            } else {
-                if (logger.isDebugEnabled())
-                    logger.debug("at branch : " + branch + " - going right");
-                from = branch.right;
-            }
-        }
-
-        /* cast to leaf */
-        Leaf leaf = (Leaf) from;
-
-        /*
-         * loop over the points. if each of the elements in the point is within
-         * a tolerance of the given point, check the distance. otherwise, the
-         * point cannot be within a tolerance distance of the given point.
-         */
-        for (DataPoint p : leaf.points) {
-            for (int i = 0; i < p.getDimension(); i++) {
-                if (Math.abs(p.get(i) - point.get(i)) >= tolerance) {
-                    break;
-                }
-            }
-
-            /* If the distance is less than tolerance, this point is not unique */
-            if (getDistance(p, point) < tolerance) {
-                return p;
-            }
+        if (!(tolerance > 0)) {
+            return null;
         }
-
-        /*
-         * All possibilities in the current path have been exhausted and no
-         * duplicates were found.
-         */
-        return null;
+        Neighbors neighbors = new Neighbors(1,
+                Math.nextDown(tolerance * tolerance));
+        search(point, neighbors);
+        return neighbors.size == 0 ? null : list.get(neighbors.indices[0]);
     }
 
     /**
@@ -419,130 +441,284 @@ public class NTree implements Iterable<DataPoint> {
     }
 
     /**
-     * Gets the closest points to the passed in point. The amount of points to
-     * determine is specified by the number argument
+     * Gets the closest points to the passed in point, closest first. The
+     * amount of points to determine is specified by the number argument; fewer
+     * are returned if the tree holds fewer.
      *
      * @param number the number of points to collect
      * @param point the point to find points close to
      * @return the closest points
      */
     public List<DataPoint> getClosestPoints(int number, DataPoint point) {
-        List<DataPoint> points = new ArrayList<DataPoint>();
-        for (DistancePoint dp : getClosestPoints(root, number, point)) {
-            points.add(dp.point);
-            // TODO: Returning multiple copies of same number
-            //System.out.println(Arrays.asList(dp.point));
+        return toPoints(getClosestIndices(number, point));
+    }
+
+    /**
+     * Gets the indices of the closest points to the passed in point, closest
+     * first.
+     *
+     * @param number the number of points to collect
+     * @param point the point to find points close to
+     * @return the indices of the closest points, at most number of them
+     */
+    public int[] getClosestIndices(int number, DataPoint point) {
+        Neighbors neighbors = new Neighbors(Math.max(0,
+                Math.min(number, list.size())), Double.POSITIVE_INFINITY);
+        if (neighbors.capacity > 0) {
+            search(point, neighbors);
+        }
+        return neighbors.sorted();
+    }
+
+    /**
+     * Returns the closest point in the tree to the given point.
+     *
+     * @param point
+     * @return the point closest to the given point, or null if the tree is
+     *         empty
+     */
+    public DataPoint getClosestPoint(final DataPoint point) {
+        int[] closest = getClosestIndices(1, point);
+        return closest.length == 0 ? null : list.get(closest[0]);
+    }
+
+    /**
+     * Gets the points within a distance of the passed in point, closest
+     * first.
+     *
+     * @param point the center of the search
+     * @param radius the largest distance of a returned point
+     * @return the points in the radius
+     */
+    public List<DataPoint> getPointsInRadius(DataPoint point, double radius) {
+        return toPoints(getIndicesInRadius(point, radius));
+    }
+
+    /**
+     * Gets the indices of the points within a distance of the passed in
+     * point, closest first.
+     *
+     * @param point the center of the search
+     * @param radius the largest distance of a returned point
+     * @return the indices of the points in the radius
+     */
+    public int[] getIndicesInRadius(DataPoint point, double radius) {
+        Neighbors neighbors = new Neighbors(Integer.MAX_VALUE,
+                radius * radius);
+        if (radius >= 0) {
+            search(point, neighbors);
         }
+        return neighbors.sorted();
+    }
 
+    /**
+     * @param indices point indices
+     * @return the points
+     */
+    private List<DataPoint> toPoints(int[] indices) {
+        List<DataPoint> points = new ArrayList<DataPoint>(indices.length);
+        for (int index : indices) {
+            points.add(list.get(index));
+        }
         return points;
     }
 
     /**
-     * Gets the closest points to the passed in point. The amount of points to
-     * determine is specified by the number argument
+     * Offers the points in the tree to a set of neighbors.
      *
-     * @param from the node to start from
-     * @param number the number of points to collect
-     * @param point the point to find points close to
-     * @return the closest points
+     * @param point the point to find neighbors of
+     * @param neighbors the neighbors found so far
      */
-    private List<DistancePoint> getClosestPoints(Node from, int number,
-            DataPoint point) {
-        List<DistancePoint> points;
+    private void search(DataPoint point, Neighbors neighbors) {
+        if (point.getDimension() != dimensions) {
+            throw new IllegalArgumentException("point has "
+                    + point.getDimension() + " dimensions, tree has "
+                    + dimensions);
+        }
+        search(root, point.getVector(), new double[dimensions], 0,
+                neighbors);
+    }
 
-        /*
-         * If from is a branch, recurse otherwise get the closest points in the
-         * leaf
-         */
-        if (from.type == Type.branch) {
-
-            /* Cast to Branch */
-            Branch branch = (Branch) from;
-
-            /* The point's value on the splitDimension */
-            double d = point.get(branch.splitDimension);
-
-            /* Determine whether the normal path is left or right */
-            boolean left = d < branch.midPoint;
-
-            /* Recurse on branch determined above */
-            points = getClosestPoints(left ? branch.left : branch.right,
-                    number, point);
-
-            /*
-             * Determine whether to recurse on the other path. if the farthest
-             * out point from the main branch is less than the distance to the
-             * split, get the n points from the other branch
-             */
-            if (points.size() < number
-                    || points.get(number - 1).distance > Math.abs(d
-                            - branch.midPoint)) {
-                points.addAll(getClosestPoints(left ? branch.right
-                        : branch.left, number, point));
-
-                /* combine the points and sort */
-                Collections.sort(points, new Comparator<DistancePoint>() {
-                    public int compare(DistancePoint o1, DistancePoint o2) {
-                        if (o1.distance < o2.distance)
-                            return -1;
-                        else if (o1.distance > o2.distance)
-                            return 1;
-                        else
-                            return 0;
-                    }
-                });
+    /**
+     * Offers the points under a node to a set of neighbors, nearer side
+     * first, skipping any side whose cell lies beyond the farthest neighbor.
+     * The squared distance from the point to the node's cell is tracked
+     * incrementally from the offsets along each dimension.
+     *
+     * @param node the node to search
+     * @param x the point to find neighbors of
+     * @param offsets offset from the point to the node's cell along each
+     *            dimension
+     * @param reach squared distance from the point to the node's cell
+     * @param neighbors the neighbors found so far
+     */
+    private void search(Node node, double[] x, double[] offsets,
+            double reach, Neighbors neighbors) {
+        if (node.type == Type.branch) {
+            Branch branch = (Branch) node;
+            int dim = branch.splitDimension;
+            double diff = x[dim] - branch.midPoint;
+            search(diff < 0 ? branch.left : branch.right, x, offsets, reach,
+                    neighbors);
+            double old = offsets[dim];
+            double farReach = reach - old * old + diff * diff;
+            if (!(farReach <= neighbors.bound())) {
+                return;
             }
-        } else {
-            points = new ArrayList<DistancePoint>();
-            /* Cast to Leaf */
-            Leaf leaf = (Leaf) from;
-
-            /*
-             * Loop over the points in the leaf adding any that are less than
-             * the current or adding if there are less than n
-             */
-            for (DataPoint d : leaf.points) {
-                double distance = getDistance(d, point);
-
-                for (int i = 0; i < number; i++) {
-                    if (i >= points.size()) {
-                        points.add(new DistancePoint(distance, d));
-                    } else if (distance < points.get(i).distance) {
-                        points.add(i, new DistancePoint(distance, d));
-                    }
-                }
+            offsets[dim] = diff;
+            search(diff < 0 ? branch.right : branch.left, x, offsets,
+                    farReach, neighbors);
+            offsets[dim] = old;
+            return;
+        }
+        Leaf leaf = (Leaf) node;
+        double[] coords = leaf.coords;
+        for (int i = 0, k = 0; i < leaf.size; i++, k += dimensions) {
+            double bound = neighbors.bound();
+            double sum = 0;
+            for (int d = 0; d < dimensions && sum <= bound; d++) {
+                double difference = coords[k + d] - x[d];
+                sum += difference * difference;
             }
+            neighbors.offer(Double.isNaN(sum) ? Double.POSITIVE_INFINITY
+                    : sum, leaf.indices[i]);
         }
-
-        /* Trim the list to size, if necessary */
-        return points.size() < number ? points : points.subList(0, number);
     }
 
     /**
-     * A tuple of a point and the distance to that point
+     * The closest points found so far in a search, as a max-heap on squared
+     * distance (ties broken by index) that holds at most a given number of
+     * points, none farther than a limit.
      */
-    private static class DistancePoint {
-        double distance;
-        DataPoint point;
+    private static final class Neighbors {
+
+        /** Most points to keep. */
+        final int capacity;
+
+        /** Largest squared distance of a point. */
+        final double limit;
+
+        /** Squared distances, in heap order. */
+        double[] distances;
+
+        /** Point indices, in heap order. */
+        int[] indices;
+
+        /** Number of points held. */
+        int size;
 
         /**
-         * @param distance the distance to the given point
-         * @param point a point
+         * @param capacity most points to keep
+         * @param limit largest squared distance of a point
          */
-        DistancePoint(final double distance, final DataPoint point) {
-            this.distance = distance;
-            this.point = point;
+        Neighbors(final int capacity, final double limit) {
+            this.capacity = capacity;
+            this.limit = limit;
+            int initial = Math.min(capacity, 16);
+            distances = new double[initial];
+            indices = new int[initial];
         }
-    }
 
-    /**
-     * Returns the closest point in the tree to the given point.
-     *
-     * @param point
-     * @return the point closest to the given point
-     */
-    public DataPoint getClosestPoint(final DataPoint point) {
-        return getClosestPoints(1, point).get(0);
+        /**
+         * @return the squared distance beyond which no point can be added
+         */
+        double bound() {
+            return size < capacity ? limit : distances[0];
+        }
+
+        /**
+         * @param d1 a squared distance
+         * @param i1 its point index
+         * @param d2 another squared distance
+         * @param i2 its point index
+         * @return whether the first point comes after the second
+         */
+        private static boolean after(double d1, int i1, double d2, int i2) {
+            return d1 > d2 || (d1 == d2 && i1 > i2);
+        }
+
+        /**
+         * Adds a point if it is among the closest so far.
+         *
+         * @param distance its squared distance
+         * @param index its index
+         */
+        void offer(final double distance, final int index) {
+            if (size < capacity) {
+                if (!(distance <= limit)) {
+                    return;
+                }
+                if (size == distances.length) {
+                    int length = (int) Math.min(capacity, 2L * size);
+                    distances = Arrays.copyOf(distances, length);
+                    indices = Arrays.copyOf(indices, length);
+                }
+                // Sift up
+                int i = size++;
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (!after(distance, index, distances[parent],
+                            indices[parent])) {
+                        break;
+                    }
+                    distances[i] = distances[parent];
+                    indices[i] = indices[parent];
+                    i = parent;
+                }
+                distances[i] = distance;
+                indices[i] = index;
+            } else if (size > 0
+                    && after(distances[0], indices[0], distance, index)) {
+                siftDown(distance, index, size);
+            }
+        }
+
+        /**
+         * Replaces the farthest point and restores the heap over a prefix.
+         *
+         * @param distance squared distance of the new point
+         * @param index index of the new point
+         * @param n length of the heap
+         */
+        private void siftDown(final double distance, final int index,
+                final int n) {
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= n) {
+                    break;
+                }
+                if (child + 1 < n && after(distances[child + 1],
+                        indices[child + 1], distances[child],
+                        indices[child])) {
+                    child++;
+                }
+                if (!after(distances[child], indices[child], distance,
+                        index)) {
+                    break;
+                }
+                distances[i] = distances[child];
+                indices[i] = indices[child];
+                i = child;
+            }
+            distances[i] = distance;
+            indices[i] = index;
+        }
+
+        /**
+         * Empties the heap.
+         *
+         * @return the indices held, closest first
+         */
+        int[] sorted() {
+            int[] ret = new int[size];
+            for (int n = size - 1; n >= 0; n--) {
+                ret[n] = indices[0];
+                siftDown(distances[n], indices[n], n);
+            }
+            size = 0;
+            return ret;
+        }
     }
 
     /**
@@ -564,23 +740,12 @@ public class NTree implements Iterable<DataPoint> {
         return new ArrayList<DataPoint>(list);
     }
 
-    /**
-     * adds all the elements from the given tree to this tree
-     *
-     * @param other the other tree
-     */
-    public void addAll(NTree other) {
-        for (DataPoint d : other) {
-            add(d);
-        }
-    }
-
     /**
      * Returns an iterator over this tree
-     * @return 
+     * @return
      */
     public Iterator<DataPoint> iterator() {
-        return list.iterator();
+        return Collections.unmodifiableList(list).iterator();
     }
 
     /**
@@ -590,16 +755,9 @@ public class NTree implements Iterable<DataPoint> {
      * @param point the point to set
      */
     public void set(int index, DataPoint point) {
-        DataPoint old = list.get(index);
-        Leaf leaf = all.get(old); // leaf can be null sometimes..
-        if (leaf == null) {
-            System.out.println(index);
-        }
-        int leafIndex = leaf.points.indexOf(old);
-        leaf.points.set(leafIndex, point);
-        all.put(point, leaf);
-        all.remove(old);
+        remove(index);
         list.set(index, point);
+        insert(index);
     }
 
     /*----------------------------------------------*/
@@ -609,6 +767,12 @@ public class NTree implements Iterable<DataPoint> {
      */
     private abstract static class Node {
         Type type;
+        Branch parent;
+
+        /**
+         * @return the number of points under this node
+         */
+        abstract int size();
     }
 
     /**
@@ -619,6 +783,7 @@ public class NTree implements Iterable<DataPoint> {
         Node right;
         final double midPoint;
         final int splitDimension;
+        int size;
 
         Branch(double midPoint, int splitDimension) {
             type = Type.branch;
@@ -626,6 +791,11 @@ public class NTree implements Iterable<DataPoint> {
             this.splitDimension = splitDimension;
         }
 
+        @Override
+        int size() {
+            return size;
+        }
+
         public String toString() {
             return "split on: " + splitDimension + ", midPoint: " + midPoint;
         }
@@ -635,14 +805,66 @@ public class NTree implements Iterable<DataPoint> {
      * Class for leaves.
      */
     private static class Leaf extends Node {
-        {
+
+        /** Number of coordinates per point. */
+        final int dimensions;
+
+        /** Indices of the points in this leaf. */
+        int[] indices = new int[MAX + 1];
+
+        /** Coordinates of the points in this leaf, point after point. */
+        double[] coords;
+
+        /** Number of points in this leaf. */
+        int size;
+
+        /** Number of points above which this leaf is split. */
+        int limit = MAX;
+
+        /**
+         * @param dimensions number of coordinates per point
+         */
+        Leaf(int dimensions) {
             type = Type.leaf;
+            this.dimensions = dimensions;
+            coords = new double[(MAX + 1) * dimensions];
+        }
+
+        /**
+         * @param index the index of a point to add
+         * @param vector its coordinates
+         */
+        void add(int index, double[] vector) {
+            if (size == indices.length) {
+                indices = Arrays.copyOf(indices, 2 * size);
+                coords = Arrays.copyOf(coords, 2 * size * dimensions);
+            }
+            System.arraycopy(vector, 0, coords, size * dimensions,
+                    dimensions);
+            indices[size++] = index;
         }
 
-        List<DataPoint> points = new ArrayList<DataPoint>();
+        /**
+         * @param index the index of a point to remove
+         */
+        void remove(int index) {
+            for (int i = 0; i < size; i++) {
+                if (indices[i] == index) {
+                    indices[i] = indices[--size];
+                    System.arraycopy(coords, size * dimensions, coords,
+                            i * dimensions, dimensions);
+                    return;
+                }
+            }
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
 
         public String toString() {
-            return "size: " + points.size();
+            return "size: " + size;
         }
     }
-}
\ No newline at end of file
+}
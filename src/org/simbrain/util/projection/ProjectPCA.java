@@ -26,11 +26,63 @@ import Jama.Matrix;
 /**
  * <B>ProjectPCA</B> Projects the high-dimensional dataset along its two
  * principal components to the low-d dataset.
+ * <p>
+ * The mean and covariance of the upstairs dataset are updated as points are
+ * added rather than recomputed, and the leading eigenvectors are found by
+ * orthogonal iteration started from the previous ones, which takes a step or
+ * two once the data have settled. Each update takes at most
+ * {@link #MAX_WARM_ITERATIONS} steps from a warm start, so when the leading
+ * eigenvalues are close together (as for isotropic data) the components
+ * converge over successive updates instead of within one. The downstairs
+ * points are only all moved
+ * when the components have drifted by more than
+ * {@link #REPROJECTION_TOLERANCE} since they were last laid out;
+ * otherwise only the new points are projected, with the components of that
+ * layout.
  *
  * @author Scott Hotton
  */
 public class ProjectPCA extends ProjectionMethod {
 
+    /**
+     * Largest change in any component coordinate, since the downstairs points
+     * were last laid out, that does not cause them all to be re-projected.
+     */
+    private static final double REPROJECTION_TOLERANCE = 1e-3;
+
+    /**
+     * Change in the components below which orthogonal iteration stops; small
+     * next to the changes that cause the downstairs points to be re-projected.
+     */
+    private static final double CONVERGENCE = REPROJECTION_TOLERANCE / 100;
+
+    /** Most orthogonal iteration steps when there are no components yet. */
+    private static final int MAX_ITERATIONS = 500;
+
+    /** Most orthogonal iteration steps per update from the last components. */
+    private static final int MAX_WARM_ITERATIONS = 5;
+
+    /** Number of upstairs points in the running statistics. */
+    private transient int numPoints;
+
+    /** Running mean of the upstairs points. */
+    private transient double[] mean;
+
+    /**
+     * Running sum of the outer products of the deviations from the mean
+     * (the covariance times the number of points).
+     */
+    private transient double[][] comoment;
+
+    /** Current principal components, largest first, one per row. */
+    private transient double[][] components;
+
+    /** The components the downstairs points were projected with. */
+    private transient double[][] layout;
+
+    /** Number of downstairs points projected with the layout. */
+    private transient int numProjected;
+
     /**
      * Default PCA project.
      * @param projector
@@ -44,71 +96,242 @@ public class ProjectPCA extends ProjectionMethod {
         if (projector.getUpstairs() == null) {
             return;
         }
-        if (projector.getUpstairs().getNumPoints() < 1) {
+        Dataset upstairs = projector.getUpstairs();
+        Dataset downstairs = projector.getDownstairs();
+        int n = upstairs.getNumPoints();
+        if (n < 1) {
             return;
         }
 
-        int lowdim = projector.getDownstairs().getDimensions();
-        int updim = projector.getUpstairs().getDimensions();
-
-        // Get e-vals and e-vectors of covariance matrix
-        Matrix m = projector.getUpstairs().getCovarianceMatrix();
-        EigenvalueDecomposition ed = m.eig();
-        Matrix eVecs = ed.getV().transpose();
-        double[] evalsArray = ed.getRealEigenvalues();
-        Matrix eVals = new Matrix(evalsArray, updim);
-
-        // printMatrix(e_vecs);
-        // printMatrix(e_vals);
-        // Sort e-vectors and place them in a separate matrix,
-        // "matrix_projector"
-        Matrix combined = new Matrix(updim, updim + 1);
-        Matrix matrixProjector = new Matrix(lowdim, updim);
-        combined.setMatrix(0, updim - 1, 1, updim, eVecs);
-        combined.setMatrix(0, updim - 1, 0, 0, eVals);
-        Arrays.sort(evalsArray);
-
-        // printMatrix(combined);
-        // printArray(evals_array);
-        // Go through the evals_array, starting with the largest value
-        for (int i = updim - 1, k = 0; i >= (updim - lowdim); i--) {
-            double val = evalsArray[i];
-
-            // find the row this corresponds to and set that row
-            for (int j = 0; j < updim; j++) {
-                if (combined.get(j, 0) == val) {
-                    if (k >= lowdim) {
-                        break; // needed for cases of repeated e-vals?
-                    }
+        int updim = upstairs.getDimensions();
+        if (mean == null || mean.length != updim || n < numPoints) {
+            init();
+            mean = new double[updim];
+            comoment = new double[updim][updim];
+        }
+        for (int i = numPoints; i < n; i++) {
+            addToStatistics(upstairs.getPoint(i).getVector());
+        }
+        numPoints = n;
+        updateComponents(Math.min(downstairs.getDimensions(), updim));
 
-                    matrixProjector.setMatrix(k, k, 0, updim - 1,
-                            combined.getMatrix(j, j, 1, updim));
-                    k++;
-                }
+        if (layout == null || downstairs.getNumPoints() != n
+                || numProjected > n || drift() > REPROJECTION_TOLERANCE) {
+            layout = new double[components.length][];
+            for (int k = 0; k < components.length; k++) {
+                layout[k] = components[k].clone();
             }
+            numProjected = 0;
         }
+        if (downstairs.getNumPoints() != n) {
+            downstairs.clear();
+            for (int i = 0; i < n; i++) {
+                downstairs.addPoint(new DataPoint(
+                        projectPoint(upstairs.getPoint(i).getVector())));
+            }
+        } else {
+            for (int i = numProjected; i < n; i++) {
+                downstairs.getPoint(i).setData(
+                        projectPoint(upstairs.getPoint(i).getVector()));
+            }
+        }
+        numProjected = n;
+    }
 
-        projector.getDownstairs().clear();
+    /**
+     * Adds a point to the running mean and co-moment (Welford's update).
+     *
+     * @param x the point
+     */
+    private void addToStatistics(final double[] x) {
+        int d = mean.length;
+        double[] delta = new double[d];
+        double count = numPoints + 1;
+        for (int i = 0; i < d; i++) {
+            delta[i] = x[i] - mean[i];
+            mean[i] += delta[i] / count;
+        }
+        for (int i = 0; i < d; i++) {
+            double[] row = comoment[i];
+            double scaled = delta[i] * (count - 1) / count;
+            for (int j = i; j < d; j++) {
+                row[j] += scaled * delta[j];
+            }
+        }
+        numPoints++;
+    }
+
+    /**
+     * Brings the leading principal components up to date by orthogonal
+     * iteration with Rayleigh-Ritz extraction, starting from the current
+     * components (or the first coordinate axes).
+     *
+     * @param count number of components
+     */
+    private void updateComponents(final int count) {
+        int d = mean.length;
+        int maxIterations = MAX_WARM_ITERATIONS;
+        if (components == null || components.length != count) {
+            components = new double[count][d];
+            for (int k = 0; k < count; k++) {
+                components[k][k] = 1;
+            }
+            maxIterations = MAX_ITERATIONS;
+        }
+        double[][] q = new double[count][];
+        for (int iteration = 0; iteration < maxIterations; iteration++) {
+            for (int k = 0; k < count; k++) {
+                q[k] = multiply(components[k]);
+            }
+            orthonormalize(q);
+
+            // Order and separate the components within the subspace
+            double[][] cq = new double[count][];
+            Matrix small = new Matrix(count, count);
+            for (int k = 0; k < count; k++) {
+                cq[k] = multiply(q[k]);
+                for (int l = 0; l <= k; l++) {
+                    double dot = dot(q[l], cq[k]);
+                    small.set(k, l, dot);
+                    small.set(l, k, dot);
+                }
+            }
+            EigenvalueDecomposition ed = small.eig();
+            double[] values = ed.getRealEigenvalues();
+            Matrix vectors = ed.getV();
+            double change = 0;
+            double[][] next = new double[count][d];
+            for (int k = 0; k < count; k++) {
+                // Jama sorts symmetric eigenvalues in ascending order
+                int column = count - 1 - k;
+                for (int l = 0; l < count; l++) {
+                    double w = vectors.get(l, column);
+                    for (int i = 0; i < d; i++) {
+                        next[k][i] += w * q[l][i];
+                    }
+                }
+                if (dot(next[k], components[k]) < 0) {
+                    for (int i = 0; i < d; i++) {
+                        next[k][i] = -next[k][i];
+                    }
+                }
+                for (int i = 0; i < d; i++) {
+                    change = Math.max(change,
+                            Math.abs(next[k][i] - components[k][i]));
+                }
+            }
+            components = next;
+            if (change < CONVERGENCE || values[count - 1] == 0) {
+                break;
+            }
+        }
+    }
 
-        // printMatrix(matrix_projector);
-        // project the points along the principal components
-        for (int i = 0; i < projector.getUpstairs().getNumPoints(); i++) {
-            Matrix uppoint = new Matrix(updim, 1);
+    /**
+     * @param v a vector
+     * @return the covariance matrix times the vector
+     */
+    private double[] multiply(final double[] v) {
+        int d = mean.length;
+        double[] ret = new double[d];
+        for (int i = 0; i < d; i++) {
+            double[] row = comoment[i];
+            double sum = row[i] * v[i];
+            for (int j = i + 1; j < d; j++) {
+                sum += row[j] * v[j];
+                ret[j] += row[j] * v[i];
+            }
+            ret[i] += sum;
+        }
+        for (int i = 0; i < d; i++) {
+            ret[i] /= numPoints;
+        }
+        return ret;
+    }
 
-            for (int j = 0; j < updim; ++j) {
-                uppoint.set(j, 0, projector.getUpstairs().getComponent(i, j));
+    /**
+     * Orthonormalizes vectors in place by modified Gram-Schmidt. A vector
+     * that vanishes is replaced by the first coordinate axis orthogonal to
+     * the ones before it.
+     *
+     * @param vectors the vectors
+     */
+    private static void orthonormalize(final double[][] vectors) {
+        for (int k = 0; k < vectors.length; k++) {
+            double[] v = vectors[k];
+            for (int axis = -1; axis < v.length; axis++) {
+                if (axis >= 0) {
+                    Arrays.fill(v, 0);
+                    v[axis] = 1;
+                }
+                for (int l = 0; l < k; l++) {
+                    double dot = dot(vectors[l], v);
+                    for (int i = 0; i < v.length; i++) {
+                        v[i] -= dot * vectors[l][i];
+                    }
+                }
+                double norm = Math.sqrt(dot(v, v));
+                if (norm > 1e-150) {
+                    for (int i = 0; i < v.length; i++) {
+                        v[i] /= norm;
+                    }
+                    break;
+                }
             }
+        }
+    }
 
-            Matrix lowpoint = matrixProjector.times(uppoint);
-            double[] columnPackedCopy = lowpoint.getColumnPackedCopy();
+    /**
+     * @param a a vector
+     * @param b another vector
+     * @return their dot product
+     */
+    private static double dot(final double[] a, final double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
 
-            projector.getDownstairs().addPoint(new DataPoint(columnPackedCopy));
+    /**
+     * @return the largest change in a component coordinate since the
+     *         downstairs points were laid out
+     */
+    private double drift() {
+        if (layout.length != components.length) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double drift = 0;
+        for (int k = 0; k < layout.length; k++) {
+            for (int i = 0; i < layout[k].length; i++) {
+                drift = Math.max(drift,
+                        Math.abs(layout[k][i] - components[k][i]));
+            }
+        }
+        return drift;
+    }
+
+    /**
+     * @param x an upstairs point
+     * @return its coordinates along the components of the layout
+     */
+    private double[] projectPoint(final double[] x) {
+        double[] ret = new double[projector.getDownstairs().getDimensions()];
+        for (int k = 0; k < layout.length; k++) {
+            ret[k] = dot(layout[k], x);
         }
+        return ret;
     }
 
     @Override
     public void init() {
-        // TODO Auto-generated method stub
+        numPoints = 0;
+        mean = null;
+        comoment = null;
+        components = null;
+        layout = null;
+        numProjected = 0;
     }
 
 }
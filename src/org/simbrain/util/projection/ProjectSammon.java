@@ -18,7 +18,9 @@
  */
 package org.simbrain.util.projection;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 import org.simbrain.util.SimbrainPreferences;
 import org.simbrain.util.SimbrainPreferences.PropertyNotFoundException;
@@ -26,13 +28,36 @@ import org.simbrain.util.SimbrainPreferences.PropertyNotFoundException;
 /**
  * <B>ProjectSammon.java</B> implements gradient descent to compute image of
  * Sammon projection.
- *
- * TODO: Possibly convert all arrays to datapoints.
+ * <p>
+ * The points are copied into flat arrays and all points are moved at once
+ * from their positions at the start of an iteration, split across threads for
+ * large datasets. Up to {@link #EXACT_LIMIT} points the upstairs distances
+ * are cached and the stress is computed over all pairs. Beyond that the
+ * stress and its gradient are estimated for each point from its nearest
+ * upstairs neighbors plus a fresh random sample of other points, so that an
+ * iteration costs time linear in the number of points and no quadratic
+ * matrix is held. The neighbor lists are refined from the random samples as
+ * iterations go by.
+ * <p>
+ * Points added to the projector are placed among their nearest upstairs
+ * neighbors and joined to the existing map rather than restarting it.
  */
 public class ProjectSammon extends IterableProjectionMethod {
 
-    /** Array of datasets. */
-    private ArrayList<DataPoint> yArray;
+    /** Number of points above which the stress is estimated by sampling. */
+    static final int EXACT_LIMIT = 2000;
+
+    /** Number of nearest upstairs neighbors kept for each point. */
+    static final int NEIGHBORS = 10;
+
+    /** Number of random points sampled for each point per iteration. */
+    static final int SAMPLES = 20;
+
+    /** Number of refinement steps when placing a new point. */
+    private static final int PLACEMENT_STEPS = 10;
+
+    /** Number of pair terms below which an iteration is not split up. */
+    private static final long PARALLEL_THRESHOLD = 1 << 16;
 
     /** Amount by which to perturb overlapping points. */
     protected double perturbationAmount;
@@ -42,44 +67,48 @@ public class ProjectSammon extends IterableProjectionMethod {
      */
     private double epsilon;
 
-    /** Temporary variables. */
-    private double[] xI;
+    /** Number of points the arrays below describe. */
+    private transient int numPoints;
 
-    /** Temporary variables. */
-    private double[] xJ;
+    /** Dimension of the upstairs points. */
+    private transient int highDims;
 
-    /** Temporary variables. */
-    private double[] yI;
+    /** Dimension of the downstairs points. */
+    private transient int lowDims;
 
-    /** Temporary variables. */
-    private double[] yJ;
+    /** Upstairs points, one after another, with room to grow. */
+    private transient double[] high;
 
-    /** Temporary variables. */
-    private double[] yM;
-
-    /** Temporary variables. */
-    private double[] yN;
-
-    /** Temporary variables. */
-    private double[] yNew;
+    /**
+     * Upstairs distances, the lower triangle packed row by row with room to
+     * grow, while there are no more than {@link #EXACT_LIMIT} points;
+     * otherwise null.
+     */
+    private transient double[] dstar;
 
-    /** Matrix of "upstairs" interpoint distances. */
-    private double[][] dstar;
+    /**
+     * Nearest upstairs neighbors found so far for each point,
+     * {@link #NEIGHBORS} per point, closest first, -1 where there is none.
+     */
+    private transient int[] neighbors;
 
-    /** Matrix of "downstairs" interpoint distances. */
-    private double[][] d;
+    /** Upstairs distances to the neighbors. */
+    private transient double[] neighborDistances;
 
-    /** Sum distances. */
-    private double dstarSum;
+    /**
+     * Sum of the upstairs distances over all pairs of points. Estimated from
+     * samples when the distances are not cached.
+     */
+    private transient double dstarSum;
 
-    /** Parital sum. */
-    private double partialSum;
+    /** Sum of the sampled upstairs distances, for estimating dstarSum. */
+    private transient double sampledSum;
 
-    /** Current closeness of datapoints. */
-    private double currentCloseness;
+    /** Number of distances in sampledSum. */
+    private transient long sampledCount;
 
-    /** Temporary variable. */
-    private double e;
+    /** Number of iterations run, which seeds each iteration's samples. */
+    private transient long iteration;
 
     /**
      * Default sammon projector constructor.
@@ -90,75 +119,539 @@ public class ProjectSammon extends IterableProjectionMethod {
     }
 
     @Override
-    public void init() {
+    public synchronized void init() {
         try {
             perturbationAmount = SimbrainPreferences.getDouble("projectorSammonPerturbationAmount");
-            perturbationAmount = SimbrainPreferences.getDouble("projectorSammonEpsilon");
+            epsilon = SimbrainPreferences.getDouble("projectorSammonEpsilon");
         } catch (PropertyNotFoundException e) {
             e.printStackTrace();
         }
-        dstar = projector.getUpstairs().getDistances();
-        dstarSum = projector.getUpstairs().getSumDistances();
-        projector.getDownstairs().perturbOverlappingPoints(perturbationAmount);
+        Dataset upstairs = projector.getUpstairs();
+        numPoints = 0;
+        highDims = upstairs.getDimensions();
+        lowDims = projector.getDownstairs().getDimensions();
+        high = new double[0];
+        dstar = new double[0];
+        neighbors = null;
+        neighborDistances = null;
+        dstarSum = 0;
+        sampledSum = 0;
+        sampledCount = 0;
+        separateOverlappingPoints();
+        addPoints(Math.min(upstairs.getNumPoints(),
+                projector.getDownstairs().getNumPoints()), false);
         setNeedsReInit(false);
     }
 
+    /**
+     * Places any points added since the last call near their upstairs
+     * neighbors.
+     */
     @Override
-    public void project() {
+    public synchronized void project() {
+        update();
+    }
+
+    /**
+     * Brings the arrays up to date with the datasets: re-initializes if
+     * points were removed or the arrays were never built, and adds any new
+     * points.
+     */
+    private void update() {
+        int count = Math.min(projector.getUpstairs().getNumPoints(),
+                projector.getDownstairs().getNumPoints());
+        if (needsReInit() || high == null || count < numPoints
+                || projector.getUpstairs().getDimensions() != highDims) {
+            init();
+        } else if (count > numPoints) {
+            addPoints(count, true);
+        }
+    }
+
+    /**
+     * Copies new points into the arrays, computing their upstairs distances
+     * or neighbors.
+     *
+     * @param count number of points after adding
+     * @param place whether to move the new points next to their upstairs
+     *            neighbors downstairs
+     */
+    private void addPoints(final int count, final boolean place) {
+        int first = numPoints;
+        high = grow(high, count * highDims);
+        for (int i = first; i < count; i++) {
+            System.arraycopy(projector.getUpstairs().getPoint(i).getVector(),
+                    0, high, i * highDims, highDims);
+        }
+        if (dstar != null && count > EXACT_LIMIT) {
+            switchToSampling();
+        }
+        if (dstar != null) {
+            dstar = grow(dstar, count * (count - 1) / 2);
+            double[] rowSums = new double[count];
+            forEachPoint(first, count, (long) count * (count - first),
+                    i -> rowSums[i] = cacheDistances(i));
+            for (int i = first; i < count; i++) {
+                dstarSum += rowSums[i];
+            }
+        } else {
+            if (neighbors.length < count * NEIGHBORS) {
+                int length = Math.max(count, 2 * numPoints) * NEIGHBORS;
+                neighbors = Arrays.copyOf(neighbors, length);
+                neighborDistances = Arrays.copyOf(neighborDistances, length);
+            }
+            Arrays.fill(neighbors, first * NEIGHBORS, count * NEIGHBORS, -1);
+            Arrays.fill(neighborDistances, first * NEIGHBORS,
+                    count * NEIGHBORS, Double.POSITIVE_INFINITY);
+        }
+        numPoints = count;
+        if (dstar == null) {
+            // Seed the neighbor lists of the new points and the estimate of
+            // the distance sum
+            double[] sums = new double[count];
+            forEachPoint(first, count, (long) (count - first) * SAMPLES,
+                    i -> sums[i] = sampleNeighbors(i, ~iteration));
+            for (int i = first; i < count; i++) {
+                sampledSum += sums[i];
+            }
+            sampledCount += (long) (count - first) * SAMPLES;
+            dstarSum = sampledCount == 0 ? 0 : sampledSum / sampledCount
+                    * count * (count - 1.0) / 2;
+        }
+        if (place) {
+            for (int i = first; i < count; i++) {
+                place(i);
+            }
+        }
+    }
+
+    /**
+     * @param array an array
+     * @param length the length needed
+     * @return the array, or a copy at least twice as long if it is too short
+     */
+    private static double[] grow(final double[] array, final int length) {
+        if (array.length >= length) {
+            return array;
+        }
+        return Arrays.copyOf(array, Math.max(length, 2 * array.length));
+    }
+
+    /**
+     * Computes and caches the upstairs distances from a point to all points
+     * before it.
+     *
+     * @param i the point
+     * @return the sum of the distances
+     */
+    private double cacheDistances(final int i) {
+        double sum = 0;
+        int row = i * (i - 1) / 2;
+        for (int j = 0; j < i; j++) {
+            dstar[row + j] = highDistance(i, j);
+            sum += dstar[row + j];
+        }
+        return sum;
+    }
+
+    /**
+     * Drops the cached distances and starts estimating the stress from
+     * neighbors and samples.
+     */
+    private void switchToSampling() {
+        sampledSum = dstarSum;
+        sampledCount = (long) numPoints * (numPoints - 1) / 2;
+        dstar = null;
+        neighbors = new int[numPoints * NEIGHBORS];
+        neighborDistances = new double[numPoints * NEIGHBORS];
+        Arrays.fill(neighbors, -1);
+        Arrays.fill(neighborDistances, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Offers random points as neighbors of a point.
+     *
+     * @param i the point
+     * @param seed seed of the sample
+     * @return the sum of the upstairs distances to the sampled points
+     */
+    private double sampleNeighbors(final int i, final long seed) {
+        double sum = 0;
+        for (int s = 0; s < SAMPLES; s++) {
+            int j = sample(i, numPoints, s, seed);
+            double ds = highDistance(i, j);
+            offerNeighbor(i, j, ds);
+            sum += ds;
+        }
+        return sum;
+    }
+
+    /**
+     * Puts a new point downstairs where its distances to its placed upstairs
+     * neighbors best match their upstairs distances, keeping the other points
+     * fixed. The point starts next to its nearest neighbor, in a random
+     * direction, and is refined by a few stress majorization steps. A point
+     * without placed neighbors keeps its position.
+     *
+     * @param i the point
+     */
+    private void place(final int i) {
+        Dataset upstairs = projector.getUpstairs();
+        int k = Math.min(NEIGHBORS, upstairs.getNumPoints() - 1);
+        if (k < 1) {
+            return;
+        }
+        int[] nearest = upstairs.getKNearestNeighbors(k + 1,
+                upstairs.getPoint(i));
+        if (nearest == null) {
+            nearest = upstairs.getKNearestNeighbors(k, upstairs.getPoint(i));
+        }
+        int[] placed = new int[nearest.length];
+        double[] distances = new double[nearest.length];
+        int count = 0;
+        for (int j : nearest) {
+            if (j == i || j >= numPoints) {
+                continue;
+            }
+            double ds = highDistance(i, j);
+            if (neighbors != null) {
+                offerNeighbor(i, j, ds);
+            }
+            if (j < i) {
+                placed[count] = j;
+                distances[count++] = ds;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+
+        Dataset downstairs = projector.getDownstairs();
+        double[] y = downstairs.getPoint(placed[0]).getVector().clone();
+        double[] direction = new double[lowDims];
+        double norm = 0;
+        for (int n = 0; n < lowDims; n++) {
+            direction[n] = Math.random() - 0.5;
+            norm += direction[n] * direction[n];
+        }
+        norm = Math.sqrt(norm);
+        for (int n = 0; n < lowDims; n++) {
+            y[n] += direction[n] / norm * distances[0];
+        }
+        double[] next = new double[lowDims];
+        for (int step = 0; step < PLACEMENT_STEPS; step++) {
+            // Guttman transform for one point against fixed neighbors
+            Arrays.fill(next, 0);
+            for (int c = 0; c < count; c++) {
+                double[] yj = downstairs.getPoint(placed[c]).getVector();
+                double d = 0;
+                for (int n = 0; n < lowDims; n++) {
+                    d += (y[n] - yj[n]) * (y[n] - yj[n]);
+                }
+                d = Math.sqrt(d);
+                double ratio = d > 0 ? distances[c] / d : 0;
+                for (int n = 0; n < lowDims; n++) {
+                    next[n] += yj[n] + ratio * (y[n] - yj[n]);
+                }
+            }
+            for (int n = 0; n < lowDims; n++) {
+                y[n] = next[n] / count;
+            }
+        }
+        downstairs.getPoint(i).setData(y);
+    }
+
+    /**
+     * Moves apart downstairs points that lie exactly on top of each other,
+     * which would otherwise have no defined gradient.
+     */
+    private void separateOverlappingPoints() {
+        Dataset downstairs = projector.getDownstairs();
+        Integer[] order = new Integer[downstairs.getNumPoints()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> compare(downstairs.getPoint(a)
+                .getVector(), downstairs.getPoint(b).getVector()));
+        for (int i = 1; i < order.length; i++) {
+            double[] previous = downstairs.getPoint(order[i - 1]).getVector();
+            double[] y = downstairs.getPoint(order[i]).getVector();
+            if (compare(previous, y) == 0) {
+                double[] moved = y.clone();
+                for (int n = 0; n < moved.length; n++) {
+                    moved[n] += (Math.random() - 0.5) * perturbationAmount;
+                }
+                downstairs.getPoint(order[i]).setData(moved);
+            }
+        }
+    }
+
+    /**
+     * @param a a vector
+     * @param b another vector
+     * @return the lexicographic order of the vectors
+     */
+    private static int compare(final double[] a, final double[] b) {
+        for (int n = 0; n < Math.min(a.length, b.length); n++) {
+            int c = Double.compare(a[n], b[n]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return Integer.compare(a.length, b.length);
     }
 
     @Override
     public void iterate() {
+        if (step()) {
+            projector.fireProjectorDataChanged();
+        }
+    }
+
+    /**
+     * Moves every point once. Iterations run on the event thread while new
+     * points are projected from the workspace thread, so this, {@link #init()}
+     * and {@link #project()} hold the lock of the projection method while they
+     * read or replace the arrays. Listeners are notified outside it.
+     *
+     * @return whether the points were moved
+     */
+    private synchronized boolean step() {
 
         if (projector.getUpstairs().getNumPoints() < 2) {
-            return;
+            return false;
         }
 
-        // If new points were added re-initialize
-        if (needsReInit()) {
-            init();
+        // Initialize, or add points added since the last iteration
+        update();
+        final int n = numPoints;
+        if (n < 2 || dstarSum <= 0) {
+            return false;
         }
 
-        yArray = projector.getDownstairs().getDatasetCopy();
-        d = projector.getDownstairs().getDistances();
-
-        // Computes partials
-        for (int m = 0; m < projector.getNumPoints(); m++) {
-            yM = yArray.get(m).getVector();
-            yNew = new double[projector.getDownstairs().getDimensions()];
+        final double[] y = new double[n * lowDims];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(projector.getDownstairs().getPoint(i)
+                    .getVector(), 0, y, i * lowDims, lowDims);
+        }
+        final double[] yNew = new double[n * lowDims];
+        final double[] errors = new double[n];
+        final long seed = iteration++;
+        final double scale = epsilon * 2 / dstarSum;
+        long work = dstar != null ? (long) n * n
+                : (long) n * (NEIGHBORS + SAMPLES);
+        forEachPoint(0, n, work, m -> errors[m] = dstar != null
+                ? exactStep(m, n, y, yNew, scale)
+                : sampledStep(m, n, y, yNew, scale, seed));
+
+        for (int m = 0; m < n; m++) {
+            projector.getDownstairs().getPoint(m).setData(
+                    Arrays.copyOfRange(yNew, m * lowDims, (m + 1) * lowDims));
+        }
 
-            for (int n = 0; n < projector.getDownstairs().getDimensions(); n++) {
-                partialSum = 0;
+        // Computes Closeness; every pair was counted from both ends
+        double e = 0;
+        for (int m = 0; m < n; m++) {
+            e += errors[m];
+        }
+        setError(e / 2 / dstarSum);
+        return true;
+    }
 
-                for (int i = 0; i < projector.getNumPoints(); i++) {
-                    if (i == m) {
-                        continue;
-                    }
+    /**
+     * Moves a point down the gradient of the stress over all pairs.
+     *
+     * @param m the point
+     * @param n the number of points at the start of the iteration
+     * @param y positions at the start of the iteration
+     * @param yNew receives the new position
+     * @param scale step size over the distance sum
+     * @return the stress of the pairs including the point
+     */
+    private double exactStep(final int m, final int n, final double[] y,
+            final double[] yNew, final double scale) {
+        double[] gradient = new double[lowDims];
+        double e = 0;
+        for (int i = 0; i < n; i++) {
+            if (i != m) {
+                double ds = i < m ? dstar[m * (m - 1) / 2 + i]
+                        : dstar[i * (i - 1) / 2 + m];
+                e += addTerm(gradient, y, m, i, ds, 1);
+            }
+        }
+        move(m, y, yNew, gradient, scale);
+        return e;
+    }
 
-                    yI = yArray.get(i).getVector();
-                    partialSum += (((dstar[i][m] - d[i][m]) * (yI[n] - yM[n]))
-                            / dstar[i][m] / d[i][m]);
-                }
+    /**
+     * Moves a point down an estimate of the gradient of the stress, from its
+     * neighbors and from random points standing in for the rest, then offers
+     * the random points as neighbors.
+     *
+     * @param m the point
+     * @param n the number of points at the start of the iteration
+     * @param y positions at the start of the iteration
+     * @param yNew receives the new position
+     * @param scale step size over the distance sum
+     * @param seed seed of the iteration's samples
+     * @return the estimated stress of the pairs including the point
+     */
+    private double sampledStep(final int m, final int n, final double[] y,
+            final double[] yNew, final double scale, final long seed) {
+        double[] gradient = new double[lowDims];
+        double e = 0;
+        int known = 0;
+        for (int k = m * NEIGHBORS; k < (m + 1) * NEIGHBORS; k++) {
+            if (neighbors[k] >= 0) {
+                e += addTerm(gradient, y, m, neighbors[k],
+                        neighborDistances[k], 1);
+                known++;
+            }
+        }
+        double weight = (n - 1.0 - known) / SAMPLES;
+        int[] sampled = new int[SAMPLES];
+        double[] sampledDistances = new double[SAMPLES];
+        for (int s = 0; s < SAMPLES; s++) {
+            int i = sample(m, n, s, seed);
+            double ds = highDistance(m, i);
+            sampled[s] = i;
+            sampledDistances[s] = ds;
+            e += addTerm(gradient, y, m, i, ds, weight);
+        }
+        move(m, y, yNew, gradient, scale);
+        for (int s = 0; s < SAMPLES; s++) {
+            offerNeighbor(m, sampled[s], sampledDistances[s]);
+        }
+        return e;
+    }
 
-                yNew[n] = yM[n] - ((epsilon * 2 * partialSum) / dstarSum);
+    /**
+     * Adds the contribution of one pair to the gradient at a point.
+     *
+     * @param gradient the gradient to add to
+     * @param y positions
+     * @param m the point
+     * @param i the other point
+     * @param ds their upstairs distance
+     * @param weight the number of pairs the pair stands for
+     * @return the weighted stress of the pair
+     */
+    private double addTerm(final double[] gradient, final double[] y,
+            final int m, final int i, final double ds, final double weight) {
+        if (!(ds > 0)) {
+            return 0;
+        }
+        double d = 0;
+        for (int n = 0; n < lowDims; n++) {
+            double diff = y[i * lowDims + n] - y[m * lowDims + n];
+            d += diff * diff;
+        }
+        d = Math.sqrt(d);
+        if (d > 0) {
+            double factor = weight * (ds - d) / ds / d;
+            for (int n = 0; n < lowDims; n++) {
+                gradient[n] += factor
+                        * (y[i * lowDims + n] - y[m * lowDims + n]);
             }
+        }
+        return weight * (ds - d) * (ds - d) / ds;
+    }
 
-            projector.getDownstairs().getPoint(m).setData(yNew);
+    /**
+     * @param m a point
+     * @param y positions at the start of the iteration
+     * @param yNew receives the new position
+     * @param gradient the partials at the point
+     * @param scale step size over the distance sum
+     */
+    private void move(final int m, final double[] y, final double[] yNew,
+            final double[] gradient, final double scale) {
+        for (int n = 0; n < lowDims; n++) {
+            yNew[m * lowDims + n] = y[m * lowDims + n] - scale * gradient[n];
         }
+    }
 
-        // Computes Closeness
-        e = 0;
-        for (int i = 0; i < projector.getNumPoints(); i++) {
-            for (int j = i + 1; j < projector.getNumPoints(); j++) {
-                e += ((dstar[i][j] - d[i][j]) * (dstar[i][j] - d[i][j]))
-                        / dstar[i][j];
+    /**
+     * Keeps a point among the neighbors of another if it is closer than the
+     * farthest one.
+     *
+     * @param m the point whose neighbors are updated
+     * @param i the candidate neighbor
+     * @param ds their upstairs distance
+     */
+    private void offerNeighbor(final int m, final int i, final double ds) {
+        int start = m * NEIGHBORS;
+        int k = start + NEIGHBORS - 1;
+        if (i == m || !(ds < neighborDistances[k])) {
+            return;
+        }
+        for (int j = start; j < start + NEIGHBORS; j++) {
+            if (neighbors[j] == i) {
+                return;
             }
         }
+        while (k > start && neighborDistances[k - 1] > ds) {
+            neighbors[k] = neighbors[k - 1];
+            neighborDistances[k] = neighborDistances[k - 1];
+            k--;
+        }
+        neighbors[k] = i;
+        neighborDistances[k] = ds;
+    }
+
+    /**
+     * Picks a random point other than a given one, deterministically from a
+     * seed, so that results do not depend on how points are split across
+     * threads.
+     *
+     * @param m the point to avoid
+     * @param n the number of points to pick from
+     * @param s index of the sample
+     * @param seed seed of the iteration
+     * @return a point other than m, below n
+     */
+    private int sample(final int m, final int n, final int s,
+            final long seed) {
+        long z = seed * 0x9E3779B97F4A7C15L + m * 0xBF58476D1CE4E5B9L
+                + s * 0x94D049BB133111EBL;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        int i = (int) ((z >>> 1) % (n - 1));
+        return i < m ? i : i + 1;
+    }
 
-        currentCloseness = e / dstarSum;
-        setError(currentCloseness);
-        projector.fireProjectorDataChanged();
-        // System.out.println("currentCloseness = " + currentCloseness);
+    /**
+     * @param i a point
+     * @param j another point
+     * @return their upstairs distance
+     */
+    private double highDistance(final int i, final int j) {
+        double sum = 0;
+        for (int k = 0, a = i * highDims, b = j * highDims; k < highDims;
+                k++, a++, b++) {
+            double diff = high[a] - high[b];
+            sum += diff * diff;
+        }
+        return Math.sqrt(sum);
+    }
+
+    /**
+     * Runs an action on a range of points, in parallel if there is enough
+     * work.
+     *
+     * @param from first point
+     * @param to end point, exclusive
+     * @param work rough number of pair terms involved
+     * @param action the action
+     */
+    private static void forEachPoint(final int from, final int to,
+            final long work, final IntConsumer action) {
+        IntStream range = IntStream.range(from, to);
+        if (work >= PARALLEL_THRESHOLD) {
+            range = range.parallel();
+        }
+        range.forEach(action);
     }
 
     /**
@@ -171,11 +171,6 @@ public class Projector {
             return;
         }
 
-        // Iterable functions to be re-initialized when new data is added
-        if (projectionMethod.isIterable()) {
-            ((IterableProjectionMethod) projectionMethod).setNeedsReInit(true);
-        }
-
         // Add the point directly to the upstairs dataset. If the point already
         // exists just change colors and return. If the point is new. add a
         // point downstairs, and call the projection algorithm.
@@ -195,6 +190,7 @@ public class Projector {
                         point.get(1) });
             }
             downstairs.addPoint(newPoint);
+            // Iterable methods take new points into account here
             projectionMethod.project();
             fireDataPointAdded();
         }
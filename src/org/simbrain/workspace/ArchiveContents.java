@@ -353,7 +353,7 @@ class ArchiveContents {
             this.className = component.getClass().getCanonicalName();
             this.id = serializer.getId(component);
             this.name = component.getName();
-            this.format = component.getDefaultFormat();
+            this.format = component.getArchiveFormat();
             this.uri = "components/" + id + '_' + name.replaceAll("\\s", "_")
                     + '.' + format;
         }
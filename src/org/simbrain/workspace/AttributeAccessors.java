@@ -0,0 +1,349 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.workspace;
+
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleConsumer;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Compiles the getter and setter methods wrapped by producers and consumers
+ * into functional objects, so that coupling updates do not go through
+ * <code>Method.invoke</code>.
+ * <p>
+ * Methods without auxiliary arguments on public classes are compiled with
+ * {@link LambdaMetafactory}, which yields an ordinary call site the JIT can
+ * inline. Other methods are bound into a {@link MethodHandle} with the
+ * auxiliary arguments inserted up front and the type adapted once, so calls
+ * are exact and allocate nothing. Double valued attributes get
+ * {@link DoubleSupplier} and {@link DoubleConsumer} accessors that never box.
+ * If a method can not be accessed either way, the accessor falls back to
+ * reflection.
+ */
+final class AttributeAccessors {
+
+    /** Lookup used to compile accessors. */
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    /** Accessor factories by the method they call. */
+    private static final Map<Method, MethodHandle> FACTORIES =
+            new ConcurrentHashMap<Method, MethodHandle>();
+
+    /**
+     * Not instantiable.
+     */
+    private AttributeAccessors() {
+    }
+
+    /**
+     * Compile a getter returning a double, or a value convertible to one.
+     *
+     * @param target the object the method is called on
+     * @param method the method
+     * @param args auxiliary arguments, or null
+     * @return the compiled getter
+     */
+    static DoubleSupplier doubleGetter(final Object target,
+            final Method method, final Object[] args) {
+        if (isEmpty(args) && method.getReturnType() == double.class
+                && isAccessible(method)) {
+            try {
+                return (DoubleSupplier) factory(method, DoubleSupplier.class,
+                        "getAsDouble", MethodType.methodType(double.class))
+                        .invoke(target);
+            } catch (Throwable t) {
+                // Fall through to a method handle
+            }
+        }
+        try {
+            final MethodHandle mh = bind(target, method, args, 0)
+                    .asType(MethodType.methodType(double.class));
+            return () -> {
+                try {
+                    return (double) mh.invokeExact();
+                } catch (Throwable t) {
+                    throw propagate(t);
+                }
+            };
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return () -> ((Number) invoke(target, method, args))
+                    .doubleValue();
+        }
+    }
+
+    /**
+     * Compile a getter returning any type.
+     *
+     * @param target the object the method is called on
+     * @param method the method
+     * @param args auxiliary arguments, or null
+     * @return the compiled getter
+     */
+    @SuppressWarnings("unchecked")
+    static Supplier<Object> getter(final Object target, final Method method,
+            final Object[] args) {
+        if (isEmpty(args) && !method.getReturnType().isPrimitive()
+                && isAccessible(method)) {
+            try {
+                return (Supplier<Object>) factory(method, Supplier.class,
+                        "get", MethodType.methodType(Object.class))
+                        .invoke(target);
+            } catch (Throwable t) {
+                // Fall through to a method handle
+            }
+        }
+        try {
+            final MethodHandle mh = bind(target, method, args, 0)
+                    .asType(MethodType.methodType(Object.class));
+            return () -> {
+                try {
+                    return (Object) mh.invokeExact();
+                } catch (Throwable t) {
+                    throw propagate(t);
+                }
+            };
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return () -> invoke(target, method, args);
+        }
+    }
+
+    /**
+     * Compile a setter whose first parameter is a double.
+     *
+     * @param target the object the method is called on
+     * @param method the method
+     * @param args auxiliary arguments following the value, or null
+     * @return the compiled setter
+     */
+    static DoubleConsumer doubleSetter(final Object target,
+            final Method method, final Object[] args) {
+        if (isEmpty(args) && isAccessible(method)) {
+            try {
+                return (DoubleConsumer) factory(method, DoubleConsumer.class,
+                        "accept",
+                        MethodType.methodType(void.class, double.class))
+                        .invoke(target);
+            } catch (Throwable t) {
+                // Fall through to a method handle
+            }
+        }
+        try {
+            final MethodHandle mh = bind(target, method, args, 1).asType(
+                    MethodType.methodType(void.class, double.class));
+            return value -> {
+                try {
+                    mh.invokeExact(value);
+                } catch (Throwable t) {
+                    throw propagate(t);
+                }
+            };
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return value -> invoke(target, method, prepend(value, args));
+        }
+    }
+
+    /**
+     * Compile a setter whose first parameter is of any type.
+     *
+     * @param target the object the method is called on
+     * @param method the method
+     * @param args auxiliary arguments following the value, or null
+     * @return the compiled setter
+     */
+    @SuppressWarnings("unchecked")
+    static java.util.function.Consumer<Object> setter(final Object target,
+            final Method method, final Object[] args) {
+        Class<?> type = method.getParameterTypes()[0];
+        if (isEmpty(args) && !type.isPrimitive() && isAccessible(method)) {
+            try {
+                return (java.util.function.Consumer<Object>) factory(method,
+                        java.util.function.Consumer.class, "accept",
+                        MethodType.methodType(void.class, Object.class))
+                        .invoke(target);
+            } catch (Throwable t) {
+                // Fall through to a method handle
+            }
+        }
+        try {
+            final MethodHandle mh = bind(target, method, args, 1).asType(
+                    MethodType.methodType(void.class, Object.class));
+            return value -> {
+                try {
+                    mh.invokeExact(value);
+                } catch (Throwable t) {
+                    throw propagate(t);
+                }
+            };
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return value -> invoke(target, method, prepend(value, args));
+        }
+    }
+
+    /**
+     * Return the factory that creates instances of a functional interface
+     * calling a method on a given receiver, creating it the first time. A
+     * class is generated once per method and shared by all attributes wrapping
+     * that method, which keeps coupling update call sites monomorphic.
+     *
+     * @param method the method to call
+     * @param functionalInterface the interface to implement
+     * @param name the name of the interface's method
+     * @param erasedType the erased type of the interface's method
+     * @return a handle taking the receiver and returning the implementation
+     * @throws LambdaConversionException if the method does not fit the
+     *             interface
+     * @throws IllegalAccessException if the method can not be accessed
+     */
+    private static MethodHandle factory(final Method method,
+            final Class<?> functionalInterface, final String name,
+            final MethodType erasedType)
+            throws LambdaConversionException, IllegalAccessException {
+        MethodHandle factory = FACTORIES.get(method);
+        if (factory == null) {
+            MethodHandle impl = LOOKUP.unreflect(method);
+            factory = LambdaMetafactory.metafactory(LOOKUP, name,
+                    MethodType.methodType(functionalInterface,
+                            method.getDeclaringClass()),
+                    erasedType, impl, impl.type().dropParameterTypes(0, 1))
+                    .getTarget();
+            FACTORIES.putIfAbsent(method, factory);
+        }
+        return factory;
+    }
+
+    /**
+     * Create a handle on a method bound to its target, with the auxiliary
+     * arguments inserted at a position.
+     *
+     * @param target the object the method is called on
+     * @param method the method
+     * @param args auxiliary arguments, or null
+     * @param position the parameter index of the first auxiliary argument
+     * @return the bound handle
+     * @throws IllegalAccessException if the method can not be accessed
+     */
+    private static MethodHandle bind(final Object target, final Method method,
+            final Object[] args, final int position)
+            throws IllegalAccessException {
+        MethodHandle mh;
+        try {
+            mh = LOOKUP.unreflect(method);
+        } catch (IllegalAccessException e) {
+            // E.g. a public method declared in a package-private class
+            method.setAccessible(true);
+            mh = LOOKUP.unreflect(method);
+        }
+        mh = mh.bindTo(target);
+        if (!isEmpty(args)) {
+            mh = MethodHandles.insertArguments(mh, position, args);
+        }
+        return mh;
+    }
+
+    /**
+     * Whether a method can be linked to directly from generated code, i.e.
+     * it and every class enclosing it are public.
+     *
+     * @param method the method
+     * @return true if the method is publicly accessible
+     */
+    private static boolean isAccessible(final Method method) {
+        if (!Modifier.isPublic(method.getModifiers())
+                || Modifier.isStatic(method.getModifiers())) {
+            return false;
+        }
+        for (Class<?> c = method.getDeclaringClass(); c != null; c = c
+                .getEnclosingClass()) {
+            if (!Modifier.isPublic(c.getModifiers())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param args auxiliary arguments
+     * @return true if there are none
+     */
+    private static boolean isEmpty(final Object[] args) {
+        return args == null || args.length == 0;
+    }
+
+    /**
+     * @param value the first argument
+     * @param args the remaining arguments, or null
+     * @return all the arguments
+     */
+    private static Object[] prepend(final Object value, final Object[] args) {
+        if (isEmpty(args)) {
+            return new Object[] { value };
+        }
+        Object[] all = new Object[args.length + 1];
+        all[0] = value;
+        System.arraycopy(args, 0, all, 1, args.length);
+        return all;
+    }
+
+    /**
+     * Call a method reflectively; used when it can not be compiled.
+     *
+     * @param target the object the method is called on
+     * @param method the method
+     * @param args the arguments
+     * @return the value returned by the method
+     */
+    private static Object invoke(final Object target, final Method method,
+            final Object[] args) {
+        try {
+            return method.invoke(target, args);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw propagate(e.getCause());
+        }
+    }
+
+    /**
+     * Rethrow an exception thrown by an attribute method, wrapping it if it
+     * is checked.
+     *
+     * @param t the exception
+     * @return never returns normally; declared so callers can throw it
+     */
+    private static RuntimeException propagate(final Throwable t) {
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        throw new IllegalStateException(t);
+    }
+
+}
@@ -17,8 +17,10 @@
  */
 package org.simbrain.workspace;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.function.DoubleConsumer;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
 
 /**
  * The main usage of this class by API users is to create potential attributes
@@ -37,6 +39,11 @@ import java.lang.reflect.Method;
  * </ol>
  * <p>
  * These concepts are discussed in the javadocs for <code>Attribute</code>.
+ * <p>
+ * The methods wrapped by producers and consumers are compiled into direct
+ * accessors when the attribute is created (see
+ * <code>AttributeAccessors</code>), rather than being called reflectively on
+ * every coupling update.
  *
  * @author jyoshimi
  *
@@ -76,11 +83,16 @@ public class AttributeManager {
 
         Producer<?> producer = new Producer() {
 
-            private Method theMethod;
+            /** Compiled getter, if the data type is double. */
+            private DoubleSupplier doubleGetter;
+
+            /** Compiled getter, if the data type is not double. */
+            private Supplier<Object> getter;
 
             // Static initializer
             {
                 try {
+                    Method theMethod;
                     if (argumentDataTypes == null) {
                         theMethod = parentObject.getClass().getMethod(
                                 methodName);
@@ -88,6 +100,13 @@ public class AttributeManager {
                         theMethod = parentObject.getClass().getMethod(
                                 methodName, argumentDataTypes);
                     }
+                    if (dataType == double.class) {
+                        doubleGetter = AttributeAccessors.doubleGetter(
+                                parentObject, theMethod, argumentValues);
+                    } else {
+                        getter = AttributeAccessors.getter(parentObject,
+                                theMethod, argumentValues);
+                    }
                 } catch (SecurityException e1) {
                     e1.printStackTrace();
                 } catch (NoSuchMethodException e1) {
@@ -103,19 +122,20 @@ public class AttributeManager {
              * {@inheritDoc}
              */
             public Object getValue() {
-                try {
-                    return theMethod.invoke(parentObject, argumentValues);
-                } catch (IllegalArgumentException e) {
-                    // TODO Auto-generated catch block
-                    e.printStackTrace();
-                } catch (IllegalAccessException e) {
-                    // TODO Auto-generated catch block
-                    e.printStackTrace();
-                } catch (InvocationTargetException e) {
-                    // TODO Auto-generated catch block
-                    e.printStackTrace();
+                if (doubleGetter != null) {
+                    return doubleGetter.getAsDouble();
+                }
+                return getter.get();
+            }
+
+            /**
+             * {@inheritDoc}
+             */
+            public double getDoubleValue() {
+                if (doubleGetter != null) {
+                    return doubleGetter.getAsDouble();
                 }
-                return null;
+                return ((Number) getter.get()).doubleValue();
             }
 
             /**
@@ -210,14 +230,25 @@ public class AttributeManager {
 
         Consumer<?> consumer = new Consumer() {
 
-            private Method theMethod;
+            /** Compiled setter, if the data type is double. */
+            private DoubleConsumer doubleSetter;
+
+            /** Compiled setter, if the data type is not double. */
+            private java.util.function.Consumer<Object> setter;
 
             // Static initializer
             {
                 // System.out.println(Arrays.asList(argumentDataTypes));
                 try {
-                    theMethod = parentObject.getClass().getMethod(methodName,
-                            argumentDataTypes);
+                    Method theMethod = parentObject.getClass().getMethod(
+                            methodName, argumentDataTypes);
+                    if (argumentDataTypes[0] == double.class) {
+                        doubleSetter = AttributeAccessors.doubleSetter(
+                                parentObject, theMethod, argumentValues);
+                    } else {
+                        setter = AttributeAccessors.setter(parentObject,
+                                theMethod, argumentValues);
+                    }
                 } catch (SecurityException e1) {
                     e1.printStackTrace();
                 } catch (NoSuchMethodException e1) {
@@ -238,26 +269,21 @@ public class AttributeManager {
              * {@inheritDoc}
              */
             public void setValue(Object value) {
-                try {
+                if (doubleSetter != null) {
+                    doubleSetter.accept(((Number) value).doubleValue());
+                } else {
+                    setter.accept(value);
+                }
+            }
 
-                    if (argumentDataTypes.length == 1) {
-                        theMethod.invoke(parentObject, new Object[] { value });
-                    } else {
-                        Object[] concatArray = new Object[argumentValues.length + 1];
-                        concatArray[0] = value;
-                        System.arraycopy(argumentValues, 0, concatArray, 1,
-                                argumentValues.length);
-                        theMethod.invoke(parentObject, concatArray);
-                    }
-                } catch (IllegalArgumentException e) {
-                    // TODO Auto-generated catch block
-                    e.printStackTrace();
-                } catch (IllegalAccessException e) {
-                    // TODO Auto-generated catch block
-                    e.printStackTrace();
-                } catch (InvocationTargetException e) {
-                    // TODO Auto-generated catch block
-                    e.printStackTrace();
+            /**
+             * {@inheritDoc}
+             */
+            public void setDoubleValue(double value) {
+                if (doubleSetter != null) {
+                    doubleSetter.accept(value);
+                } else {
+                    setter.accept(value);
                 }
             }
 
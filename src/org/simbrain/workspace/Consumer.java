@@ -41,4 +41,16 @@ public interface Consumer<E> extends Attribute {
      */
     void setValue(E value);
 
+    /**
+     * Set the value for this consuming attribute from a primitive double.
+     * Only valid for consumers whose data type is double; used by couplings
+     * to pass doubles without boxing.
+     *
+     * @param value value for this consuming attribute
+     */
+    @SuppressWarnings("unchecked")
+    default void setDoubleValue(double value) {
+        setValue((E) Double.valueOf(value));
+    }
+
 }
@@ -62,6 +62,29 @@ public final class Coupling<E> {
     /** Value of buffer. */
     public E buffer;
 
+    /**
+     * True if both attributes have data type double, in which case values are
+     * passed through {@link #doubleBuffer} without boxing and
+     * {@link #buffer} is not used.
+     */
+    private boolean primitiveDouble;
+
+    /** Value of buffer for primitive double couplings. */
+    private double doubleBuffer;
+
+    /**
+     * True if both attributes have data type double[]. The producer's values
+     * are then copied into {@link #arrayBuffer}, which is allocated once and
+     * reused, so that a whole vector (e.g. a neuron group's activations or a
+     * sensor matrix) moves through one coupling without per-update
+     * allocation. Consumers of arrays must copy the values they are given
+     * rather than keep the array.
+     */
+    private boolean primitiveArray;
+
+    /** Reused buffer for double[] couplings. */
+    private double[] arrayBuffer;
+
     /**
      * Create a coupling between a specified consuming attribute, without yet
      * specifying the corresponding producing attribute.
@@ -100,6 +123,8 @@ public final class Coupling<E> {
 
         this.producer = Producer;
         this.consumer = Consumer;
+        primitiveDouble = isDouble(Producer) && isDouble(Consumer);
+        primitiveArray = isArray(Producer) && isArray(Consumer);
     }
 
     /**
@@ -114,6 +139,24 @@ public final class Coupling<E> {
         LOGGER.debug("new Coupling");
         this.producer = (Producer<E>) producer.createProducer();
         this.consumer = (Consumer<E>) consumer.createConsumer();
+        primitiveDouble = isDouble(this.producer) && isDouble(this.consumer);
+        primitiveArray = isArray(this.producer) && isArray(this.consumer);
+    }
+
+    /**
+     * @param attribute an attribute
+     * @return true if the attribute's data type is double
+     */
+    private static boolean isDouble(final Attribute attribute) {
+        return attribute.getDataType() == double.class;
+    }
+
+    /**
+     * @param attribute an attribute
+     * @return true if the attribute's data type is double[]
+     */
+    private static boolean isArray(final Attribute attribute) {
+        return attribute.getDataType() == double[].class;
     }
 
     /**
@@ -124,12 +167,40 @@ public final class Coupling<E> {
                 .getParentComponent();
         try {
             synchronized (producerComponent) {
-                buffer = producer.getValue();
+                if (primitiveDouble) {
+                    doubleBuffer = producer.getDoubleValue();
+                } else if (primitiveArray) {
+                    buffer = copyToArrayBuffer((double[]) producer.getValue());
+                } else {
+                    buffer = producer.getValue();
+                }
             }
         } catch (Exception e) {
             e.printStackTrace();
         }
-        LOGGER.debug("buffer set: " + buffer);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("buffer set: "
+                    + (primitiveDouble ? doubleBuffer : buffer));
+        }
+    }
+
+    /**
+     * Copy values into the reusable array buffer, reallocating it only if the
+     * length has changed.
+     *
+     * @param values the values produced, may be null
+     * @return the buffer holding the values, or null
+     */
+    @SuppressWarnings("unchecked")
+    private E copyToArrayBuffer(final double[] values) {
+        if (values == null) {
+            return null;
+        }
+        if (arrayBuffer == null || arrayBuffer.length != values.length) {
+            arrayBuffer = new double[values.length];
+        }
+        System.arraycopy(values, 0, arrayBuffer, 0, values.length);
+        return (E) arrayBuffer;
     }
 
     /**
@@ -141,7 +212,11 @@ public final class Coupling<E> {
                     .getParentComponent();
             try {
                 synchronized (consumer) {
-                    consumer.setValue(buffer);
+                    if (primitiveDouble) {
+                        consumer.setDoubleValue(doubleBuffer);
+                    } else {
+                        consumer.setValue(buffer);
+                    }
                 }
             } catch (Exception e) {
                 // TODO exception service?
@@ -201,12 +201,13 @@ public class CouplingManager {
      */
     public void updateAllCouplings() {
         LOGGER.debug("updating all couplings");
-        for (Coupling<?> coupling : getCouplings()) {
-            LOGGER.trace(coupling.getClass());
+        // Iterate the list itself rather than an unmodifiable view of it, so
+        // the (snapshot) iterators can be optimized away
+        for (Coupling<?> coupling : couplingList) {
             coupling.setBuffer();
         }
 
-        for (Coupling<?> coupling : getCouplings()) {
+        for (Coupling<?> coupling : couplingList) {
             coupling.update();
         }
     }
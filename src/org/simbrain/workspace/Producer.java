@@ -41,4 +41,15 @@ public interface Producer<E> extends Attribute {
      */
     E getValue();
 
+    /**
+     * Return the value for this producer as a primitive double. Only valid
+     * for producers whose data type is double; used by couplings to pass
+     * doubles without boxing.
+     *
+     * @return the value for this producer
+     */
+    default double getDoubleValue() {
+        return ((Number) getValue()).doubleValue();
+    }
+
 }
@@ -19,7 +19,6 @@
 package org.simbrain.workspace;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -99,6 +98,13 @@ public class Workspace {
      */
     private int updateDelay = 0;
 
+    /**
+     * Most times per second the gui draws the components that publish
+     * frames (see {@link WorkspaceComponent#publishFrame()}). When it is 0,
+     * updates wait for the gui to finish drawing after every iteration.
+     */
+    private volatile int frameRate = 0;
+
     /**
      * The updater used to manage component updates.
      */
@@ -625,6 +631,20 @@ public class Workspace {
         this.updateDelay = updateDelay;
     }
 
+    /**
+     * @return the frameRate
+     */
+    public int getFrameRate() {
+        return frameRate;
+    }
+
+    /**
+     * @param frameRate the frameRate to set
+     */
+    public void setFrameRate(int frameRate) {
+        this.frameRate = frameRate;
+    }
+
     /**
      * Actions required prior to proper serialization.
      */
@@ -653,7 +673,7 @@ public class Workspace {
         try {
             if (theFile != null) {
                 clearWorkspace();
-                serializer.deserialize(new FileInputStream(theFile));
+                serializer.deserialize(theFile);
                 setCurrentFile(theFile);
                 setWorkspaceChanged(false);
                 fireNewWorkspaceOpened();
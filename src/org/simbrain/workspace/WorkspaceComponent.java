@@ -160,6 +160,15 @@ public abstract class WorkspaceComponent {
         /* no default implementation */
     }
 
+    /**
+     * Called by the updater when updating stops while the gui is drawn at a
+     * fixed frame rate (see {@link Workspace#setFrameRate(int)}). Components
+     * that publish frames for their gui should publish the current state.
+     */
+    public void publishFrame() {
+        /* no default implementation */
+    }
+
     /**
      * Return the potential consumers associated with this component. Subclasses
      * should override this to make their consumers available.
@@ -467,6 +476,19 @@ public abstract class WorkspaceComponent {
         return "xml";
     }
 
+    /**
+     * The format a component is saved in inside a workspace archive, passed
+     * to {@link #save(OutputStream, String)} and used as the archive entry's
+     * extension. By default the same as {@link #getDefaultFormat()}.
+     * Components may return a more compact format here, as long as
+     * their open method recognizes it.
+     *
+     * @return the archive format
+     */
+    public String getArchiveFormat() {
+        return getDefaultFormat();
+    }
+
     /**
      * Set to true when a component changes, set to false after a component is
      * saved.
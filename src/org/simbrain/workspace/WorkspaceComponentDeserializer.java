@@ -62,7 +62,8 @@ public class WorkspaceComponentDeserializer {
                     .forName(archivedComponent.getClassName());
 
             WorkspaceComponent wc = deserializeWorkspaceComponent(clazz,
-                    archivedComponent.getName(), input, null);
+                    archivedComponent.getName(), input,
+                    archivedComponent.getFormat());
 
             componentKeys.put(archivedComponent.getUri(), wc);
             wc.setChangedSinceLastSave(false);
@@ -51,7 +51,7 @@ public class WorkspaceComponentSerializer {
      * @return The id for the component that was serialized.
      */
     int serializeComponent(final WorkspaceComponent component) {
-        component.save(stream, null);
+        component.save(stream, component.getArchiveFormat());
         return getId(component);
     }
 }
@@ -18,7 +18,9 @@
  */
 package org.simbrain.workspace;
 
+import java.awt.GraphicsEnvironment;
 import java.awt.Rectangle;
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -33,6 +35,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
@@ -71,7 +74,9 @@ public class WorkspaceSerializer {
      */
     public WorkspaceSerializer(final Workspace workspace) {
         this.workspace = workspace;
-        this.desktop = SimbrainDesktop.getDesktop(workspace);
+        // Headless (e.g. batch) runs never have a desktop; don't load the gui
+        this.desktop = GraphicsEnvironment.isHeadless() ? null
+                : SimbrainDesktop.getDesktop(workspace);
     }
 
     /**
@@ -131,13 +136,12 @@ public class WorkspaceSerializer {
             zipStream.putNextEntry(entry);
             serializer.serializeComponent(component);
 
-            GuiComponent<?> desktopComponent = SimbrainDesktop.getDesktop(
-                    workspace).getDesktopComponent(component);
-
             /*
              * If there is a desktop component associated with the component
-             * it's serialized here.
+             * it's serialized here. There is none when running headless.
              */
+            GuiComponent<?> desktopComponent = desktop == null ? null
+                    : desktop.getDesktopComponent(component);
             if (desktopComponent != null) {
                 ArchiveContents.ArchivedComponent.ArchivedDesktopComponent dc = archiveComp
                         .addDesktopComponent(desktopComponent);
@@ -167,40 +171,105 @@ public class WorkspaceSerializer {
      * @param exclude The list of uris to ignore on import.
      * @throws IOException if an IO error occurs.
      */
-    @SuppressWarnings("unchecked")
     public void deserialize(final InputStream stream,
             final Collection<? extends String> exclude) throws IOException {
-        Map<String, byte[]> entries = new HashMap<String, byte[]>();
+        // A stream can only be read in order, and contents.xml comes last, so
+        // each entry is inflated once into its own buffer
+        final Map<String, byte[]> entries = new HashMap<String, byte[]>();
+        ZipInputStream zip = new ZipInputStream(stream);
         ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-
         byte[] buffer = new byte[BUFFER_SIZE];
-
-        for (int read; (read = stream.read(buffer)) >= 0;) {
-            bytes.write(buffer, 0, read);
+        for (ZipEntry entry; (entry = zip.getNextEntry()) != null;) {
+            bytes.reset();
+            for (int read; (read = zip.read(buffer)) >= 0;) {
+                bytes.write(buffer, 0, read);
+            }
+            entries.put(entry.getName(), bytes.toByteArray());
         }
+        deserialize(new EntrySource() {
+            @Override
+            public InputStream open(final String name) {
+                byte[] data = entries.get(name);
+                return data == null ? null : new ByteArrayInputStream(data);
+            }
+        }, exclude);
+    }
 
-        ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(
-                bytes.toByteArray()));
-        ArchiveContents contents = null;
-        WorkspaceComponentDeserializer componentDeserializer = new WorkspaceComponentDeserializer();
-
-        ZipEntry entry = zip.getNextEntry();
+    /**
+     * Deserializes all the entries in the provided zip file.
+     *
+     * @param file The zip file.
+     * @throws IOException If an IO error occurs.
+     */
+    public void deserialize(final File file) throws IOException {
+        Collection<? extends String> empty = Collections.emptySet();
+        deserialize(file, empty);
+    }
 
-        for (ZipEntry next; entry != null; entry = next) {
-            next = zip.getNextEntry();
-            entries.put(entry.getName(), new byte[(int) entry.getSize()]);
+    /**
+     * Creates a workspace from a zip file. Unlike reading from a stream,
+     * entries are inflated straight into the components as they are opened,
+     * so the archive is never held in memory.
+     *
+     * @param file The zip file to read from.
+     * @param exclude The list of uris to ignore on import.
+     * @throws IOException if an IO error occurs.
+     */
+    public void deserialize(final File file,
+            final Collection<? extends String> exclude) throws IOException {
+        final ZipFile zip = new ZipFile(file);
+        try {
+            deserialize(new EntrySource() {
+                @Override
+                public InputStream open(final String name) throws IOException {
+                    ZipEntry entry = zip.getEntry(name);
+                    return entry == null ? null : new BufferedInputStream(
+                            zip.getInputStream(entry), BUFFER_SIZE * 64);
+                }
+            }, exclude);
+        } finally {
+            zip.close();
         }
+    }
 
-        zip = new ZipInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    /**
+     * Source of the named entries of a workspace archive.
+     */
+    private interface EntrySource {
+
+        /**
+         * @param name the name of an entry
+         * @return a stream over the entry's contents, or null if there is no
+         *         such entry
+         * @throws IOException if an IO error occurs
+         */
+        InputStream open(String name) throws IOException;
+    }
 
-        while ((entry = zip.getNextEntry()) != null) {
-            byte[] data = entries.get(entry.getName());
-            read(zip, data);
-        }
+    /**
+     * Creates a workspace from the entries of an archive.
+     *
+     * @param entries The entries to read from.
+     * @param exclude The list of uris to ignore on import.
+     * @throws IOException if an IO error occurs.
+     */
+    @SuppressWarnings("unchecked")
+    private void deserialize(final EntrySource entries,
+            final Collection<? extends String> exclude) throws IOException {
+        ArchiveContents contents = null;
+        WorkspaceComponentDeserializer componentDeserializer = new WorkspaceComponentDeserializer();
 
         // Get the archived contents file.
-        contents = (ArchiveContents) ArchiveContents.xstream().fromXML(
-                new ByteArrayInputStream(entries.get("contents.xml")));
+        InputStream contentsStream = entries.open("contents.xml");
+        if (contentsStream == null) {
+            throw new IOException("No contents.xml in workspace archive");
+        }
+        try {
+            contents = (ArchiveContents) ArchiveContents.xstream().fromXML(
+                    contentsStream);
+        } finally {
+            contentsStream.close();
+        }
 
         // Add Components
         if (contents.getArchivedComponents() != null) {
@@ -210,21 +279,31 @@ public class WorkspaceSerializer {
                     continue;
                 }
 
-                WorkspaceComponent wc = componentDeserializer
-                        .deserializeWorkspaceComponent(
-                                archivedComponent,
-                                new ByteArrayInputStream(entries
-                                        .get(archivedComponent.getUri())));
+                InputStream componentStream = entries.open(archivedComponent
+                        .getUri());
+                WorkspaceComponent wc;
+                try {
+                    wc = componentDeserializer.deserializeWorkspaceComponent(
+                            archivedComponent, componentStream);
+                } finally {
+                    componentStream.close();
+                }
 
                 // This will cause a desktop component (GuiComponent) to be
                 // created
                 workspace.addWorkspaceComponent(wc);
 
-                if (archivedComponent.getDesktopComponent() != null) {
-                    Rectangle bounds = (Rectangle) new XStream(new DomDriver())
-                            .fromXML(new ByteArrayInputStream(entries
-                                    .get(archivedComponent
-                                            .getDesktopComponent().getUri())));
+                if (archivedComponent.getDesktopComponent() != null
+                        && desktop != null) {
+                    InputStream boundsStream = entries.open(archivedComponent
+                            .getDesktopComponent().getUri());
+                    Rectangle bounds;
+                    try {
+                        bounds = (Rectangle) new XStream(new DomDriver())
+                                .fromXML(boundsStream);
+                    } finally {
+                        boundsStream.close();
+                    }
                     GuiComponent<?> desktopComponent = desktop
                             .getDesktopComponent(wc);
                     desktopComponent.getParentFrame().setBounds(bounds);
@@ -306,31 +385,13 @@ public class WorkspaceSerializer {
         if (contents.getWorkspaceParameters() != null) {
             workspace.setUpdateDelay(contents.getWorkspaceParameters()
                     .getUpdateDelay());
+            workspace.setFrameRate(contents.getWorkspaceParameters()
+                    .getFrameRate());
             workspace.getUpdater().setTime(
                     contents.getWorkspaceParameters().getSavedTime());
         }
     }
 
-    /**
-     * Helper method that will read the InputStream repeatedly until the given
-     * array is filled.
-     *
-     * @param istream the InputStream to read from.
-     * @param bytes the array to write to
-     * @throws IOException if there is an IO error
-     */
-    private static void read(final InputStream istream, final byte[] bytes)
-            throws IOException {
-        int pos = 0;
-        while (pos < bytes.length) {
-            int read = istream.read(bytes, pos, bytes.length - pos);
-            if (read < 0) {
-                throw new RuntimeException("premature EOF");
-            }
-            pos += read;
-        }
-    }
-
     /**
      * Helper method for openings workspace components from a file.
      *
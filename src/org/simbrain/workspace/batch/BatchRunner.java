@@ -0,0 +1,459 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.workspace.batch;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.simbrain.workspace.Workspace;
+import org.simbrain.workspace.WorkspaceSerializer;
+
+/**
+ * Runs many variants of one workspace without a gui. The archive is read
+ * once and deserialized afresh for every run. Each run sets a combination of
+ * parameter values, updates its workspace for a number of iterations and
+ * writes the values of a set of outputs to a csv file as it goes. Runs are
+ * spread over a fixed size thread pool, each updating its workspace in its
+ * own pool thread.
+ * <p>
+ * Parameters and outputs are named by {@link PropertyPath}s such as
+ * <code>Network1/Neuron_5/activation</code>. Every combination of parameter
+ * values is run (a grid sweep), optionally several times. The output
+ * directory gets a <code>runs.csv</code> listing the parameter values of each
+ * run, and a <code>run-N.csv</code> for each run with one row per recorded
+ * iteration.
+ * <p>
+ * From the command line:
+ *
+ * <pre>
+ * java -Djava.awt.headless=true org.simbrain.workspace.batch.BatchRunner
+ *     [-n iterations] [-t threads] [-r repeats] [-e recordEvery]
+ *     [-d outputDir] [-p path=v1,v2,...]... [-o path]... workspace.zip
+ * </pre>
+ *
+ * Or from the ant build with
+ * <code>ant batch -Dbatch.args="..."</code>.
+ */
+public class BatchRunner {
+
+    /** The static logger for the class. */
+    private static final Logger LOGGER = Logger.getLogger(BatchRunner.class);
+
+    /** The archived workspace. */
+    private final byte[] archive;
+
+    /** Parameter paths mapped to the values they are swept over. */
+    private final Map<String, String[]> parameters =
+            new LinkedHashMap<String, String[]>();
+
+    /** Paths of the recorded outputs. */
+    private final List<String> outputs = new ArrayList<String>();
+
+    /** Number of iterations each run is updated for. */
+    private int iterations = 1000;
+
+    /** Number of iterations between recorded rows. */
+    private int recordInterval = 1;
+
+    /** Number of times each combination of parameter values is run. */
+    private int repeats = 1;
+
+    /** Number of runs executed at once. */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /** Directory the results are written to. */
+    private File outputDirectory = new File("batch");
+
+    /**
+     * Create a batch runner for a workspace archive.
+     *
+     * @param workspaceFile the zipped workspace
+     * @throws IOException if the file can not be read
+     */
+    public BatchRunner(final File workspaceFile) throws IOException {
+        this(Files.readAllBytes(workspaceFile.toPath()));
+    }
+
+    /**
+     * Create a batch runner for an archived workspace.
+     *
+     * @param archive the zipped workspace, as written by
+     *            {@link WorkspaceSerializer#serialize(java.io.OutputStream)}
+     */
+    public BatchRunner(final byte[] archive) {
+        this.archive = archive;
+    }
+
+    /**
+     * Sweep a parameter over a list of values.
+     *
+     * @param path the path of the parameter
+     * @param values the values to run it with
+     */
+    public void addParameter(final String path, final String... values) {
+        parameters.put(path, values);
+    }
+
+    /**
+     * Record an output.
+     *
+     * @param path the path of the output
+     */
+    public void addOutput(final String path) {
+        outputs.add(path);
+    }
+
+    /**
+     * Deserialize a fresh copy of the archived workspace.
+     *
+     * @return the workspace
+     * @throws IOException if the archive can not be read
+     */
+    public Workspace createWorkspace() throws IOException {
+        Workspace workspace = new Workspace();
+        new WorkspaceSerializer(workspace)
+                .deserialize(new ByteArrayInputStream(archive));
+        // Delays only exist to slow the gui down
+        workspace.setUpdateDelay(0);
+        return workspace;
+    }
+
+    /**
+     * @return the parameter values of each run, in order, one map of
+     *         parameter path to value per run
+     */
+    public List<Map<String, String>> getRuns() {
+        List<Map<String, String>> grid = new ArrayList<Map<String, String>>();
+        grid.add(new LinkedHashMap<String, String>());
+        for (Map.Entry<String, String[]> parameter : parameters.entrySet()) {
+            List<Map<String, String>> next =
+                    new ArrayList<Map<String, String>>();
+            for (Map<String, String> point : grid) {
+                for (String value : parameter.getValue()) {
+                    Map<String, String> copy =
+                            new LinkedHashMap<String, String>(point);
+                    copy.put(parameter.getKey(), value);
+                    next.add(copy);
+                }
+            }
+            grid = next;
+        }
+        List<Map<String, String>> runs = new ArrayList<Map<String, String>>();
+        for (Map<String, String> point : grid) {
+            for (int i = 0; i < repeats; i++) {
+                runs.add(point);
+            }
+        }
+        return runs;
+    }
+
+    /**
+     * Execute all runs and wait for them to finish. Paths are checked
+     * against one copy of the workspace first, so a misspelled path fails
+     * before anything is run. A run that throws is logged and skipped.
+     *
+     * @return the number of runs that failed
+     * @throws IOException if the workspace can not be read or the output
+     *             directory can not be written
+     * @throws InterruptedException if interrupted while waiting for runs
+     */
+    public int run() throws IOException, InterruptedException {
+        Workspace template = createWorkspace();
+        try {
+            for (String path : parameters.keySet()) {
+                new PropertyPath(template, path);
+            }
+            for (String path : outputs) {
+                new PropertyPath(template, path);
+            }
+        } finally {
+            template.getUpdater().shutdown();
+        }
+
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IOException("Can not create " + outputDirectory);
+        }
+        final List<Map<String, String>> runs = getRuns();
+        writeIndex(runs);
+
+        final AtomicInteger done = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> results = new ArrayList<Future<?>>();
+        for (int i = 0; i < runs.size(); i++) {
+            final int index = i;
+            results.add(pool.submit(() -> {
+                execute(index, runs.get(index));
+                System.out.println("Finished run " + index + " ("
+                        + done.incrementAndGet() + "/" + runs.size() + ")");
+                return null;
+            }));
+        }
+        pool.shutdown();
+
+        int failures = 0;
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                results.get(i).get();
+            } catch (ExecutionException e) {
+                failures++;
+                LOGGER.error("Run " + i + " failed", e.getCause());
+                System.err.println("Run " + i + " failed: " + e.getCause());
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Write the parameter values of every run to runs.csv.
+     *
+     * @param runs the runs
+     * @throws IOException if the file can not be written
+     */
+    private void writeIndex(final List<Map<String, String>> runs)
+            throws IOException {
+        try (Writer writer = new BufferedWriter(new FileWriter(new File(
+                outputDirectory, "runs.csv")))) {
+            writer.write("run");
+            for (String path : parameters.keySet()) {
+                writer.write("," + path);
+            }
+            writer.write("\n");
+            for (int i = 0; i < runs.size(); i++) {
+                writer.write(String.valueOf(i));
+                for (String value : runs.get(i).values()) {
+                    writer.write("," + value);
+                }
+                writer.write("\n");
+            }
+        }
+    }
+
+    /**
+     * Execute one run in the calling thread.
+     *
+     * @param index the number of the run
+     * @param values the parameter values of the run
+     * @throws IOException if the workspace can not be read or the results
+     *             can not be written
+     */
+    private void execute(final int index, final Map<String, String> values)
+            throws IOException {
+        Workspace workspace = createWorkspace();
+        try {
+            for (Map.Entry<String, String> value : values.entrySet()) {
+                new PropertyPath(workspace, value.getKey())
+                        .set(value.getValue());
+            }
+            List<PropertyPath> recorded = new ArrayList<PropertyPath>();
+            for (String path : outputs) {
+                recorded.add(new PropertyPath(workspace, path));
+            }
+            try (Writer writer = new BufferedWriter(new FileWriter(new File(
+                    outputDirectory, "run-" + index + ".csv")))) {
+                writer.write("iteration");
+                for (PropertyPath output : recorded) {
+                    writeHeader(writer, output);
+                }
+                writer.write("\n");
+                for (int time = 0; time < iterations;) {
+                    int step = Math.min(recordInterval, iterations - time);
+                    workspace.getUpdater().iterateInCurrentThread(step);
+                    time += step;
+                    writer.write(String.valueOf(time));
+                    for (PropertyPath output : recorded) {
+                        writeValue(writer, output.get());
+                    }
+                    writer.write("\n");
+                }
+            }
+        } finally {
+            workspace.getUpdater().shutdown();
+        }
+    }
+
+    /**
+     * Write the column names of an output. Array valued outputs get one
+     * column per element.
+     *
+     * @param writer the writer
+     * @param output the output
+     * @throws IOException if writing fails
+     */
+    private static void writeHeader(final Writer writer,
+            final PropertyPath output) throws IOException {
+        Object value = output.get();
+        if (value instanceof double[]) {
+            for (int i = 0; i < ((double[]) value).length; i++) {
+                writer.write("," + output + "[" + i + "]");
+            }
+        } else {
+            writer.write("," + output);
+        }
+    }
+
+    /**
+     * Write the value of an output.
+     *
+     * @param writer the writer
+     * @param value the value
+     * @throws IOException if writing fails
+     */
+    private static void writeValue(final Writer writer, final Object value)
+            throws IOException {
+        if (value instanceof double[]) {
+            for (double element : (double[]) value) {
+                writer.write("," + element);
+            }
+        } else if (value instanceof Boolean) {
+            writer.write(((Boolean) value) ? ",1" : ",0");
+        } else {
+            writer.write("," + value);
+        }
+    }
+
+    /**
+     * @param iterations the number of iterations each run is updated for
+     */
+    public void setIterations(final int iterations) {
+        this.iterations = iterations;
+    }
+
+    /**
+     * @param recordInterval the number of iterations between recorded rows
+     */
+    public void setRecordInterval(final int recordInterval) {
+        this.recordInterval = Math.max(1, recordInterval);
+    }
+
+    /**
+     * @param repeats the number of times each combination of parameter
+     *            values is run
+     */
+    public void setRepeats(final int repeats) {
+        this.repeats = repeats;
+    }
+
+    /**
+     * @param threads the number of runs executed at once
+     */
+    public void setThreads(final int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * @param outputDirectory the directory results are written to
+     */
+    public void setOutputDirectory(final File outputDirectory) {
+        this.outputDirectory = outputDirectory;
+    }
+
+    /**
+     * Print command line usage and exit.
+     */
+    private static void usage() {
+        System.err.println("Usage: BatchRunner [-n iterations] [-t threads]"
+                + " [-r repeats] [-e recordEvery] [-d outputDir]"
+                + " [-p component/object/property=v1,v2,...]..."
+                + " [-o component/object/property]... workspace.zip");
+        System.exit(2);
+    }
+
+    /**
+     * Run a batch from the command line.
+     *
+     * @param args command line arguments, see the class comment
+     * @throws Exception if the batch can not be run
+     */
+    public static void main(final String[] args) throws Exception {
+        Map<String, String[]> parameters =
+                new LinkedHashMap<String, String[]>();
+        List<String> outputs = new ArrayList<String>();
+        String file = null;
+        int iterations = 1000;
+        int interval = 1;
+        int repeats = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        File directory = new File("batch");
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("-")) {
+                file = arg;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                usage();
+            }
+            String value = args[++i];
+            if (arg.equals("-n")) {
+                iterations = Integer.parseInt(value);
+            } else if (arg.equals("-e")) {
+                interval = Integer.parseInt(value);
+            } else if (arg.equals("-r")) {
+                repeats = Integer.parseInt(value);
+            } else if (arg.equals("-t")) {
+                threads = Integer.parseInt(value);
+            } else if (arg.equals("-d")) {
+                directory = new File(value);
+            } else if (arg.equals("-o")) {
+                outputs.add(value);
+            } else if (arg.equals("-p") && value.contains("=")) {
+                int split = value.indexOf('=');
+                parameters.put(value.substring(0, split),
+                        value.substring(split + 1).split(","));
+            } else {
+                usage();
+            }
+        }
+        if (file == null) {
+            usage();
+        }
+
+        BatchRunner runner = new BatchRunner(new File(file));
+        for (Map.Entry<String, String[]> parameter : parameters.entrySet()) {
+            runner.addParameter(parameter.getKey(), parameter.getValue());
+        }
+        for (String output : outputs) {
+            runner.addOutput(output);
+        }
+        runner.setIterations(iterations);
+        runner.setRecordInterval(interval);
+        runner.setRepeats(repeats);
+        runner.setThreads(threads);
+        runner.setOutputDirectory(directory);
+        int failures = runner.run();
+        // Components may have left non-daemon threads behind
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+}
@@ -0,0 +1,280 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.workspace.batch;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.simbrain.network.NetworkComponent;
+import org.simbrain.network.core.Network;
+import org.simbrain.workspace.Workspace;
+import org.simbrain.workspace.WorkspaceComponent;
+
+/**
+ * A bean property of an object in a workspace, named by a path of the form
+ * <code>component/object/property</code>, for example
+ * <code>Network1/Neuron_5/activation</code> or
+ * <code>Network1/Hidden/updateRule.upperBound</code>.
+ * <p>
+ * The component is found by name. The object is looked up with
+ * {@link WorkspaceComponent#getObjectFromKey(String)}, i.e. with the same
+ * keys used to archive couplings; for networks, neuron and group labels are
+ * also accepted. The object can be left out
+ * (<code>component/property</code>) to address the component itself. The
+ * property may be a dotted chain of getters ending in a property with a
+ * getter and, if it is to be set, a setter taking one primitive, string or
+ * enum argument.
+ */
+final class PropertyPath {
+
+    /** The path this was resolved from. */
+    private final String path;
+
+    /** The object that has the property. */
+    private final Object bean;
+
+    /** Getter of the property, or null if there is none. */
+    private final Method getter;
+
+    /** Setter of the property, or null if there is none. */
+    private final Method setter;
+
+    /**
+     * Resolve a path against a workspace.
+     *
+     * @param workspace the workspace
+     * @param path the path
+     * @throws IllegalArgumentException if the path does not name a property
+     */
+    PropertyPath(final Workspace workspace, final String path) {
+        this.path = path;
+        String[] parts = path.split("/");
+        if (parts.length < 2 || parts.length > 3) {
+            throw new IllegalArgumentException("Expected component/object/"
+                    + "property but got " + path);
+        }
+        WorkspaceComponent component = workspace.getComponent(parts[0]);
+        if (component == null) {
+            throw new IllegalArgumentException("No component named "
+                    + parts[0] + " in " + path);
+        }
+        Object object = component;
+        if (parts.length == 3) {
+            object = findObject(component, parts[1]);
+            if (object == null) {
+                throw new IllegalArgumentException("No object " + parts[1]
+                        + " in " + path);
+            }
+        }
+        String[] properties = parts[parts.length - 1].split("\\.");
+        for (int i = 0; i < properties.length - 1; i++) {
+            Method method = findGetter(object.getClass(), properties[i]);
+            if (method == null) {
+                throw new IllegalArgumentException("No property "
+                        + properties[i] + " in " + path);
+            }
+            object = invoke(method, object);
+            if (object == null) {
+                throw new IllegalArgumentException(properties[i]
+                        + " is null in " + path);
+            }
+        }
+        String property = properties[properties.length - 1];
+        bean = object;
+        getter = findGetter(bean.getClass(), property);
+        setter = findSetter(bean.getClass(), property,
+                getter == null ? null : getter.getReturnType());
+        if (getter == null && setter == null) {
+            throw new IllegalArgumentException("No property " + property
+                    + " on " + bean.getClass().getSimpleName() + " in "
+                    + path);
+        }
+    }
+
+    /**
+     * Find an object in a component by key or, in a network, by label.
+     *
+     * @param component the component
+     * @param name the key or label
+     * @return the object, or null if none is found
+     */
+    private static Object findObject(final WorkspaceComponent component,
+            final String name) {
+        Object object = null;
+        try {
+            object = component.getObjectFromKey(name);
+        } catch (RuntimeException e) {
+            // Not a key this component can parse; try labels
+        }
+        if (object == null && component instanceof NetworkComponent) {
+            Network network = ((NetworkComponent) component).getNetwork();
+            object = network.getNeuronByLabel(name);
+            if (object == null) {
+                object = network.getGroupByLabel(name);
+            }
+        }
+        return object;
+    }
+
+    /**
+     * @param clazz a class
+     * @param property a property name
+     * @return the property's public getter, or null
+     */
+    private static Method findGetter(final Class<?> clazz,
+            final String property) {
+        String suffix = capitalize(property);
+        for (Method method : clazz.getMethods()) {
+            if (method.getParameterTypes().length == 0
+                    && method.getReturnType() != void.class
+                    && (method.getName().equals("get" + suffix) || method
+                            .getName().equals("is" + suffix))) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param clazz a class
+     * @param property a property name
+     * @param type the type returned by the getter, preferred if there are
+     *            overloads; may be null
+     * @return the property's public one argument setter, or null
+     */
+    private static Method findSetter(final Class<?> clazz,
+            final String property, final Class<?> type) {
+        String name = "set" + capitalize(property);
+        Method found = null;
+        for (Method method : clazz.getMethods()) {
+            if (method.getName().equals(name)
+                    && method.getParameterTypes().length == 1
+                    && isConvertible(method.getParameterTypes()[0])) {
+                if (method.getParameterTypes()[0] == type) {
+                    return method;
+                }
+                found = method;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @param property a property name
+     * @return the name with its first letter in upper case
+     */
+    private static String capitalize(final String property) {
+        return Character.toUpperCase(property.charAt(0))
+                + property.substring(1);
+    }
+
+    /**
+     * @param type a parameter type
+     * @return true if values of the type can be parsed from strings
+     */
+    private static boolean isConvertible(final Class<?> type) {
+        return type.isPrimitive() || type == String.class || type.isEnum()
+                || Number.class.isAssignableFrom(type)
+                || type == Boolean.class;
+    }
+
+    /**
+     * Parse a string into a value of a given type.
+     *
+     * @param type the type
+     * @param value the string
+     * @return the value
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Object convert(final Class<?> type, final String value) {
+        if (type == double.class || type == Double.class) {
+            return Double.valueOf(value);
+        } else if (type == float.class || type == Float.class) {
+            return Float.valueOf(value);
+        } else if (type == int.class || type == Integer.class) {
+            return Integer.valueOf(value);
+        } else if (type == long.class || type == Long.class) {
+            return Long.valueOf(value);
+        } else if (type == short.class || type == Short.class) {
+            return Short.valueOf(value);
+        } else if (type == byte.class || type == Byte.class) {
+            return Byte.valueOf(value);
+        } else if (type == boolean.class || type == Boolean.class) {
+            return Boolean.valueOf(value);
+        } else if (type == char.class) {
+            return value.charAt(0);
+        } else if (type.isEnum()) {
+            return Enum.valueOf((Class<Enum>) type, value);
+        }
+        return value;
+    }
+
+    /**
+     * Call a method, rethrowing anything it throws unchecked.
+     *
+     * @param method the method
+     * @param target the object to call it on
+     * @param args the arguments
+     * @return the value returned
+     */
+    private static Object invoke(final Method method, final Object target,
+            final Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Set the property.
+     *
+     * @param value the value, parsed according to the setter's type
+     * @throws IllegalArgumentException if the property is read only or the
+     *             value can not be parsed
+     */
+    void set(final String value) {
+        if (setter == null) {
+            throw new IllegalArgumentException(path + " is read only");
+        }
+        invoke(setter, bean, convert(setter.getParameterTypes()[0], value));
+    }
+
+    /**
+     * @return the current value of the property
+     * @throws IllegalArgumentException if the property is write only
+     */
+    Object get() {
+        if (getter == null) {
+            throw new IllegalArgumentException(path + " is write only");
+        }
+        return invoke(getter, bean);
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+
+}
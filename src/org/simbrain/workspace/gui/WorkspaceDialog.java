@@ -92,6 +92,32 @@ public class WorkspaceDialog extends StandardDialog  {
                 "Simulation delay (millisconds to sleep between iterations)",
                 sliderPanel);
 
+        // Panel with a slider bar and label to display the gui frame rate
+        JPanel frameRatePanel = new JPanel();
+        JSlider frameRateSlider = new JSlider(JSlider.HORIZONTAL, 0, 60,
+                workspace.getFrameRate());
+        final JLabel frameRateLabel = new JLabel("" + workspace.getFrameRate());
+        frameRateLabel.setPreferredSize(new Dimension(50, 10));
+        frameRateSlider.setToolTipText("Use this to draw networks at most "
+                + "this many times a second without holding up the "
+                + "simulation");
+        frameRateSlider.setMajorTickSpacing(10);
+        frameRateSlider.setPaintTicks(true);
+        frameRateSlider.addChangeListener(new ChangeListener() {
+            public void stateChanged(ChangeEvent e) {
+                JSlider source = (JSlider) e.getSource();
+                workspace.setFrameRate(source.getValue());
+                frameRateLabel.setText("" + workspace.getFrameRate());
+            }
+        });
+        frameRatePanel.add(frameRateSlider);
+        frameRatePanel.add(frameRateLabel);
+        frameRatePanel.setBorder(null);
+
+        miscPanel.addItem(
+                "GUI frame rate (frames per second; 0 to draw every iteration)",
+                frameRatePanel);
+
         tabbedPane.addTab("Misc.", miscPanel);
 
         // Add help button
@@ -24,6 +24,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 
 import org.apache.log4j.Logger;
+import org.simbrain.util.AllocationMeter;
 import org.simbrain.workspace.WorkspaceComponent;
 
 /**
@@ -41,6 +42,11 @@ import org.simbrain.workspace.WorkspaceComponent;
  * decrements the latch so that after the last update is complete, the thread
  * waiting on the latch wakes up and updates all the couplings.
  *
+ * If the updater has one thread, or only one component is to be updated, the
+ * components are updated one after another in the calling thread instead.
+ * Nothing is then handed to the executor, so a steady state update allocates
+ * nothing here.
+ *
  * @author jyoshimi
  */
 public class UpdateAllBuffered implements UpdateAction {
@@ -86,6 +92,20 @@ public class UpdateAllBuffered implements UpdateAction {
         LOGGER.trace("updating couplings");
         updateCouplings();
 
+        if (updater.getNumThreads() <= 1 || countUpdated(components) <= 1) {
+            LOGGER.trace("updating components in this thread");
+            for (int i = 0; i < componentCount; i++) {
+                WorkspaceComponent component = components.get(i);
+                if (component.getUpdateOn()) {
+                    updater.notifyComponentUpdateStarted(component, 1);
+                    component.update();
+                    updater.notifyComponentUpdateFinished(component, 1);
+                }
+            }
+            LOGGER.trace("update complete");
+            return;
+        }
+
         LOGGER.trace("creating latch");
         LatchCompletionSignal latch = new LatchCompletionSignal(componentCount);
 
@@ -114,15 +134,35 @@ public class UpdateAllBuffered implements UpdateAction {
         }
 
         componentUpdateExecutor.submit(() -> {
+            long allocated = AllocationMeter.currentThreadAllocatedBytes();
             UpdateThread thread = (UpdateThread) Thread.currentThread();
             thread.setCurrentTask(component);
             component.update();
             thread.clearCurrentTask(component);
+            if (allocated >= 0) {
+                updater.addBytesAllocated(AllocationMeter
+                        .currentThreadAllocatedBytes() - allocated);
+            }
             signal.done();
         });
 
     }
 
+    /**
+     * @param components the components
+     * @return the number of components whose update is turned on
+     */
+    private static int countUpdated(
+            final List<? extends WorkspaceComponent> components) {
+        int count = 0;
+        for (int i = 0, n = components.size(); i < n; i++) {
+            if (components.get(i).getUpdateOn()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     /**
      * Update couplings.
      */
@@ -19,15 +19,19 @@
 package org.simbrain.workspace.updater;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
+import org.simbrain.util.AllocationMeter;
 import org.simbrain.workspace.Workspace;
 import org.simbrain.workspace.WorkspaceComponent;
+import org.simbrain.workspace.WorkspaceListener;
 
 /**
  * This class manages workspace updates. "Running" and "Stepping" the simulation
@@ -43,6 +47,10 @@ import org.simbrain.workspace.WorkspaceComponent;
  * (a single thread), and one for component updates (a thread pool with multiple
  * threads that can be configured), for cases when component updating happens
  * concurrently.
+ * <p>
+ * When the workspace has a frame rate (see {@link Workspace#setFrameRate(int)})
+ * updates do not wait for the gui: components publish frames that the gui
+ * draws on its own timer, and no task synchronization manager is used.
  *
  * @author Matt Watson
  * @author Jeff Yoshimi
@@ -82,6 +90,21 @@ public class WorkspaceUpdater {
     /** The update Manager. */
     private UpdateActionManager updateActionManager;
 
+    /**
+     * Copy of the workspace's components, made when first needed after
+     * components are added or removed; null until then.
+     */
+    private volatile List<WorkspaceComponent> components;
+
+    /** Guards copying and discarding the copy of the components. */
+    private final Object componentsLock = new Object();
+
+    /** Bytes allocated so far by component threads in the current update. */
+    private final AtomicLong componentBytesAllocated = new AtomicLong();
+
+    /** Bytes allocated in the last update, or -1 if not measured. */
+    private volatile long bytesAllocatedLastUpdate = -1;
+
     /**
      * Constructor for the updater that uses the provided controller and
      * threads.
@@ -103,6 +126,40 @@ public class WorkspaceUpdater {
         // Instantiate the update action manager
         updateActionManager = new UpdateActionManager(this);
 
+        // The component list is copied again after components change
+        workspace.addListener(new WorkspaceListener() {
+
+            @Override
+            public void workspaceCleared() {
+                discardComponents();
+            }
+
+            @Override
+            public void newWorkspaceOpened() {
+                discardComponents();
+            }
+
+            @Override
+            public void componentAdded(WorkspaceComponent component) {
+                discardComponents();
+            }
+
+            @Override
+            public void componentRemoved(WorkspaceComponent component) {
+                discardComponents();
+            }
+
+        });
+    }
+
+    /**
+     * Discard the copy of the component list, so it is made again when next
+     * needed.
+     */
+    private void discardComponents() {
+        synchronized (componentsLock) {
+            components = null;
+        }
     }
 
     /**
@@ -180,18 +237,28 @@ public class WorkspaceUpdater {
         workspaceUpdateExecutor.submit(() -> {
             notifyWorkspaceUpdateStarted();
 
-            synchManager.queueTasks();
+            TaskSynchronizationManager manager = currentSynchManager();
+            manager.queueTasks();
 
             while (run) {
+                // Follow changes to the frame rate
+                TaskSynchronizationManager next = currentSynchManager();
+                if (next != manager) {
+                    manager.releaseTasks();
+                    manager.runTasks();
+                    manager = next;
+                    manager.queueTasks();
+                }
                 try {
-                    doUpdate();
+                    doUpdate(manager);
                 } catch (Exception e) {
                     e.printStackTrace();
                 }
             }
 
-            synchManager.releaseTasks();
-            synchManager.runTasks();
+            manager.releaseTasks();
+            manager.runTasks();
+            publishFrames();
 
             notifyWorkspaceUpdateCompleted();
         });
@@ -204,16 +271,18 @@ public class WorkspaceUpdater {
     public void runOnce() {
         workspaceUpdateExecutor.submit(() -> {
             notifyWorkspaceUpdateStarted();
-            synchManager.queueTasks();
+            TaskSynchronizationManager manager = currentSynchManager();
+            manager.queueTasks();
 
             try {
-                doUpdate();
+                doUpdate(manager);
             } catch (Exception e) {
                 e.printStackTrace();
             }
 
-            synchManager.releaseTasks();
-            synchManager.runTasks();
+            manager.releaseTasks();
+            manager.runTasks();
+            publishFrames();
 
             notifyWorkspaceUpdateCompleted();
         });
@@ -231,44 +300,142 @@ public class WorkspaceUpdater {
         workspaceUpdateExecutor.submit(() -> {
             notifyWorkspaceUpdateStarted();
             for (int i = 0; i < numIterations; i++) {
-                synchManager.queueTasks();
+                TaskSynchronizationManager manager = currentSynchManager();
+                manager.queueTasks();
                 try {
-                    doUpdate();
+                    doUpdate(manager);
                 } catch (Exception e) {
                     e.printStackTrace();
                 }
-                synchManager.releaseTasks();
-                synchManager.runTasks();
+                manager.releaseTasks();
+                manager.runTasks();
             }
+            publishFrames();
             latch.countDown();
             notifyWorkspaceUpdateCompleted();
         });
     }
 
+    /**
+     * Iterate a set number of iterations in the calling thread, returning when
+     * they are done. Unlike {@link #iterate(CountDownLatch, int)} the update
+     * executor is not used, so many workspaces can be run side by side from a
+     * thread pool, as in headless batch runs.
+     *
+     * @param numIterations the number of iterations to update
+     */
+    public void iterateInCurrentThread(final int numIterations) {
+        for (int i = 0; i < numIterations; i++) {
+            TaskSynchronizationManager manager = currentSynchManager();
+            manager.queueTasks();
+            doUpdate(manager);
+            manager.releaseTasks();
+            manager.runTasks();
+        }
+        publishFrames();
+    }
+
+    /**
+     * Stop updating and release the update and notification threads. The
+     * updater can not be used afterwards; called when a workspace is
+     * discarded, e.g. at the end of a batch run.
+     */
+    public void shutdown() {
+        stop();
+        workspaceUpdateExecutor.shutdown();
+        notificationEvents.shutdown();
+    }
+
+    /**
+     * Returns the manager updates are synchronized with: none when the gui is
+     * drawn at a fixed frame rate, since then updates do not wait for it.
+     *
+     * @return the manager to use for the next update
+     */
+    private TaskSynchronizationManager currentSynchManager() {
+        if (workspace.getFrameRate() > 0) {
+            return NO_ACTION_SYNCH_MANAGER;
+        }
+        return synchManager;
+    }
+
+    /**
+     * When the gui is drawn at a fixed frame rate, has the components publish
+     * the state reached when updating stops, which may not have been drawn.
+     */
+    private void publishFrames() {
+        if (workspace.getFrameRate() > 0) {
+            for (WorkspaceComponent component : workspace.getComponentList()) {
+                component.publishFrame();
+            }
+        }
+    }
+
     /**
      * Executes the main workspace update.
+     *
+     * @param manager the manager the update is synchronized with
      */
-    private void doUpdate() {
+    private void doUpdate(final TaskSynchronizationManager manager) {
         time++;
+        long allocated = AllocationMeter.currentThreadAllocatedBytes();
+        componentBytesAllocated.set(0);
 
-        LOGGER.trace("starting: " + time);
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("starting: " + time);
+        }
 
-        try {
-            Thread.sleep(workspace.getUpdateDelay());
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+        if (workspace.getUpdateDelay() > 0) {
+            try {
+                Thread.sleep(workspace.getUpdateDelay());
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
         }
 
         // TODO: Test to make sure these actions occur in the proper order
-        for (UpdateAction action : updateActionManager.getActionList()) {
-            action.invoke();
+        List<UpdateAction> actions = updateActionManager.getActionList();
+        for (int i = 0, n = actions.size(); i < n; i++) {
+            actions.get(i).invoke();
         }
 
-        synchManager.runTasks();
+        manager.runTasks();
 
         notifyWorkspaceUpdated();
 
-        LOGGER.trace("done: " + time);
+        if (allocated >= 0) {
+            bytesAllocatedLastUpdate = AllocationMeter
+                    .currentThreadAllocatedBytes() - allocated
+                    + componentBytesAllocated.get();
+        }
+
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("done: " + time);
+        }
+    }
+
+    /**
+     * Add to the bytes allocated in the current update; called by threads
+     * other than the update thread that update components.
+     *
+     * @param bytes bytes allocated by the calling thread
+     */
+    void addBytesAllocated(final long bytes) {
+        componentBytesAllocated.addAndGet(bytes);
+    }
+
+    /**
+     * Returns the number of bytes of heap allocated during the last workspace
+     * update, by the update thread and by the threads updating components.
+     * Once a simulation has warmed up this should stay near zero; a rising
+     * value means something in the update loop has started allocating. See
+     * {@link AllocationMeter}.
+     *
+     * @return bytes allocated in the last update, or -1 if allocation can not
+     *         be measured on this JVM or no update has happened yet
+     */
+    public long getBytesAllocatedLastUpdate() {
+        return bytesAllocatedLastUpdate;
     }
 
     /**
@@ -334,6 +501,9 @@ public class WorkspaceUpdater {
      */
     void notifyComponentUpdateStarted(final WorkspaceComponent component,
             final int thread) {
+        if (componentListeners.isEmpty()) {
+            return;
+        }
         final int time = this.time;
 
         notificationEvents.submit(new Runnable() {
@@ -353,6 +523,9 @@ public class WorkspaceUpdater {
      */
     void notifyComponentUpdateFinished(final WorkspaceComponent component,
             final int thread) {
+        if (componentListeners.isEmpty()) {
+            return;
+        }
         final int time = this.time;
 
         notificationEvents.submit(new Runnable() {
@@ -368,6 +541,9 @@ public class WorkspaceUpdater {
      * Called when the couplings are updated.
      */
     protected void notifyCouplingsUpdated() {
+        if (updaterListeners.isEmpty()) {
+            return;
+        }
         final int time = this.time;
 
         notificationEvents.submit(new Runnable() {
@@ -383,6 +559,9 @@ public class WorkspaceUpdater {
      * Called when the workspace update begins.
      */
     private void notifyWorkspaceUpdateStarted() {
+        if (updaterListeners.isEmpty()) {
+            return;
+        }
         notificationEvents.submit(new Runnable() {
             public void run() {
                 for (WorkspaceUpdaterListener listener : updaterListeners) {
@@ -396,6 +575,9 @@ public class WorkspaceUpdater {
      * Called when workspace update finishes.
      */
     private void notifyWorkspaceUpdateCompleted() {
+        if (updaterListeners.isEmpty()) {
+            return;
+        }
         notificationEvents.submit(new Runnable() {
             public void run() {
                 for (WorkspaceUpdaterListener listener : updaterListeners) {
@@ -409,7 +591,9 @@ public class WorkspaceUpdater {
      * Called after every workspace update .
      */
     private void notifyWorkspaceUpdated() {
-
+        if (updaterListeners.isEmpty()) {
+            return;
+        }
         notificationEvents.submit(new Runnable() {
             public void run() {
                 for (WorkspaceUpdaterListener listener : updaterListeners) {
@@ -469,17 +653,28 @@ public class WorkspaceUpdater {
     }
 
     /**
-     * Get a synchronized list of component.
+     * Get a copy of the list of components, safe to iterate while components
+     * are added or removed. The copy is reused until the components change,
+     * so it is not copied on every update.
      *
-     * @return the synchronized list of components
+     * @return the unmodifiable list of components
      */
     public List<? extends WorkspaceComponent> getComponents() {
-        List<? extends WorkspaceComponent> components = workspace
-                .getComponentList();
-        synchronized (components) {
-            components = new ArrayList<WorkspaceComponent>(components);
+        List<WorkspaceComponent> components = this.components;
+        if (components == null) {
+            synchronized (componentsLock) {
+                components = this.components;
+                if (components == null) {
+                    List<? extends WorkspaceComponent> current = workspace
+                            .getComponentList();
+                    synchronized (current) {
+                        components = Collections.unmodifiableList(
+                                new ArrayList<WorkspaceComponent>(current));
+                    }
+                    this.components = components;
+                }
+            }
         }
-
         return components;
     }
 
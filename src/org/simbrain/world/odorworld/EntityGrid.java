@@ -0,0 +1,471 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.world.odorworld;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import org.simbrain.util.environment.SmellSource;
+import org.simbrain.world.odorworld.entities.OdorWorldEntity;
+
+/**
+ * A uniform grid over the centers of the entities of an odor world, used to
+ * find the smell sources that reach a point and the entities that may be
+ * touching an entity without looking at every entity in the world.
+ * <p>
+ * The grid is only changed from the thread that updates the world. It is
+ * brought up to date at the start of each update (see {@link #prepare()}), and
+ * an entity is moved to its new cell as soon as it has moved during the update
+ * (see {@link #moved(OdorWorldEntity)}), so that entities updated later see
+ * where it went. Entities added or removed during an update are picked up at
+ * the next one. Between changes the grid may be queried from several threads,
+ * as in a parallel update, where it holds the positions all entities sense.
+ * <p>
+ * The side of a cell is the largest dispersion of the smell sources, so that a
+ * smell query only looks at the cells around a point. Sources whose
+ * dispersion is a large part of the world are not worth indexing; they are
+ * kept in a list that every query looks through.
+ */
+class EntityGrid {
+
+    /**
+     * Fraction of the larger side of the world above which a smell source's
+     * dispersion is not indexed.
+     */
+    private static final double WIDE_DISPERSION = .25;
+
+    /** Side of a cell when no smell source sets it. */
+    private static final double DEFAULT_CELL_SIZE = 64;
+
+    /**
+     * Pixels added to the reach of collision queries, for the rounding of
+     * entity positions to whole pixels.
+     */
+    private static final int COLLISION_MARGIN = 2;
+
+    /** An indexed entity with the center it was indexed at. */
+    private static final class Slot {
+
+        /** The entity. */
+        private final OdorWorldEntity entity;
+
+        /** Center of the entity. */
+        private double x, y;
+
+        /** Cell the entity is in, or -1. */
+        private int cell = -1;
+
+        /** Position of the entity in its cell. */
+        private int index;
+
+        /** Whether the entity's smell source is in the wide list. */
+        private boolean wide;
+
+        /** Reduced bounds of the entity as x, y, width and height. */
+        private final int[] bounds = new int[4];
+
+        /**
+         * @param entity the entity
+         */
+        private Slot(final OdorWorldEntity entity) {
+            this.entity = entity;
+        }
+    }
+
+    /** The world whose entities are indexed. */
+    private final OdorWorld world;
+
+    /** Slot of each indexed entity. */
+    private IdentityHashMap<OdorWorldEntity, Slot> slots =
+            new IdentityHashMap<OdorWorldEntity, Slot>();
+
+    /** The slots in each cell; null for cells that were never used. */
+    private Slot[][] cells = new Slot[0][];
+
+    /** Number of slots in each cell. */
+    private int[] counts = new int[0];
+
+    /** Number of cells along each axis. */
+    private int nx, ny;
+
+    /** Side of a cell. */
+    private double cellSize;
+
+    /** Side of a cell asked for when the grid was built. */
+    private double requestedCellSize;
+
+    /** Width and height of the world when the grid was built. */
+    private int worldWidth, worldHeight;
+
+    /** Smell sources that every smell query looks at. */
+    private final List<Slot> wideSources = new ArrayList<Slot>();
+
+    /** Largest dispersion of the indexed smell sources. */
+    private double smellReach;
+
+    /** Largest width or height of an entity, plus the margin. */
+    private double collisionReach;
+
+    /** Reduced bounds of the entity whose collisions are being found. */
+    private final int[] bounds = new int[4];
+
+    /** Largest stimulus dimension of any smell source. */
+    private int maxDimension;
+
+    /** Whether entities were added or removed since the grid was built. */
+    private volatile boolean dirty = true;
+
+    /**
+     * Create a grid for a world.
+     *
+     * @param world the world
+     */
+    EntityGrid(final OdorWorld world) {
+        this.world = world;
+    }
+
+    /**
+     * Notes that entities were added or removed, or that the world was
+     * resized, so that the grid is rebuilt at the next update.
+     */
+    void invalidate() {
+        dirty = true;
+    }
+
+    /**
+     * Brings the grid up to date with the entities of the world, rebuilding
+     * it if entities were added or removed or the smell sources call for a
+     * different cell size, and otherwise moving the entities that moved
+     * between updates. Called at the start of each update.
+     */
+    void prepare() {
+        boolean rebuild = dirty || worldWidth != world.getWidth()
+                || worldHeight != world.getHeight();
+        dirty = false;
+        double wideLimit = WIDE_DISPERSION
+                * Math.max(world.getWidth(), world.getHeight());
+        double reach = 0;
+        double size = 0;
+        int dimension = 0;
+        for (OdorWorldEntity entity : world.getObjectList()) {
+            size = Math.max(size,
+                    Math.max(entity.getWidth(), entity.getHeight()));
+            SmellSource smell = entity.getSmellSource();
+            if (smell != null) {
+                dimension = Math.max(dimension, smell.getStimulusDimension());
+                if (smell.getDispersion() <= wideLimit) {
+                    reach = Math.max(reach, smell.getDispersion());
+                }
+            }
+            if (!rebuild && !slots.containsKey(entity)) {
+                rebuild = true;
+            }
+        }
+        smellReach = reach;
+        collisionReach = size + COLLISION_MARGIN;
+        maxDimension = dimension;
+        double newCellSize = reach > 0 ? reach : DEFAULT_CELL_SIZE;
+        if (rebuild || newCellSize != requestedCellSize) {
+            build(newCellSize);
+        } else {
+            wideSources.clear();
+            for (OdorWorldEntity entity : world.getObjectList()) {
+                Slot slot = slots.get(entity);
+                if (slot == null) {
+                    // Added while the grid was being prepared
+                    dirty = true;
+                    continue;
+                }
+                slot.wide = isWide(entity, wideLimit);
+                if (slot.wide) {
+                    wideSources.add(slot);
+                }
+                moved(entity);
+            }
+        }
+    }
+
+    /**
+     * @param entity an entity
+     * @param wideLimit dispersion above which a source is wide
+     * @return whether the entity has a smell source that is not indexed
+     */
+    private static boolean isWide(final OdorWorldEntity entity,
+            final double wideLimit) {
+        return entity.getSmellSource() != null
+                && entity.getSmellSource().getDispersion() > wideLimit;
+    }
+
+    /**
+     * Indexes all entities of the world from scratch.
+     *
+     * @param size the requested side of a cell
+     */
+    private void build(final double size) {
+        int n = world.getObjectList().size();
+        worldWidth = world.getWidth();
+        worldHeight = world.getHeight();
+        requestedCellSize = size;
+        cellSize = size;
+        // Coarsen until there are at most a few cells per entity
+        long maxCells = 4L * n + 64;
+        while (cellsAlong(worldWidth) * cellsAlong(worldHeight) > maxCells) {
+            cellSize *= 2;
+        }
+        nx = (int) cellsAlong(worldWidth);
+        ny = (int) cellsAlong(worldHeight);
+        if (cells.length != nx * ny) {
+            cells = new Slot[nx * ny][];
+            counts = new int[nx * ny];
+        } else {
+            for (int c = 0; c < cells.length; c++) {
+                if (cells[c] != null) {
+                    Arrays.fill(cells[c], 0, counts[c], null);
+                }
+            }
+            Arrays.fill(counts, 0);
+        }
+        double wideLimit = WIDE_DISPERSION
+                * Math.max(worldWidth, worldHeight);
+        IdentityHashMap<OdorWorldEntity, Slot> old = slots;
+        slots = new IdentityHashMap<OdorWorldEntity, Slot>();
+        wideSources.clear();
+        for (OdorWorldEntity entity : world.getObjectList()) {
+            Slot slot = old.get(entity);
+            if (slot == null) {
+                slot = new Slot(entity);
+            }
+            slot.cell = -1;
+            slot.wide = isWide(entity, wideLimit);
+            if (slot.wide) {
+                wideSources.add(slot);
+            }
+            slots.put(entity, slot);
+            moved(entity);
+        }
+    }
+
+    /**
+     * @param extent length of a side of the world
+     * @return number of cells needed along the side
+     */
+    private long cellsAlong(final double extent) {
+        return Math.max(1, (long) Math.ceil(extent / cellSize));
+    }
+
+    /**
+     * @param coord a coordinate
+     * @param count number of cells along its axis
+     * @return the cell containing the coordinate, clamped to the grid
+     */
+    private int cell(final double coord, final int count) {
+        int c = (int) Math.floor(coord / cellSize);
+        return c < 0 ? 0 : (c >= count ? count - 1 : c);
+    }
+
+    /**
+     * Records the current center and bounds of an entity, moving it to another
+     * cell if need be. Entities the grid does not know about are ignored.
+     *
+     * @param entity the entity that moved
+     */
+    void moved(final OdorWorldEntity entity) {
+        Slot slot = slots.get(entity);
+        if (slot == null) {
+            return;
+        }
+        slot.x = entity.getCenterX();
+        slot.y = entity.getCenterY();
+        entity.getReducedBounds(slot.bounds);
+        int c = cell(slot.y, ny) * nx + cell(slot.x, nx);
+        if (c == slot.cell) {
+            return;
+        }
+        if (slot.cell >= 0) {
+            // Move the last slot of the old cell into the gap
+            Slot[] from = cells[slot.cell];
+            int last = --counts[slot.cell];
+            from[slot.index] = from[last];
+            from[slot.index].index = slot.index;
+            from[last] = null;
+        }
+        Slot[] to = cells[c];
+        if (to == null) {
+            to = new Slot[4];
+            cells[c] = to;
+        } else if (counts[c] == to.length) {
+            to = Arrays.copyOf(to, to.length * 2);
+            cells[c] = to;
+        }
+        slot.cell = c;
+        slot.index = counts[c]++;
+        to[slot.index] = slot;
+    }
+
+    /**
+     * Adds the stimuli of the smell sources that reach a point to a vector.
+     * The vector is grown to the length of the longest stimulus in the world
+     * if it is shorter. Nothing is allocated otherwise.
+     *
+     * @param x x coordinate of the point
+     * @param y y coordinate of the point
+     * @param smeller entity whose own smell is left out, or null
+     * @param sum the vector to add to
+     * @return the vector added to; a new one if <code>sum</code> was grown
+     */
+    double[] addSmells(final double x, final double y,
+            final OdorWorldEntity smeller, double[] sum) {
+        if (dirty && cells.length == 0) {
+            prepare();
+        }
+        if (sum.length < maxDimension) {
+            sum = Arrays.copyOf(sum, maxDimension);
+        }
+        for (int i = 0, n = wideSources.size(); i < n; i++) {
+            sum = addSmell(wideSources.get(i), x, y, smeller, sum);
+        }
+        int x0 = cell(x - smellReach, nx);
+        int x1 = cell(x + smellReach, nx);
+        int y0 = cell(y - smellReach, ny);
+        int y1 = cell(y + smellReach, ny);
+        for (int cy = y0; cy <= y1; cy++) {
+            for (int cx = x0; cx <= x1; cx++) {
+                int c = cy * nx + cx;
+                Slot[] cell = cells[c];
+                for (int i = 0, n = counts[c]; i < n; i++) {
+                    if (!cell[i].wide) {
+                        sum = addSmell(cell[i], x, y, smeller, sum);
+                    }
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Adds the stimulus of one entity's smell source, if it has one, at a
+     * point.
+     *
+     * @param slot the entity's slot
+     * @param x x coordinate of the point
+     * @param y y coordinate of the point
+     * @param smeller entity whose own smell is left out, or null
+     * @param sum the vector to add to
+     * @return the vector added to, grown if the stimulus is longer
+     */
+    private static double[] addSmell(final Slot slot, final double x,
+            final double y, final OdorWorldEntity smeller, double[] sum) {
+        SmellSource smell = slot.entity.getSmellSource();
+        if (smell == null || slot.entity == smeller) {
+            return sum;
+        }
+        if (smell.getStimulusDimension() > sum.length) {
+            sum = Arrays.copyOf(sum, smell.getStimulusDimension());
+        }
+        double dx = x - slot.x;
+        double dy = y - slot.y;
+        smell.addStimulus(Math.sqrt(dx * dx + dy * dy), sum);
+        return sum;
+    }
+
+    /**
+     * Marks the entities whose reduced bounds intersect those of an entity as
+     * having collided. Same as testing
+     * {@link OdorWorldEntity#reducedBoundsIntersect(OdorWorldEntity)} with
+     * every other entity, using the bounds the grid recorded for them.
+     *
+     * @param entity the entity
+     */
+    void markCollisions(final OdorWorldEntity entity) {
+        if (dirty && cells.length == 0) {
+            prepare();
+        }
+        entity.getReducedBounds(bounds);
+        if (bounds[2] <= 0 || bounds[3] <= 0) {
+            return;
+        }
+        // Reduced bounds lie within the bounds, whose centers are at most
+        // the largest entity size apart if they intersect
+        double x = entity.getCenterX();
+        double y = entity.getCenterY();
+        int x0 = cell(x - collisionReach, nx);
+        int x1 = cell(x + collisionReach, nx);
+        int y0 = cell(y - collisionReach, ny);
+        int y1 = cell(y + collisionReach, ny);
+        for (int cy = y0; cy <= y1; cy++) {
+            for (int cx = x0; cx <= x1; cx++) {
+                int c = cy * nx + cx;
+                Slot[] cell = cells[c];
+                for (int i = 0, n = counts[c]; i < n; i++) {
+                    Slot slot = cell[i];
+                    if (slot.entity != entity
+                            && intersect(bounds, slot.bounds)) {
+                        slot.entity.setHasCollided(true);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether the reduced bounds recorded for an entity intersect those
+     * recorded for any other entity. The grid is only read, so this can be
+     * called from several threads at once.
+     *
+     * @param entity the entity
+     * @return false if it touches no other entity, or is not in the grid
+     */
+    boolean isColliding(final OdorWorldEntity entity) {
+        Slot self = slots.get(entity);
+        if (self == null || self.bounds[2] <= 0 || self.bounds[3] <= 0) {
+            return false;
+        }
+        int x0 = cell(self.x - collisionReach, nx);
+        int x1 = cell(self.x + collisionReach, nx);
+        int y0 = cell(self.y - collisionReach, ny);
+        int y1 = cell(self.y + collisionReach, ny);
+        for (int cy = y0; cy <= y1; cy++) {
+            for (int cx = x0; cx <= x1; cx++) {
+                int c = cy * nx + cx;
+                Slot[] cell = cells[c];
+                for (int i = 0, n = counts[c]; i < n; i++) {
+                    if (cell[i] != self
+                            && intersect(self.bounds, cell[i].bounds)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param a reduced bounds of an entity, the first non-empty
+     * @param b reduced bounds of another entity
+     * @return whether they intersect
+     */
+    private static boolean intersect(final int[] a, final int[] b) {
+        return b[2] > 0 && b[3] > 0 && a[0] < b[0] + b[2]
+                && b[0] < a[0] + a[2] && a[1] < b[1] + b[3]
+                && b[1] < a[1] + a[3];
+    }
+
+}
@@ -22,6 +22,9 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
 
 import org.simbrain.util.SimpleId;
 import org.simbrain.util.Utils;
@@ -75,6 +78,24 @@ public class OdorWorld {
     /** Agent Name generator. */
     private SimpleId agentNameGenerator = new SimpleId("Agent", 1);
 
+    /** Index of entity positions used for smelling and collisions. */
+    private EntityGrid grid = new EntityGrid(this);
+
+    /**
+     * If true, entities are updated in parallel phases (see
+     * {@link #updateInParallel(int)}); otherwise one after another.
+     */
+    private boolean parallelUpdate = false;
+
+    /** Whether entities are acting in parallel. */
+    private volatile boolean committingInParallel;
+
+    /**
+     * Most entities handled by one task of a parallel update. Smaller ranges
+     * are not split further.
+     */
+    private static final int PARALLEL_GRAIN = 16;
+
     /**
      * Default constructor.
      */
@@ -87,15 +108,119 @@ public class OdorWorld {
      * @param time an integer representation of time.
      */
     public void update(int time) {
-        for (OdorWorldEntity object : entityList) {
-            object.updateSmellSource();
-            object.updateSensors();
-            object.applyEffectors();
-            updateEntity(object, time);
+        grid.prepare();
+        if (parallelUpdate) {
+            updateInParallel(time);
+        } else {
+            for (OdorWorldEntity object : entityList) {
+                object.updateSmellSource();
+                object.updateSensors();
+                object.applyEffectors();
+                updateEntity(object, time);
+                grid.moved(object);
+            }
         }
         fireUpdateEvent();
     }
 
+    /**
+     * Updates all entities in phases, each phase running over the entities in
+     * parallel. First every entity senses, all of them seeing the world as it
+     * was at the start of the update. Then every entity acts and moves. Then
+     * collisions are found between the new positions, and entities finish
+     * their update. Phrases spoken during the update are heard at the next
+     * one.
+     * <p>
+     * Unlike a sequential update, no entity sees another that has already
+     * moved, so the result does not depend on the order of the entities, nor
+     * on the number of threads.
+     *
+     * @param time an integer representation of time.
+     */
+    private void updateInParallel(final int time) {
+        OdorWorldEntity[] entities = entityList
+                .toArray(new OdorWorldEntity[0]);
+        // Noisy smells draw random numbers, so they are not updated in
+        // parallel
+        for (OdorWorldEntity entity : entities) {
+            entity.updateSmellSource();
+        }
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        pool.invoke(new PhaseAction(entities, 0, entities.length,
+                entity -> entity.updateSensors()));
+        committingInParallel = true;
+        try {
+            pool.invoke(new PhaseAction(entities, 0, entities.length,
+                    entity -> {
+                        entity.applyEffectors();
+                        moveEntity(entity, time);
+                    }));
+        } finally {
+            committingInParallel = false;
+        }
+        for (OdorWorldEntity entity : entities) {
+            grid.moved(entity);
+        }
+        pool.invoke(new PhaseAction(entities, 0, entities.length,
+                entity -> {
+                    entity.setHasCollided(grid.isColliding(entity));
+                    entity.update();
+                }));
+        for (OdorWorldEntity entity : entities) {
+            entity.hearPendingPhrases();
+        }
+    }
+
+    /**
+     * Performs one phase of a parallel update over a range of entities,
+     * splitting the range in half so that idle workers can take the other
+     * half.
+     */
+    private static class PhaseAction extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        /** All the entities of the update. */
+        private final OdorWorldEntity[] entities;
+
+        /** First entity of this action's range (inclusive). */
+        private final int lo;
+
+        /** Last entity of this action's range (exclusive). */
+        private final int hi;
+
+        /** What the phase does to an entity. */
+        private final Consumer<OdorWorldEntity> phase;
+
+        /**
+         * @param entities all the entities of the update
+         * @param lo first entity of the range (inclusive)
+         * @param hi last entity of the range (exclusive)
+         * @param phase what to do to each entity
+         */
+        PhaseAction(final OdorWorldEntity[] entities, final int lo,
+                final int hi, final Consumer<OdorWorldEntity> phase) {
+            this.entities = entities;
+            this.lo = lo;
+            this.hi = hi;
+            this.phase = phase;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= PARALLEL_GRAIN) {
+                for (int i = lo; i < hi; i++) {
+                    phase.accept(entities[i]);
+                }
+            } else {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new PhaseAction(entities, lo, mid, phase),
+                        new PhaseAction(entities, mid, hi, phase));
+            }
+        }
+
+    }
+
     /**
      * Add an Odor World Entity.
      *
@@ -109,6 +234,7 @@ public class OdorWorld {
         // Add entity to the map
         // map.addSprite(entity);
         entityList.add(entity);
+        grid.invalidate();
 
         // Fire entity added event
         fireEntityAdded(entity);
@@ -231,6 +357,7 @@ public class OdorWorld {
         // map.removeSprite(entity);
         if (entityList.contains(entity)) {
             entityList.remove(entity);
+            grid.invalidate();
             for (Sensor sensor : entity.getSensors()) {
                 fireSensorRemoved(sensor);
             }
@@ -273,6 +400,9 @@ public class OdorWorld {
     static XStream getXStream() {
         XStream xstream = Utils.getSimbrainXStream();
         xstream.omitField(OdorWorld.class, "listenerList");
+        xstream.omitField(OdorWorld.class, "grid");
+        xstream.omitField(OdorWorld.class, "committingInParallel");
+        xstream.omitField(OdorWorldEntity.class, "pendingPhrases");
         xstream.omitField(Animation.class, "frames");
         xstream.omitField(Animation.class, "currFrameIndex");
         xstream.omitField(BasicEntity.class, "images");
@@ -291,6 +421,7 @@ public class OdorWorld {
      */
     private Object readResolve() {
         listenerList = new ArrayList<WorldListener>();
+        grid = new EntityGrid(this);
         if (agentNameGenerator == null) {
             agentNameGenerator = new SimpleId("Agent", 1);
         }
@@ -307,37 +438,11 @@ public class OdorWorld {
      */
     private void updateEntity(final OdorWorldEntity entity, final int time) {
 
-        // Collision detection
-        float dx = entity.getVelocityX();
-        float oldX = entity.getX();
-        float newX = oldX + dx * time;
-        float dy = entity.getVelocityY();
-        float oldY = entity.getY();
-        float newY = oldY + dy * time;
-        // TODO: Fire event
-
-        // Very simple motion
-        if (dx != 0) {
-            entity.setX(entity.getX() + dx);
-        }
-        if (dy != 0) {
-            entity.setY(entity.getY() + dy);
-        }
-
-        // Behavior
-        entity.getBehavior().apply(time);
+        moveEntity(entity, time);
 
         // Handle sprite collisions
         entity.setHasCollided(false);
-        for (OdorWorldEntity otherEntity : entityList) {
-            if (entity == otherEntity) {
-                continue;
-            }
-            if (otherEntity.getReducedBounds().intersects(
-                    entity.getReducedBounds())) {
-                otherEntity.setHasCollided(true);
-            }
-        }
+        grid.markCollisions(entity);
         //
         // // Handle sprite collisions
         // if (xCollission(entity, newX)) {
@@ -358,6 +463,35 @@ public class OdorWorld {
         // " y:" + sprite.getY());
     }
 
+    /**
+     * Moves an entity by its velocity and applies its behavior.
+     *
+     * @param entity the entity to move
+     * @param time an integer representation of time.
+     */
+    private void moveEntity(final OdorWorldEntity entity, final int time) {
+
+        // Collision detection
+        float dx = entity.getVelocityX();
+        float oldX = entity.getX();
+        float newX = oldX + dx * time;
+        float dy = entity.getVelocityY();
+        float oldY = entity.getY();
+        float newY = oldY + dy * time;
+        // TODO: Fire event
+
+        // Very simple motion
+        if (dx != 0) {
+            entity.setX(entity.getX() + dx);
+        }
+        if (dy != 0) {
+            entity.setY(entity.getY() + dy);
+        }
+
+        // Behavior
+        entity.getBehavior().apply(time);
+    }
+
     /**
      * Handle collisions in x directions.
      *
@@ -417,6 +551,23 @@ public class OdorWorld {
         return false;
     }
 
+    /**
+     * Adds the stimuli of the smell sources that reach a point to a vector,
+     * looking only at sources near enough for their dispersion to reach it.
+     * The vector is grown to the length of the longest stimulus in the world
+     * if it is shorter; nothing is allocated otherwise.
+     *
+     * @param x x coordinate of the point
+     * @param y y coordinate of the point
+     * @param smeller entity whose own smell is left out, or null
+     * @param sum the vector to add to
+     * @return the vector added to; a new one if <code>sum</code> was grown
+     */
+    public double[] addSmells(final double x, final double y,
+            final OdorWorldEntity smeller, final double[] sum) {
+        return grid.addSmells(x, y, smeller, sum);
+    }
+
     /**
      * Add a world listener.
      *
@@ -552,6 +703,7 @@ public class OdorWorld {
      */
     public void setWidth(int newWidth, boolean fireEvent) {
         this.width = newWidth;
+        grid.invalidate();
         if (fireEvent) {
             firePropertyChangedEvent();
         }
@@ -565,6 +717,7 @@ public class OdorWorld {
      */
     public void setHeight(int newHeight, boolean fireEvent) {
         this.height = newHeight;
+        grid.invalidate();
         if (fireEvent) {
             firePropertyChangedEvent();
         }
@@ -602,6 +755,35 @@ public class OdorWorld {
         return height;
     }
 
+    /**
+     * @return whether entities are updated in parallel phases
+     */
+    public boolean isParallelUpdate() {
+        return parallelUpdate;
+    }
+
+    /**
+     * Set whether entities are updated in parallel phases, where every
+     * entity senses the world as it was before any of them moved, rather than
+     * one after another. Suits worlds with many agents, for example in
+     * evolutionary runs.
+     *
+     * @param parallelUpdate whether to update in parallel
+     */
+    public void setParallelUpdate(boolean parallelUpdate) {
+        this.parallelUpdate = parallelUpdate;
+    }
+
+    /**
+     * Whether entities are acting in parallel, during a parallel update. What
+     * entities say to each other then is only heard once the update is done.
+     *
+     * @return true while entities act in parallel
+     */
+    public boolean isCommittingInParallel() {
+        return committingInParallel;
+    }
+
     /**
      * @return the objectsBlockMovement
      */
@@ -68,6 +68,8 @@ public class OdorWorldComponent extends WorkspaceComponent {
             double.class, true));
     AttributeType speechEffectorType = (new AttributeType(this, "Speech",
             double.class, true));
+    AttributeType effectorVectorType = (new AttributeType(this,
+            "Effector Vector", double[].class, true));
     AttributeType hearingSensorType = (new AttributeType(this, "Hearing",
             double.class, true));
 
@@ -106,6 +108,7 @@ public class OdorWorldComponent extends WorkspaceComponent {
         addConsumerType(straightMovementType);
         addConsumerType(absoluteMovementType);
         addConsumerType(speechEffectorType);
+        addConsumerType(effectorVectorType);
 
         addProducerType(xLocationType);
         addProducerType(yLocationType);
@@ -220,6 +223,17 @@ public class OdorWorldComponent extends WorkspaceComponent {
                 }
 
             }
+
+            // All effectors as one vector
+            if (effectorVectorType.isVisible()
+                    && !entity.getEffectors().isEmpty()) {
+                String description = entity.getName() + ":Effectors";
+                PotentialConsumer consumer = getAttributeManager()
+                        .createPotentialConsumer(entity, "setEffectorValues",
+                                double[].class);
+                consumer.setCustomDescription(description);
+                returnList.add(consumer);
+            }
         }
         return returnList;
     }
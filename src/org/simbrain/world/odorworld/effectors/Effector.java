@@ -104,6 +104,15 @@ public abstract class Effector {
         this.label = label;
     }
 
+    /**
+     * Set the amount the effector acts by on its next update. Does nothing
+     * unless overridden by an effector driven by a value.
+     *
+     * @param amount the amount
+     */
+    public void setAmount(double amount) {
+    }
+
     /**
      * Override if "resetting" the effector should clear any values.
      * Called when removing a coupling to this effector, so that the last set
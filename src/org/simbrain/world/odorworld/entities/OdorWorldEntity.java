@@ -21,6 +21,7 @@ package org.simbrain.world.odorworld.entities;
 import java.awt.Image;
 import java.awt.Rectangle;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.simbrain.util.SimpleId;
@@ -99,6 +100,12 @@ public abstract class OdorWorldEntity {
     /** Things currently being said by talking entities. */
     private List<String> currentlyHeardPhrases = new ArrayList<String>();
 
+    /**
+     * Things said to this entity while entities act in parallel, which it
+     * hears once they are done. Not saved.
+     */
+    private List<String> pendingPhrases;
+
     // Un-implemented code for using lifcycle.
     // private LifeCycle cycle;
     // private boolean usesLifeCycle = false;
@@ -391,6 +398,45 @@ public abstract class OdorWorldEntity {
         return ret;
     }
 
+    /**
+     * Writes the reduced bounds (see {@link #getReducedBounds()}) into an
+     * array as x, y, width and height, without creating a rectangle.
+     *
+     * @param bounds array of at least four elements to write to
+     */
+    public void getReducedBounds(final int[] bounds) {
+        int width = getWidth();
+        int height = getHeight();
+        bounds[0] = (int) x + height / 5;
+        bounds[1] = (int) y + width / 5;
+        bounds[2] = width - 2 * (height / 5);
+        bounds[3] = height - 2 * (width / 5);
+    }
+
+    /**
+     * Whether the reduced bounds of this entity and another intersect. Same
+     * as <code>getReducedBounds().intersects(other.getReducedBounds())</code>
+     * but without creating rectangles, since it is called for every pair of
+     * entities on every update.
+     *
+     * @param other the other entity
+     * @return true if the reduced bounds intersect
+     */
+    public boolean reducedBoundsIntersect(final OdorWorldEntity other) {
+        int x1 = (int) x + getHeight() / 5;
+        int y1 = (int) y + getWidth() / 5;
+        int w1 = getWidth() - 2 * (getHeight() / 5);
+        int h1 = getHeight() - 2 * (getWidth() / 5);
+        int x2 = (int) other.x + other.getHeight() / 5;
+        int y2 = (int) other.y + other.getWidth() / 5;
+        int w2 = other.getWidth() - 2 * (other.getHeight() / 5);
+        int h2 = other.getHeight() - 2 * (other.getWidth() / 5);
+        if (w1 <= 0 || h1 <= 0 || w2 <= 0 || h2 <= 0) {
+            return false;
+        }
+        return x1 < x2 + w2 && x2 < x1 + w1 && y1 < y2 + h2 && y2 < y1 + h1;
+    }
+
     /**
      * Add an effector.
      *
@@ -650,6 +696,21 @@ public abstract class OdorWorldEntity {
         return effectors;
     }
 
+    /**
+     * Set the amounts of all effectors at once, in the order they were
+     * added, so that a neuron group can drive them through one coupling.
+     * Values beyond the number of effectors are ignored, as are effectors
+     * beyond the number of values.
+     *
+     * @param values the amount for each effector
+     */
+    public void setEffectorValues(final double[] values) {
+        for (int i = 0, n = Math.min(values.length, effectors.size()); i < n;
+                i++) {
+            effectors.get(i).setAmount(values[i]);
+        }
+    }
+
     /**
      * @param effectors the effectors to set
      */
@@ -890,7 +951,31 @@ public abstract class OdorWorldEntity {
      * @param phrase the phrase to add
      */
     public void speakToEntity(String phrase) {
-        currentlyHeardPhrases.add(phrase);
+        if (parentWorld.isCommittingInParallel()) {
+            synchronized (this) {
+                if (pendingPhrases == null) {
+                    pendingPhrases = new ArrayList<String>();
+                }
+                pendingPhrases.add(phrase);
+            }
+        } else {
+            currentlyHeardPhrases.add(phrase);
+        }
+    }
+
+    /**
+     * Hear the phrases said to this entity while entities acted in parallel.
+     * They are heard in alphabetical order, which does not depend on the
+     * order the speakers acted in.
+     */
+    public synchronized void hearPendingPhrases() {
+        if (pendingPhrases != null && !pendingPhrases.isEmpty()) {
+            Collections.sort(pendingPhrases);
+            if (currentlyHeardPhrases != null) {
+                currentlyHeardPhrases.addAll(pendingPhrases);
+            }
+            pendingPhrases.clear();
+        }
     }
 
     /**
@@ -18,8 +18,8 @@
  */
 package org.simbrain.world.odorworld.sensors;
 
-import org.simbrain.util.environment.SmellSource;
-import org.simbrain.util.math.SimbrainMath;
+import java.util.Arrays;
+
 import org.simbrain.world.odorworld.entities.OdorWorldEntity;
 import org.simbrain.world.odorworld.entities.RotatingEntity;
 
@@ -48,6 +48,12 @@ public class SmellSensor extends Sensor {
     /** Current value of this sensor, as an array of doubles. */
     private double[] currentValue = new double[7];
 
+    /**
+     * The previous value, reused to hold the next one so that updates do not
+     * allocate. Not saved.
+     */
+    private transient double[] nextValue;
+
     /**
      * Construct a smell sensor.
      *
@@ -83,19 +89,22 @@ public class SmellSensor extends Sensor {
      * {@inheritDoc}
      */
     public void update() {
-        double[] temp = new double[currentValue.length];
-        for (OdorWorldEntity entity : parent.getParentWorld().getObjectList()) {
-
-            // Don't smell yourself
-            if (entity != parent) {
-                SmellSource smell = entity.getSmellSource();
-                if (smell != null) {
-                    temp = SimbrainMath.addVector(temp, smell
-                            .getStimulus(SimbrainMath.distance(getLocation(),
-                                    entity.getCenterLocation())));
-                }
-            }
+        // Sum into the previous value's array, which readers of the current
+        // value do not see, then swap the two
+        double[] temp = nextValue;
+        if (temp == null || temp.length != currentValue.length) {
+            temp = new double[currentValue.length];
+        } else {
+            Arrays.fill(temp, 0);
         }
+        RotatingEntity rotating = (RotatingEntity) parent;
+        double x = rotating.getCenterX()
+                + (radius * Math.cos(rotating.getHeadingRadians() + theta));
+        double y = rotating.getCenterY()
+                - (radius * Math.sin(rotating.getHeadingRadians() + theta));
+        // Don't smell yourself. The value grows to the longest stimulus.
+        temp = parent.getParentWorld().addSmells(x, y, parent, temp);
+        nextValue = currentValue;
         currentValue = temp;
     }
 
@@ -172,10 +172,8 @@ public class DisplayWorld extends TextWorld {
 
             return;
         }
-        vectorToTokenDict = new NTree(persistentData.get(0).getDimension());
-        for (DataPoint point : persistentData) {
-            vectorToTokenDict.add(point);
-        }
+        vectorToTokenDict = new NTree(persistentData.get(0).getDimension(),
+            persistentData);
     }
 
     /**di
@@ -207,11 +205,13 @@ public class DisplayWorld extends TextWorld {
      * @param tableData the string matrix encoding the dictionary.
      */
     public void loadVectorToTokenDict(String[][] tableData) {
-        vectorToTokenDict = new NTree(tableData[0].length);
+        List<StringDataPoint> points = new ArrayList<StringDataPoint>();
         for (int i = 0; i < tableData.length; i++) {
             double[] vector = Utils.parseVectorString(tableData[i][1]);
-            addVectorTokenPair(tableData[i][0], vector);
+            points.add(new StringDataPoint(vector, tableData[i][0]));
         }
+        vectorToTokenDict = new NTree(points.isEmpty() ? 0
+            : points.get(0).getDimension(), points);
         fireDictionaryChangedEvent();
     }
 
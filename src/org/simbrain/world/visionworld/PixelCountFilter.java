@@ -0,0 +1,47 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2006 Jeff Yoshimi <www.jeffyoshimi.net>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.world.visionworld;
+
+/**
+ * Filter whose value depends only on the number of pixels in the image that
+ * pass a test of their color. The vision world samples sensors with such
+ * filters from summed-area tables of the pixels that pass, rather than by
+ * reading the image under each receptive field.
+ */
+public interface PixelCountFilter extends Filter {
+
+    /**
+     * Return true if the specified pixel is counted.
+     *
+     * @param rgb pixel in the default RGB color model, as returned by
+     *            <code>BufferedImage.getRGB</code>
+     * @return true if the specified pixel is counted
+     */
+    boolean counts(int rgb);
+
+    /**
+     * Return the value of this filter for an image with the specified number
+     * of counted pixels.
+     *
+     * @param pixels number of pixels counted
+     * @param total number of pixels in the image
+     * @return value for an image with the specified number of counted pixels
+     */
+    double filter(int pixels, int total);
+}
@@ -125,6 +125,16 @@ public final class Sensor {
         return sample;
     }
 
+    /**
+     * Set the last sample value for this sensor, for sensors sampled together
+     * by a {@link SensorSampler}.
+     *
+     * @param sample sample value
+     */
+    void setSample(final double sample) {
+        this.sample = sample;
+    }
+
     /**
      * Return the last sample value for this sensor.
      *
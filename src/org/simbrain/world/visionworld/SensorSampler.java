@@ -0,0 +1,256 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2006 Jeff Yoshimi <www.jeffyoshimi.net>
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.world.visionworld;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Samples all the sensors of a sensor matrix at once. The pixels of the image
+ * are read in one pass, and for each pixel count filter in use (see
+ * {@link PixelCountFilter}) a summed-area table of the pixels it counts is
+ * built, from which the count under any receptive field takes four lookups.
+ * A filter whose receptive fields together cover fewer pixels than the image
+ * has counts taken directly from the pixels instead, since building its table
+ * would cost more. Sensors with other filters, or with receptive fields that
+ * leave the image, are sampled one at a time with
+ * {@link Sensor#sample(PixelMatrix)}. Arrays are reused from one sample to the
+ * next.
+ */
+final class SensorSampler {
+
+    /** Pixels of the image, row by row, in the default RGB color model. */
+    private int[] pixels = new int[0];
+
+    /** Summed-area tables, one per filter in use. */
+    private final List<int[]> tables = new ArrayList<int[]>();
+
+    /** Summed-area table of each filter, for the current sample. */
+    private final Map<PixelCountFilter, int[]> filterTables =
+            new IdentityHashMap<PixelCountFilter, int[]>();
+
+    /** Total area of the receptive fields of each filter, in pixels. */
+    private final Map<PixelCountFilter, Long> filterAreas =
+            new IdentityHashMap<PixelCountFilter, Long>();
+
+    /** Sensor values, row by row. */
+    private double[] values = new double[0];
+
+    /**
+     * Sample every sensor in the specified sensor matrix from the specified
+     * pixel matrix.
+     *
+     * @param pixelMatrix pixel matrix
+     * @param sensorMatrix sensor matrix
+     * @return the sensor values, row by row; the array is reused
+     */
+    double[] sample(final PixelMatrix pixelMatrix,
+            final SensorMatrix sensorMatrix) {
+        int rows = sensorMatrix.rows();
+        int columns = sensorMatrix.columns();
+        if (values.length != rows * columns) {
+            values = new double[rows * columns];
+        }
+        Image image = pixelMatrix.getImage();
+        BufferedImage bufferedImage = null;
+        if (image instanceof BufferedImage) {
+            bufferedImage = (BufferedImage) image;
+        }
+        filterTables.clear();
+        filterAreas.clear();
+        if (bufferedImage != null) {
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < columns; column++) {
+                    Sensor sensor = sensorMatrix.getSensor(row, column);
+                    ReceptiveField field = sensor.getReceptiveField();
+                    if (sensor.getFilter() instanceof PixelCountFilter
+                            && contains(bufferedImage, field)) {
+                        PixelCountFilter filter =
+                                (PixelCountFilter) sensor.getFilter();
+                        Long area = filterAreas.get(filter);
+                        long fieldArea = (long) field.getWidth()
+                                * field.getHeight();
+                        filterAreas.put(filter, area == null ? fieldArea
+                                : area + fieldArea);
+                    }
+                }
+            }
+            if (!filterAreas.isEmpty()) {
+                readPixels(bufferedImage);
+            }
+        }
+        for (int row = 0, i = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++, i++) {
+                Sensor sensor = sensorMatrix.getSensor(row, column);
+                Filter filter = sensor.getFilter();
+                ReceptiveField field = sensor.getReceptiveField();
+                Long area = filterAreas.get(filter);
+                if (area == null || !contains(bufferedImage, field)) {
+                    values[i] = sensor.sample(pixelMatrix);
+                    continue;
+                }
+                PixelCountFilter countFilter = (PixelCountFilter) filter;
+                int width = bufferedImage.getWidth();
+                int count;
+                if (area < pixels.length) {
+                    count = count(countFilter, width, field);
+                } else {
+                    int[] table = filterTables.get(countFilter);
+                    if (table == null) {
+                        table = buildTable(countFilter, width,
+                                bufferedImage.getHeight());
+                        filterTables.put(countFilter, table);
+                    }
+                    count = count(table, width, field);
+                }
+                values[i] = countFilter.filter(count,
+                        field.getWidth() * field.getHeight());
+                sensor.setSample(values[i]);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Return true if the specified receptive field is non-empty and lies
+     * within the specified image.
+     *
+     * @param image image
+     * @param field receptive field
+     * @return true if the field is non-empty and lies within the image
+     */
+    private static boolean contains(final BufferedImage image,
+            final ReceptiveField field) {
+        return field.getX() >= 0 && field.getY() >= 0
+                && field.getWidth() > 0 && field.getHeight() > 0
+                && field.getX() + field.getWidth() <= image.getWidth()
+                && field.getY() + field.getHeight() <= image.getHeight();
+    }
+
+    /**
+     * Read all the pixels of the specified image. Images stored as packed
+     * ints are copied straight from their rasters.
+     *
+     * @param image image
+     */
+    private void readPixels(final BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (pixels.length != width * height) {
+            pixels = new int[width * height];
+        }
+        int type = image.getType();
+        if (type == BufferedImage.TYPE_INT_ARGB) {
+            image.getRaster().getDataElements(0, 0, width, height, pixels);
+        } else if (type == BufferedImage.TYPE_INT_RGB) {
+            image.getRaster().getDataElements(0, 0, width, height, pixels);
+            for (int p = 0; p < pixels.length; p++) {
+                pixels[p] |= 0xFF000000;
+            }
+        } else {
+            image.getRGB(0, 0, width, height, pixels, 0, width);
+        }
+    }
+
+    /**
+     * Build the summed-area table of the pixels the specified filter counts:
+     * entry <code>y * (width + 1) + x</code> is the number of counted pixels
+     * above and to the left of pixel <code>(x, y)</code>.
+     *
+     * @param filter filter
+     * @param width image width
+     * @param height image height
+     * @return the table
+     */
+    private int[] buildTable(final PixelCountFilter filter, final int width,
+            final int height) {
+        int stride = width + 1;
+        int size = stride * (height + 1);
+        int index = filterTables.size();
+        if (index == tables.size()) {
+            tables.add(new int[size]);
+        } else if (tables.get(index).length != size) {
+            tables.set(index, new int[size]);
+        }
+        int[] table = tables.get(index);
+        for (int x = 0; x < stride; x++) {
+            table[x] = 0;
+        }
+        for (int y = 0, p = 0; y < height; y++) {
+            int above = y * stride;
+            int here = above + stride;
+            int rowCount = 0;
+            table[here] = 0;
+            for (int x = 1; x <= width; x++, p++) {
+                if (filter.counts(pixels[p])) {
+                    rowCount++;
+                }
+                table[here + x] = table[above + x] + rowCount;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Count the pixels under a receptive field that the specified filter
+     * counts, directly from the pixels.
+     *
+     * @param filter filter
+     * @param width image width
+     * @param field receptive field
+     * @return the number of counted pixels under the field
+     */
+    private int count(final PixelCountFilter filter, final int width,
+            final ReceptiveField field) {
+        int count = 0;
+        for (int y = field.getY(), bottom = y + field.getHeight(); y < bottom;
+                y++) {
+            for (int p = y * width + field.getX(), end = p + field.getWidth();
+                    p < end; p++) {
+                if (filter.counts(pixels[p])) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Count the pixels under a receptive field from a summed-area table.
+     *
+     * @param table summed-area table
+     * @param width image width
+     * @param field receptive field
+     * @return the number of counted pixels under the field
+     */
+    private static int count(final int[] table, final int width,
+            final ReceptiveField field) {
+        int stride = width + 1;
+        int top = field.getY() * stride;
+        int bottom = (field.getY() + field.getHeight()) * stride;
+        int left = field.getX();
+        int right = left + field.getWidth();
+        return table[bottom + right] - table[top + right]
+                - table[bottom + left] + table[top + left];
+    }
+}
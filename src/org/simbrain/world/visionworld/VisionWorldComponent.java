@@ -32,9 +32,18 @@ import org.simbrain.workspace.WorkspaceComponent;
  */
 public final class VisionWorldComponent extends WorkspaceComponent {
 
+    /** Key for the sensor vector producer, whose base object is this. */
+    private static final String SENSOR_VECTOR_KEY = "SensorVector";
+
     /** Vision world. */
     private final VisionWorld visionWorld;
 
+    /** Reused array of sensor values, see {@link #getSensorValues()}. */
+    private transient double[] sensorValues;
+
+    /** Samples all sensors at once on update. */
+    private final transient SensorSampler sampler = new SensorSampler();
+
     /**
      * Create a new vision world frame with the specified name.
      *
@@ -64,6 +73,8 @@ public final class VisionWorldComponent extends WorkspaceComponent {
         if (getProducerTypes().size() == 0) {
             addProducerType(new AttributeType(this, "Sensor", "getValue",
                     double.class, true));
+            addProducerType(new AttributeType(this, "Sensor Vector",
+                    "getSensorValues", double[].class, true));
         }
         visionWorld.getModel().addModelListener(new VisionWorldModelListener() {
 
@@ -95,6 +106,11 @@ public final class VisionWorldComponent extends WorkspaceComponent {
                         returnList.add(producer);
                     }
                 }
+            } else if (type.getTypeName().equalsIgnoreCase("Sensor Vector")) {
+                PotentialProducer producer = getAttributeManager()
+                        .createPotentialProducer(this, type);
+                producer.setCustomDescription("All sensors");
+                returnList.add(producer);
             }
         }
         return returnList;
@@ -102,6 +118,9 @@ public final class VisionWorldComponent extends WorkspaceComponent {
 
     @Override
     public Object getObjectFromKey(String objectKey) {
+        if (SENSOR_VECTOR_KEY.equals(objectKey)) {
+            return this;
+        }
         String[] rowCol = objectKey.split(","); // todo check that string is
                                                 // valid
         int row = Integer.parseInt(rowCol[0]);
@@ -114,6 +133,8 @@ public final class VisionWorldComponent extends WorkspaceComponent {
     public String getKeyFromObject(Object object) {
         if (object instanceof Sensor) {
             return ((Sensor) object).getKey();
+        } else if (object == this) {
+            return SENSOR_VECTOR_KEY;
         }
         return null;
     }
@@ -149,14 +170,35 @@ public final class VisionWorldComponent extends WorkspaceComponent {
         // Possibly change this later so only sensors with couplings are
         // updated.
         VisionWorldModel model = visionWorld.getModel();
-        PixelMatrix pixelMatrix = model.getPixelMatrix();
-        SensorMatrix sensorMatrix = model.getSensorMatrix();
-        for (int column = 0, columns = sensorMatrix.columns(); column < columns; column++) {
-            for (int row = 0, rows = sensorMatrix.rows(); row < rows; row++) {
-                Sensor sensor = sensorMatrix.getSensor(row, column);
-                sensor.sample(pixelMatrix);
+        sensorValues = sampler.sample(model.getPixelMatrix(),
+                model.getSensorMatrix());
+    }
+
+    /**
+     * Return the last sampled value of every sensor, row by row, so that the
+     * whole sensor matrix can be sent through one coupling instead of one
+     * coupling per sensor. The returned array is the one the sensors are
+     * sampled into, and is reused between updates.
+     *
+     * @return the sensor values
+     */
+    public double[] getSensorValues() {
+        SensorMatrix sensorMatrix = visionWorld.getModel().getSensorMatrix();
+        int rows = sensorMatrix.rows();
+        int columns = sensorMatrix.columns();
+        if (sensorValues != null && sensorValues.length == rows * columns) {
+            return sensorValues;
+        }
+        // Not sampled since the sensor matrix changed
+        sensorValues = new double[rows * columns];
+        int i = 0;
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                sensorValues[i++] = sensorMatrix.getSensor(row, column)
+                        .getLastSample();
             }
         }
+        return sensorValues;
     }
 
     /**